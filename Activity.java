@@ -0,0 +1,62 @@
+package hillbillies.model;
+
+/**
+ * An enumeration of the activities a unit can be performing.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public enum Activity {
+
+	/**
+	 * The unit is not performing any activity.
+	 */
+	IDLE,
+
+	/**
+	 * The unit is moving to another cube.
+	 */
+	MOVING,
+
+	/**
+	 * The unit is working.
+	 */
+	WORKING,
+
+	/**
+	 * The unit is resting, including its initial resting period.
+	 */
+	RESTING,
+
+	/**
+	 * The unit is fighting.
+	 */
+	FIGHTING;
+
+	/**
+	 * Return the activity with the given code.
+	 *
+	 * @param	code
+	 * 			The code of the activity.
+	 * @return	| result.getCode() == code
+	 * @throws	IllegalArgumentException
+	 * 			No activity has the given code.
+	 */
+	public static Activity fromCode(byte code) throws IllegalArgumentException {
+		if ((code < 0) || (code >= VALUES.length))
+			throw new IllegalArgumentException("Invalid activity code: " + code);
+		return VALUES[code];
+	}
+
+	/**
+	 * Return the compact code of this activity.
+	 */
+	public byte getCode() {
+		return (byte) this.ordinal();
+	}
+
+	/**
+	 * Variable caching the activities in order of their code.
+	 */
+	private static final Activity[] VALUES = values();
+}
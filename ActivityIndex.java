@@ -0,0 +1,147 @@
+package hillbillies.model;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A class of activity indexes, registering for each activity and each unit
+ * flag which units of a world currently match it.
+ *
+ * The index keeps one bitset per activity, one for sprinting units and one for
+ * units with default behaviour enabled, keyed by unit identifier. Units report
+ * every transition to their world, which updates the index, so batch systems
+ * and filters can iterate only the matching units instead of all units.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class ActivityIndex {
+
+	/**
+	 * Initialize this new index without any units.
+	 */
+	public ActivityIndex() {
+		this.activities = new BitSet[Activity.values().length];
+		for (int i = 0; i < this.activities.length; i++)
+			this.activities[i] = new BitSet();
+	}
+
+	/**
+	 * Variable registering the units performing each activity, indexed by activity code.
+	 */
+	private final BitSet[] activities;
+
+	/**
+	 * Variable registering the sprinting units.
+	 */
+	private final BitSet sprinting = new BitSet();
+
+	/**
+	 * Variable registering the units with default behaviour enabled.
+	 */
+	private final BitSet defaultBehavior = new BitSet();
+
+	/**
+	 * Variable registering the activity code each unit is indexed under, or -1.
+	 */
+	private byte[] indexed = new byte[0];
+
+	/**
+	 * Return the identifier of the first unit performing the given activity,
+	 * starting from the given identifier.
+	 *
+	 * @param	activity
+	 * 			The activity to look for.
+	 * @param	fromId
+	 * 			The identifier to start from, inclusive.
+	 * @return	-1 if there is no such unit.
+	 */
+	public synchronized int nextUnit(Activity activity, int fromId) {
+		return this.activities[activity.getCode()].nextSetBit(fromId);
+	}
+
+	/**
+	 * Return the identifier of the first sprinting unit, starting from the given identifier.
+	 *
+	 * @return	-1 if there is no such unit.
+	 */
+	public synchronized int nextSprinting(int fromId) {
+		return this.sprinting.nextSetBit(fromId);
+	}
+
+	/**
+	 * Return the identifier of the first unit with default behaviour enabled,
+	 * starting from the given identifier.
+	 *
+	 * @return	-1 if there is no such unit.
+	 */
+	public synchronized int nextDefaultBehavior(int fromId) {
+		return this.defaultBehavior.nextSetBit(fromId);
+	}
+
+	/**
+	 * Return the number of units performing the given activity.
+	 */
+	public synchronized int count(Activity activity) {
+		return this.activities[activity.getCode()].cardinality();
+	}
+
+	/**
+	 * Return the number of sprinting units.
+	 */
+	public synchronized int countSprinting() {
+		return this.sprinting.cardinality();
+	}
+
+	/**
+	 * Return the number of units with default behaviour enabled.
+	 */
+	public synchronized int countDefaultBehavior() {
+		return this.defaultBehavior.cardinality();
+	}
+
+	/**
+	 * Return a copy of the set of identifiers of the units performing the given activity.
+	 */
+	public synchronized BitSet getUnits(Activity activity) {
+		return (BitSet) this.activities[activity.getCode()].clone();
+	}
+
+	/**
+	 * Register the current activity and flags of the given unit.
+	 *
+	 * @param	unit
+	 * 			The unit to register, which has to belong to a world.
+	 */
+	synchronized void update(Unit unit) {
+		int id = unit.getId();
+		if (id >= this.indexed.length) {
+			int oldLength = this.indexed.length;
+			this.indexed = Arrays.copyOf(this.indexed, Math.max(id + 1, 2 * oldLength));
+			Arrays.fill(this.indexed, oldLength, this.indexed.length, (byte) -1);
+		}
+		byte code = unit.getActivity().getCode();
+		if (this.indexed[id] != code) {
+			if (this.indexed[id] >= 0)
+				this.activities[this.indexed[id]].clear(id);
+			this.activities[code].set(id);
+			this.indexed[id] = code;
+		}
+		this.sprinting.set(id, unit.isSprinting());
+		this.defaultBehavior.set(id, unit.isDefaultBehaviorEnabled());
+	}
+
+	/**
+	 * Remove the unit with the given identifier from this index.
+	 *
+	 * @param	id
+	 * 			The identifier of the unit to remove.
+	 */
+	synchronized void remove(int id) {
+		if ((id < this.indexed.length) && (this.indexed[id] >= 0)) {
+			this.activities[this.indexed[id]].clear(id);
+			this.indexed[id] = -1;
+		}
+		this.sprinting.clear(id);
+		this.defaultBehavior.clear(id);
+	}
+}
@@ -0,0 +1,136 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the indexes of the activities of units, and on the decision systems
+ * choosing the activities of idle units.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class ActivityTests {
+
+	/**
+	 * Constant reflecting the duration of a frame, in seconds.
+	 */
+	private static final double FRAME_TIME = 0.1;
+
+	private World world;
+
+	private BehaviorScheduler scheduler;
+
+	private ActivityIndex index;
+
+	private Unit[] units;
+
+	@Before
+	public void setUp() throws Exception {
+		this.world = new World();
+		this.scheduler = new BehaviorScheduler();
+		this.index = this.world.getActivityIndex();
+		this.units = new Unit[4];
+		for (int i = 0; i < this.units.length; i++) {
+			this.units[i] = this.world.createUnit("Indexed Unit", new int[] {5 + 5 * i, 5, 5}, 50, 50, 50, 50, false);
+			this.scheduler.attach(this.units[i]);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (Unit unit : this.units)
+			this.scheduler.interrupt(unit);
+	}
+
+	@Test
+	public void createUnit_IndexedAsIdle() {
+		assertEquals(this.units.length, this.index.count(Activity.IDLE));
+		assertEquals(0, this.index.count(Activity.MOVING));
+		assertEquals(0, this.index.nextUnit(Activity.IDLE, 0));
+		assertEquals(2, this.index.nextUnit(Activity.IDLE, 2));
+		assertEquals(-1, this.index.nextUnit(Activity.WORKING, 0));
+	}
+
+	@Test
+	public void moveTo_IndexedAsMoving() throws Exception {
+		this.units[1].moveTo(new int[] {20, 20, 5});
+		for (int i = 0; (i < 10) && (this.index.count(Activity.MOVING) == 0); i++)
+			this.world.advanceTime(FRAME_TIME);
+		assertEquals(1, this.index.count(Activity.MOVING));
+		assertEquals(1, this.index.nextUnit(Activity.MOVING, 0));
+		assertEquals(this.units.length - 1, this.index.count(Activity.IDLE));
+		assertFalse(this.index.getUnits(Activity.IDLE).get(1));
+	}
+
+	@Test
+	public void flags_Indexed() {
+		this.units[2].setDefaultBehaviorEnabled(true);
+		this.units[3].startSprinting();
+		assertEquals(1, this.index.countDefaultBehavior());
+		assertEquals(2, this.index.nextDefaultBehavior(0));
+		assertEquals(1, this.index.countSprinting());
+		assertEquals(3, this.index.nextSprinting(0));
+		this.units[3].stopSprinting();
+		assertEquals(0, this.index.countSprinting());
+		assertEquals(-1, this.index.nextSprinting(0));
+	}
+
+	@Test
+	public void getUnits_ReturnsCopy() {
+		BitSet idle = this.index.getUnits(Activity.IDLE);
+		idle.clear();
+		assertEquals(this.units.length, this.index.count(Activity.IDLE));
+	}
+
+	@Test
+	public void unitDied_RemovedFromIndex() throws Exception {
+		this.units[0].setDefaultBehaviorEnabled(true);
+		this.world.unitDied(this.units[0]);
+		this.world.advanceTime(FRAME_TIME);
+		assertEquals(this.units.length - 1, this.index.count(Activity.IDLE));
+		assertEquals(1, this.index.nextUnit(Activity.IDLE, 0));
+		assertEquals(0, this.index.countDefaultBehavior());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void setInterval_InvalidInterval() {
+		this.world.getDecisionSystem().setInterval(0);
+	}
+
+	@Test
+	public void advanceTime_DecidesOncePerInterval() {
+		DecisionSystem system = new DecisionSystem(this.world);
+		system.setInterval(0.15);
+		assertEquals(0, system.advanceTime(0.1));
+		assertEquals(0, system.getNbRounds());
+		system.advanceTime(0.1);
+		assertEquals(1, system.getNbRounds());
+		system.advanceTime(0.1);
+		assertEquals(1, system.getNbRounds());
+	}
+
+	@Test
+	public void decide_StartsActivitiesOfIdleUnitsWithDefaultBehavior() throws Exception {
+		Unit detached = this.world.createUnit("Detached Unit", new int[] {30, 30, 5}, 50, 50, 50, 50, true);
+		this.units[0].setDefaultBehaviorEnabled(true);
+		this.units[1].setDefaultBehaviorEnabled(true);
+		DecisionSystem system = new DecisionSystem(this.world);
+		system.setSeed(42);
+		assertEquals(2, system.decide());
+		for (int i = 0; (i < 100) && ((this.units[0].getActivity() == Activity.IDLE)
+				|| (this.units[1].getActivity() == Activity.IDLE)); i++)
+			Thread.sleep(10);
+		for (int i = 0; i < 2; i++) {
+			Activity activity = this.units[i].getActivity();
+			assertTrue((activity == Activity.WORKING) || (activity == Activity.MOVING));
+		}
+		assertEquals(Activity.IDLE, this.units[2].getActivity());
+		assertEquals(Activity.IDLE, detached.getActivity());
+		assertEquals(0, system.decide());
+	}
+}
@@ -0,0 +1,26 @@
+package hillbillies.model;
+
+/**
+ * An enumeration of the outcomes of an attack of one unit on another.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public enum AttackOutcome {
+
+	/**
+	 * The defender dodged the attack and jumped to a neighbouring position.
+	 */
+	DODGED,
+
+	/**
+	 * The defender blocked the attack.
+	 */
+	BLOCKED,
+
+	/**
+	 * The attack hit the defender, who lost hitpoints.
+	 */
+	HIT;
+
+}
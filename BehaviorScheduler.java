@@ -0,0 +1,375 @@
+package hillbillies.model;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A class of schedulers running the behaviour of units on their own thread,
+ * parked on a simulation clock instead of on wall time.
+ *
+ * Each unit started on this scheduler gets one thread executing its sequential
+ * behaviour code (working, resting, moving, default behaviour). Whenever that
+ * code advances the time of its unit, the thread is parked until the simulation
+ * time of that unit has been advanced by the requested duration from outside,
+ * for example by the world of the unit. The behaviour keeps its own account of
+ * the time it consumed, so a single large advance releases as many of its
+ * pauses as fit in it. The thread advancing the time then waits until the
+ * behaviour has parked again or ended, so the world and the behaviours of its
+ * units run in lock step. Virtual threads are used when
+ * the running platform offers them, so tens of thousands of units can be
+ * scheduled at once; on older platforms daemon threads are used instead.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ */
+public class BehaviorScheduler {
+
+	/**
+	 * Initialize this new scheduler without any scheduled units.
+	 */
+	public BehaviorScheduler() {
+		this.threadFactory = createThreadFactory();
+	}
+
+	/**
+	 * Variable registering the factory creating the behaviour threads of this scheduler.
+	 */
+	private final ThreadFactory threadFactory;
+
+	/**
+	 * Variable registering the scheduling slot of each scheduled unit.
+	 */
+	private final Map<Unit, Slot> slots = new ConcurrentHashMap<Unit, Slot>();
+
+	/**
+	 * Constant reflecting the tolerance on simulation times, absorbing rounding
+	 * errors between the durations given and the durations consumed.
+	 */
+	private static final double EPSILON = 1e-9;
+
+	/**
+	 * Variable registering the unit whose behaviour the calling thread was started for, if any.
+	 */
+	private final ThreadLocal<Unit> owners = new ThreadLocal<Unit>();
+
+	/**
+	 * Check whether the given unit has a running behaviour on this scheduler.
+	 *
+	 * @param	unit
+	 * 			The unit to check.
+	 */
+	public boolean isScheduled(Unit unit) {
+		Slot slot = this.slots.get(unit);
+		return (slot != null) && (slot.thread != null);
+	}
+
+	/**
+	 * Check whether the calling thread is the behaviour thread of the given unit.
+	 *
+	 * @param	unit
+	 * 			The unit to check.
+	 */
+	public boolean isBehaviorThread(Unit unit) {
+		Slot slot = this.slots.get(unit);
+		return (slot != null) && (slot.thread == Thread.currentThread());
+	}
+
+	/**
+	 * Check whether the calling thread was started for the behaviour of the given
+	 * unit, but has since been interrupted or replaced by another behaviour.
+	 *
+	 * Such a thread no longer parks on the simulation time of the unit, so it
+	 * must stop instead of advancing the time of the unit itself.
+	 *
+	 * @param	unit
+	 * 			The unit to check.
+	 */
+	public boolean isSuperseded(Unit unit) {
+		return (this.owners.get() == unit) && (!this.isBehaviorThread(unit));
+	}
+
+	/**
+	 * Return the number of units with a running behaviour on this scheduler.
+	 */
+	public int getNbScheduled() {
+		int result = 0;
+		for (Slot slot : this.slots.values())
+			if (slot.thread != null)
+				result++;
+		return result;
+	}
+
+	/**
+	 * Return the simulation time of the given unit on this scheduler, in seconds.
+	 *
+	 * @param	unit
+	 * 			The unit to inspect.
+	 */
+	public double getSimulationTime(Unit unit) {
+		Slot slot = this.slots.get(unit);
+		if (slot == null)
+			return 0;
+		slot.lock.lock();
+		try {
+			return slot.time;
+		} finally {
+			slot.lock.unlock();
+		}
+	}
+
+	/**
+	 * Attach the given unit to this scheduler, so that the activities it starts
+	 * from now on run on a behaviour thread of this scheduler.
+	 *
+	 * @param	unit
+	 * 			The unit to attach.
+	 * @post	The behaviour scheduler of the given unit is this scheduler.
+	 * 			| unit.getBehaviorScheduler() == this
+	 * @throws	IllegalArgumentException
+	 * 			The given unit is not effective.
+	 * 			| unit == null
+	 */
+	public void attach(Unit unit) throws IllegalArgumentException {
+		if (unit == null)
+			throw new IllegalArgumentException();
+		unit.setBehaviorScheduler(this);
+		this.getSlot(unit);
+	}
+
+	/**
+	 * Start the given behaviour of the given unit on its own behaviour thread.
+	 * Any behaviour the unit was already running on this scheduler is interrupted.
+	 *
+	 * @param	unit
+	 * 			The unit whose behaviour is started.
+	 * @param	behavior
+	 * 			The sequential behaviour code to run, for example unit::work.
+	 * @post	The given unit is scheduled on this scheduler, and parks on this
+	 * 			scheduler whenever it advances its time.
+	 * 			| new.isScheduled(unit) && (unit.getBehaviorScheduler() == this)
+	 * @throws	IllegalArgumentException
+	 * 			The given unit or behaviour is not effective.
+	 * 			| (unit == null) || (behavior == null)
+	 */
+	public void start(final Unit unit, final Runnable behavior) throws IllegalArgumentException {
+		if ((unit == null) || (behavior == null))
+			throw new IllegalArgumentException();
+		this.interrupt(unit);
+		unit.setBehaviorScheduler(this);
+		final Slot slot = this.getSlot(unit);
+		Thread thread = this.threadFactory.newThread(new Runnable() {
+			@Override
+			public void run() {
+				BehaviorScheduler.this.owners.set(unit);
+				try {
+					behavior.run();
+				} finally {
+					slot.lock.lock();
+					try {
+						if (slot.thread == Thread.currentThread()) {
+							slot.thread = null;
+							slot.settled.signalAll();
+						}
+					} finally {
+						slot.lock.unlock();
+					}
+				}
+			}
+		});
+		slot.lock.lock();
+		try {
+			slot.thread = thread;
+			slot.consumed = slot.time;
+		} finally {
+			slot.lock.unlock();
+		}
+		thread.start();
+	}
+
+	/**
+	 * Interrupt the behaviour the given unit is running on this scheduler, if any,
+	 * unless it is the calling thread itself. The world of the unit is told, so the
+	 * reservations of the interrupted movement are cancelled before another
+	 * behaviour starts.
+	 *
+	 * @param	unit
+	 * 			The unit whose behaviour is interrupted.
+	 */
+	public void interrupt(Unit unit) {
+		Slot slot = this.slots.get(unit);
+		if ((slot == null) || (this.isSuperseded(unit)))
+			return;
+		slot.lock.lock();
+		try {
+			if ((slot.thread == null) || (slot.thread == Thread.currentThread()))
+				return;
+			slot.thread.interrupt();
+			slot.thread = null;
+			slot.settled.signalAll();
+		} finally {
+			slot.lock.unlock();
+		}
+		if (unit.getWorld() != null)
+			unit.getWorld().behaviorInterrupted(unit);
+	}
+
+	/**
+	 * Let the behaviour of the given unit consume the given duration, parking the
+	 * calling behaviour thread until the simulation time of the unit has caught up.
+	 *
+	 * @param	unit
+	 * 			The unit whose behaviour is parked.
+	 * @param	duration
+	 * 			The amount of simulation time to wait, in seconds.
+	 * @throws	InterruptedException
+	 * 			The calling thread was interrupted while parked, or it is not the
+	 * 			current behaviour thread of the given unit.
+	 */
+	public void sleep(Unit unit, double duration) throws InterruptedException {
+		Slot slot = this.getSlot(unit);
+		slot.lock.lock();
+		try {
+			if (slot.thread != Thread.currentThread())
+				throw new InterruptedException();
+			slot.consumed += Math.max(0, duration);
+			slot.parked = true;
+			slot.settled.signalAll();
+			try {
+				while (slot.time < slot.consumed - EPSILON) {
+					slot.advanced.await();
+					if (slot.thread != Thread.currentThread())
+						throw new InterruptedException();
+				}
+			} finally {
+				slot.parked = false;
+			}
+		} finally {
+			slot.lock.unlock();
+		}
+	}
+
+	/**
+	 * Wait until the behaviour of the given unit has consumed the simulation time
+	 * given to it and parked again, or ended.
+	 *
+	 * @param	unit
+	 * 			The unit whose behaviour is awaited.
+	 * @throws	InterruptedException
+	 * 			The calling thread was interrupted while waiting.
+	 */
+	public void await(Unit unit) throws InterruptedException {
+		Slot slot = this.slots.get(unit);
+		if (slot == null)
+			return;
+		slot.lock.lock();
+		try {
+			while ((slot.thread != null) && (slot.thread != Thread.currentThread())
+					&& ((!slot.parked) || (slot.time >= slot.consumed - EPSILON)))
+				slot.settled.await();
+		} finally {
+			slot.lock.unlock();
+		}
+	}
+
+	/**
+	 * Advance the simulation time of the given unit with the given duration, and
+	 * release its behaviour thread if its wake up time has passed. The behaviour
+	 * runs concurrently with the calling thread until it is awaited.
+	 *
+	 * @param	unit
+	 * 			The unit whose simulation time is advanced.
+	 * @param	duration
+	 * 			The amount of simulation time to advance, in seconds.
+	 * @throws	IllegalArgumentException
+	 * 			The given duration is negative.
+	 * 			| duration < 0
+	 */
+	public void advanceTime(Unit unit, double duration) throws IllegalArgumentException {
+		if (duration < 0)
+			throw new IllegalArgumentException();
+		Slot slot = this.getSlot(unit);
+		slot.lock.lock();
+		try {
+			slot.time += duration;
+			slot.advanced.signalAll();
+		} finally {
+			slot.lock.unlock();
+		}
+	}
+
+	/**
+	 * Interrupt the behaviour of all units scheduled on this scheduler.
+	 */
+	public void shutdown() {
+		for (Unit unit : this.slots.keySet())
+			this.interrupt(unit);
+	}
+
+	/**
+	 * Return the scheduling slot of the given unit, creating it if needed.
+	 */
+	private Slot getSlot(Unit unit) {
+		Slot slot = this.slots.get(unit);
+		if (slot == null) {
+			Slot created = new Slot();
+			slot = this.slots.putIfAbsent(unit, created);
+			if (slot == null)
+				slot = created;
+		}
+		return slot;
+	}
+
+	/**
+	 * Return a factory for virtual threads if the running platform supports them,
+	 * and a factory for daemon threads otherwise.
+	 */
+	private static ThreadFactory createThreadFactory() {
+		try {
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Object builder = ofVirtual.invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Hillbilly behavior");
+					thread.setDaemon(true);
+					return thread;
+				}
+			};
+		}
+	}
+
+	/**
+	 * A class of scheduling slots, registering the behaviour thread, the simulation
+	 * time and the time consumed by the behaviour of a single unit.
+	 */
+	private static class Slot {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		/**
+		 * Condition signalled when the simulation time of the unit advances.
+		 */
+		private final Condition advanced = this.lock.newCondition();
+
+		/**
+		 * Condition signalled when the behaviour of the unit parks or ends.
+		 */
+		private final Condition settled = this.lock.newCondition();
+
+		private Thread thread;
+
+		private double time;
+
+		/**
+		 * The simulation time up to which the behaviour has consumed its pauses.
+		 */
+		private double consumed;
+
+		private boolean parked;
+	}
+}
@@ -0,0 +1,291 @@
+package hillbillies.model;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of change trackers, turning the state of the units of a world into a
+ * stream of compact delta frames for remote viewers.
+ *
+ * The world tells its trackers which units changed their position, orientation,
+ * hitpoints, stamina or activity. At the end of each tick, the tracker compares
+ * only those units with the values it last sent, and encodes only the fields
+ * that changed, as variable-length deltas. Both the size of a frame and the cost
+ * of producing it therefore grow with the activity in the world, not with its
+ * population. A keyframe sends every field of every unit as an absolute value,
+ * so viewers joining later can build their state from scratch.
+ *
+ * A frame consists of the tick number, a flags byte, the number of units, the
+ * number of changed units, and for each changed unit the gap to the previous
+ * changed identifier, a field mask and the deltas of the changed fields.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class ChangeTracker {
+
+	/**
+	 * Initialize this new change tracker for the given world.
+	 *
+	 * @param	world
+	 * 			The world whose units are tracked.
+	 * @post	| new.getWorld() == world
+	 * @post	The first frame of this new tracker is a keyframe.
+	 * @effect	The world tells this new tracker about the changes of its units.
+	 * 			| world.addChangeTracker(this)
+	 */
+	public ChangeTracker(World world) {
+		this.world = world;
+		world.addChangeTracker(this);
+	}
+
+	/**
+	 * Constant reflecting the number of position units per cube in a frame.
+	 */
+	public static final int POSITION_SCALE = 1024;
+
+	/**
+	 * Constant reflecting the number of orientation units per radian in a frame.
+	 */
+	public static final int ORIENTATION_SCALE = 1000;
+
+	/*
+	 * Flags of a frame.
+	 */
+	public static final int FLAG_KEYFRAME = 1;
+
+	/*
+	 * Bits of the field mask of a changed unit.
+	 */
+	public static final int FIELD_POSITION = 1;
+	public static final int FIELD_ORIENTATION = 2;
+	public static final int FIELD_HITPOINTS = 4;
+	public static final int FIELD_STAMINA = 8;
+	public static final int FIELD_ACTIVITY = 16;
+
+	/**
+	 * Variable registering the world whose units are tracked.
+	 */
+	private final World world;
+
+	/**
+	 * Variables registering the values last sent for each unit, indexed by identifier.
+	 */
+	private int[] x = new int[0], y = new int[0], z = new int[0];
+	private int[] orientation = new int[0], hitpoints = new int[0], stamina = new int[0];
+	private byte[] activity = new byte[0];
+
+	/**
+	 * Variable registering which units changed since the previous frame, one bit per identifier.
+	 */
+	private long[] changedBits = new long[0];
+
+	/**
+	 * Variable registering the identifiers of the units that changed since the previous frame.
+	 */
+	private int[] changed = new int[64];
+
+	/**
+	 * Variable registering the number of units that changed since the previous frame.
+	 */
+	private int nbChanged;
+
+	/**
+	 * Variable registering whether the next frame has to be a keyframe.
+	 */
+	private boolean keyframeRequested = true;
+
+	/**
+	 * Variable registering the number of the next tick.
+	 */
+	private long tick;
+
+	/**
+	 * Return the world whose units are tracked.
+	 */
+	@Basic @Immutable
+	public World getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Request the next frame to be a keyframe, for example because a viewer joined.
+	 */
+	public synchronized void requestKeyframe() {
+		this.keyframeRequested = true;
+	}
+
+	/**
+	 * Register that the unit with the given identifier changed since the previous frame.
+	 *
+	 * @param	id
+	 * 			The identifier of the unit.
+	 */
+	synchronized void unitChanged(int id) {
+		if ((id >> 6) >= this.changedBits.length)
+			this.changedBits = Arrays.copyOf(this.changedBits, Math.max((id >> 6) + 1, 2 * this.changedBits.length));
+		if ((this.changedBits[id >> 6] & (1L << id)) != 0)
+			return;
+		this.changedBits[id >> 6] |= 1L << id;
+		if (this.nbChanged == this.changed.length)
+			this.changed = Arrays.copyOf(this.changed, 2 * this.nbChanged);
+		this.changed[this.nbChanged++] = id;
+	}
+
+	/**
+	 * Encode the changes of the units of the world since the previous frame.
+	 *
+	 * @return	The encoded frame.
+	 */
+	public synchronized byte[] nextFrame() {
+		int nbUnits = this.world.getNbUnits();
+		boolean keyframe = this.keyframeRequested;
+		this.keyframeRequested = false;
+		if (keyframe)
+			this.reset(nbUnits);
+		else if (nbUnits > this.x.length)
+			this.grow(nbUnits);
+
+		ByteArrayOutputStream changes = new ByteArrayOutputStream();
+		int nbEncoded = 0;
+		int previous = -1;
+		if (keyframe) {
+			for (int id = 0; id < nbUnits; id++)
+				if (this.encode(changes, id, previous, true)) {
+					previous = id;
+					nbEncoded++;
+				}
+		} else {
+			Arrays.sort(this.changed, 0, this.nbChanged);
+			for (int i = 0; (i < this.nbChanged) && (this.changed[i] < nbUnits); i++)
+				if (this.encode(changes, this.changed[i], previous, false)) {
+					previous = this.changed[i];
+					nbEncoded++;
+				}
+		}
+		this.clearChanged(nbUnits);
+
+		ByteArrayOutputStream frame = new ByteArrayOutputStream(changes.size() + 16);
+		VarInts.writeUnsigned(frame, this.tick++);
+		frame.write(keyframe ? FLAG_KEYFRAME : 0);
+		VarInts.writeUnsigned(frame, nbUnits);
+		VarInts.writeUnsigned(frame, nbEncoded);
+		byte[] body = changes.toByteArray();
+		frame.write(body, 0, body.length);
+		return frame.toByteArray();
+	}
+
+	/**
+	 * Encode the fields of the unit with the given identifier that differ from the
+	 * values last sent, or all its fields for a keyframe, after the changed unit
+	 * with the given previous identifier.
+	 *
+	 * @return	True if and only if any field of the unit was encoded.
+	 */
+	private boolean encode(ByteArrayOutputStream changes, int id, int previous, boolean keyframe) {
+		Unit unit = this.world.getUnit(id);
+		double[] position = unit.getPosition();
+		int newX = quantize(position[0], POSITION_SCALE);
+		int newY = quantize(position[1], POSITION_SCALE);
+		int newZ = quantize(position[2], POSITION_SCALE);
+		int newOrientation = quantize(unit.getOrientation(), ORIENTATION_SCALE);
+		int newHitpoints = unit.getHitpoints();
+		int newStamina = unit.getStamina();
+		byte newActivity = unit.getActivity().getCode();
+
+		int mask = 0;
+		if (keyframe || (newX != this.x[id]) || (newY != this.y[id]) || (newZ != this.z[id]))
+			mask |= FIELD_POSITION;
+		if (keyframe || (newOrientation != this.orientation[id]))
+			mask |= FIELD_ORIENTATION;
+		if (keyframe || (newHitpoints != this.hitpoints[id]))
+			mask |= FIELD_HITPOINTS;
+		if (keyframe || (newStamina != this.stamina[id]))
+			mask |= FIELD_STAMINA;
+		if (keyframe || (newActivity != this.activity[id]))
+			mask |= FIELD_ACTIVITY;
+		if (mask == 0)
+			return false;
+
+		VarInts.writeUnsigned(changes, id - previous - 1);
+		changes.write(mask);
+		if ((mask & FIELD_POSITION) != 0) {
+			VarInts.writeSigned(changes, newX - this.x[id]);
+			VarInts.writeSigned(changes, newY - this.y[id]);
+			VarInts.writeSigned(changes, newZ - this.z[id]);
+		}
+		if ((mask & FIELD_ORIENTATION) != 0)
+			VarInts.writeSigned(changes, newOrientation - this.orientation[id]);
+		if ((mask & FIELD_HITPOINTS) != 0)
+			VarInts.writeSigned(changes, newHitpoints - this.hitpoints[id]);
+		if ((mask & FIELD_STAMINA) != 0)
+			VarInts.writeSigned(changes, newStamina - this.stamina[id]);
+		if ((mask & FIELD_ACTIVITY) != 0)
+			changes.write(newActivity);
+
+		this.x[id] = newX;
+		this.y[id] = newY;
+		this.z[id] = newZ;
+		this.orientation[id] = newOrientation;
+		this.hitpoints[id] = newHitpoints;
+		this.stamina[id] = newStamina;
+		this.activity[id] = newActivity;
+		return true;
+	}
+
+	/**
+	 * Forget the changes of all units with an identifier below the given number
+	 * of units. Units added to the world after the number was read keep their
+	 * changes for the next frame.
+	 */
+	private void clearChanged(int nbUnits) {
+		int kept = 0;
+		for (int i = 0; i < this.nbChanged; i++) {
+			int id = this.changed[i];
+			if (id < nbUnits)
+				this.changedBits[id >> 6] &= ~(1L << id);
+			else
+				this.changed[kept++] = id;
+		}
+		this.nbChanged = kept;
+	}
+
+	/**
+	 * Reset the values last sent to zero for the given number of units.
+	 */
+	private void reset(int nbUnits) {
+		this.x = new int[nbUnits];
+		this.y = new int[nbUnits];
+		this.z = new int[nbUnits];
+		this.orientation = new int[nbUnits];
+		this.hitpoints = new int[nbUnits];
+		this.stamina = new int[nbUnits];
+		this.activity = new byte[nbUnits];
+	}
+
+	/**
+	 * Grow the arrays of values last sent to hold the given number of units.
+	 * New units start from zero values, so their first frame sends all their fields.
+	 */
+	private void grow(int nbUnits) {
+		int oldLength = this.x.length;
+		this.x = Arrays.copyOf(this.x, nbUnits);
+		this.y = Arrays.copyOf(this.y, nbUnits);
+		this.z = Arrays.copyOf(this.z, nbUnits);
+		this.orientation = Arrays.copyOf(this.orientation, nbUnits);
+		this.hitpoints = Arrays.copyOf(this.hitpoints, nbUnits);
+		this.stamina = Arrays.copyOf(this.stamina, nbUnits);
+		this.activity = Arrays.copyOf(this.activity, nbUnits);
+		// Force the activity of new units to be sent, even if it is the first activity code.
+		Arrays.fill(this.activity, oldLength, nbUnits, (byte) -1);
+	}
+
+	/**
+	 * Return the given value in fixed units of the given scale.
+	 */
+	static int quantize(double value, int scale) {
+		return (int) Math.round(value * scale);
+	}
+}
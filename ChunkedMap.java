@@ -0,0 +1,451 @@
+package hillbillies.model;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+import hillbillies.common.internal.map.IByteMap3D;
+
+/**
+ * A class of chunked maps, storing the terrain of large game worlds compactly.
+ *
+ * The map is divided in chunks of 16 by 16 by 16 cubes. A chunk in which all
+ * cubes have the same value is stored as that single value. Any other chunk
+ * stores the distinct values it contains in a palette, and for each cube the
+ * position of its value in that palette, packed in as few bits as the size of
+ * the palette allows. Typical terrain, with large uniform regions of air and rock
+ * and only a handful of values per chunk, then takes a fraction of a bit to two
+ * bits per cube, so worlds of 512 by 512 by 512 cubes fit comfortably in memory.
+ *
+ * The map notifies its listeners of every cube that changes value. It is meant to
+ * be changed from the simulation thread only.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ * @invar	The dimensions of each chunked map are positive.
+ * 			| (getNbX() > 0) && (getNbY() > 0) && (getNbZ() > 0)
+ */
+public class ChunkedMap implements IByteMap3D {
+
+	/**
+	 * Initialize this new chunked map with the given dimensions, in which all cubes are air.
+	 *
+	 * @param	nbX
+	 * 			The number of cubes along the x axis.
+	 * @param	nbY
+	 * 			The number of cubes along the y axis.
+	 * @param	nbZ
+	 * 			The number of cubes along the z axis.
+	 * @post	| (new.getNbX() == nbX) && (new.getNbY() == nbY) && (new.getNbZ() == nbZ)
+	 * @post	| for each valid index (x, y, z):
+	 * 			|	new.getValue(x, y, z) == Terrain.AIR
+	 * @throws	IllegalArgumentException
+	 * 			Some of the given dimensions is not positive.
+	 * 			| (nbX <= 0) || (nbY <= 0) || (nbZ <= 0)
+	 */
+	public ChunkedMap(int nbX, int nbY, int nbZ) throws IllegalArgumentException {
+		if ((nbX <= 0) || (nbY <= 0) || (nbZ <= 0))
+			throw new IllegalArgumentException("Invalid dimensions: " + nbX + "x" + nbY + "x" + nbZ);
+		this.nbX = nbX;
+		this.nbY = nbY;
+		this.nbZ = nbZ;
+		this.chunksX = (nbX + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+		this.chunksY = (nbY + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+		this.chunksZ = (nbZ + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+		int nbChunks = this.chunksX * this.chunksY * this.chunksZ;
+		this.uniform = new byte[nbChunks];
+		this.chunks = new Chunk[nbChunks];
+		Arrays.fill(this.uniform, Terrain.AIR);
+	}
+
+	/**
+	 * Constant reflecting the base two logarithm of the size of a chunk.
+	 */
+	public static final int CHUNK_SHIFT = 4;
+
+	/**
+	 * Constant reflecting the number of cubes along each axis of a chunk.
+	 */
+	public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+	/**
+	 * Constant reflecting the number of cubes of a chunk.
+	 */
+	public static final int CHUNK_VOLUME = CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE;
+
+	/**
+	 * Variables registering the dimensions of this map.
+	 */
+	private final int nbX, nbY, nbZ;
+
+	/**
+	 * Variables registering the number of chunks along each axis.
+	 */
+	private final int chunksX, chunksY, chunksZ;
+
+	/**
+	 * Variable registering the value of each uniform chunk.
+	 */
+	private final byte[] uniform;
+
+	/**
+	 * Variable registering the contents of each chunk that is not uniform, or null.
+	 */
+	private final Chunk[] chunks;
+
+	/**
+	 * Variable registering the listeners notified of changes of this map.
+	 */
+	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+	@Override @Basic @Immutable
+	public int getNbX() {
+		return this.nbX;
+	}
+
+	@Override @Basic @Immutable
+	public int getNbY() {
+		return this.nbY;
+	}
+
+	@Override @Basic @Immutable
+	public int getNbZ() {
+		return this.nbZ;
+	}
+
+	@Override
+	public boolean isValidIndex(int x, int y, int z) {
+		return (0 <= x) && (x < this.nbX) && (0 <= y) && (y < this.nbY) && (0 <= z) && (z < this.nbZ);
+	}
+
+	/**
+	 * Return the number of chunks of this map.
+	 */
+	@Immutable
+	public int getNbChunks() {
+		return this.chunks.length;
+	}
+
+	/**
+	 * Return the number of chunks of this map stored as a single value.
+	 */
+	public int getNbUniformChunks() {
+		int result = 0;
+		for (Chunk chunk : this.chunks)
+			if (chunk == null)
+				result++;
+		return result;
+	}
+
+	/**
+	 * Return an estimate of the number of bytes this map takes in memory.
+	 */
+	public long getMemoryUsage() {
+		long result = 5L * this.chunks.length;
+		for (Chunk chunk : this.chunks)
+			if (chunk != null)
+				result += chunk.getMemoryUsage();
+		return result;
+	}
+
+	/**
+	 * Return the value of the cube at the given coordinates.
+	 *
+	 * @throws	IndexOutOfBoundsException
+	 * 			The given coordinates do not lie within this map.
+	 * 			| ! isValidIndex(x, y, z)
+	 */
+	@Override
+	public byte getValue(int x, int y, int z) throws IndexOutOfBoundsException {
+		if (!this.isValidIndex(x, y, z))
+			throw new IndexOutOfBoundsException("Invalid cube: " + x + ", " + y + ", " + z);
+		int chunk = this.chunkOf(x, y, z);
+		Chunk contents = this.chunks[chunk];
+		if (contents == null)
+			return this.uniform[chunk];
+		return contents.get(cubeOf(x, y, z));
+	}
+
+	/**
+	 * Set the value of the cube at the given coordinates to the given value.
+	 *
+	 * @post	| new.getValue(x, y, z) == value
+	 * @effect	If the value changed, all listeners of this map are notified.
+	 * 			| if (getValue(x, y, z) != value) then
+	 * 			|	for each listener: listener.onChange(x, y, z, getValue(x, y, z), value)
+	 * @throws	IndexOutOfBoundsException
+	 * 			The given coordinates do not lie within this map.
+	 * 			| ! isValidIndex(x, y, z)
+	 */
+	public void setValue(int x, int y, int z, byte value) throws IndexOutOfBoundsException {
+		if (!this.isValidIndex(x, y, z))
+			throw new IndexOutOfBoundsException("Invalid cube: " + x + ", " + y + ", " + z);
+		int chunk = this.chunkOf(x, y, z);
+		Chunk contents = this.chunks[chunk];
+		byte old;
+		if (contents == null) {
+			old = this.uniform[chunk];
+			if (old == value)
+				return;
+			contents = new Chunk(old);
+			this.chunks[chunk] = contents;
+		}
+		old = contents.set(cubeOf(x, y, z), value);
+		if (contents.getNbDistinct() == 1) {
+			this.chunks[chunk] = null;
+			this.uniform[chunk] = value;
+		}
+		if (old != value)
+			this.notifyListeners(x, y, z, old, value);
+	}
+
+	/**
+	 * Set the value of every cube of this map to the value given by the given provider.
+	 *
+	 * @effect	| for each valid index (x, y, z):
+	 * 			|	setValue(x, y, z, provider.getValue(x, y, z))
+	 */
+	@Override
+	public void fill(ValueProvider provider) {
+		byte[] values = new byte[CHUNK_VOLUME];
+		for (int cx = 0; cx < this.chunksX; cx++)
+			for (int cy = 0; cy < this.chunksY; cy++)
+				for (int cz = 0; cz < this.chunksZ; cz++) {
+					int chunk = (cx * this.chunksY + cy) * this.chunksZ + cz;
+					byte first = 0;
+					boolean same = true;
+					for (int i = 0; i < CHUNK_VOLUME; i++) {
+						int x = (cx << CHUNK_SHIFT) + (i >> (2 * CHUNK_SHIFT));
+						int y = (cy << CHUNK_SHIFT) + ((i >> CHUNK_SHIFT) & (CHUNK_SIZE - 1));
+						int z = (cz << CHUNK_SHIFT) + (i & (CHUNK_SIZE - 1));
+						// Cubes of border chunks outside the map keep the value of the chunk's first cube.
+						values[i] = this.isValidIndex(x, y, z) ? provider.getValue(x, y, z) : values[0];
+						if (i == 0)
+							first = values[0];
+						else if (values[i] != first)
+							same = false;
+					}
+					this.replace(chunk, cx, cy, cz, values, same);
+				}
+	}
+
+	/**
+	 * Replace the contents of the given chunk with the given values, notifying
+	 * the listeners of every cube that changed.
+	 */
+	private void replace(int chunk, int cx, int cy, int cz, byte[] values, boolean same) {
+		Chunk old = this.chunks[chunk];
+		byte oldUniform = this.uniform[chunk];
+		if (same) {
+			this.chunks[chunk] = null;
+			this.uniform[chunk] = values[0];
+		}
+		else
+			this.chunks[chunk] = new Chunk(values);
+		if (this.listeners.isEmpty())
+			return;
+		for (int i = 0; i < CHUNK_VOLUME; i++) {
+			int x = (cx << CHUNK_SHIFT) + (i >> (2 * CHUNK_SHIFT));
+			int y = (cy << CHUNK_SHIFT) + ((i >> CHUNK_SHIFT) & (CHUNK_SIZE - 1));
+			int z = (cz << CHUNK_SHIFT) + (i & (CHUNK_SIZE - 1));
+			byte before = (old == null) ? oldUniform : old.get(i);
+			if ((before != values[i]) && (this.isValidIndex(x, y, z)))
+				this.notifyListeners(x, y, z, before, values[i]);
+		}
+	}
+
+	@Override
+	public void addListener(Listener listener) {
+		this.listeners.add(listener);
+	}
+
+	private void notifyListeners(int x, int y, int z, byte oldValue, byte newValue) {
+		for (Listener listener : this.listeners)
+			listener.onChange(x, y, z, oldValue, newValue);
+	}
+
+	private int chunkOf(int x, int y, int z) {
+		return ((x >> CHUNK_SHIFT) * this.chunksY + (y >> CHUNK_SHIFT)) * this.chunksZ + (z >> CHUNK_SHIFT);
+	}
+
+	private static int cubeOf(int x, int y, int z) {
+		int mask = CHUNK_SIZE - 1;
+		return ((x & mask) << (2 * CHUNK_SHIFT)) | ((y & mask) << CHUNK_SHIFT) | (z & mask);
+	}
+
+	/**
+	 * A class of chunks that are not uniform, storing a palette of values and a
+	 * bit-packed palette position for each cube.
+	 */
+	private static class Chunk {
+
+		/**
+		 * Initialize this new chunk with all cubes having the given value.
+		 */
+		private Chunk(byte value) {
+			this.bits = 1;
+			this.data = new long[CHUNK_VOLUME / 64];
+			this.appendToPalette(value);
+			this.counts[0] = CHUNK_VOLUME;
+			this.distinct = 1;
+		}
+
+		/**
+		 * Initialize this new chunk with the given values.
+		 */
+		private Chunk(byte[] values) {
+			int[] entries = new int[CHUNK_VOLUME];
+			for (int i = 0; i < CHUNK_VOLUME; i++) {
+				int entry = this.indexOf(values[i]);
+				entries[i] = (entry < 0) ? this.appendToPalette(values[i]) : entry;
+				this.counts[entries[i]]++;
+			}
+			this.bits = bitsFor(this.paletteSize);
+			this.data = new long[CHUNK_VOLUME * this.bits / 64];
+			for (int i = 0; i < CHUNK_VOLUME; i++)
+				this.write(i, entries[i]);
+			this.distinct = this.paletteSize;
+		}
+
+		/**
+		 * Variable registering the values of the palette.
+		 */
+		private byte[] palette = new byte[2];
+
+		/**
+		 * Variable registering the number of cubes using each palette entry.
+		 */
+		private int[] counts = new int[2];
+
+		/**
+		 * Variable registering the number of entries of the palette.
+		 */
+		private int paletteSize;
+
+		/**
+		 * Variable registering the number of palette entries used by some cube.
+		 */
+		private int distinct;
+
+		/**
+		 * Variable registering the number of bits of each packed palette position.
+		 */
+		private int bits;
+
+		/**
+		 * Variable registering the packed palette positions.
+		 */
+		private long[] data;
+
+		private int getNbDistinct() {
+			return this.distinct;
+		}
+
+		private long getMemoryUsage() {
+			return 8L * this.data.length + this.palette.length + 4L * this.counts.length + 32;
+		}
+
+		private byte get(int index) {
+			return this.palette[this.read(index)];
+		}
+
+		/**
+		 * Set the value of the cube with the given index to the given value.
+		 *
+		 * @return	The previous value of the cube.
+		 */
+		private byte set(int index, byte value) {
+			int oldEntry = this.read(index);
+			byte old = this.palette[oldEntry];
+			if (old == value)
+				return old;
+			int entry = this.indexOf(value);
+			if (entry < 0)
+				entry = this.addToPalette(value);
+			if (this.counts[entry]++ == 0)
+				this.distinct++;
+			if (--this.counts[oldEntry] == 0)
+				this.distinct--;
+			this.write(index, entry);
+			return old;
+		}
+
+		/**
+		 * Return the palette entry of the given value, or -1 if it is not in the palette.
+		 */
+		private int indexOf(byte value) {
+			for (int i = 0; i < this.paletteSize; i++)
+				if ((this.palette[i] == value) && (this.counts[i] > 0))
+					return i;
+			return -1;
+		}
+
+		/**
+		 * Add the given value to the palette, reusing an unused entry if there is one.
+		 *
+		 * @return	The palette entry of the given value.
+		 */
+		private int addToPalette(byte value) {
+			for (int i = 0; i < this.paletteSize; i++)
+				if (this.counts[i] == 0) {
+					this.palette[i] = value;
+					return i;
+				}
+			return this.appendToPalette(value);
+		}
+
+		/**
+		 * Append the given value to the palette, widening the packed positions if needed.
+		 *
+		 * @return	The palette entry of the given value.
+		 */
+		private int appendToPalette(byte value) {
+			int entry = this.paletteSize++;
+			if (entry == this.palette.length) {
+				this.palette = Arrays.copyOf(this.palette, 2 * this.palette.length);
+				this.counts = Arrays.copyOf(this.counts, 2 * this.counts.length);
+			}
+			this.palette[entry] = value;
+			if ((this.data != null) && (bitsFor(this.paletteSize) > this.bits))
+				this.widen(bitsFor(this.paletteSize));
+			return entry;
+		}
+
+		/**
+		 * Repack the palette positions with the given number of bits.
+		 */
+		private void widen(int newBits) {
+			int[] entries = new int[CHUNK_VOLUME];
+			for (int i = 0; i < CHUNK_VOLUME; i++)
+				entries[i] = this.read(i);
+			this.bits = newBits;
+			this.data = new long[CHUNK_VOLUME * newBits / 64];
+			for (int i = 0; i < CHUNK_VOLUME; i++)
+				this.write(i, entries[i]);
+		}
+
+		private int read(int index) {
+			int perWord = 64 / this.bits;
+			long word = this.data[index / perWord];
+			return (int) ((word >>> ((index % perWord) * this.bits)) & ((1L << this.bits) - 1));
+		}
+
+		private void write(int index, int entry) {
+			int perWord = 64 / this.bits;
+			int shift = (index % perWord) * this.bits;
+			long mask = ((1L << this.bits) - 1) << shift;
+			this.data[index / perWord] = (this.data[index / perWord] & ~mask) | ((long) entry << shift);
+		}
+
+		/**
+		 * Return the number of bits needed for the given palette size: 1, 2, 4 or 8.
+		 */
+		private static int bitsFor(int paletteSize) {
+			int result = 1;
+			while ((1 << result) < paletteSize)
+				result <<= 1;
+			return result;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the clocks dividing frames into simulation steps, and on the
+ * schedulers stepping units at those steps.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class ClockTests {
+
+	/**
+	 * Constant reflecting the timestep of the clocks of these tests, exact in binary.
+	 */
+	private static final double TIMESTEP = 0.125;
+
+	/**
+	 * Constant reflecting the number of ticks between two steps of an idle unit.
+	 */
+	private static final int COARSE_TICKS =
+			(int) Math.round(TickScheduler.COARSE_INTERVAL / SimulationClock.DEFAULT_TIMESTEP);
+
+	private SimulationClock clock;
+
+	private World world;
+
+	private BehaviorScheduler scheduler;
+
+	private Unit[] units;
+
+	@Before
+	public void setUp() throws Exception {
+		this.clock = new SimulationClock(TIMESTEP, 4);
+		this.world = new World();
+		this.scheduler = new BehaviorScheduler();
+		this.units = new Unit[3];
+		for (int i = 0; i < this.units.length; i++) {
+			this.units[i] = this.world.createUnit("Ticked Unit", new int[] {5 + 5 * i, 5, 5}, 50, 50, 50, 50, false);
+			this.scheduler.attach(this.units[i]);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (Unit unit : this.units)
+			this.scheduler.interrupt(unit);
+	}
+
+	@Test
+	public void constructor_Defaults() {
+		SimulationClock clock = new SimulationClock();
+		assertEquals(SimulationClock.DEFAULT_TIMESTEP, clock.getTimestep(), 0);
+		assertEquals(SimulationClock.DEFAULT_MAX_CATCH_UP_STEPS, clock.getMaxCatchUpSteps());
+		assertEquals(0, clock.getSimulationTime(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_InvalidTimestep() {
+		new SimulationClock(Unit.MAX_DURATION, 4);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_NoCatchUpSteps() {
+		new SimulationClock(TIMESTEP, 0);
+	}
+
+	@Test
+	public void advance_AccumulatesPartialSteps() {
+		assertEquals(0, this.clock.advance(TIMESTEP / 2));
+		assertEquals(TIMESTEP / 2, this.clock.getAccumulatedTime(), 0);
+		assertEquals(0.5, this.clock.getAlpha(), 0);
+		assertEquals(2, this.clock.advance(3 * TIMESTEP / 2));
+		assertEquals(0, this.clock.getAccumulatedTime(), 0);
+		assertEquals(2 * TIMESTEP, this.clock.getSimulationTime(), 0);
+		assertEquals(0, this.clock.getDroppedTime(), 0);
+	}
+
+	@Test
+	public void advance_DropsSurplusSteps() {
+		assertEquals(4, this.clock.advance(8 * TIMESTEP));
+		assertEquals(4 * TIMESTEP, this.clock.getDroppedTime(), 0);
+		assertEquals(4 * TIMESTEP, this.clock.getSimulationTime(), 0);
+		assertEquals(0, this.clock.getAccumulatedTime(), 0);
+		assertEquals(4, this.clock.advance(8.5 * TIMESTEP));
+		assertEquals(8 * TIMESTEP, this.clock.getDroppedTime(), 0);
+		assertEquals(0.5, this.clock.getAlpha(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void advance_NegativeFrameTime() {
+		this.clock.advance(-TIMESTEP);
+	}
+
+	@Test
+	public void reset_DiscardsAccumulatedTime() {
+		this.clock.advance(1.5 * TIMESTEP);
+		this.clock.reset();
+		assertEquals(0, this.clock.getAccumulatedTime(), 0);
+		assertEquals(0, this.clock.advance(TIMESTEP / 2));
+		assertEquals(TIMESTEP, this.clock.getSimulationTime(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tickScheduler_InvalidTickDuration() {
+		new TickScheduler(this.world, 0);
+	}
+
+	@Test
+	public void getStepInterval_DependsOnActivity() throws Exception {
+		assertEquals(TickScheduler.COARSE_INTERVAL, TickScheduler.getStepInterval(this.units[0]), 0);
+		this.units[0].moveTo(new int[] {20, 20, 5});
+		for (int i = 0; (i < 10) && (!this.units[0].isMoving()); i++)
+			this.world.advanceTime(SimulationClock.DEFAULT_TIMESTEP);
+		assertEquals(0, TickScheduler.getStepInterval(this.units[0]), 0);
+	}
+
+	@Test
+	public void tick_StepsIdleUnitsAtCoarseInterval() throws Exception {
+		TickScheduler ticks = this.world.getTickScheduler();
+		assertEquals(this.units.length, this.world.advanceTime(SimulationClock.DEFAULT_TIMESTEP));
+		for (int i = 1; i < COARSE_TICKS; i++)
+			assertEquals(0, this.world.advanceTime(SimulationClock.DEFAULT_TIMESTEP));
+		assertEquals(this.units.length, this.world.advanceTime(SimulationClock.DEFAULT_TIMESTEP));
+		assertEquals(this.units.length, ticks.getNbStepped());
+		assertEquals(COARSE_TICKS + 1, ticks.getTick());
+	}
+
+	@Test
+	public void tick_StepsMovingUnitEveryTick() throws Exception {
+		this.units[1].moveTo(new int[] {40, 40, 5});
+		for (int i = 0; (i < 10) && (!this.units[1].isMoving()); i++)
+			this.world.advanceTime(SimulationClock.DEFAULT_TIMESTEP);
+		int nbSteps = 0;
+		for (int i = 0; i < COARSE_TICKS; i++) {
+			int steps = this.world.advanceTime(SimulationClock.DEFAULT_TIMESTEP);
+			assertTrue(steps >= 1);
+			nbSteps += steps;
+		}
+		assertTrue(this.units[1].isMoving());
+		assertEquals(COARSE_TICKS + this.units.length - 1, nbSteps);
+	}
+
+	@Test
+	public void remove_UnitNoLongerStepped() throws Exception {
+		TickScheduler ticks = this.world.getTickScheduler();
+		ticks.remove(this.units[2].getId());
+		assertEquals(this.units.length - 1, this.world.advanceTime(SimulationClock.DEFAULT_TIMESTEP));
+		ticks.reschedule(this.units[2]);
+		assertEquals(1, this.world.advanceTime(SimulationClock.DEFAULT_TIMESTEP));
+	}
+}
@@ -0,0 +1,423 @@
+package hillbillies.model;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of cooperative planners, guiding a single unit to a target cube while
+ * avoiding the cubes other units reserved.
+ *
+ * A cooperative planner searches in space and time: a state is a cube at a time
+ * slot, and from each state a unit can step to a free adjacent cube or wait in
+ * its cube during one slot. The search only looks a fixed window of slots ahead
+ * and reserves the cubes of the partial path it finds in a shared reservation
+ * table. When the unit reaches the end of that path, or leaves it, the planner
+ * releases its reservations and plans the next window, so the units sharing a
+ * table flow past each other instead of piling up in the same cube.
+ *
+ * The search is guided by the straight line distance to the target. When a
+ * window ends no closer to the target than it started, that distance led the
+ * unit into a dead end, and the planner asks its path repairer for a D* Lite
+ * planner of the whole path. From then on each window heads for the cube of
+ * that path one window ahead, and the repairer keeps the path up to date when
+ * the terrain changes.
+ *
+ * Slots follow the clock of the world owning the reservation table: each plan
+ * starts at the current slot of the table, a unit ahead of its plan waits for
+ * the slot of its next step, and a unit that fell behind its plan by more than
+ * a slot plans a new window from the current slot.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ * @invar	The window of each cooperative planner is positive.
+ * 			| getWindow() > 0
+ */
+public class CooperativePlanner implements Navigator {
+
+	/**
+	 * Initialize this new planner guiding the unit with the given identifier to the
+	 * given target over the given passable map.
+	 *
+	 * @param	map
+	 * 			The passable cubes of the game world.
+	 * @param	table
+	 * 			The reservation table shared with the other units.
+	 * @param	unitId
+	 * 			The identifier of the unit this new planner guides.
+	 * @param	target
+	 * 			The cube this new planner leads to.
+	 * @param	window
+	 * 			The number of slots each plan looks ahead.
+	 * @post	| Arrays.equals(new.getTarget(), target)
+	 * @post	| new.getWindow() == window
+	 * @throws	IllegalArgumentException
+	 * 			The given window is not positive.
+	 * 			| window <= 0
+	 * @throws	OutOfBoundsException
+	 * 			The given target is not a passable cube of the given map.
+	 * 			| ! map.isPassable(target[0], target[1], target[2])
+	 */
+	public CooperativePlanner(PassableMap map, ReservationTable table, int unitId, int[] target, int window)
+			throws IllegalArgumentException, OutOfBoundsException {
+		this(map, table, null, unitId, target, window);
+	}
+
+	/**
+	 * Initialize this new planner guiding the unit with the given identifier to the
+	 * given target over the given passable map, asking the given repairer for a
+	 * planner of the whole path once it runs into a dead end.
+	 *
+	 * @param	map
+	 * 			The passable cubes of the game world.
+	 * @param	table
+	 * 			The reservation table shared with the other units.
+	 * @param	repairer
+	 * 			The repairer listening to the terrain of the given map, or null.
+	 * @param	unitId
+	 * 			The identifier of the unit this new planner guides.
+	 * @param	target
+	 * 			The cube this new planner leads to.
+	 * @param	window
+	 * 			The number of slots each plan looks ahead.
+	 * @post	| Arrays.equals(new.getTarget(), target)
+	 * @post	| new.getWindow() == window
+	 * @throws	IllegalArgumentException
+	 * 			The given window is not positive.
+	 * 			| window <= 0
+	 * @throws	OutOfBoundsException
+	 * 			The given target is not a passable cube of the given map.
+	 * 			| ! map.isPassable(target[0], target[1], target[2])
+	 */
+	public CooperativePlanner(PassableMap map, ReservationTable table, PathRepairer repairer, int unitId,
+			int[] target, int window) throws IllegalArgumentException, OutOfBoundsException {
+		if (window <= 0)
+			throw new IllegalArgumentException("Invalid window: " + window);
+		if (!map.isPassable(target[0], target[1], target[2]))
+			throw new OutOfBoundsException(new double[] {target[0], target[1], target[2]});
+		this.map = map;
+		this.table = table;
+		this.repairer = repairer;
+		this.unitId = unitId;
+		this.target = target.clone();
+		this.window = window;
+	}
+
+	/**
+	 * Constant reflecting the window of planners for which no window is given.
+	 */
+	public static final int DEFAULT_WINDOW = 16;
+
+	/**
+	 * Constant reflecting the number of windows a unit waits in its cube before giving up.
+	 */
+	private static final int MAX_ATTEMPTS = 4;
+
+	/**
+	 * Variable registering the passable cubes of the game world.
+	 */
+	private final PassableMap map;
+
+	/**
+	 * Variable registering the reservation table shared with the other units.
+	 */
+	private final ReservationTable table;
+
+	/**
+	 * Variable registering the repairer providing the planner of the whole path, if any.
+	 */
+	private final PathRepairer repairer;
+
+	/**
+	 * Variable registering the planner of the whole path to the target, once
+	 * this planner ran into a dead end.
+	 */
+	private PathPlanner guide;
+
+	/**
+	 * Variable registering the cube of the whole path the current window heads
+	 * for, or null if the window heads straight for the target.
+	 */
+	private int[] waypoint;
+
+	/**
+	 * Variable registering the number of steps of the whole path beyond the waypoint.
+	 */
+	private long waypointDistance;
+
+	/**
+	 * Variable registering the identifier of the unit guided by this planner.
+	 */
+	private final int unitId;
+
+	/**
+	 * Variable registering the target cube of this planner.
+	 */
+	private final int[] target;
+
+	/**
+	 * Variable registering the number of slots each plan looks ahead.
+	 */
+	private final int window;
+
+	/**
+	 * Variable registering the cubes of the current plan, one per slot.
+	 */
+	private List<int[]> plan;
+
+	/**
+	 * Variable registering the slot of the first cube of the current plan.
+	 */
+	private long planSlot;
+
+	/**
+	 * Variable registering the position in the current plan of the cube the unit occupies.
+	 */
+	private int planIndex;
+
+	/**
+	 * Variable registering the number of slots to wait before the step last returned.
+	 */
+	private int nbWaits;
+
+	/**
+	 * Variable registering the number of plans this planner made.
+	 */
+	private int nbPlans;
+
+	/**
+	 * Return the target cube of this planner.
+	 */
+	@Basic
+	public int[] getTarget() {
+		return this.target.clone();
+	}
+
+	/**
+	 * Return the number of slots each plan of this planner looks ahead.
+	 */
+	@Basic @Immutable
+	public int getWindow() {
+		return this.window;
+	}
+
+	/**
+	 * Return the number of plans this planner made.
+	 */
+	@Basic
+	public int getNbPlans() {
+		return this.nbPlans;
+	}
+
+	/**
+	 * Check whether this planner follows a planner of the whole path to its target.
+	 */
+	public boolean isGuided() {
+		return this.guide != null;
+	}
+
+	@Override
+	public int getNbWaits() {
+		return this.nbWaits;
+	}
+
+	/**
+	 * Return the adjacent step the unit in the given cube has to take next,
+	 * planning a new window if the unit is not following the current plan.
+	 *
+	 * @param	cube
+	 * 			The cube the unit occupies.
+	 * @return	All zero if the given cube is the target, null if no plan could be
+	 * 			made from the given cube, and the next step of the plan otherwise.
+	 * 			The slots to wait before that step are given by getNbWaits().
+	 */
+	@Override
+	public int[] getNextStep(int[] cube) {
+		this.nbWaits = 0;
+		if (Arrays.equals(cube, this.target)) {
+			this.release();
+			return new int[3];
+		}
+		for (int attempt = 0; ; attempt++) {
+			if ((this.plan == null) || (!Arrays.equals(this.plan.get(this.planIndex), cube))
+					|| (this.planIndex == this.plan.size() - 1)
+					|| (this.table.getCurrentSlot() > this.planSlot + this.planIndex + 1))
+				if (!this.replan(cube))
+					return null;
+			while ((this.planIndex < this.plan.size() - 1) && (Arrays.equals(this.plan.get(this.planIndex + 1), cube))) {
+				this.planIndex++;
+				this.nbWaits++;
+			}
+			if (this.planIndex < this.plan.size() - 1)
+				break;
+			// The whole window is spent waiting; plan the window after it.
+			if (attempt == MAX_ATTEMPTS) {
+				this.release();
+				return null;
+			}
+		}
+		// Wait for the slot of the step, waits of the plan included.
+		long ahead = this.planSlot + this.planIndex - this.table.getCurrentSlot();
+		this.nbWaits = (int) Math.max(this.nbWaits, Math.min(ahead, this.window));
+		int[] next = this.plan.get(++this.planIndex);
+		return new int[] {next[0] - cube[0], next[1] - cube[1], next[2] - cube[2]};
+	}
+
+	/**
+	 * Cancel all reservations of this planner, and stop repairing its whole path.
+	 */
+	public void release() {
+		this.table.release(this.unitId, Long.MIN_VALUE);
+		this.plan = null;
+		if (this.guide != null) {
+			this.repairer.release(this.guide);
+			this.guide = null;
+			this.waypoint = null;
+		}
+	}
+
+	/**
+	 * Plan the next window from the given cube and reserve its cubes.
+	 *
+	 * @return	True if and only if a plan was found.
+	 */
+	private boolean replan(int[] cube) {
+		long slot = this.table.getCurrentSlot();
+		this.table.release(this.unitId, Long.MIN_VALUE);
+		this.aim(cube);
+		this.plan = this.search(cube, slot);
+		if ((this.guide == null) && (this.repairer != null) && (this.plan != null)
+				&& (!Arrays.equals(this.plan.get(this.plan.size() - 1), this.target))
+				&& (this.heuristic(this.plan.get(this.plan.size() - 1)) >= this.heuristic(cube))) {
+			try {
+				this.guide = this.repairer.plan(cube, this.target);
+				this.aim(cube);
+				this.plan = this.search(cube, slot);
+			} catch (OutOfBoundsException e) {
+				// The cube of the unit lies outside the terrain: keep the straight line.
+			}
+		}
+		this.planSlot = slot;
+		this.planIndex = 0;
+		if (this.plan == null)
+			return false;
+		this.nbPlans++;
+		for (int i = 0; i < this.plan.size(); i++)
+			this.table.reserve(this.unitId, this.plan.get(i), slot + i);
+		// Keep the last cube of the plan until the next plan is made.
+		int[] last = this.plan.get(this.plan.size() - 1);
+		this.table.reserve(this.unitId, last, slot + this.plan.size());
+		return true;
+	}
+
+	/**
+	 * Search a path of at most one window from the given cube at the given slot,
+	 * ending at the target or at the state closest to it at the end of the window.
+	 *
+	 * @return	The cubes of the path, one per slot, or null if the given cube is
+	 * 			not passable.
+	 */
+	private List<int[]> search(int[] start, long slot) {
+		if (!this.map.isPassable(start[0], start[1], start[2]))
+			return null;
+		Map<Long, long[]> parents = new HashMap<Long, long[]>();
+		PriorityQueue<long[]> open = new PriorityQueue<long[]>(64,
+				(a, b) -> (a[0] != b[0]) ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+		long startKey = key(start, 0);
+		parents.put(startKey, null);
+		// Entries hold the estimated total cost, the estimated remaining cost and the state.
+		// Every step and every wait costs one slot, so the cost so far is the depth of a state
+		// and the first path found to a state is as cheap as any other.
+		open.add(new long[] {this.heuristic(start), this.heuristic(start), startKey});
+		while (!open.isEmpty()) {
+			long[] entry = open.poll();
+			long state = entry[2];
+			int[] cube = cubeOf(state);
+			int depth = depthOf(state);
+			if ((Arrays.equals(cube, this.target)) || (depth == this.window))
+				return this.path(parents, state);
+			for (int dx = -1; dx <= 1; dx++)
+				for (int dy = -1; dy <= 1; dy++)
+					for (int dz = -1; dz <= 1; dz++) {
+						int[] next = {cube[0] + dx, cube[1] + dy, cube[2] + dz};
+						if (!this.map.isPassable(next[0], next[1], next[2]))
+							continue;
+						if (!this.table.canMove(this.unitId, cube, next, slot + depth))
+							continue;
+						long nextKey = key(next, depth + 1);
+						if (parents.containsKey(nextKey))
+							continue;
+						parents.put(nextKey, new long[] {state});
+						long remaining = this.heuristic(next);
+						open.add(new long[] {depth + 1 + remaining, remaining, nextKey});
+					}
+		}
+		// Even waiting is impossible: stay put and try again at the next slot.
+		List<int[]> result = new ArrayList<int[]>();
+		result.add(start.clone());
+		return result;
+	}
+
+	/**
+	 * Return the cubes of the path ending in the given state.
+	 */
+	private List<int[]> path(Map<Long, long[]> parents, long state) {
+		List<int[]> result = new ArrayList<int[]>();
+		for (long[] parent = new long[] {state}; parent != null; parent = parents.get(parent[0]))
+			result.add(cubeOf(parent[0]));
+		Collections.reverse(result);
+		return result;
+	}
+
+	/**
+	 * Let the next window from the given cube head for the cube of the whole path
+	 * one window ahead, if this planner follows a whole path.
+	 */
+	private void aim(int[] cube) {
+		this.waypoint = null;
+		if (this.guide == null)
+			return;
+		List<int[]> path = this.guide.getPath(cube);
+		if (path.isEmpty())
+			return;
+		int index = Math.min(this.window, path.size() - 1);
+		this.waypoint = path.get(index);
+		this.waypointDistance = path.size() - 1 - index;
+	}
+
+	/**
+	 * Return the number of steps from the given cube to the target, ignoring
+	 * obstacles up to the waypoint of the current window, if any.
+	 */
+	private long heuristic(int[] cube) {
+		if (this.waypoint == null)
+			return distance(cube, this.target);
+		return distance(cube, this.waypoint) + this.waypointDistance;
+	}
+
+	/**
+	 * Return the number of steps between the given cubes, ignoring obstacles.
+	 */
+	private static long distance(int[] from, int[] to) {
+		return Math.max(Math.abs(from[0] - to[0]), Math.max(Math.abs(from[1] - to[1]), Math.abs(from[2] - to[2])));
+	}
+
+	private static long key(int[] cube, int depth) {
+		return ((long) (cube[0] & 0xFFFF) << 48) | ((long) (cube[1] & 0xFFFF) << 32) |
+				((long) (cube[2] & 0xFFFF) << 16) | depth;
+	}
+
+	private static int[] cubeOf(long key) {
+		return new int[] {(int) (key >>> 48) & 0xFFFF, (int) (key >>> 32) & 0xFFFF, (int) (key >>> 16) & 0xFFFF};
+	}
+
+	private static int depthOf(long key) {
+		return (int) (key & 0xFFFF);
+	}
+}
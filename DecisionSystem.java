@@ -0,0 +1,316 @@
+package hillbillies.model;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of decision systems, choosing the next activity of the idle units of
+ * a world that have default behaviour enabled.
+ *
+ * Once per decision interval of simulated time, the system collects all idle
+ * units with default behaviour from the activity index of its world and scores
+ * working, resting, moving and fighting for each of them from its state: its
+ * hitpoints and stamina, the time since it last rested and the number of units
+ * in neighbouring cubes. The scoring of large batches can run in parallel. The
+ * best option of each unit is then handed to its behaviour scheduler, so no
+ * unit has to poll for its next activity on a thread of its own.
+ *
+ * Only units with a behaviour scheduler are handled; the default behaviour of
+ * other units still runs on the thread that starts it.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class DecisionSystem {
+
+	/**
+	 * Initialize this new decision system for the given world.
+	 *
+	 * @param	world
+	 * 			The world whose units are handled.
+	 * @post	| new.getWorld() == world
+	 * @post	| new.getInterval() == DEFAULT_INTERVAL
+	 */
+	public DecisionSystem(World world) {
+		this.world = world;
+	}
+
+	/**
+	 * Constant reflecting the default decision interval, in seconds.
+	 */
+	public static final double DEFAULT_INTERVAL = 0.5;
+
+	/**
+	 * Constant reflecting the number of units from which a batch is scored in parallel.
+	 */
+	public static final int PARALLEL_THRESHOLD = 256;
+
+	/**
+	 * Constants reflecting the options a unit can choose from.
+	 */
+	public static final int WORK = 0, REST = 1, MOVE = 2, FIGHT = 3;
+
+	/**
+	 * Variable registering the world whose units are handled.
+	 */
+	private final World world;
+
+	/**
+	 * Variable registering the decision interval, in seconds.
+	 */
+	private double interval = DEFAULT_INTERVAL;
+
+	/**
+	 * Variable registering whether large batches are scored in parallel.
+	 */
+	private boolean parallel = true;
+
+	/**
+	 * Variable registering the simulated time since the last decision round.
+	 */
+	private double sinceDecision;
+
+	/**
+	 * Variable registering the number of decision rounds performed.
+	 */
+	private long round;
+
+	/**
+	 * Variable registering the seed of the variation between equally scored options.
+	 */
+	private long seed = 0x5DEECE66DL;
+
+	/**
+	 * Return the world whose units this system handles.
+	 */
+	@Basic @Immutable
+	public World getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Return the decision interval of this system, in seconds.
+	 */
+	@Basic
+	public double getInterval() {
+		return this.interval;
+	}
+
+	/**
+	 * Set the decision interval of this system to the given interval.
+	 *
+	 * @param	interval
+	 * 			The new decision interval, in seconds.
+	 * @post	| new.getInterval() == interval
+	 * @throws	IllegalArgumentException
+	 * 			The given interval is zero or not a valid duration.
+	 * 			| (interval == 0) || (! Unit.isValidDuration(interval))
+	 */
+	public void setInterval(double interval) throws IllegalArgumentException {
+		if ((interval == 0) || (!Unit.isValidDuration(interval)))
+			throw new IllegalArgumentException("Invalid interval: " + interval);
+		this.interval = interval;
+	}
+
+	/**
+	 * Check whether this system scores large batches in parallel.
+	 */
+	@Basic
+	public boolean isParallel() {
+		return this.parallel;
+	}
+
+	/**
+	 * Let this system score large batches in parallel or not.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Set the seed of the variation between equally scored options to the given seed.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Return the number of decision rounds this system performed.
+	 */
+	@Basic
+	public long getNbRounds() {
+		return this.round;
+	}
+
+	/**
+	 * Advance the time of this system with the given duration, performing a
+	 * decision round if a decision interval has passed.
+	 *
+	 * @param	duration
+	 * 			The simulated time that passed, in seconds.
+	 * @return	The number of units that received an activity.
+	 */
+	public int advanceTime(double duration) {
+		this.sinceDecision += duration;
+		if (this.sinceDecision < this.interval)
+			return 0;
+		this.sinceDecision = 0;
+		return this.decide();
+	}
+
+	/**
+	 * Choose and start the next activity of all idle units with default behaviour.
+	 *
+	 * @return	The number of units that received an activity.
+	 */
+	public int decide() {
+		this.round++;
+		int[] batch = this.collectIdle();
+		if (batch.length == 0)
+			return 0;
+		Map<Long, Integer> occupants = this.mapOccupants();
+		int[] choices = new int[batch.length];
+		int[] targets = new int[batch.length];
+		IntStream indices = IntStream.range(0, batch.length);
+		if ((this.parallel) && (batch.length >= PARALLEL_THRESHOLD))
+			indices = indices.parallel();
+		indices.forEach(i -> this.score(batch[i], occupants, choices, targets, i));
+		for (int i = 0; i < batch.length; i++)
+			this.dispatch(this.world.getUnit(batch[i]), choices[i], targets[i]);
+		return batch.length;
+	}
+
+	/**
+	 * Return the identifiers of the idle units with default behaviour and a behaviour scheduler.
+	 */
+	private int[] collectIdle() {
+		ActivityIndex index = this.world.getActivityIndex();
+		int[] result = new int[index.countDefaultBehavior()];
+		int size = 0;
+		for (int id = index.nextDefaultBehavior(0); (id >= 0) && (size < result.length);
+				id = index.nextDefaultBehavior(id + 1)) {
+			Unit unit = this.world.getUnit(id);
+			if ((unit.getActivity() == Activity.IDLE) && (unit.getBehaviorScheduler() != null))
+				result[size++] = id;
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Return a spatial hash from cube keys to the identifier of a unit in that cube.
+	 */
+	private Map<Long, Integer> mapOccupants() {
+		Map<Long, Integer> result = new HashMap<Long, Integer>(2 * this.world.getNbUnits());
+		for (int id = 0; id < this.world.getNbUnits(); id++) {
+			if (!this.world.isAlive(id))
+				continue;
+			int[] cube = this.world.getUnit(id).getCube();
+			result.put(key(cube[0], cube[1], cube[2]), id);
+		}
+		return result;
+	}
+
+	/**
+	 * Score the options of the unit with the given identifier, storing the best
+	 * option and its target at the given index of the given arrays.
+	 */
+	private void score(int id, Map<Long, Integer> occupants, int[] choices, int[] targets, int index) {
+		Unit unit = this.world.getUnit(id);
+		int max = unit.getMaxHitpoints();
+		double health = (max == 0) ? 1 : (double) unit.getHitpoints() / max;
+		double stamina = (max == 0) ? 1 : (double) unit.getStamina() / max;
+		double fatigue = Math.min(1, unit.getCounter() / Unit.REST_INTERVAL);
+		int[] cube = unit.getCube();
+		int neighbours = 0;
+		int target = -1;
+		for (int dx = -1; dx <= 1; dx++)
+			for (int dy = -1; dy <= 1; dy++)
+				for (int dz = -1; dz <= 1; dz++) {
+					Integer other = occupants.get(key(cube[0] + dx, cube[1] + dy, cube[2] + dz));
+					if ((other != null) && (other != id)) {
+						neighbours++;
+						target = other;
+					}
+				}
+		double[] scores = new double[4];
+		scores[WORK] = 0.25 + 0.5 * stamina;
+		scores[REST] = (1 - health) + (1 - stamina) + fatigue;
+		scores[MOVE] = 0.2 + 0.4 * stamina;
+		scores[FIGHT] = (neighbours == 0) ? -1 : 0.5 * health + 0.25 * Math.min(neighbours, 3);
+		int best = WORK;
+		for (int option = 0; option < scores.length; option++) {
+			scores[option] += 0.25 * this.noise(id, option);
+			if (scores[option] > scores[best])
+				best = option;
+		}
+		choices[index] = best;
+		targets[index] = target;
+	}
+
+	/**
+	 * Start the given option on the given unit.
+	 */
+	private void dispatch(Unit unit, int choice, int target) {
+		switch (choice) {
+			case REST:
+				unit.rest();
+				break;
+			case FIGHT:
+				final Unit defender = this.world.getUnit(target);
+				unit.getBehaviorScheduler().start(unit, () -> unit.attack(defender));
+				break;
+			case MOVE:
+				Navigator navigator = this.createNavigator(unit);
+				if (navigator != null) {
+					unit.moveTo(navigator);
+					break;
+				}
+				unit.work();
+				break;
+			default:
+				unit.work();
+		}
+	}
+
+	/**
+	 * Return a navigator leading the given unit to a random cube, or null if the
+	 * random cube cannot be reached.
+	 */
+	private Navigator createNavigator(Unit unit) {
+		int[] dimensions = this.world.getDimensions();
+		int id = unit.getId();
+		int[] target = {this.pick(id, 0, dimensions[0]), this.pick(id, 1, dimensions[1]),
+				this.pick(id, 2, dimensions[2])};
+		return this.world.createNavigator(unit, target);
+	}
+
+	/**
+	 * Return a number between 0 and 1, the same for the same seed, round, unit and option.
+	 */
+	private double noise(int id, int option) {
+		return (this.mix(id, option) >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Return a number between 0 and the given bound, the same for the same seed,
+	 * round, unit and coordinate.
+	 */
+	private int pick(int id, int coordinate, int bound) {
+		return (int) ((this.mix(id, 4 + coordinate) >>> 1) % bound);
+	}
+
+	private long mix(int id, int salt) {
+		long z = this.seed + this.round * 0x9E3779B97F4A7C15L + ((long) id << 8) + salt;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private static long key(int x, int y, int z) {
+		return ((long) (x & 0xFFFF) << 32) | ((long) (y & 0xFFFF) << 16) | (z & 0xFFFF);
+	}
+}
@@ -0,0 +1,167 @@
+package hillbillies.model;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import be.kuleuven.cs.som.annotate.Basic;
+
+/**
+ * A class of delta decoders, rebuilding the state of the units of a remote
+ * world from the frames produced by a change tracker.
+ *
+ * Frames have to be applied in the order they were produced. Until the first
+ * keyframe has been applied, the state of a decoder is incomplete.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class DeltaDecoder {
+
+	/**
+	 * Initialize this new decoder without any units.
+	 */
+	public DeltaDecoder() {
+	}
+
+	/**
+	 * Variables registering the decoded state of each unit, indexed by identifier.
+	 */
+	private int[] x = new int[0], y = new int[0], z = new int[0];
+	private int[] orientation = new int[0], hitpoints = new int[0], stamina = new int[0];
+	private byte[] activity = new byte[0];
+
+	/**
+	 * Variable registering the number of units of the remote world.
+	 */
+	private int nbUnits;
+
+	/**
+	 * Variable registering the tick of the last applied frame.
+	 */
+	private long tick = -1;
+
+	/**
+	 * Variable registering whether a keyframe has been applied.
+	 */
+	private boolean synced;
+
+	/**
+	 * Return the number of units of the remote world.
+	 */
+	@Basic
+	public synchronized int getNbUnits() {
+		return this.nbUnits;
+	}
+
+	/**
+	 * Return the tick of the last applied frame, or -1 if no frame was applied.
+	 */
+	@Basic
+	public synchronized long getTick() {
+		return this.tick;
+	}
+
+	/**
+	 * Check whether this decoder has applied a keyframe, and thus holds the full state.
+	 */
+	@Basic
+	public synchronized boolean isSynced() {
+		return this.synced;
+	}
+
+	/**
+	 * Apply the given frame to the state of this decoder.
+	 *
+	 * @param	frame
+	 * 			The frame to apply.
+	 * @throws	IllegalArgumentException
+	 * 			The given frame is malformed.
+	 */
+	public synchronized void apply(byte[] frame) throws IllegalArgumentException {
+		try {
+			ByteBuffer in = ByteBuffer.wrap(frame);
+			long frameTick = VarInts.readUnsigned(in);
+			int flags = in.get();
+			int units = (int) VarInts.readUnsigned(in);
+			int nbChanged = (int) VarInts.readUnsigned(in);
+			if ((flags & ChangeTracker.FLAG_KEYFRAME) != 0) {
+				this.resize(0);
+				this.synced = true;
+			}
+			this.resize(units);
+			int id = -1;
+			for (int i = 0; i < nbChanged; i++) {
+				id += (int) VarInts.readUnsigned(in) + 1;
+				int mask = in.get();
+				if ((mask & ChangeTracker.FIELD_POSITION) != 0) {
+					this.x[id] += (int) VarInts.readSigned(in);
+					this.y[id] += (int) VarInts.readSigned(in);
+					this.z[id] += (int) VarInts.readSigned(in);
+				}
+				if ((mask & ChangeTracker.FIELD_ORIENTATION) != 0)
+					this.orientation[id] += (int) VarInts.readSigned(in);
+				if ((mask & ChangeTracker.FIELD_HITPOINTS) != 0)
+					this.hitpoints[id] += (int) VarInts.readSigned(in);
+				if ((mask & ChangeTracker.FIELD_STAMINA) != 0)
+					this.stamina[id] += (int) VarInts.readSigned(in);
+				if ((mask & ChangeTracker.FIELD_ACTIVITY) != 0)
+					this.activity[id] = in.get();
+			}
+			this.tick = frameTick;
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Malformed frame", e);
+		}
+	}
+
+	/**
+	 * Copy the position of the unit with the given identifier into the given array.
+	 */
+	public synchronized void getPosition(int id, double[] result) {
+		result[0] = (double) this.x[id] / ChangeTracker.POSITION_SCALE;
+		result[1] = (double) this.y[id] / ChangeTracker.POSITION_SCALE;
+		result[2] = (double) this.z[id] / ChangeTracker.POSITION_SCALE;
+	}
+
+	/**
+	 * Return the orientation of the unit with the given identifier.
+	 */
+	public synchronized double getOrientation(int id) {
+		return (double) this.orientation[id] / ChangeTracker.ORIENTATION_SCALE;
+	}
+
+	/**
+	 * Return the hitpoints of the unit with the given identifier.
+	 */
+	public synchronized int getHitpoints(int id) {
+		return this.hitpoints[id];
+	}
+
+	/**
+	 * Return the stamina of the unit with the given identifier.
+	 */
+	public synchronized int getStamina(int id) {
+		return this.stamina[id];
+	}
+
+	/**
+	 * Return the activity of the unit with the given identifier.
+	 */
+	public synchronized Activity getActivity(int id) {
+		return Activity.fromCode(this.activity[id]);
+	}
+
+	/**
+	 * Resize the state of this decoder to the given number of units.
+	 */
+	private void resize(int units) {
+		if (units != this.x.length) {
+			this.x = Arrays.copyOf(this.x, units);
+			this.y = Arrays.copyOf(this.y, units);
+			this.z = Arrays.copyOf(this.z, units);
+			this.orientation = Arrays.copyOf(this.orientation, units);
+			this.hitpoints = Arrays.copyOf(this.hitpoints, units);
+			this.stamina = Arrays.copyOf(this.stamina, units);
+			this.activity = Arrays.copyOf(this.activity, units);
+		}
+		this.nbUnits = units;
+	}
+}
@@ -0,0 +1,214 @@
+package hillbillies.model;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of delta publishers, sending the frames of a change tracker to
+ * viewers connected over a loopback socket.
+ *
+ * Each frame is sent as a four-byte length followed by the frame itself. Every
+ * viewer has its own bounded queue and writer thread, so publishing never blocks
+ * the simulation thread; a viewer that falls too far behind is disconnected.
+ * A viewer that connects triggers a keyframe, and receives no frames before it.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class DeltaPublisher implements Closeable {
+
+	/**
+	 * Initialize this new publisher for the given tracker, listening on the
+	 * given port of the loopback interface.
+	 *
+	 * @param	tracker
+	 * 			The tracker producing the frames to publish.
+	 * @param	port
+	 * 			The port to listen on, or 0 for any free port.
+	 * @throws	IOException
+	 * 			The given port could not be opened.
+	 */
+	public DeltaPublisher(ChangeTracker tracker, int port) throws IOException {
+		this.tracker = tracker;
+		this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				acceptViewers();
+			}
+		}, "Delta publisher");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Constant reflecting the number of frames a viewer may lag behind before it is disconnected.
+	 */
+	public static final int MAX_PENDING_FRAMES = 256;
+
+	/**
+	 * Variable registering the tracker producing the frames to publish.
+	 */
+	private final ChangeTracker tracker;
+
+	/**
+	 * Variable registering the socket viewers connect to.
+	 */
+	private final ServerSocket server;
+
+	/**
+	 * Variable registering the connected viewers.
+	 */
+	private final List<Viewer> viewers = new CopyOnWriteArrayList<Viewer>();
+
+	/**
+	 * Return the tracker producing the frames to publish.
+	 */
+	@Basic @Immutable
+	public ChangeTracker getTracker() {
+		return this.tracker;
+	}
+
+	/**
+	 * Return the port this publisher listens on.
+	 */
+	public int getPort() {
+		return this.server.getLocalPort();
+	}
+
+	/**
+	 * Return the number of connected viewers.
+	 */
+	public int getNbViewers() {
+		return this.viewers.size();
+	}
+
+	/**
+	 * Encode the changes of the current tick and send them to all viewers.
+	 *
+	 * @return	The size of the published frame, in bytes.
+	 */
+	public int publishTick() {
+		byte[] frame = this.tracker.nextFrame();
+		this.publish(frame);
+		return frame.length;
+	}
+
+	/**
+	 * Send the given frame to all viewers.
+	 *
+	 * @param	frame
+	 * 			The frame to send.
+	 */
+	public void publish(byte[] frame) {
+		ByteBuffer header = ByteBuffer.wrap(frame);
+		VarInts.readUnsigned(header);
+		boolean keyframe = (header.get() & ChangeTracker.FLAG_KEYFRAME) != 0;
+		for (Viewer viewer : this.viewers) {
+			if (keyframe)
+				viewer.synced = true;
+			if ((viewer.synced) && (!viewer.queue.offer(frame)))
+				viewer.close();
+		}
+	}
+
+	/**
+	 * Stop listening and disconnect all viewers, stopping their writer threads.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.server.close();
+		for (Viewer viewer : this.viewers)
+			viewer.close();
+	}
+
+	/**
+	 * Accept viewers until this publisher is closed.
+	 */
+	private void acceptViewers() {
+		while (!this.server.isClosed())
+			try {
+				Viewer viewer = new Viewer(this.server.accept());
+				this.viewers.add(viewer);
+				// A viewer accepted while this publisher was closing is not disconnected by close.
+				if (this.server.isClosed()) {
+					viewer.close();
+					return;
+				}
+				this.tracker.requestKeyframe();
+				viewer.start();
+			} catch (IOException e) {
+				return;
+			}
+	}
+
+	/**
+	 * A class of viewers connected to a publisher.
+	 */
+	private class Viewer implements Runnable {
+
+		private Viewer(Socket socket) {
+			this.socket = socket;
+		}
+
+		private final Socket socket;
+
+		private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(MAX_PENDING_FRAMES);
+
+		private volatile boolean synced;
+
+		private volatile Thread writer;
+
+		private void start() {
+			this.writer = new Thread(this, "Delta viewer " + this.socket.getPort());
+			this.writer.setDaemon(true);
+			this.writer.start();
+		}
+
+		@Override
+		public void run() {
+			try {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+				while (!this.socket.isClosed()) {
+					byte[] frame = this.queue.take();
+					out.writeInt(frame.length);
+					out.write(frame);
+					if (this.queue.isEmpty())
+						out.flush();
+				}
+			} catch (IOException | InterruptedException e) {
+				// The viewer disconnected or the publisher was closed.
+			} finally {
+				this.close();
+			}
+		}
+
+		/**
+		 * Disconnect this viewer, and wake up its writer thread if it is waiting
+		 * for a frame, so it stops as well.
+		 */
+		private void close() {
+			viewers.remove(this);
+			try {
+				this.socket.close();
+			} catch (IOException e) {
+				// Nothing left to release.
+			}
+			Thread writer = this.writer;
+			if ((writer != null) && (writer != Thread.currentThread()))
+				writer.interrupt();
+		}
+	}
+}
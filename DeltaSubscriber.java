@@ -0,0 +1,109 @@
+package hillbillies.model;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of delta subscribers, receiving the frames of a delta publisher in a
+ * viewer process and applying them to a delta decoder.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class DeltaSubscriber implements Closeable {
+
+	/**
+	 * Initialize this new subscriber, connected to the publisher listening on
+	 * the given port of the loopback interface.
+	 *
+	 * @param	port
+	 * 			The port of the publisher.
+	 * @throws	IOException
+	 * 			No connection could be made to the given port.
+	 */
+	public DeltaSubscriber(int port) throws IOException {
+		this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				receiveFrames();
+			}
+		}, "Delta subscriber");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Variable registering the connection to the publisher.
+	 */
+	private final Socket socket;
+
+	/**
+	 * Variable registering the decoder the received frames are applied to.
+	 */
+	private final DeltaDecoder decoder = new DeltaDecoder();
+
+	/**
+	 * Variable registering the number of bytes received.
+	 */
+	private volatile long nbBytesReceived;
+
+	/**
+	 * Return the decoder holding the state received by this subscriber.
+	 */
+	@Basic @Immutable
+	public DeltaDecoder getDecoder() {
+		return this.decoder;
+	}
+
+	/**
+	 * Return the number of bytes this subscriber received.
+	 */
+	@Basic
+	public long getNbBytesReceived() {
+		return this.nbBytesReceived;
+	}
+
+	/**
+	 * Check whether this subscriber is still connected to its publisher.
+	 */
+	public boolean isConnected() {
+		return !this.socket.isClosed();
+	}
+
+	/**
+	 * Disconnect this subscriber from its publisher.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.socket.close();
+	}
+
+	/**
+	 * Receive and apply frames until the connection is closed.
+	 */
+	private void receiveFrames() {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+			while (true) {
+				int length = in.readInt();
+				byte[] frame = new byte[length];
+				in.readFully(frame);
+				this.nbBytesReceived += length + 4;
+				this.decoder.apply(frame);
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			try {
+				this.socket.close();
+			} catch (IOException e1) {
+				// Nothing left to release.
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the delta frames of change trackers, applied by delta decoders.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class DeltaTests {
+
+	/**
+	 * Constant reflecting the duration of a frame, in seconds.
+	 */
+	private static final double FRAME_TIME = 1.0 / 30;
+
+	private World world;
+
+	private BehaviorScheduler scheduler;
+
+	private ChangeTracker tracker;
+
+	private DeltaDecoder decoder;
+
+	private Unit[] units;
+
+	@Before
+	public void setUp() throws Exception {
+		this.world = new World();
+		this.scheduler = new BehaviorScheduler();
+		this.units = new Unit[20];
+		for (int i = 0; i < this.units.length; i++) {
+			this.units[i] = this.world.createUnit("Hillbilly", new int[] {i, 2 * i, 5}, 50, 50, 50, 50, false);
+			this.scheduler.attach(this.units[i]);
+		}
+		this.tracker = new ChangeTracker(this.world);
+		this.decoder = new DeltaDecoder();
+	}
+
+	@After
+	public void tearDown() {
+		for (Unit unit : this.units)
+			this.scheduler.interrupt(unit);
+	}
+
+	@Test
+	public void firstFrame_Keyframe() {
+		this.decoder.apply(this.tracker.nextFrame());
+		assertTrue(this.decoder.isSynced());
+		assertEquals(this.units.length, this.decoder.getNbUnits());
+		this.assertDecoded();
+	}
+
+	@Test
+	public void quietWorld_EmptyFrames() throws Exception {
+		this.decoder.apply(this.tracker.nextFrame());
+		this.world.advanceTime(FRAME_TIME);
+		byte[] frame = this.tracker.nextFrame();
+		assertEquals(0, nbChanged(frame));
+		this.decoder.apply(frame);
+		assertEquals(1, this.decoder.getTick());
+		this.assertDecoded();
+	}
+
+	@Test
+	public void movingUnits_RoundTrip() throws Exception {
+		this.decoder.apply(this.tracker.nextFrame());
+		this.units[3].moveTo(new int[] {10, 10, 5});
+		this.units[7].moveTo(new int[] {0, 0, 0});
+		long maxChanged = 0;
+		for (int i = 0; i < 60; i++) {
+			this.world.advanceTime(FRAME_TIME);
+			byte[] frame = this.tracker.nextFrame();
+			maxChanged = Math.max(maxChanged, nbChanged(frame));
+			this.decoder.apply(frame);
+			this.assertDecoded();
+		}
+		assertTrue(maxChanged > 0);
+		assertTrue(maxChanged <= 2);
+	}
+
+	@Test
+	public void newUnit_SentWithoutKeyframe() throws Exception {
+		this.decoder.apply(this.tracker.nextFrame());
+		Unit unit = this.world.createUnit("Newcomer", new int[] {1, 1, 1}, 60, 40, 40, 80, false);
+		byte[] frame = this.tracker.nextFrame();
+		assertEquals(1, nbChanged(frame));
+		this.decoder.apply(frame);
+		assertEquals(this.units.length + 1, this.decoder.getNbUnits());
+		assertEquals(unit.getHitpoints(), this.decoder.getHitpoints(unit.getId()));
+		this.assertDecoded();
+	}
+
+	@Test
+	public void lateViewer_SyncsOnRequestedKeyframe() throws Exception {
+		this.tracker.nextFrame();
+		this.units[0].moveTo(new int[] {5, 5, 5});
+		for (int i = 0; i < 10; i++) {
+			this.world.advanceTime(FRAME_TIME);
+			this.tracker.nextFrame();
+		}
+		this.tracker.requestKeyframe();
+		this.decoder.apply(this.tracker.nextFrame());
+		assertTrue(this.decoder.isSynced());
+		this.assertDecoded();
+	}
+
+	@Test
+	public void close_StopsWriterThreads() throws Exception {
+		Set<Thread> before = Thread.getAllStackTraces().keySet();
+		DeltaPublisher publisher = new DeltaPublisher(this.tracker, 0);
+		DeltaSubscriber subscriber = new DeltaSubscriber(publisher.getPort());
+		for (int i = 0; (i < 500) && (publisher.getNbViewers() == 0); i++)
+			Thread.sleep(2);
+		assertEquals(1, publisher.getNbViewers());
+		for (int i = 0; (i < 500) && (!subscriber.getDecoder().isSynced()); i++) {
+			publisher.publishTick();
+			Thread.sleep(2);
+		}
+		assertEquals(this.units.length, subscriber.getDecoder().getNbUnits());
+		List<Thread> writers = new ArrayList<Thread>();
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+			if ((!before.contains(thread)) && (thread.getName().startsWith("Delta viewer")))
+				writers.add(thread);
+		assertEquals(1, writers.size());
+		publisher.close();
+		writers.get(0).join(1000);
+		assertFalse(writers.get(0).isAlive());
+		assertEquals(0, publisher.getNbViewers());
+		for (int i = 0; (i < 500) && (subscriber.isConnected()); i++)
+			Thread.sleep(2);
+		assertFalse(subscriber.isConnected());
+	}
+
+	/**
+	 * Check that the decoder holds the quantized state of every unit of the world.
+	 */
+	private void assertDecoded() {
+		double[] position = new double[3];
+		for (Unit unit : this.units) {
+			int id = unit.getId();
+			this.decoder.getPosition(id, position);
+			for (int i = 0; i < 3; i++)
+				assertEquals(unit.getPosition()[i], position[i], 1.0 / ChangeTracker.POSITION_SCALE);
+			assertEquals(unit.getOrientation(), this.decoder.getOrientation(id), 1.0 / ChangeTracker.ORIENTATION_SCALE);
+			assertEquals(unit.getHitpoints(), this.decoder.getHitpoints(id));
+			assertEquals(unit.getStamina(), this.decoder.getStamina(id));
+			assertEquals(unit.getActivity(), this.decoder.getActivity(id));
+		}
+	}
+
+	/**
+	 * Return the number of changed units in the given frame.
+	 */
+	private static long nbChanged(byte[] frame) {
+		ByteBuffer in = ByteBuffer.wrap(frame);
+		VarInts.readUnsigned(in);
+		in.get();
+		VarInts.readUnsigned(in);
+		return VarInts.readUnsigned(in);
+	}
+}
@@ -1,17 +1,55 @@
 package hillbillies.part1.facade;
+import java.util.Arrays;
+
 import ogp.framework.util.ModelException;
+import hillbillies.model.BehaviorScheduler;
+import hillbillies.model.NotValidDurationException;
 import hillbillies.model.OutOfBoundsException;
+import hillbillies.model.Squad;
 import hillbillies.model.Unit;
+import hillbillies.model.World;
 
 
 public class Facade implements IFacade {
 	public Facade(){		
 	}
 	
+	public Facade(BehaviorScheduler scheduler){
+		this.scheduler = scheduler;
+	}
+	
+	private BehaviorScheduler scheduler;
+	
+	private final World world = new World();
+	
+	public World getWorld() {
+		return this.world;
+	}
+	
 	public Unit createUnit(String name, int[] initialPosition, int weight, int agility, int strength, int toughness,
 			boolean enableDefaultBehavior) throws ModelException {
 		try {
-			return new Unit(name, initialPosition, weight, agility, strength, toughness, enableDefaultBehavior);
+			Unit unit = this.world.createUnit(name, initialPosition, weight, agility, strength, toughness,
+					enableDefaultBehavior);
+			if (this.scheduler != null)
+				this.scheduler.attach(unit);
+			return unit;
+		} catch (IllegalArgumentException e) {
+			throw new ModelException();
+		} catch (OutOfBoundsException e) {
+			throw new ModelException();
+		}
+	}
+	
+	public Unit[] createUnits(String[] names, int[] x, int[] y, int[] z, int[] weight, int[] agility,
+			int[] strength, int[] toughness, boolean[] enableDefaultBehavior) throws ModelException {
+		try {
+			Unit[] units = this.world.createUnits(names, x, y, z, weight, agility, strength, toughness,
+					enableDefaultBehavior);
+			if (this.scheduler != null)
+				for (Unit unit : units)
+					this.scheduler.attach(unit);
+			return units;
 		} catch (IllegalArgumentException e) {
 			throw new ModelException();
 		} catch (OutOfBoundsException e) {
@@ -19,6 +57,50 @@ public class Facade implements IFacade {
 		}
 	}
 	
+	public int getNbUnits() {
+		return this.world.getNbUnits();
+	}
+	
+	public void getPositions(double[] positions) throws ModelException {
+		try {
+			this.world.getPositions(positions);
+		} catch (IllegalArgumentException e) {
+			throw new ModelException(e);
+		}
+	}
+	
+	public void getOrientations(double[] orientations) throws ModelException {
+		try {
+			this.world.getOrientations(orientations);
+		} catch (IllegalArgumentException e) {
+			throw new ModelException(e);
+		}
+	}
+	
+	public void getCurrentHitPoints(int[] hitpoints) throws ModelException {
+		try {
+			this.world.getHitpoints(hitpoints);
+		} catch (IllegalArgumentException e) {
+			throw new ModelException(e);
+		}
+	}
+	
+	public void getCurrentStaminaPoints(int[] stamina) throws ModelException {
+		try {
+			this.world.getStamina(stamina);
+		} catch (IllegalArgumentException e) {
+			throw new ModelException(e);
+		}
+	}
+	
+	public void getActivities(byte[] activities) throws ModelException {
+		try {
+			this.world.getActivities(activities);
+		} catch (IllegalArgumentException e) {
+			throw new ModelException(e);
+		}
+	}
+	
 	public double[] getPosition(Unit unit) throws ModelException {
 		return unit.getPosition();
 	}
@@ -85,10 +167,23 @@ public class Facade implements IFacade {
 	
 	public void advanceTime(Unit unit, double dt) throws ModelException {
 		try {
-			unit.advanceTime(dt);
+			unit.advanceFrame(dt);
+		} catch (NotValidDurationException e) {
+			throw new ModelException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ModelException(e);
+		}
+	}
+	
+	public void advanceTime(double dt) throws ModelException {
+		try {
+			this.world.advanceTime(dt);
+		} catch (NotValidDurationException e) {
+			throw new ModelException(e);
 		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			Thread.currentThread().interrupt();
+			throw new ModelException(e);
 		}
 	}
 	
@@ -124,6 +219,32 @@ public class Facade implements IFacade {
 		unit.moveTo(cube);
 	}
 	
+	public void moveTo(Unit[] units, int[] cube) throws ModelException {
+		try {
+			new Squad(this.world, Arrays.asList(units)).moveTo(cube);
+		} catch (IllegalArgumentException e) {
+			throw new ModelException(e);
+		} catch (OutOfBoundsException e) {
+			throw new ModelException();
+		}
+	}
+	
+	public void work(Unit[] units) throws ModelException {
+		try {
+			new Squad(this.world, Arrays.asList(units)).work();
+		} catch (IllegalArgumentException e) {
+			throw new ModelException(e);
+		}
+	}
+	
+	public void fight(Unit[] attackers, Unit defender) throws ModelException {
+		try {
+			new Squad(this.world, Arrays.asList(attackers)).attack(defender);
+		} catch (IllegalArgumentException e) {
+			throw new ModelException(e);
+		}
+	}
+	
 	public void work(Unit unit) throws ModelException {
 		unit.work();
 	}
@@ -0,0 +1,172 @@
+package hillbillies.model;
+
+/**
+ * A class collecting fixed-point arithmetic on positions, velocities, durations
+ * and distances of the game world.
+ *
+ * A fixed-point value is a long holding the real value multiplied by ONE, so a
+ * cube is divided in 65536 steps along each axis. All operations only use
+ * integer arithmetic, so they give bit-identical results on every machine and
+ * in every order of evaluation, unlike floating-point arithmetic.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public final class FixedPoint {
+
+	/**
+	 * This class only offers static members.
+	 */
+	private FixedPoint() {
+	}
+
+	/**
+	 * Constant reflecting the number of fractional bits of a fixed-point value.
+	 */
+	public static final int SHIFT = 16;
+
+	/**
+	 * Constant reflecting the fixed-point value of one.
+	 */
+	public static final long ONE = 1L << SHIFT;
+
+	/**
+	 * Return the fixed-point value closest to the given value.
+	 *
+	 * @param	value
+	 * 			The value to convert.
+	 */
+	public static long toFixed(double value) {
+		return Math.round(value * ONE);
+	}
+
+	/**
+	 * Return the fixed-point values closest to the given values.
+	 *
+	 * @param	values
+	 * 			The values to convert.
+	 */
+	public static long[] toFixed(double[] values) {
+		long[] result = new long[values.length];
+		for (int i = 0; i < values.length; i++)
+			result[i] = toFixed(values[i]);
+		return result;
+	}
+
+	/**
+	 * Return the value of the given fixed-point value.
+	 *
+	 * @param	value
+	 * 			The fixed-point value to convert.
+	 */
+	public static double toDouble(long value) {
+		return (double) value / ONE;
+	}
+
+	/**
+	 * Return the product of the given fixed-point values.
+	 */
+	public static long multiply(long a, long b) {
+		return (a * b) >> SHIFT;
+	}
+
+	/**
+	 * Return the cube coordinate of the given fixed-point coordinate.
+	 *
+	 * @return	| result == floor(toDouble(value))
+	 */
+	public static int toCube(long value) {
+		return (int) (value >> SHIFT);
+	}
+
+	/**
+	 * Advance the given fixed-point position with the given fixed-point velocity
+	 * during the given fixed-point duration.
+	 *
+	 * @param	position
+	 * 			The position to advance, changed in place.
+	 * @param	velocity
+	 * 			The velocity, in fixed-point cubes per second.
+	 * @param	duration
+	 * 			The duration, in fixed-point seconds.
+	 */
+	public static void integrate(long[] position, long[] velocity, long duration) {
+		for (int i = 0; i < position.length; i++)
+			position[i] += multiply(velocity[i], duration);
+	}
+
+	/**
+	 * Check whether the given fixed-point value lies between the given borders.
+	 *
+	 * @param	x
+	 * 			The value to check.
+	 * @param	a
+	 * 			One of the borders of the interval, exclusive.
+	 * @param	b
+	 * 			The other border of the interval, inclusive.
+	 */
+	public static boolean intervalContains(long x, long a, long b) {
+		if (a < b)
+			return (x > a) && (x <= b);
+		if (b < a)
+			return (x >= b) && (x < a);
+		return x == b;
+	}
+
+	/**
+	 * Check whether a step from the given old position to the given new position
+	 * reached or passed the given target along every axis.
+	 *
+	 * @param	oldPos
+	 * 			The fixed-point position before the step.
+	 * @param	newPos
+	 * 			The fixed-point position after the step.
+	 * @param	target
+	 * 			The fixed-point target position.
+	 */
+	public static boolean destinationReached(long[] oldPos, long[] newPos, long[] target) {
+		for (int i = 0; i < target.length; i++)
+			if ((target[i] != newPos[i]) && (!intervalContains(target[i], oldPos[i], newPos[i])))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Return the distance between the given fixed-point positions, as a fixed-point value.
+	 */
+	public static long distance(long[] start, long[] end) {
+		long sum = 0;
+		for (int i = 0; i < start.length; i++) {
+			long delta = end[i] - start[i];
+			sum += delta * delta;
+		}
+		return sqrt(sum);
+	}
+
+	/**
+	 * Return the largest long whose square does not exceed the given value.
+	 *
+	 * @param	value
+	 * 			The non-negative value.
+	 */
+	public static long sqrt(long value) {
+		if (value <= 0)
+			return 0;
+		long result = (long) Math.sqrt((double) value);
+		// Correct the floating-point estimate so the result does not depend on its rounding.
+		while (result * result > value)
+			result--;
+		while ((result + 1) * (result + 1) <= value)
+			result++;
+		return result;
+	}
+
+	/**
+	 * Return a hash of the given fixed-point values, identical on every machine.
+	 */
+	public static long hash(long hash, long[] values) {
+		for (long value : values)
+			hash = (hash ^ value) * 0x100000001B3L;
+		return hash;
+	}
+}
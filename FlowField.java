@@ -0,0 +1,241 @@
+package hillbillies.model;
+import java.util.Arrays;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+import hillbillies.common.internal.map.IByteMap3D;
+
+/**
+ * A class of flow fields, leading every cube of the game world to a single
+ * target cube.
+ *
+ * A flow field is generated with one breadth-first search outwards from its
+ * target over the passable cubes of a map. For every cube that can reach the
+ * target, it stores in one byte the adjacent step a unit in that cube has to
+ * take next. Any number of units heading to the same target can share one flow
+ * field, each finding its next step in constant time.
+ *
+ * A flow field may be restricted to a box of the map. It then only reads and
+ * stores the cubes within that box, and leads only the cubes that can reach the
+ * target without leaving the box.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ * @invar	The target of each flow field lies within its box.
+ * 			| for each i in 0..2:
+ * 			|	getLower()[i] <= getTarget()[i] < getUpper()[i]
+ */
+public class FlowField implements Navigator {
+
+	/**
+	 * Initialize this new flow field towards the given target cube of the given map.
+	 *
+	 * @param	map
+	 * 			The map of the game world this new flow field covers.
+	 * @param	target
+	 * 			The cube this new flow field leads to.
+	 * @post	The map of this new flow field is the given map.
+	 * 			| new.getMap() == map
+	 * @post	The target of this new flow field is equal to the given target.
+	 * 			| Arrays.equals(new.getTarget(), target)
+	 * @throws	OutOfBoundsException
+	 * 			The given target does not lie within the given map.
+	 * 			| ! map.isValidIndex(target[0], target[1], target[2])
+	 */
+	public FlowField(IByteMap3D map, int[] target) throws OutOfBoundsException {
+		this(map, target, new int[] {0, 0, 0}, new int[] {map.getNbX(), map.getNbY(), map.getNbZ()});
+	}
+
+	/**
+	 * Initialize this new flow field towards the given target cube of the given
+	 * map, restricted to the box between the given corners.
+	 *
+	 * @param	map
+	 * 			The map of the game world this new flow field covers.
+	 * @param	target
+	 * 			The cube this new flow field leads to.
+	 * @param	lower
+	 * 			The smallest coordinates of the cubes of the box, inclusive.
+	 * @param	upper
+	 * 			The largest coordinates of the cubes of the box, exclusive.
+	 * @post	| new.getMap() == map
+	 * @post	| Arrays.equals(new.getTarget(), target)
+	 * @post	The box of this new flow field is the given box, clipped to the given map.
+	 * @throws	OutOfBoundsException
+	 * 			The given target does not lie within the given map and the given box.
+	 */
+	public FlowField(IByteMap3D map, int[] target, int[] lower, int[] upper) throws OutOfBoundsException {
+		if (!map.isValidIndex(target[0], target[1], target[2]))
+			throw new OutOfBoundsException(new double[] {target[0], target[1], target[2]});
+		int[] dimensions = {map.getNbX(), map.getNbY(), map.getNbZ()};
+		this.lower = new int[3];
+		this.upper = new int[3];
+		for (int i = 0; i < 3; i++) {
+			this.lower[i] = Math.max(0, lower[i]);
+			this.upper[i] = Math.min(dimensions[i], upper[i]);
+			if ((target[i] < this.lower[i]) || (target[i] >= this.upper[i]))
+				throw new OutOfBoundsException(new double[] {target[0], target[1], target[2]});
+		}
+		this.map = map;
+		this.target = target.clone();
+		this.nbX = this.upper[0] - this.lower[0];
+		this.nbY = this.upper[1] - this.lower[1];
+		this.nbZ = this.upper[2] - this.lower[2];
+		this.directions = new byte[this.nbX * this.nbY * this.nbZ];
+		this.generate();
+	}
+
+	/**
+	 * Constant reflecting the direction stored for cubes that cannot reach the target.
+	 */
+	public static final byte UNREACHABLE = -1;
+
+	/**
+	 * Constant reflecting the direction stored for the target cube itself.
+	 */
+	public static final byte AT_TARGET = 13;
+
+	/**
+	 * Variable registering the map this flow field covers.
+	 */
+	private final IByteMap3D map;
+
+	/**
+	 * Variable registering the target cube of this flow field.
+	 */
+	private final int[] target;
+
+	/**
+	 * Variables registering the corners of the box of this flow field.
+	 */
+	private final int[] lower, upper;
+
+	/**
+	 * Variables registering the dimensions of the box of this flow field.
+	 */
+	private final int nbX, nbY, nbZ;
+
+	/**
+	 * Variable registering the encoded next step for each cube of the map.
+	 */
+	private final byte[] directions;
+
+	/**
+	 * Return the map this flow field covers.
+	 */
+	@Basic @Immutable
+	public IByteMap3D getMap() {
+		return this.map;
+	}
+
+	/**
+	 * Return the target cube of this flow field.
+	 */
+	@Basic @Immutable
+	public int[] getTarget() {
+		return this.target.clone();
+	}
+
+	/**
+	 * Return the smallest coordinates of the cubes of the box of this flow field.
+	 */
+	@Basic @Immutable
+	public int[] getLower() {
+		return this.lower.clone();
+	}
+
+	/**
+	 * Return the coordinates just beyond the largest coordinates of the cubes of
+	 * the box of this flow field.
+	 */
+	@Basic @Immutable
+	public int[] getUpper() {
+		return this.upper.clone();
+	}
+
+	/**
+	 * Check whether the target can be reached from the given cube.
+	 *
+	 * @param	cube
+	 * 			The cube to check.
+	 */
+	public boolean isReachable(int[] cube) {
+		return this.getDirection(cube) != UNREACHABLE;
+	}
+
+	/**
+	 * Return the adjacent step a unit in the given cube has to take to get closer to the target.
+	 *
+	 * @param	cube
+	 * 			The cube the unit occupies.
+	 * @return	The step as an array of offsets in {-1, 0, 1}, all zero if the given
+	 * 			cube is the target, or null if the target cannot be reached from the given cube.
+	 */
+	@Override
+	public int[] getNextStep(int[] cube) {
+		byte direction = this.getDirection(cube);
+		if (direction == UNREACHABLE)
+			return null;
+		return new int[] {direction / 9 - 1, (direction / 3) % 3 - 1, direction % 3 - 1};
+	}
+
+	/**
+	 * Return the encoded next step stored for the given cube.
+	 *
+	 * @param	cube
+	 * 			The cube to inspect.
+	 * @return	UNREACHABLE if the given cube lies outside the box of this flow field.
+	 */
+	public byte getDirection(int[] cube) {
+		if (!this.isInBox(cube[0], cube[1], cube[2]))
+			return UNREACHABLE;
+		return this.directions[this.indexOf(cube[0], cube[1], cube[2])];
+	}
+
+	/**
+	 * Check whether the cube at the given coordinates lies within the box of this flow field.
+	 */
+	private boolean isInBox(int x, int y, int z) {
+		return (this.lower[0] <= x) && (x < this.upper[0]) && (this.lower[1] <= y) && (y < this.upper[1])
+				&& (this.lower[2] <= z) && (z < this.upper[2]);
+	}
+
+	/**
+	 * Fill in the next step of every cube with a breadth-first search from the target.
+	 */
+	private void generate() {
+		Arrays.fill(this.directions, UNREACHABLE);
+		int[] queue = new int[this.directions.length];
+		int head = 0, tail = 0;
+		int start = this.indexOf(this.target[0], this.target[1], this.target[2]);
+		this.directions[start] = AT_TARGET;
+		queue[tail++] = start;
+		while (head < tail) {
+			int index = queue[head++];
+			int x = this.lower[0] + index / (this.nbY * this.nbZ);
+			int y = this.lower[1] + (index / this.nbZ) % this.nbY;
+			int z = this.lower[2] + index % this.nbZ;
+			for (int dx = -1; dx <= 1; dx++)
+				for (int dy = -1; dy <= 1; dy++)
+					for (int dz = -1; dz <= 1; dz++) {
+						int nx = x + dx, ny = y + dy, nz = z + dz;
+						if (((dx == 0) && (dy == 0) && (dz == 0)) || (!this.isInBox(nx, ny, nz)))
+							continue;
+						int neighbour = this.indexOf(nx, ny, nz);
+						if ((this.directions[neighbour] != UNREACHABLE) ||
+								(!Terrain.isPassable(this.map.getValue(nx, ny, nz))))
+							continue;
+						// A unit in the neighbour steps back towards the cube it was reached from.
+						this.directions[neighbour] = (byte) ((1 - dx) * 9 + (1 - dy) * 3 + (1 - dz));
+						queue[tail++] = neighbour;
+					}
+		}
+	}
+
+	/**
+	 * Return the index of the given cube in the direction array.
+	 */
+	private int indexOf(int x, int y, int z) {
+		return ((x - this.lower[0]) * this.nbY + (y - this.lower[1])) * this.nbZ + (z - this.lower[2]);
+	}
+}
@@ -0,0 +1,101 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the copy-on-write forks of worlds.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class ForkTests {
+
+	private World world;
+
+	private Unit attacker;
+
+	private Unit defender;
+
+	@Before
+	public void setUp() throws Exception {
+		this.world = new World();
+		this.attacker = this.world.createUnit("Fork Attacker", new int[] {5, 5, 5}, 50, 25, 100, 50, false);
+		this.defender = this.world.createUnit("Fork Defender", new int[] {6, 5, 5}, 50, 25, 50, 50, false);
+	}
+
+	@Test
+	public void attack_LeavesWorldUnchanged() {
+		double[] position = this.defender.getPosition();
+		int hitpoints = this.defender.getHitpoints();
+		Random random = new Random(3);
+		for (int i = 0; i < 100; i++) {
+			WorldFork fork = new WorldFork(this.world);
+			for (int j = 0; j < 5; j++)
+				fork.attack(this.attacker.getId(), this.defender.getId(), random);
+			fork.close();
+		}
+		for (AttackOutcome outcome : AttackOutcome.values())
+			assertEquals(0, this.world.getNbAttacks(outcome));
+		assertArrayEquals(position, this.defender.getPosition(), 0);
+		assertEquals(hitpoints, this.defender.getHitpoints());
+	}
+
+	@Test
+	public void attack_ChangesCopyOfDefender() {
+		WorldFork fork = new WorldFork(this.world);
+		Random random = new Random(5);
+		for (int i = 0; i < 20; i++)
+			fork.attack(this.attacker.getId(), this.defender.getId(), random);
+		Unit copy = fork.getUnit(this.defender.getId());
+		assertNotSame(this.defender, copy);
+		assertSame(this.attacker, fork.getUnit(this.attacker.getId()));
+		assertEquals(1, fork.getNbCopies());
+		assertTrue(copy.getHitpoints() < this.defender.getHitpoints());
+		fork.close();
+	}
+
+	@Test
+	public void fork_ChildSeesParentCopies() {
+		WorldFork parent = new WorldFork(this.world);
+		parent.attack(this.attacker.getId(), this.defender.getId(), new Random(1));
+		WorldFork child = parent.fork();
+		assertTrue(parent.isFrozen());
+		assertSame(parent.getUnit(this.defender.getId()), child.getUnit(this.defender.getId()));
+		assertEquals(0, child.getNbCopies());
+		child.close();
+		parent.close();
+	}
+
+	@Test
+	public void close_ReleasesNamesOfCopies() {
+		int handle = this.defender.getNameHandle();
+		int references = Unit.NAMES.getNbReferences(handle);
+		for (int i = 0; i < 100; i++) {
+			WorldFork fork = new WorldFork(this.world);
+			fork.attack(this.attacker.getId(), this.defender.getId(), new Random(i));
+			assertEquals(references + 1, Unit.NAMES.getNbReferences(handle));
+			fork.close();
+			assertTrue(fork.isClosed());
+		}
+		assertEquals(references, Unit.NAMES.getNbReferences(handle));
+		assertEquals("Fork Defender", this.defender.getName());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void attack_ClosedFork() {
+		WorldFork fork = new WorldFork(this.world);
+		fork.close();
+		fork.attack(this.attacker.getId(), this.defender.getId(), new Random(1));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void attack_FrozenFork() {
+		WorldFork fork = new WorldFork(this.world);
+		fork.fork();
+		fork.attack(this.attacker.getId(), this.defender.getId(), new Random(1));
+	}
+}
@@ -0,0 +1,31 @@
+package hillbillies.model;
+
+/**
+ * A class of navigators leading straight to a target cube, for worlds without terrain.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+class Heading implements Navigator {
+
+	/**
+	 * Initialize this new heading towards the given cube.
+	 *
+	 * @param	target
+	 * 			The cube to lead to.
+	 */
+	Heading(int[] target) {
+		this.target = target.clone();
+	}
+
+	/**
+	 * Variable registering the cube this heading leads to.
+	 */
+	private final int[] target;
+
+	@Override
+	public int[] getNextStep(int[] cube) {
+		return new int[] {Integer.signum(this.target[0] - cube[0]), Integer.signum(this.target[1] - cube[1]),
+				Integer.signum(this.target[2] - cube[2])};
+	}
+}
@@ -0,0 +1,168 @@
+package hillbillies.model;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of jobs, work to be done by a unit at a cube of a world.
+ *
+ * A job is open until its job queue assigns it to a worker, and done once that
+ * worker has reached its cube and finished working there. A job whose worker
+ * is interrupted before it is done becomes open again.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ * @invar	A job that is done has no worker.
+ * 			| if (isDone()) then (getWorker() == -1)
+ */
+public class Job {
+
+	/**
+	 * Initialize this new open job at the given cube with the given priority.
+	 *
+	 * @param	cube
+	 * 			The cube to work at.
+	 * @param	priority
+	 * 			The priority of the new job; higher priorities are assigned first.
+	 * @param	sequence
+	 * 			The sequence number of the new job in its queue, ordering jobs of equal priority.
+	 */
+	Job(int[] cube, int priority, long sequence) {
+		this.cube = cube.clone();
+		this.priority = priority;
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Variable registering the cube to work at.
+	 */
+	private final int[] cube;
+
+	/**
+	 * Variable registering the priority of this job.
+	 */
+	private final int priority;
+
+	/**
+	 * Variable registering the sequence number of this job in its queue.
+	 */
+	private final long sequence;
+
+	/**
+	 * Variable registering the identifier of the unit working on this job, or -1.
+	 */
+	private volatile int worker = -1;
+
+	/**
+	 * Variable registering whether this job is done.
+	 */
+	private volatile boolean done;
+
+	/**
+	 * Variable registering the number of dispatches in a row that found no worker for this job.
+	 */
+	private int nbDeferrals;
+
+	/**
+	 * Variable registering the dispatch of its queue from which on this job is looked at again.
+	 */
+	private long retryDispatch;
+
+	/**
+	 * Return the cube to work at for this job.
+	 */
+	@Basic @Immutable
+	public int[] getCube() {
+		return this.cube.clone();
+	}
+
+	/**
+	 * Return the priority of this job.
+	 */
+	@Basic @Immutable
+	public int getPriority() {
+		return this.priority;
+	}
+
+	/**
+	 * Return the sequence number of this job in its queue.
+	 */
+	@Basic @Immutable
+	long getSequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * Return the identifier of the unit working on this job, or -1 if no unit works on it.
+	 */
+	@Basic
+	public int getWorker() {
+		return this.worker;
+	}
+
+	/**
+	 * Check whether this job is done.
+	 */
+	@Basic
+	public boolean isDone() {
+		return this.done;
+	}
+
+	/**
+	 * Check whether this job waits for a worker.
+	 *
+	 * @return	| result == (! isDone()) && (getWorker() == -1)
+	 */
+	public boolean isOpen() {
+		return (!this.done) && (this.worker == -1);
+	}
+
+	/**
+	 * Return the number of dispatches in a row that found no worker for this job.
+	 */
+	@Basic
+	int getNbDeferrals() {
+		return this.nbDeferrals;
+	}
+
+	/**
+	 * Return the dispatch of its queue from which on this job is looked at again.
+	 */
+	@Basic
+	long getRetryDispatch() {
+		return this.retryDispatch;
+	}
+
+	/**
+	 * Register that no worker was found for this job, and that its queue looks
+	 * at it again from the given dispatch on.
+	 *
+	 * @post	| new.getNbDeferrals() == this.getNbDeferrals() + 1
+	 * @post	| new.getRetryDispatch() == retryDispatch
+	 */
+	void defer(long retryDispatch) {
+		this.nbDeferrals++;
+		this.retryDispatch = retryDispatch;
+	}
+
+	/**
+	 * Let the unit with the given identifier work on this job, or no unit if it is -1.
+	 *
+	 * @post	| if (worker != -1) then new.getNbDeferrals() == 0
+	 */
+	void setWorker(int worker) {
+		this.worker = worker;
+		if (worker != -1)
+			this.nbDeferrals = 0;
+	}
+
+	/**
+	 * Register that this job is done.
+	 *
+	 * @post	| new.isDone() && (new.getWorker() == -1)
+	 */
+	void finish() {
+		this.done = true;
+		this.worker = -1;
+	}
+}
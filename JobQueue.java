@@ -0,0 +1,367 @@
+package hillbillies.model;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of job queues, assigning the jobs of a world to its idle units.
+ *
+ * Open jobs wait in a priority queue, highest priority first and oldest first
+ * among equal priorities. Once per frame of its world, the queue takes the
+ * available workers from the activity index: idle, living units with a
+ * behaviour scheduler, without default behaviour and without a job. Then it
+ * hands the open jobs in order of priority to the nearest available worker,
+ * found by a branch-and-bound search of the unit tree of the world. Every
+ * search only visits the part of the tree within the search radius of the job,
+ * and dispatching stops as soon as no workers are left, a batch of jobs is
+ * assigned or a bounded number of searches failed, so a frame never pairs up
+ * all jobs with all workers.
+ *
+ * A job for which no worker is found is put aside for a number of dispatches
+ * that doubles each time, up to MAX_BACKOFF, so jobs that cannot be done now
+ * do not keep the jobs behind them from their workers.
+ *
+ * An assigned worker walks to the cube of its job on its behaviour thread and
+ * works there. A worker that is interrupted or dies on the way gives its job
+ * back to the queue. The queue keeps the generation of each worker, so a unit
+ * that recycled the object of a dead worker is not taken for that worker.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class JobQueue {
+
+	/**
+	 * Initialize this new job queue for the given world.
+	 *
+	 * @param	world
+	 * 			The world whose units take the jobs.
+	 * @post	| new.getWorld() == world
+	 * @post	| new.getBatchSize() == DEFAULT_BATCH_SIZE
+	 * @post	| new.getSearchRadius() == DEFAULT_SEARCH_RADIUS
+	 */
+	public JobQueue(World world) {
+		this.world = world;
+	}
+
+	/**
+	 * Constant reflecting the default maximal number of jobs assigned per frame.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	/**
+	 * Constant reflecting the default distance, in cubes, within which workers are searched for a job.
+	 */
+	public static final double DEFAULT_SEARCH_RADIUS = 32;
+
+	/**
+	 * Constant reflecting the number of worker searches per job of a batch a dispatch performs at most.
+	 */
+	public static final int SEARCHES_PER_JOB = 4;
+
+	/**
+	 * Constant reflecting the maximal number of dispatches a job without a worker is put aside for.
+	 */
+	public static final int MAX_BACKOFF = 32;
+
+	/**
+	 * Variable registering the world whose units take the jobs.
+	 */
+	private final World world;
+
+	/**
+	 * Variable registering the open jobs, highest priority first.
+	 */
+	private final PriorityQueue<Job> open = new PriorityQueue<Job>(
+			Comparator.comparingInt((Job job) -> -job.getPriority()).thenComparingLong(Job::getSequence));
+
+	/**
+	 * Variable registering the open jobs put aside because no worker was found
+	 * for them, first due first.
+	 */
+	private final PriorityQueue<Job> deferred = new PriorityQueue<Job>(
+			Comparator.comparingLong(Job::getRetryDispatch).thenComparingLong(Job::getSequence));
+
+	/**
+	 * Variable registering the number of dispatches of this queue.
+	 */
+	private long nbDispatches;
+
+	/**
+	 * Variable registering the identifiers of the units working on a job.
+	 */
+	private final BitSet busy = new BitSet();
+
+	/**
+	 * Variable registering the generation of each unit working on a job when it took that job.
+	 */
+	private int[] busyGenerations = new int[16];
+
+	/**
+	 * Variable registering the maximal number of jobs assigned per frame.
+	 */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * Variable registering the distance within which workers are searched for a job.
+	 */
+	private double searchRadius = DEFAULT_SEARCH_RADIUS;
+
+	/**
+	 * Variable registering the sequence number of the next job.
+	 */
+	private long nextSequence;
+
+	/**
+	 * Variables registering the number of jobs assigned and the number of jobs done.
+	 */
+	private long nbAssigned, nbDone;
+
+	/**
+	 * Return the world whose units take the jobs of this queue.
+	 */
+	@Basic @Immutable
+	public World getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Return the maximal number of jobs this queue assigns per frame.
+	 */
+	@Basic
+	public synchronized int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * Set the maximal number of jobs this queue assigns per frame to the given number.
+	 *
+	 * @param	batchSize
+	 * 			The new batch size.
+	 * @post	| new.getBatchSize() == batchSize
+	 * @throws	IllegalArgumentException
+	 * 			The given batch size is not positive.
+	 * 			| batchSize <= 0
+	 */
+	public synchronized void setBatchSize(int batchSize) throws IllegalArgumentException {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Return the distance within which this queue searches workers for a job.
+	 */
+	@Basic
+	public synchronized double getSearchRadius() {
+		return this.searchRadius;
+	}
+
+	/**
+	 * Set the distance within which this queue searches workers for a job to the given distance.
+	 *
+	 * @param	searchRadius
+	 * 			The new search radius.
+	 * @post	| new.getSearchRadius() == searchRadius
+	 * @throws	IllegalArgumentException
+	 * 			The given search radius is not positive.
+	 * 			| ! (searchRadius > 0)
+	 */
+	public synchronized void setSearchRadius(double searchRadius) throws IllegalArgumentException {
+		if (!(searchRadius > 0))
+			throw new IllegalArgumentException("Invalid search radius: " + searchRadius);
+		this.searchRadius = searchRadius;
+	}
+
+	/**
+	 * Return the number of open jobs of this queue.
+	 */
+	public synchronized int getNbOpen() {
+		return this.open.size() + this.deferred.size();
+	}
+
+	/**
+	 * Return the number of units working on a job of this queue.
+	 */
+	public synchronized int getNbBusy() {
+		return this.busy.cardinality();
+	}
+
+	/**
+	 * Return the number of times this queue assigned a job to a unit.
+	 */
+	@Basic
+	public synchronized long getNbAssigned() {
+		return this.nbAssigned;
+	}
+
+	/**
+	 * Return the number of jobs of this queue that are done.
+	 */
+	@Basic
+	public synchronized long getNbDone() {
+		return this.nbDone;
+	}
+
+	/**
+	 * Add an open job at the given cube with the given priority to this queue.
+	 *
+	 * @param	cube
+	 * 			The cube to work at.
+	 * @param	priority
+	 * 			The priority of the job; higher priorities are assigned first.
+	 * @return	| result.isOpen() && Arrays.equals(result.getCube(), cube)
+	 * @throws	OutOfBoundsException
+	 * 			The given cube does not lie within the bounds of the world of this queue.
+	 */
+	public synchronized Job addJob(int[] cube, int priority) throws OutOfBoundsException {
+		double[] center = {cube[0] + 0.5, cube[1] + 0.5, cube[2] + 0.5};
+		if (!this.world.isValidPosition(center))
+			throw new OutOfBoundsException(center);
+		Job job = new Job(cube, priority, this.nextSequence++);
+		this.open.add(job);
+		return job;
+	}
+
+	/**
+	 * Remove the given job from this queue if it is still open.
+	 *
+	 * @param	job
+	 * 			The job to remove.
+	 * @return	True if and only if the given job was open in this queue.
+	 */
+	public synchronized boolean cancel(Job job) {
+		return (this.open.remove(job)) || (this.deferred.remove(job));
+	}
+
+	/**
+	 * Assign open jobs of this queue to the nearest available workers within the
+	 * search radius, and start the assigned workers. At most a batch of jobs is
+	 * assigned, and at most SEARCHES_PER_JOB searches per job of a batch are
+	 * performed. Jobs for which no worker is found are put aside.
+	 *
+	 * @return	The number of jobs assigned.
+	 */
+	public int dispatch() {
+		List<Job> jobs = new ArrayList<Job>();
+		List<Unit> workers = new ArrayList<Unit>();
+		List<Navigator> navigators = new ArrayList<Navigator>();
+		List<Integer> generations = new ArrayList<Integer>();
+		synchronized (this) {
+			this.nbDispatches++;
+			while ((!this.deferred.isEmpty()) && (this.deferred.peek().getRetryDispatch() <= this.nbDispatches))
+				this.open.add(this.deferred.poll());
+			if (this.open.isEmpty())
+				return 0;
+			BitSet available = this.collectAvailable();
+			int nbAvailable = available.cardinality();
+			int nbSearches = 0;
+			UnitTree tree = this.world.getUnitTree();
+			double[] center = new double[3];
+			while ((nbAvailable > 0) && (jobs.size() < this.batchSize)
+					&& (nbSearches < SEARCHES_PER_JOB * this.batchSize) && (!this.open.isEmpty())) {
+				Job job = this.open.poll();
+				nbSearches++;
+				int[] cube = job.getCube();
+				for (int i = 0; i < 3; i++)
+					center[i] = cube[i] + 0.5;
+				int id = tree.nearest(center, other -> this.world.getUnit(other).getPosition(),
+						other -> (available.get(other)) && (this.world.canReach(this.world.getUnit(other).getCube(), cube)),
+						this.searchRadius);
+				Navigator navigator = (id < 0) ? null : this.world.createNavigator(this.world.getUnit(id), cube);
+				if (navigator == null) {
+					job.defer(this.nbDispatches + Math.min(MAX_BACKOFF, 1L << Math.min(job.getNbDeferrals(), 30)));
+					this.deferred.add(job);
+					continue;
+				}
+				available.clear(id);
+				nbAvailable--;
+				this.busy.set(id);
+				if (id >= this.busyGenerations.length)
+					this.busyGenerations = Arrays.copyOf(this.busyGenerations,
+							Math.max(id + 1, 2 * this.busyGenerations.length));
+				this.busyGenerations[id] = this.world.getUnit(id).getGeneration();
+				generations.add(this.busyGenerations[id]);
+				job.setWorker(id);
+				this.nbAssigned++;
+				jobs.add(job);
+				workers.add(this.world.getUnit(id));
+				navigators.add(navigator);
+			}
+		}
+		for (int i = 0; i < jobs.size(); i++) {
+			final Job job = jobs.get(i);
+			final Unit worker = workers.get(i);
+			final Navigator navigator = navigators.get(i);
+			final int generation = generations.get(i);
+			worker.getBehaviorScheduler().start(worker, () -> this.perform(job, worker, generation, navigator));
+		}
+		return jobs.size();
+	}
+
+	/**
+	 * Return the identifiers of the idle, living units of the world of this queue
+	 * with a behaviour scheduler, without default behaviour and without a job.
+	 */
+	private BitSet collectAvailable() {
+		ActivityIndex index = this.world.getActivityIndex();
+		BitSet result = index.getUnits(Activity.IDLE);
+		for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+			Unit unit = this.world.getUnit(id);
+			if (this.busy.get(id)) {
+				if (this.busyGenerations[id] == unit.getGeneration()) {
+					result.clear(id);
+					continue;
+				}
+				// The worker died with its job, and a new unit recycled its object since.
+				this.busy.clear(id);
+			}
+			if ((!this.world.isAlive(id)) || (unit.getBehaviorScheduler() == null)
+					|| (unit.isDefaultBehaviorEnabled()))
+				result.clear(id);
+		}
+		return result;
+	}
+
+	/**
+	 * Let the given worker of the given generation walk to the cube of the given
+	 * job with the given navigator and work there, on the behaviour thread of the worker.
+	 */
+	private void perform(Job job, Unit worker, int generation, Navigator navigator) {
+		boolean done = false;
+		try {
+			worker.moveTo(navigator);
+			boolean arrived = Arrays.equals(worker.getCube(), job.getCube());
+			if ((arrived) && (!worker.getBehaviorScheduler().isSuperseded(worker)))
+				worker.work();
+			done = (arrived) && (!worker.getBehaviorScheduler().isSuperseded(worker))
+					&& (worker.getGeneration() == generation);
+		} finally {
+			this.finish(job, worker, generation, done);
+		}
+	}
+
+	/**
+	 * Register that the given worker of the given generation stopped working on
+	 * the given job, having done it or not.
+	 */
+	private synchronized void finish(Job job, Unit worker, int generation, boolean done) {
+		int id = worker.getId();
+		if (this.busyGenerations[id] == generation)
+			this.busy.clear(id);
+		if (done) {
+			job.finish();
+			this.nbDone++;
+		}
+		else {
+			job.setWorker(-1);
+			this.open.add(job);
+		}
+	}
+}
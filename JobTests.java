@@ -0,0 +1,104 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the queues assigning the jobs of a world to its idle units.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class JobTests {
+
+	/**
+	 * Constant reflecting the duration of a frame, in seconds.
+	 */
+	private static final double FRAME_TIME = 0.1;
+
+	private World world;
+
+	private BehaviorScheduler scheduler;
+
+	private JobQueue queue;
+
+	private Unit worker;
+
+	@Before
+	public void setUp() throws Exception {
+		this.world = new World();
+		this.scheduler = new BehaviorScheduler();
+		this.queue = this.world.getJobQueue();
+		this.worker = this.world.createUnit("Worker", new int[] {5, 5, 5}, 50, 50, 50, 50, false);
+		this.scheduler.attach(this.worker);
+	}
+
+	@After
+	public void tearDown() {
+		this.scheduler.interrupt(this.worker);
+	}
+
+	@Test
+	public void dispatch_AssignsNearestWorker() throws Exception {
+		Unit other = this.world.createUnit("Other Worker", new int[] {20, 20, 5}, 50, 50, 50, 50, false);
+		this.scheduler.attach(other);
+		Job job = this.queue.addJob(new int[] {7, 5, 5}, 1);
+		this.world.advanceTime(FRAME_TIME);
+		assertEquals(this.worker.getId(), job.getWorker());
+		assertEquals(1, this.queue.getNbBusy());
+		assertEquals(0, this.queue.getNbOpen());
+		for (int i = 0; (i < 600) && (!job.isDone()); i++)
+			this.world.advanceTime(FRAME_TIME);
+		assertTrue(job.isDone());
+		assertArrayEquals(new int[] {7, 5, 5}, this.worker.getCube());
+		assertEquals(1, this.queue.getNbDone());
+		this.world.advanceTime(FRAME_TIME);
+		assertEquals(0, this.queue.getNbBusy());
+		this.scheduler.interrupt(other);
+	}
+
+	@Test
+	public void interrupt_RequeuesJob() throws Exception {
+		Job job = this.queue.addJob(new int[] {15, 5, 5}, 1);
+		this.world.advanceTime(FRAME_TIME);
+		assertEquals(this.worker.getId(), job.getWorker());
+		this.scheduler.interrupt(this.worker);
+		for (int i = 0; (i < 500) && (!job.isOpen()); i++)
+			Thread.sleep(2);
+		assertTrue(job.isOpen());
+		assertFalse(job.isDone());
+		assertEquals(1, this.queue.getNbOpen());
+		assertEquals(0, this.queue.getNbBusy());
+		assertEquals(0, this.queue.getNbDone());
+	}
+
+	@Test
+	public void dispatch_DeferredJobsDoNotStarveOthers() throws Exception {
+		this.queue.setSearchRadius(5);
+		List<Job> far = new ArrayList<Job>();
+		for (int i = 0; i < 2 * JobQueue.SEARCHES_PER_JOB * this.queue.getBatchSize(); i++)
+			far.add(this.queue.addJob(new int[] {45, 45, i % 50}, 10));
+		Job near = this.queue.addJob(new int[] {6, 5, 5}, 1);
+		for (int i = 0; (i < JobQueue.MAX_BACKOFF) && (near.getWorker() == -1); i++)
+			this.world.advanceTime(FRAME_TIME);
+		assertEquals(this.worker.getId(), near.getWorker());
+		for (Job job : far)
+			assertTrue(job.isOpen());
+		assertEquals(far.size(), this.queue.getNbOpen());
+	}
+
+	@Test
+	public void cancel_DeferredJob() throws Exception {
+		this.queue.setSearchRadius(5);
+		Job job = this.queue.addJob(new int[] {45, 45, 45}, 1);
+		this.world.advanceTime(FRAME_TIME);
+		assertTrue(job.isOpen());
+		assertTrue(this.queue.cancel(job));
+		assertEquals(0, this.queue.getNbOpen());
+	}
+}
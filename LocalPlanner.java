@@ -0,0 +1,214 @@
+package hillbillies.model;
+import java.util.Arrays;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+import hillbillies.common.internal.map.IByteMap3D;
+
+/**
+ * A class of local planners, leading a unit to a target cube over terrain that
+ * is streamed from disk.
+ *
+ * A local planner never searches more than a window of cubes around the unit,
+ * so it only reads the chunks around the unit, which its world prefetches as
+ * the unit moves. Within that window, a breadth-first search over the passable
+ * cubes finds the cube closest to the target, or the target itself, and the unit
+ * follows the path to that cube. The window is searched again when that path is
+ * used up, or when its next cube is no longer passable. A unit that cannot get
+ * closer to the target within the window is not led any further.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ * @invar	The target of each local planner is a cube of its map.
+ * 			| getMap().isValidIndex(getTarget()[0], getTarget()[1], getTarget()[2])
+ */
+class LocalPlanner implements Navigator {
+
+	/**
+	 * Initialize this new local planner towards the given target cube of the given map.
+	 *
+	 * @param	map
+	 * 			The map of the game world to plan on.
+	 * @param	target
+	 * 			The cube this new local planner leads to.
+	 * @post	| new.getMap() == map
+	 * @post	| Arrays.equals(new.getTarget(), target)
+	 * @throws	OutOfBoundsException
+	 * 			The given target is not a passable cube of the given map.
+	 * 			| (! map.isValidIndex(target[0], target[1], target[2]))
+	 * 			|	|| (! Terrain.isPassable(map.getValue(target[0], target[1], target[2])))
+	 */
+	LocalPlanner(IByteMap3D map, int[] target) throws OutOfBoundsException {
+		if ((!map.isValidIndex(target[0], target[1], target[2]))
+				|| (!Terrain.isPassable(map.getValue(target[0], target[1], target[2]))))
+			throw new OutOfBoundsException(new double[] {target[0], target[1], target[2]});
+		this.map = map;
+		this.target = target.clone();
+	}
+
+	/**
+	 * Constant reflecting the number of cubes the window of a local planner
+	 * extends from the unit along each axis.
+	 */
+	public static final int RADIUS = ChunkedMap.CHUNK_SIZE / 2;
+
+	/**
+	 * Variable registering the map this planner plans on.
+	 */
+	private final IByteMap3D map;
+
+	/**
+	 * Variable registering the target cube of this planner.
+	 */
+	private final int[] target;
+
+	/**
+	 * Variable registering the coordinates of the cubes of the current path, one
+	 * triple per cube, starting with the cube the path was searched from.
+	 */
+	private int[] path = new int[0];
+
+	/**
+	 * Variable registering the number of the cube of the current path the unit steps to next.
+	 */
+	private int next;
+
+	/**
+	 * Variable registering the number of windows this planner searched.
+	 */
+	private int nbSearches;
+
+	/**
+	 * Return the map this planner plans on.
+	 */
+	@Basic @Immutable
+	public IByteMap3D getMap() {
+		return this.map;
+	}
+
+	/**
+	 * Return the target cube of this planner.
+	 */
+	@Basic @Immutable
+	public int[] getTarget() {
+		return this.target.clone();
+	}
+
+	/**
+	 * Return the number of windows this planner searched.
+	 */
+	@Basic
+	public synchronized int getNbSearches() {
+		return this.nbSearches;
+	}
+
+	/**
+	 * Return the adjacent step a unit in the given cube has to take next
+	 * towards the target of this planner.
+	 *
+	 * @param	cube
+	 * 			The cube the unit occupies.
+	 * @return	Null if the given cube does not lie within the map of this planner,
+	 * 			or if no passable cube within the window around the given cube
+	 * 			lies closer to the target than the given cube.
+	 */
+	@Override
+	public synchronized int[] getNextStep(int[] cube) {
+		if (!this.map.isValidIndex(cube[0], cube[1], cube[2]))
+			return null;
+		if (Arrays.equals(cube, this.target))
+			return new int[] {0, 0, 0};
+		if (!this.isOnPath(cube)) {
+			this.search(cube);
+			if (!this.isOnPath(cube))
+				return null;
+		}
+		int[] step = new int[3];
+		for (int i = 0; i < 3; i++)
+			step[i] = this.path[3 * this.next + i] - cube[i];
+		this.next++;
+		return step;
+	}
+
+	/**
+	 * Check whether the given cube is the cube of the current path the unit
+	 * stepped to last, and the cube after it is still passable.
+	 */
+	private boolean isOnPath(int[] cube) {
+		if (3 * this.next >= this.path.length)
+			return false;
+		for (int i = 0; i < 3; i++)
+			if (this.path[3 * (this.next - 1) + i] != cube[i])
+				return false;
+		return Terrain.isPassable(this.map.getValue(this.path[3 * this.next], this.path[3 * this.next + 1],
+				this.path[3 * this.next + 2]));
+	}
+
+	/**
+	 * Search the window around the given cube for the passable cube closest to
+	 * the target, and make the path to that cube the current path.
+	 */
+	private void search(int[] cube) {
+		this.nbSearches++;
+		int[] lower = new int[3], sizes = new int[3];
+		int[] dimensions = {this.map.getNbX(), this.map.getNbY(), this.map.getNbZ()};
+		for (int i = 0; i < 3; i++) {
+			lower[i] = Math.max(0, cube[i] - RADIUS);
+			sizes[i] = Math.min(dimensions[i], cube[i] + RADIUS + 1) - lower[i];
+		}
+		int volume = sizes[0] * sizes[1] * sizes[2];
+		int[] parents = new int[volume];
+		Arrays.fill(parents, -1);
+		int[] queue = new int[volume];
+		int head = 0, tail = 0;
+		int origin = ((cube[0] - lower[0]) * sizes[1] + (cube[1] - lower[1])) * sizes[2] + (cube[2] - lower[2]);
+		parents[origin] = origin;
+		queue[tail++] = origin;
+		int best = origin, bestDistance = this.distanceToTarget(cube[0], cube[1], cube[2]);
+		while ((head < tail) && (bestDistance > 0)) {
+			int index = queue[head++];
+			int x = lower[0] + index / (sizes[1] * sizes[2]);
+			int y = lower[1] + (index / sizes[2]) % sizes[1];
+			int z = lower[2] + index % sizes[2];
+			for (int dx = -1; dx <= 1; dx++)
+				for (int dy = -1; dy <= 1; dy++)
+					for (int dz = -1; dz <= 1; dz++) {
+						int nx = x + dx - lower[0], ny = y + dy - lower[1], nz = z + dz - lower[2];
+						if ((nx < 0) || (nx >= sizes[0]) || (ny < 0) || (ny >= sizes[1]) || (nz < 0)
+								|| (nz >= sizes[2]))
+							continue;
+						int neighbour = (nx * sizes[1] + ny) * sizes[2] + nz;
+						if ((parents[neighbour] >= 0)
+								|| (!Terrain.isPassable(this.map.getValue(x + dx, y + dy, z + dz))))
+							continue;
+						parents[neighbour] = index;
+						queue[tail++] = neighbour;
+						// Cubes are reached in order of path length, so the first closest cube has the shortest path.
+						int distance = this.distanceToTarget(x + dx, y + dy, z + dz);
+						if (distance < bestDistance) {
+							best = neighbour;
+							bestDistance = distance;
+						}
+					}
+		}
+		int length = 1;
+		for (int index = best; index != origin; index = parents[index])
+			length++;
+		this.path = new int[3 * length];
+		for (int index = best, i = length - 1; i >= 0; index = parents[index], i--) {
+			this.path[3 * i] = lower[0] + index / (sizes[1] * sizes[2]);
+			this.path[3 * i + 1] = lower[1] + (index / sizes[2]) % sizes[1];
+			this.path[3 * i + 2] = lower[2] + index % sizes[2];
+		}
+		this.next = 1;
+	}
+
+	/**
+	 * Return the number of adjacent steps from the cube at the given coordinates
+	 * to the target, ignoring the terrain in between.
+	 */
+	private int distanceToTarget(int x, int y, int z) {
+		return Math.max(Math.abs(x - this.target[0]), Math.max(Math.abs(y - this.target[1]),
+				Math.abs(z - this.target[2])));
+	}
+}
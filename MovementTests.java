@@ -0,0 +1,139 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the movement of units, run in lock step with their world.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class MovementTests {
+
+	/**
+	 * Constant reflecting the duration of a frame, in seconds.
+	 */
+	private static final double FRAME_TIME = 1.0 / 30;
+
+	private World world;
+
+	private BehaviorScheduler scheduler;
+
+	private Unit unit;
+
+	@Before
+	public void setUp() throws Exception {
+		this.world = new World();
+		this.scheduler = new BehaviorScheduler();
+		this.unit = this.world.createUnit("Hillbilly", new int[] {5, 5, 5}, 50, 50, 50, 50, false);
+		this.scheduler.attach(this.unit);
+	}
+
+	@After
+	public void tearDown() {
+		this.scheduler.interrupt(this.unit);
+	}
+
+	@Test
+	public void destinationReached_Passed() {
+		assertTrue(this.unit.destinationReached(new double[] {5, 5, 5}, new double[] {6.1, 5, 5},
+				new double[] {6, 5, 5}));
+		assertTrue(this.unit.destinationReached(new double[] {5, 5, 5}, new double[] {4, 4, 5},
+				new double[] {4, 4, 5}));
+	}
+
+	@Test
+	public void destinationReached_NotYet() {
+		assertFalse(this.unit.destinationReached(new double[] {5, 5, 5}, new double[] {5.5, 5.5, 5},
+				new double[] {6, 6, 5}));
+		assertFalse(this.unit.destinationReached(new double[] {5, 5, 5}, new double[] {6.5, 5, 5},
+				new double[] {6, 6, 5}));
+	}
+
+	@Test
+	public void moveTo_ArrivesAtCube() throws Exception {
+		this.unit.moveTo(new int[] {8, 3, 5});
+		for (int i = 0; (i < 600) && (!this.arrivedAt(8, 3, 5)); i++)
+			this.world.advanceTime(FRAME_TIME);
+		assertArrayEquals(new double[] {8, 3, 5}, this.unit.getPosition(), 0);
+		this.world.advanceTime(FRAME_TIME);
+		assertFalse(this.unit.isMoving());
+	}
+
+	@Test
+	public void moveTo_FixedPointArrivesAtCube() throws Exception {
+		this.world.setFixedPoint(true);
+		this.unit.moveTo(new int[] {2, 7, 4});
+		for (int i = 0; (i < 600) && (!this.arrivedAt(2, 7, 4)); i++)
+			this.world.advanceTime(FRAME_TIME);
+		assertArrayEquals(new double[] {2, 7, 4}, this.unit.getPosition(), 0);
+		assertArrayEquals(new int[] {2, 7, 4}, this.unit.getCube());
+	}
+
+	@Test
+	public void getVelocity_FixedPointMatchesFloatingPoint() {
+		double[] start = {5, 5, 5};
+		double[] target = {6, 4, 5};
+		double[] expected = this.unit.getVelocity(start, target);
+		this.unit.setFixedPoint(true);
+		assertArrayEquals(expected, this.unit.getVelocity(start, target), 1e-4);
+		assertEquals(Math.sqrt(2), this.unit.calcDistance(start, target), 1e-4);
+	}
+
+	@Test
+	public void fixedPoint_Conversions() {
+		assertEquals(FixedPoint.ONE, FixedPoint.toFixed(1.0));
+		assertEquals(-2.5, FixedPoint.toDouble(FixedPoint.toFixed(-2.5)), 0);
+		assertEquals(3 * FixedPoint.ONE / 2, FixedPoint.multiply(3 * FixedPoint.ONE, FixedPoint.ONE / 2));
+		assertEquals(4, FixedPoint.toCube(FixedPoint.toFixed(4.99)));
+		assertEquals(-1, FixedPoint.toCube(FixedPoint.toFixed(-0.5)));
+	}
+
+	@Test
+	public void fixedPoint_SqrtAndDistance() {
+		assertEquals(0, FixedPoint.sqrt(-4));
+		assertEquals(3, FixedPoint.sqrt(15));
+		assertEquals(4, FixedPoint.sqrt(16));
+		assertEquals(3000000, FixedPoint.sqrt(9000000000000L));
+		long[] start = FixedPoint.toFixed(new double[] {1, 2, 3});
+		long[] end = FixedPoint.toFixed(new double[] {4, 6, 3});
+		assertEquals(5 * FixedPoint.ONE, FixedPoint.distance(start, end));
+	}
+
+	@Test
+	public void fixedPoint_DestinationReached() {
+		long[] target = FixedPoint.toFixed(new double[] {6, 4, 5});
+		long[] start = FixedPoint.toFixed(new double[] {5, 5, 5});
+		assertTrue(FixedPoint.destinationReached(start, FixedPoint.toFixed(new double[] {6.2, 3.9, 5}), target));
+		assertFalse(FixedPoint.destinationReached(start, FixedPoint.toFixed(new double[] {5.9, 3.9, 5}), target));
+		assertFalse(FixedPoint.intervalContains(5, 5, 7));
+		assertTrue(FixedPoint.intervalContains(7, 5, 7));
+		assertTrue(FixedPoint.intervalContains(5, 7, 5));
+	}
+
+	@Test
+	public void fixedPoint_IntegrateIsExact() {
+		long[] position = FixedPoint.toFixed(new double[] {5, 5, 5});
+		long[] velocity = {FixedPoint.ONE, -FixedPoint.ONE / 2, 0};
+		for (int i = 0; i < 64; i++)
+			FixedPoint.integrate(position, velocity, FixedPoint.ONE / 64);
+		assertArrayEquals(FixedPoint.toFixed(new double[] {6, 4.5, 5}), position);
+		assertEquals(FixedPoint.hash(17, position), FixedPoint.hash(17, position.clone()));
+	}
+
+	@Test
+	public void moveTo_InvalidCube() throws Exception {
+		this.unit.moveTo(new int[] {5, 5, -3});
+		for (int i = 0; i < 30; i++)
+			this.world.advanceTime(FRAME_TIME);
+		assertArrayEquals(new double[] {5, 5, 5}, this.unit.getPosition(), 0);
+	}
+
+	private boolean arrivedAt(int x, int y, int z) {
+		double[] position = this.unit.getPosition();
+		return (position[0] == x) && (position[1] == y) && (position[2] == z);
+	}
+}
@@ -0,0 +1,392 @@
+package hillbillies.model;
+import java.util.Arrays;
+
+import be.kuleuven.cs.som.annotate.Basic;
+
+/**
+ * A class of name tables, interning the names of units in a compact character
+ * arena and referring to each distinct name by an integer handle.
+ *
+ * The characters of all names are stored back to back in a single array, and a
+ * hash table with open addressing maps names to their handles, so looking up a
+ * name neither copies nor allocates. Each distinct name is also materialized
+ * once as a string, which all units with that name share. Only valid names can
+ * be interned, so a name found in a table needs no further validation.
+ *
+ * Every handle counts the references to its name. Interning a name adds a
+ * reference, and releasing the handle removes one; a name without references
+ * leaves the table, its handle is reused for the next new name, and the arena
+ * is compacted once most of its characters belong to released names.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ * @invar	Each name in a table is a valid name.
+ * 			| for each handle with isInterned(handle):
+ * 			|	isValidName(getName(handle))
+ */
+public class NameTable {
+
+	/**
+	 * Initialize this new table without any names.
+	 */
+	public NameTable() {
+	}
+
+	/**
+	 * Constant reflecting the absence of a handle in a slot of the hash table.
+	 */
+	private static final int EMPTY = -1;
+
+	/**
+	 * Constant reflecting a slot of the hash table whose name was released.
+	 */
+	private static final int REMOVED = -2;
+
+	/**
+	 * Variable registering the characters of all names of this table, back to back.
+	 */
+	private char[] arena = new char[256];
+
+	/**
+	 * Variable registering the number of characters used in the arena.
+	 */
+	private int nbChars;
+
+	/**
+	 * Variable registering the number of characters in the arena of released names.
+	 */
+	private int nbReleasedChars;
+
+	/**
+	 * Variable registering the offset of each name in the arena, by handle.
+	 */
+	private int[] offsets = new int[16];
+
+	/**
+	 * Variable registering the length of each name, by handle.
+	 */
+	private int[] lengths = new int[16];
+
+	/**
+	 * Variable registering the hash of each name, by handle.
+	 */
+	private int[] hashes = new int[16];
+
+	/**
+	 * Variable registering the number of references to each name, by handle.
+	 */
+	private int[] counts = new int[16];
+
+	/**
+	 * Variable registering the shared string of each name, by handle.
+	 */
+	private String[] strings = new String[16];
+
+	/**
+	 * Variable registering the number of handles ever given out by this table.
+	 */
+	private int nbHandles;
+
+	/**
+	 * Variable registering the handles of released names, free for new names.
+	 */
+	private int[] free = new int[16];
+
+	/**
+	 * Variable registering the number of free handles.
+	 */
+	private int nbFree;
+
+	/**
+	 * Variable registering the handles of the names by hash, with linear probing.
+	 */
+	private int[] slots = newSlots(32);
+
+	/**
+	 * Variable registering the number of slots of the hash table that are not empty.
+	 */
+	private int nbUsedSlots;
+
+	/**
+	 * Return the number of names of this table.
+	 */
+	public synchronized int getNbNames() {
+		return this.nbHandles - this.nbFree;
+	}
+
+	/**
+	 * Return the number of characters stored for the names of this table.
+	 */
+	public synchronized int getNbChars() {
+		return this.nbChars - this.nbReleasedChars;
+	}
+
+	/**
+	 * Check whether the given name is a valid name for a unit.
+	 *
+	 * @param	name
+	 * 			The name to check.
+	 * @return	True if and only if the name uses 2 characters or more, the first
+	 * 			letter is a capital one and all characters are either letters,
+	 * 			spaces or quotes.
+	 */
+	public static boolean isValidName(CharSequence name) {
+		if ((name == null) || (name.length() < 2) || (!Character.isUpperCase(name.charAt(0))))
+			return false;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if ((!Character.isLetter(c)) && (c != ' ') && (c != '\'') && (c != '"'))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Check whether the given handle refers to a name of this table.
+	 *
+	 * @param	handle
+	 * 			The handle to check.
+	 */
+	public synchronized boolean isInterned(int handle) {
+		return (handle >= 0) && (handle < this.nbHandles) && (this.counts[handle] > 0);
+	}
+
+	/**
+	 * Return the number of references to the name with the given handle.
+	 *
+	 * @param	handle
+	 * 			The handle of the name.
+	 * @return	Zero if the given handle does not refer to a name of this table.
+	 */
+	@Basic
+	public synchronized int getNbReferences(int handle) {
+		return this.isInterned(handle) ? this.counts[handle] : 0;
+	}
+
+	/**
+	 * Return the handle of the given name in this table, or -1 if it has not been interned.
+	 *
+	 * @param	name
+	 * 			The name to look up.
+	 */
+	public synchronized int find(CharSequence name) {
+		if (name == null)
+			return -1;
+		int hash = hash(name);
+		for (int slot = hash & (this.slots.length - 1); this.slots[slot] != EMPTY;
+				slot = (slot + 1) & (this.slots.length - 1)) {
+			int handle = this.slots[slot];
+			if ((handle != REMOVED) && (this.hashes[handle] == hash) && (this.matches(handle, name)))
+				return handle;
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the handle of the given name in this table, adding it if it has not
+	 * been interned yet, and add a reference to it.
+	 *
+	 * @param	name
+	 * 			The name to intern.
+	 * @post	| new.getName(result).contentEquals(name)
+	 * @post	| new.getNbReferences(result) == this.getNbReferences(result) + 1
+	 * @throws	IllegalArgumentException
+	 * 			The given name is not a valid name.
+	 * 			| ! isValidName(name)
+	 */
+	public synchronized int intern(CharSequence name) throws IllegalArgumentException {
+		int handle = this.find(name);
+		if (handle >= 0) {
+			this.counts[handle]++;
+			return handle;
+		}
+		if (!isValidName(name))
+			throw new IllegalArgumentException("Invalid name: " + name);
+		if (2 * (this.nbUsedSlots + 1) > this.slots.length)
+			this.rehash();
+		if (this.nbFree > 0)
+			handle = this.free[--this.nbFree];
+		else {
+			handle = this.nbHandles++;
+			if (handle == this.hashes.length) {
+				this.offsets = Arrays.copyOf(this.offsets, 2 * handle);
+				this.lengths = Arrays.copyOf(this.lengths, 2 * handle);
+				this.hashes = Arrays.copyOf(this.hashes, 2 * handle);
+				this.counts = Arrays.copyOf(this.counts, 2 * handle);
+				this.strings = Arrays.copyOf(this.strings, 2 * handle);
+			}
+		}
+		int length = name.length();
+		if (this.nbChars + length > this.arena.length)
+			this.arena = Arrays.copyOf(this.arena, Math.max(2 * this.arena.length, this.nbChars + length));
+		for (int i = 0; i < length; i++)
+			this.arena[this.nbChars + i] = name.charAt(i);
+		this.offsets[handle] = this.nbChars;
+		this.lengths[handle] = length;
+		this.nbChars += length;
+		this.hashes[handle] = hash(name);
+		this.counts[handle] = 1;
+		this.strings[handle] = (name instanceof String) ? (String) name : name.toString();
+		this.place(handle);
+		return handle;
+	}
+
+	/**
+	 * Add a reference to the name with the given handle.
+	 *
+	 * @param	handle
+	 * 			The handle of the name.
+	 * @return	| result == handle
+	 * @post	| new.getNbReferences(handle) == this.getNbReferences(handle) + 1
+	 * @throws	IndexOutOfBoundsException
+	 * 			This table has no name with the given handle.
+	 * 			| ! isInterned(handle)
+	 */
+	public synchronized int retain(int handle) throws IndexOutOfBoundsException {
+		this.check(handle);
+		this.counts[handle]++;
+		return handle;
+	}
+
+	/**
+	 * Remove a reference to the name with the given handle, removing the name
+	 * from this table once no references to it remain.
+	 *
+	 * @param	handle
+	 * 			The handle of the name.
+	 * @post	| new.getNbReferences(handle) == this.getNbReferences(handle) - 1
+	 * @throws	IndexOutOfBoundsException
+	 * 			This table has no name with the given handle.
+	 * 			| ! isInterned(handle)
+	 */
+	public synchronized void release(int handle) throws IndexOutOfBoundsException {
+		this.check(handle);
+		if (--this.counts[handle] > 0)
+			return;
+		int slot = this.hashes[handle] & (this.slots.length - 1);
+		while (this.slots[slot] != handle)
+			slot = (slot + 1) & (this.slots.length - 1);
+		this.slots[slot] = REMOVED;
+		this.strings[handle] = null;
+		this.nbReleasedChars += this.lengths[handle];
+		if (this.nbFree == this.free.length)
+			this.free = Arrays.copyOf(this.free, 2 * this.nbFree);
+		this.free[this.nbFree++] = handle;
+		if ((this.nbReleasedChars > this.arena.length / 4) && (2 * this.nbReleasedChars > this.nbChars))
+			this.compact();
+	}
+
+	/**
+	 * Return the shared string of the name with the given handle.
+	 *
+	 * @param	handle
+	 * 			The handle of the name.
+	 * @throws	IndexOutOfBoundsException
+	 * 			This table has no name with the given handle.
+	 * 			| ! isInterned(handle)
+	 */
+	public synchronized String getName(int handle) throws IndexOutOfBoundsException {
+		this.check(handle);
+		return this.strings[handle];
+	}
+
+	/**
+	 * Return the length of the name with the given handle.
+	 *
+	 * @param	handle
+	 * 			The handle of the name.
+	 * @throws	IndexOutOfBoundsException
+	 * 			This table has no name with the given handle.
+	 * 			| ! isInterned(handle)
+	 */
+	public synchronized int getLength(int handle) throws IndexOutOfBoundsException {
+		this.check(handle);
+		return this.lengths[handle];
+	}
+
+	/**
+	 * Check that the given handle refers to a name of this table.
+	 *
+	 * @throws	IndexOutOfBoundsException
+	 * 			| ! isInterned(handle)
+	 */
+	private void check(int handle) throws IndexOutOfBoundsException {
+		if (!this.isInterned(handle))
+			throw new IndexOutOfBoundsException("No name with handle " + handle);
+	}
+
+	/**
+	 * Check whether the name with the given handle consists of the characters of the given name.
+	 */
+	private boolean matches(int handle, CharSequence name) {
+		int offset = this.offsets[handle];
+		int length = this.lengths[handle];
+		if (length != name.length())
+			return false;
+		for (int i = 0; i < length; i++)
+			if (this.arena[offset + i] != name.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Move the characters of the names of this table to the front of the arena,
+	 * dropping those of released names.
+	 */
+	private void compact() {
+		char[] arena = new char[Math.max(256, 2 * (this.nbChars - this.nbReleasedChars))];
+		int nbChars = 0;
+		for (int handle = 0; handle < this.nbHandles; handle++)
+			if (this.counts[handle] > 0) {
+				System.arraycopy(this.arena, this.offsets[handle], arena, nbChars, this.lengths[handle]);
+				this.offsets[handle] = nbChars;
+				nbChars += this.lengths[handle];
+			}
+		this.arena = arena;
+		this.nbChars = nbChars;
+		this.nbReleasedChars = 0;
+	}
+
+	/**
+	 * Enter the name with the given handle in the first free slot for its hash.
+	 */
+	private void place(int handle) {
+		int slot = this.hashes[handle] & (this.slots.length - 1);
+		while ((this.slots[slot] != EMPTY) && (this.slots[slot] != REMOVED))
+			slot = (slot + 1) & (this.slots.length - 1);
+		if (this.slots[slot] == EMPTY)
+			this.nbUsedSlots++;
+		this.slots[slot] = handle;
+	}
+
+	/**
+	 * Rebuild the hash table of this table with room for one more name,
+	 * dropping the slots of released names.
+	 */
+	private void rehash() {
+		int nbSlots = 32;
+		while (nbSlots < 4 * (this.getNbNames() + 1))
+			nbSlots *= 2;
+		this.slots = newSlots(nbSlots);
+		this.nbUsedSlots = 0;
+		for (int handle = 0; handle < this.nbHandles; handle++)
+			if (this.counts[handle] > 0)
+				this.place(handle);
+	}
+
+	private static int[] newSlots(int nbSlots) {
+		int[] result = new int[nbSlots];
+		Arrays.fill(result, EMPTY);
+		return result;
+	}
+
+	/**
+	 * Return the hash of the given name, spread over the low bits.
+	 */
+	private static int hash(CharSequence name) {
+		int hash = 0;
+		for (int i = 0; i < name.length(); i++)
+			hash = 31 * hash + name.charAt(i);
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,119 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the tables interning the names of units.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class NameTests {
+
+	private NameTable table;
+
+	@Before
+	public void setUp() {
+		this.table = new NameTable();
+	}
+
+	@Test
+	public void isValidName() {
+		assertTrue(NameTable.isValidName("Jo 'Bob\""));
+		assertFalse(NameTable.isValidName("J"));
+		assertFalse(NameTable.isValidName("jo"));
+		assertFalse(NameTable.isValidName("J1"));
+		assertFalse(NameTable.isValidName(null));
+	}
+
+	@Test
+	public void intern_SharesHandleAndString() {
+		int handle = this.table.intern("Hillbilly");
+		assertEquals(handle, this.table.intern(new StringBuilder("Hillbilly")));
+		assertSame(this.table.getName(handle), this.table.getName(this.table.find("Hillbilly")));
+		assertEquals(2, this.table.getNbReferences(handle));
+		assertEquals(1, this.table.getNbNames());
+		assertEquals(9, this.table.getLength(handle));
+		assertEquals(-1, this.table.find("Hillbillies"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void intern_InvalidName() {
+		this.table.intern("hillbilly");
+	}
+
+	@Test
+	public void release_RemovesUnreferencedName() {
+		int handle = this.table.intern("Hillbilly");
+		this.table.retain(handle);
+		this.table.release(handle);
+		assertEquals("Hillbilly", this.table.getName(handle));
+		this.table.release(handle);
+		assertFalse(this.table.isInterned(handle));
+		assertEquals(-1, this.table.find("Hillbilly"));
+		assertEquals(0, this.table.getNbNames());
+		assertEquals(handle, this.table.intern("Joris"));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void release_Twice() {
+		int handle = this.table.intern("Hillbilly");
+		this.table.release(handle);
+		this.table.release(handle);
+	}
+
+	@Test
+	public void release_ManyNames() {
+		int[] handles = new int[2000];
+		for (int i = 0; i < handles.length; i++)
+			handles[i] = this.table.intern(nameOf(i));
+		for (int i = 0; i < handles.length; i += 2)
+			this.table.release(handles[i]);
+		assertEquals(handles.length / 2, this.table.getNbNames());
+		for (int i = 1; i < handles.length; i += 2) {
+			assertEquals(handles[i], this.table.find(nameOf(i)));
+			assertEquals(nameOf(i), this.table.getName(handles[i]));
+		}
+		for (int i = 0; i < handles.length; i += 2)
+			assertEquals(-1, this.table.find(nameOf(i)));
+		int chars = 0;
+		for (int i = 1; i < handles.length; i += 2)
+			chars += nameOf(i).length();
+		assertEquals(chars, this.table.getNbChars());
+	}
+
+	@Test
+	public void reap_ReleasesNameOfUnit() throws Exception {
+		World world = new World();
+		Unit unit = world.createUnit("Mortal Hillbilly", new int[] {5, 5, 5}, 50, 50, 50, 50, false);
+		int handle = unit.getNameHandle();
+		int references = Unit.NAMES.getNbReferences(handle);
+		world.unitDied(unit);
+		world.advanceTime(0.1);
+		assertNull(unit.getName());
+		assertEquals(references - 1, Unit.NAMES.getNbReferences(handle));
+	}
+
+	@Test
+	public void setName_ReplacesReference() throws Exception {
+		Unit unit = new Unit("Renamed Hillbilly", new int[] {5, 5, 5}, 50, 50, 50, 50, false);
+		int handle = unit.getNameHandle();
+		unit.setName("Other Hillbilly");
+		assertEquals("Other Hillbilly", unit.getName());
+		assertEquals(0, Unit.NAMES.getNbReferences(handle));
+		unit.setName("invalid");
+		assertEquals("Other Hillbilly", unit.getName());
+	}
+
+	/**
+	 * Return a distinct valid name for the given number.
+	 */
+	private static String nameOf(int number) {
+		StringBuilder result = new StringBuilder("Unit ");
+		for (; number > 0; number /= 26)
+			result.append((char) ('a' + number % 26));
+		return result.toString();
+	}
+}
@@ -0,0 +1,34 @@
+package hillbillies.model;
+
+/**
+ * An interface for objects guiding units through the game world,
+ * one adjacent cube at a time.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public interface Navigator {
+
+	/**
+	 * Return the adjacent step a unit in the given cube has to take next.
+	 *
+	 * @param	cube
+	 * 			The cube the unit occupies.
+	 * @return	The step as an array of offsets in {-1, 0, 1}, all zero if the
+	 * 			given cube is the destination, or null if the destination cannot
+	 * 			be reached from the given cube.
+	 */
+	int[] getNextStep(int[] cube);
+
+	/**
+	 * Return the number of time slots of ReservationTable.SLOT_DURATION seconds
+	 * a unit has to wait before taking the step last returned by this navigator.
+	 *
+	 * @return	Zero, unless this navigator coordinates the timing of its steps with other units.
+	 * 			| result == 0
+	 */
+	default int getNbWaits() {
+		return 0;
+	}
+
+}
@@ -0,0 +1,616 @@
+package hillbillies.model;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+import hillbillies.common.internal.map.IByteMap3D;
+
+/**
+ * A class of passable maps, registering which cubes of a map of the game world
+ * units can pass through, and which passable cubes are connected to each other.
+ *
+ * Passability is stored in a packed bitmap with one bit per cube. Every passable
+ * cube carries the label of its connected component, so whether a unit can ever
+ * reach a cube is a comparison of two labels. The map listens to changes of the
+ * underlying map: a cube that opens up merges the components around it, a cube
+ * that closes relabels only the component it belonged to, and only if its
+ * passable neighbours are not connected among themselves around it.
+ *
+ * Labels are stored per chunk of the chunked map, in the same way that map
+ * stores terrain: a chunk in which all cubes carry the same label is stored as
+ * that label, and any other chunk as a palette of its labels with a bit-packed
+ * palette position per cube. Most chunks of typical terrain lie entirely in rock
+ * or entirely in one component of air, so the labels of a world of 512 by 512
+ * by 512 cubes take a few megabytes besides the 16 megabytes of the bitmap.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class PassableMap implements IByteMap3D.Listener {
+
+	/**
+	 * Initialize this new passable map for the given map.
+	 *
+	 * @param	map
+	 * 			The map of the game world.
+	 * @post	| new.getMap() == map
+	 * @effect	This new passable map listens to the changes of the given map.
+	 * 			| map.addListener(this)
+	 */
+	public PassableMap(IByteMap3D map) {
+		this.map = map;
+		this.nbX = map.getNbX();
+		this.nbY = map.getNbY();
+		this.nbZ = map.getNbZ();
+		int nbCubes = this.nbX * this.nbY * this.nbZ;
+		this.passable = new long[(nbCubes + 63) >> 6];
+		this.chunksX = (this.nbX + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+		this.chunksY = (this.nbY + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+		this.chunksZ = (this.nbZ + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+		int nbChunks = this.chunksX * this.chunksY * this.chunksZ;
+		this.uniformLabels = new int[nbChunks];
+		this.labelChunks = new LabelChunk[nbChunks];
+		Arrays.fill(this.uniformLabels, NO_COMPONENT);
+		for (int x = 0; x < this.nbX; x++)
+			for (int y = 0; y < this.nbY; y++)
+				for (int z = 0; z < this.nbZ; z++)
+					if (Terrain.isPassable(map.getValue(x, y, z)))
+						this.setBit(this.indexOf(x, y, z), true);
+		for (int x = 0; x < this.nbX; x++)
+			for (int y = 0; y < this.nbY; y++)
+				for (int z = 0; z < this.nbZ; z++) {
+					int index = this.indexOf(x, y, z);
+					if ((this.getBit(index)) && (this.getLabel(x, y, z) == NO_COMPONENT))
+						this.flood(index, this.nextLabel++);
+				}
+		map.addListener(this);
+	}
+
+	/**
+	 * Constant reflecting the label of impassable cubes.
+	 */
+	public static final int NO_COMPONENT = 0;
+
+	/**
+	 * Constant reflecting the base two logarithm of the size of a chunk of labels.
+	 */
+	private static final int CHUNK_SHIFT = ChunkedMap.CHUNK_SHIFT;
+
+	/**
+	 * Constant reflecting the number of cubes along each axis of a chunk of labels.
+	 */
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+	/**
+	 * Constant reflecting the number of cubes of a chunk of labels.
+	 */
+	private static final int CHUNK_VOLUME = CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE;
+
+	/**
+	 * Variable registering the map of the game world.
+	 */
+	private final IByteMap3D map;
+
+	/**
+	 * Variables registering the dimensions of the map.
+	 */
+	private final int nbX, nbY, nbZ;
+
+	/**
+	 * Variable registering one bit per cube, set if the cube is passable.
+	 */
+	private final long[] passable;
+
+	/**
+	 * Variables registering the number of chunks of labels along each axis.
+	 */
+	private final int chunksX, chunksY, chunksZ;
+
+	/**
+	 * Variable registering the label of each chunk in which all cubes carry the same label.
+	 */
+	private final int[] uniformLabels;
+
+	/**
+	 * Variable registering the labels of each chunk whose cubes carry different labels, or null.
+	 */
+	private final LabelChunk[] labelChunks;
+
+	/**
+	 * Variable registering the number of cubes of each component.
+	 */
+	private final Map<Integer, Integer> sizes = new HashMap<Integer, Integer>();
+
+	/**
+	 * Variable registering the work queue of flood fills.
+	 */
+	private int[] queue = new int[64];
+
+	/**
+	 * Variable registering the next unused component label.
+	 */
+	private int nextLabel = NO_COMPONENT + 1;
+
+	/**
+	 * Return the map of the game world.
+	 */
+	@Basic @Immutable
+	public IByteMap3D getMap() {
+		return this.map;
+	}
+
+	/**
+	 * Return the number of chunks of labels stored as a single label.
+	 */
+	public synchronized int getNbUniformChunks() {
+		int result = 0;
+		for (LabelChunk chunk : this.labelChunks)
+			if (chunk == null)
+				result++;
+		return result;
+	}
+
+	/**
+	 * Return an estimate of the number of bytes this passable map takes in memory.
+	 */
+	public synchronized long getMemoryUsage() {
+		long result = 8L * this.passable.length + 8L * this.labelChunks.length + 4L * this.queue.length;
+		for (LabelChunk chunk : this.labelChunks)
+			if (chunk != null)
+				result += chunk.getMemoryUsage();
+		return result;
+	}
+
+	/**
+	 * Return the number of connected components of passable cubes.
+	 */
+	public synchronized int getNbComponents() {
+		return this.sizes.size();
+	}
+
+	/**
+	 * Check whether the cube at the given coordinates lies within the map and is passable.
+	 */
+	public synchronized boolean isPassable(int x, int y, int z) {
+		return this.map.isValidIndex(x, y, z) && this.getBit(this.indexOf(x, y, z));
+	}
+
+	/**
+	 * Return the label of the connected component of the cube at the given
+	 * coordinates, or NO_COMPONENT if it is not a passable cube of the map.
+	 */
+	public synchronized int getComponent(int x, int y, int z) {
+		if (!this.map.isValidIndex(x, y, z))
+			return NO_COMPONENT;
+		return this.getLabel(x, y, z);
+	}
+
+	/**
+	 * Check whether a unit in the given cube can ever reach the given target cube.
+	 *
+	 * @param	from
+	 * 			The cube the unit occupies.
+	 * @param	to
+	 * 			The target cube.
+	 * @return	True if and only if both cubes are passable and belong to the same component.
+	 */
+	public synchronized boolean canReach(int[] from, int[] to) {
+		int label = this.getComponent(from[0], from[1], from[2]);
+		return (label != NO_COMPONENT) && (label == this.getComponent(to[0], to[1], to[2]));
+	}
+
+	/**
+	 * Update the bitmap and the components after a change of the cube at the given coordinates.
+	 */
+	@Override
+	public synchronized void onChange(int x, int y, int z, byte oldValue, byte newValue) {
+		boolean nowPassable = Terrain.isPassable(newValue);
+		int index = this.indexOf(x, y, z);
+		if (this.getBit(index) == nowPassable)
+			return;
+		this.setBit(index, nowPassable);
+		if (nowPassable)
+			this.opened(index, x, y, z);
+		else
+			this.closed(index, x, y, z);
+	}
+
+	/**
+	 * Merge the components around the cube with the given index, which became passable.
+	 */
+	private void opened(int index, int x, int y, int z) {
+		Set<Integer> around = this.neighbourLabels(x, y, z);
+		if (around.isEmpty()) {
+			int label = this.nextLabel++;
+			this.setLabel(x, y, z, label);
+			this.sizes.put(label, 1);
+			return;
+		}
+		int largest = NO_COMPONENT;
+		for (int label : around)
+			if ((largest == NO_COMPONENT) || (this.sizes.get(label) > this.sizes.get(largest)))
+				largest = label;
+		this.setLabel(x, y, z, largest);
+		this.sizes.put(largest, this.sizes.get(largest) + 1);
+		// Relabel the smaller components only, starting from the cube that joined them.
+		for (int label : around)
+			if (label != largest) {
+				this.sizes.remove(label);
+				this.setLabel(x, y, z, NO_COMPONENT);
+				this.sizes.put(largest, this.sizes.get(largest) - 1);
+				this.flood(index, largest);
+			}
+	}
+
+	/**
+	 * Split the component of the cube with the given index, which became impassable.
+	 */
+	private void closed(int index, int x, int y, int z) {
+		int old = this.getLabel(x, y, z);
+		this.setLabel(x, y, z, NO_COMPONENT);
+		int around = this.passableNeighbours(x, y, z);
+		if (around == 0) {
+			this.sizes.remove(old);
+			return;
+		}
+		// Paths through the closed cube can go around it when its passable neighbours
+		// are connected among themselves, so the component does not split.
+		if (isLocallyConnected(around)) {
+			this.sizes.put(old, this.sizes.get(old) - 1);
+			return;
+		}
+		this.sizes.remove(old);
+		for (int dx = -1; dx <= 1; dx++)
+			for (int dy = -1; dy <= 1; dy++)
+				for (int dz = -1; dz <= 1; dz++) {
+					int nx = x + dx, ny = y + dy, nz = z + dz;
+					if (!this.map.isValidIndex(nx, ny, nz))
+						continue;
+					if (this.getLabel(nx, ny, nz) == old)
+						this.flood(this.indexOf(nx, ny, nz), this.nextLabel++);
+				}
+	}
+
+	/**
+	 * Return a mask of the passable neighbours of the cube at the given coordinates,
+	 * with a bit for each cube of the three by three by three block around it.
+	 */
+	private int passableNeighbours(int x, int y, int z) {
+		int result = 0;
+		for (int dx = -1; dx <= 1; dx++)
+			for (int dy = -1; dy <= 1; dy++)
+				for (int dz = -1; dz <= 1; dz++) {
+					int nx = x + dx, ny = y + dy, nz = z + dz;
+					if ((this.map.isValidIndex(nx, ny, nz)) && (this.getBit(this.indexOf(nx, ny, nz))))
+						result |= 1 << ((dx + 1) * 9 + (dy + 1) * 3 + (dz + 1));
+				}
+		return result & ~(1 << 13);
+	}
+
+	/**
+	 * Check whether the cubes of the given mask of a three by three by three block
+	 * are all connected to each other within that block.
+	 */
+	private static boolean isLocallyConnected(int mask) {
+		int reached = Integer.lowestOneBit(mask);
+		int previous = 0;
+		while (reached != previous) {
+			previous = reached;
+			for (int bits = reached; bits != 0; bits &= bits - 1)
+				reached |= BLOCK_NEIGHBOURS[Integer.numberOfTrailingZeros(bits)] & mask;
+		}
+		return reached == mask;
+	}
+
+	/**
+	 * Constant reflecting, for each cube of a three by three by three block, a mask
+	 * of the other cubes of the block adjacent to it.
+	 */
+	private static final int[] BLOCK_NEIGHBOURS = new int[27];
+
+	static {
+		for (int a = 0; a < 27; a++)
+			for (int b = 0; b < 27; b++)
+				if ((a != b) && (Math.abs(a / 9 - b / 9) <= 1) && (Math.abs((a / 3) % 3 - (b / 3) % 3) <= 1)
+						&& (Math.abs(a % 3 - b % 3) <= 1))
+					BLOCK_NEIGHBOURS[a] |= 1 << b;
+	}
+
+	/**
+	 * Return the labels of the passable neighbours of the cube at the given coordinates.
+	 */
+	private Set<Integer> neighbourLabels(int x, int y, int z) {
+		Set<Integer> result = new HashSet<Integer>();
+		for (int dx = -1; dx <= 1; dx++)
+			for (int dy = -1; dy <= 1; dy++)
+				for (int dz = -1; dz <= 1; dz++) {
+					int nx = x + dx, ny = y + dy, nz = z + dz;
+					if (((dx != 0) || (dy != 0) || (dz != 0)) && (this.map.isValidIndex(nx, ny, nz))) {
+						int label = this.getLabel(nx, ny, nz);
+						if (label != NO_COMPONENT)
+							result.add(label);
+					}
+				}
+		return result;
+	}
+
+	/**
+	 * Give all passable cubes connected to the cube with the given index, that do
+	 * not carry the given label yet, the given label.
+	 */
+	private void flood(int start, int label) {
+		// The queue is a ring buffer: it only holds the frontier of the fill.
+		int head = 0, pending = 0;
+		this.setLabel(start / (this.nbY * this.nbZ), (start / this.nbZ) % this.nbY, start % this.nbZ, label);
+		this.queue[pending++] = start;
+		int added = 1;
+		while (pending > 0) {
+			int index = this.queue[head];
+			head = (head + 1) % this.queue.length;
+			pending--;
+			int x = index / (this.nbY * this.nbZ);
+			int y = (index / this.nbZ) % this.nbY;
+			int z = index % this.nbZ;
+			for (int dx = -1; dx <= 1; dx++)
+				for (int dy = -1; dy <= 1; dy++)
+					for (int dz = -1; dz <= 1; dz++) {
+						int nx = x + dx, ny = y + dy, nz = z + dz;
+						if (!this.map.isValidIndex(nx, ny, nz))
+							continue;
+						int neighbour = this.indexOf(nx, ny, nz);
+						if ((this.getBit(neighbour)) && (this.getLabel(nx, ny, nz) != label)) {
+							this.setLabel(nx, ny, nz, label);
+							if (pending == this.queue.length) {
+								int[] grown = new int[2 * pending];
+								for (int i = 0; i < pending; i++)
+									grown[i] = this.queue[(head + i) % pending];
+								this.queue = grown;
+								head = 0;
+							}
+							this.queue[(head + pending++) % this.queue.length] = neighbour;
+							added++;
+						}
+					}
+		}
+		Integer size = this.sizes.get(label);
+		this.sizes.put(label, (size == null) ? added : size + added);
+	}
+
+	/**
+	 * Return the label of the cube at the given coordinates.
+	 */
+	private int getLabel(int x, int y, int z) {
+		int chunk = this.chunkOf(x, y, z);
+		LabelChunk contents = this.labelChunks[chunk];
+		if (contents == null)
+			return this.uniformLabels[chunk];
+		return contents.get(cubeOf(x, y, z));
+	}
+
+	/**
+	 * Give the cube at the given coordinates the given label, storing its chunk
+	 * as a single label once all of its cubes carry the same label.
+	 */
+	private void setLabel(int x, int y, int z, int label) {
+		int chunk = this.chunkOf(x, y, z);
+		LabelChunk contents = this.labelChunks[chunk];
+		if (contents == null) {
+			if (this.uniformLabels[chunk] == label)
+				return;
+			contents = new LabelChunk(this.uniformLabels[chunk], this.nbOutside(x, y, z));
+			this.labelChunks[chunk] = contents;
+		}
+		contents.set(cubeOf(x, y, z), label);
+		if (contents.isUniform(label)) {
+			this.labelChunks[chunk] = null;
+			this.uniformLabels[chunk] = label;
+		}
+	}
+
+	/**
+	 * Return the number of cubes of the chunk of the cube at the given coordinates
+	 * that lie outside this map.
+	 */
+	private int nbOutside(int x, int y, int z) {
+		int sizeX = Math.min(CHUNK_SIZE, this.nbX - ((x >> CHUNK_SHIFT) << CHUNK_SHIFT));
+		int sizeY = Math.min(CHUNK_SIZE, this.nbY - ((y >> CHUNK_SHIFT) << CHUNK_SHIFT));
+		int sizeZ = Math.min(CHUNK_SIZE, this.nbZ - ((z >> CHUNK_SHIFT) << CHUNK_SHIFT));
+		return CHUNK_VOLUME - sizeX * sizeY * sizeZ;
+	}
+
+	private int chunkOf(int x, int y, int z) {
+		return ((x >> CHUNK_SHIFT) * this.chunksY + (y >> CHUNK_SHIFT)) * this.chunksZ + (z >> CHUNK_SHIFT);
+	}
+
+	private static int cubeOf(int x, int y, int z) {
+		int mask = CHUNK_SIZE - 1;
+		return ((x & mask) << (2 * CHUNK_SHIFT)) | ((y & mask) << CHUNK_SHIFT) | (z & mask);
+	}
+
+	private boolean getBit(int index) {
+		return (this.passable[index >> 6] & (1L << index)) != 0;
+	}
+
+	private void setBit(int index, boolean value) {
+		if (value)
+			this.passable[index >> 6] |= 1L << index;
+		else
+			this.passable[index >> 6] &= ~(1L << index);
+	}
+
+	private int indexOf(int x, int y, int z) {
+		return (x * this.nbY + y) * this.nbZ + z;
+	}
+
+	/**
+	 * A class of chunks of labels that are not uniform, storing a palette of labels
+	 * and a bit-packed palette position for each cube.
+	 *
+	 * Cubes of a chunk that lie outside the map keep the label the chunk had when
+	 * it stopped being uniform, and do not count when deciding whether all cubes
+	 * of the chunk carry the same label again.
+	 */
+	private static class LabelChunk {
+
+		/**
+		 * Initialize this new chunk with all cubes carrying the given label, of
+		 * which the given number of cubes lie outside the map.
+		 */
+		private LabelChunk(int label, int nbOutside) {
+			this.bits = 1;
+			this.data = new long[CHUNK_VOLUME / 64];
+			this.appendToPalette(label);
+			this.counts[0] = CHUNK_VOLUME;
+			this.outsideLabel = label;
+			this.nbOutside = nbOutside;
+		}
+
+		/**
+		 * Variable registering the labels of the palette.
+		 */
+		private int[] palette = new int[2];
+
+		/**
+		 * Variable registering the number of cubes using each palette entry.
+		 */
+		private int[] counts = new int[2];
+
+		/**
+		 * Variable registering the number of entries of the palette.
+		 */
+		private int paletteSize;
+
+		/**
+		 * Variable registering the number of bits of each packed palette position.
+		 */
+		private int bits;
+
+		/**
+		 * Variable registering the packed palette positions.
+		 */
+		private long[] data;
+
+		/**
+		 * Variable registering the label of the cubes of this chunk outside the map.
+		 */
+		private final int outsideLabel;
+
+		/**
+		 * Variable registering the number of cubes of this chunk outside the map.
+		 */
+		private final int nbOutside;
+
+		private long getMemoryUsage() {
+			return 8L * this.data.length + 4L * this.palette.length + 4L * this.counts.length + 40;
+		}
+
+		/**
+		 * Check whether all cubes of this chunk within the map carry the given label.
+		 */
+		private boolean isUniform(int label) {
+			int entry = this.indexOf(label);
+			if (entry < 0)
+				return false;
+			int inside = this.counts[entry] - ((label == this.outsideLabel) ? this.nbOutside : 0);
+			return inside == CHUNK_VOLUME - this.nbOutside;
+		}
+
+		private int get(int index) {
+			return this.palette[this.read(index)];
+		}
+
+		private void set(int index, int label) {
+			int oldEntry = this.read(index);
+			if (this.palette[oldEntry] == label)
+				return;
+			int entry = this.indexOf(label);
+			if (entry < 0)
+				entry = this.addToPalette(label);
+			this.counts[entry]++;
+			this.counts[oldEntry]--;
+			this.write(index, entry);
+		}
+
+		/**
+		 * Return the palette entry of the given label, or -1 if it is not in the palette.
+		 */
+		private int indexOf(int label) {
+			for (int i = 0; i < this.paletteSize; i++)
+				if ((this.palette[i] == label) && (this.counts[i] > 0))
+					return i;
+			return -1;
+		}
+
+		/**
+		 * Add the given label to the palette, reusing an unused entry if there is one.
+		 *
+		 * @return	The palette entry of the given label.
+		 */
+		private int addToPalette(int label) {
+			for (int i = 0; i < this.paletteSize; i++)
+				if (this.counts[i] == 0) {
+					this.palette[i] = label;
+					return i;
+				}
+			return this.appendToPalette(label);
+		}
+
+		/**
+		 * Append the given label to the palette, widening the packed positions if needed.
+		 *
+		 * @return	The palette entry of the given label.
+		 */
+		private int appendToPalette(int label) {
+			int entry = this.paletteSize++;
+			if (entry == this.palette.length) {
+				this.palette = Arrays.copyOf(this.palette, 2 * this.palette.length);
+				this.counts = Arrays.copyOf(this.counts, 2 * this.counts.length);
+			}
+			this.palette[entry] = label;
+			if (bitsFor(this.paletteSize) > this.bits)
+				this.widen(bitsFor(this.paletteSize));
+			return entry;
+		}
+
+		/**
+		 * Repack the palette positions with the given number of bits.
+		 */
+		private void widen(int newBits) {
+			int[] entries = new int[CHUNK_VOLUME];
+			for (int i = 0; i < CHUNK_VOLUME; i++)
+				entries[i] = this.read(i);
+			this.bits = newBits;
+			this.data = new long[CHUNK_VOLUME * newBits / 64];
+			for (int i = 0; i < CHUNK_VOLUME; i++)
+				this.write(i, entries[i]);
+		}
+
+		private int read(int index) {
+			// Positions take a power of two of bits, so words hold a power of two of positions.
+			int wordShift = 6 - Integer.numberOfTrailingZeros(this.bits);
+			long word = this.data[index >> wordShift];
+			return (int) ((word >>> ((index & ((1 << wordShift) - 1)) * this.bits)) & ((1L << this.bits) - 1));
+		}
+
+		private void write(int index, int entry) {
+			int wordShift = 6 - Integer.numberOfTrailingZeros(this.bits);
+			int shift = (index & ((1 << wordShift) - 1)) * this.bits;
+			long mask = ((1L << this.bits) - 1) << shift;
+			this.data[index >> wordShift] = (this.data[index >> wordShift] & ~mask) | ((long) entry << shift);
+		}
+
+		/**
+		 * Return the number of bits needed for the given palette size: 1, 2, 4, 8, 16 or 32.
+		 */
+		private static int bitsFor(int paletteSize) {
+			int result = 1;
+			while ((result < 32) && ((1L << result) < paletteSize))
+				result <<= 1;
+			return result;
+		}
+	}
+}
@@ -0,0 +1,543 @@
+package hillbillies.model;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+import hillbillies.common.internal.map.IByteMap3D;
+
+/**
+ * A class of incremental path planners, leading a single unit to a goal cube
+ * with the D* Lite algorithm.
+ *
+ * The planner searches backwards from the goal and keeps its search state
+ * between calls. When cubes of the map change, only the vertices around the
+ * changed cubes are updated, and the next request for a step repairs the
+ * affected part of the search instead of planning from scratch. Planners are
+ * told about changes by a path repairer listening to the map. The search state
+ * of the visited cubes is kept in primitive arrays by node number, and a hash
+ * table with open addressing maps the index of each visited cube to its node.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ * @invar	The goal of each planner lies within its map.
+ * 			| getMap().isValidIndex(getGoal()[0], getGoal()[1], getGoal()[2])
+ */
+public class PathPlanner implements Navigator {
+
+	/**
+	 * Initialize this new path planner from the given start cube to the given goal cube.
+	 *
+	 * @param	map
+	 * 			The map of the game world to plan on.
+	 * @param	start
+	 * 			The cube the unit starts from.
+	 * @param	goal
+	 * 			The cube the unit has to reach.
+	 * @post	The goal of this new planner is equal to the given goal.
+	 * 			| Arrays.equals(new.getGoal(), goal)
+	 * @throws	OutOfBoundsException
+	 * 			The given start or goal does not lie within the given map.
+	 */
+	public PathPlanner(IByteMap3D map, int[] start, int[] goal) throws OutOfBoundsException {
+		if (!map.isValidIndex(start[0], start[1], start[2]))
+			throw new OutOfBoundsException(new double[] {start[0], start[1], start[2]});
+		if (!map.isValidIndex(goal[0], goal[1], goal[2]))
+			throw new OutOfBoundsException(new double[] {goal[0], goal[1], goal[2]});
+		this.map = map;
+		this.nbY = map.getNbY();
+		this.nbZ = map.getNbZ();
+		this.goal = this.indexOf(goal[0], goal[1], goal[2]);
+		this.start = this.indexOf(start[0], start[1], start[2]);
+		this.last = this.start;
+		int node = this.getNode(this.goal);
+		this.rhs[node] = 0;
+		this.insert(this.goal, node);
+	}
+
+	/**
+	 * Constant reflecting the absence of a node in a slot of the hash table.
+	 */
+	private static final int EMPTY = -1;
+
+	/**
+	 * Variable registering the map this planner plans on.
+	 */
+	private final IByteMap3D map;
+
+	/**
+	 * Variables registering the dimensions of the map, used to index cubes.
+	 */
+	private final int nbY, nbZ;
+
+	/**
+	 * Variable registering the index of the goal cube.
+	 */
+	private final int goal;
+
+	/**
+	 * Variable registering the index of the cube the unit currently occupies.
+	 */
+	private int start;
+
+	/**
+	 * Variable registering the start cube at the time of the last repair.
+	 */
+	private int last;
+
+	/**
+	 * Variable registering the key modifier accumulated since the first search.
+	 */
+	private double km;
+
+	/**
+	 * Variable registering the index of the cube of each node.
+	 */
+	private int[] indices = new int[64];
+
+	/**
+	 * Variables registering the cost to the goal and the one step lookahead cost
+	 * of each node.
+	 */
+	private double[] g = new double[64], rhs = new double[64];
+
+	/**
+	 * Variables registering the key each node was last queued under.
+	 */
+	private double[] key1 = new double[64], key2 = new double[64];
+
+	/**
+	 * Variable registering whether each node is queued under its registered key.
+	 */
+	private boolean[] queued = new boolean[64];
+
+	/**
+	 * Variable registering the number of the last path each node was part of.
+	 */
+	private int[] paths = new int[64];
+
+	/**
+	 * Variable registering the number of nodes, that is the number of cubes visited so far.
+	 */
+	private int nbNodes;
+
+	/**
+	 * Variable registering the nodes by the hash of the index of their cube, with linear probing.
+	 */
+	private int[] slots = newSlots(128);
+
+	/**
+	 * Variable registering the priority queue of inconsistent cubes.
+	 */
+	private final PriorityQueue<Entry> open = new PriorityQueue<Entry>();
+
+	/**
+	 * Variable registering the number of the cached path.
+	 */
+	private int path;
+
+	/**
+	 * Variable registering whether changes have been reported since the last search.
+	 */
+	private boolean changed = true;
+
+	/**
+	 * Variable registering whether the cached path crosses a changed cube.
+	 */
+	private boolean pathInvalid = true;
+
+	/**
+	 * Return the map this planner plans on.
+	 */
+	@Basic @Immutable
+	public IByteMap3D getMap() {
+		return this.map;
+	}
+
+	/**
+	 * Return the goal cube of this planner.
+	 */
+	@Basic @Immutable
+	public int[] getGoal() {
+		return this.cubeOf(this.goal);
+	}
+
+	/**
+	 * Check whether the cached path of this planner crosses a cube that changed
+	 * since the path was computed.
+	 */
+	public synchronized boolean isPathInvalid() {
+		return this.pathInvalid;
+	}
+
+	/**
+	 * Return the cubes of the current path from the start cube to the goal,
+	 * repairing the search if needed.
+	 *
+	 * @return	An empty list if the goal cannot be reached.
+	 */
+	public synchronized List<int[]> getPath() {
+		this.repair();
+		List<int[]> result = new ArrayList<int[]>();
+		this.path++;
+		int current = this.start;
+		if (this.getG(current) == Double.POSITIVE_INFINITY)
+			return result;
+		result.add(this.cubeOf(current));
+		this.addToPath(current);
+		while (current != this.goal) {
+			current = this.bestSuccessor(current);
+			if ((current < 0) || (!this.addToPath(current)))
+				break;
+			result.add(this.cubeOf(current));
+		}
+		this.pathInvalid = false;
+		return result;
+	}
+
+	/**
+	 * Return the cubes of the current path from the given cube to the goal,
+	 * which becomes the new start of this planner.
+	 *
+	 * @param	cube
+	 * 			The cube the unit occupies.
+	 * @return	An empty list if the given cube does not lie within the map of this
+	 * 			planner, or the goal cannot be reached from it.
+	 */
+	public synchronized List<int[]> getPath(int[] cube) {
+		if (!this.map.isValidIndex(cube[0], cube[1], cube[2]))
+			return new ArrayList<int[]>();
+		this.start = this.indexOf(cube[0], cube[1], cube[2]);
+		return this.getPath();
+	}
+
+	/**
+	 * Return the adjacent step a unit in the given cube has to take next
+	 * towards the goal of this planner.
+	 *
+	 * @param	cube
+	 * 			The cube the unit occupies, which becomes the new start of this planner.
+	 */
+	@Override
+	public synchronized int[] getNextStep(int[] cube) {
+		if (!this.map.isValidIndex(cube[0], cube[1], cube[2]))
+			return null;
+		this.start = this.indexOf(cube[0], cube[1], cube[2]);
+		this.repair();
+		if (this.start == this.goal)
+			return new int[] {0, 0, 0};
+		if (this.getG(this.start) == Double.POSITIVE_INFINITY)
+			return null;
+		if (this.pathInvalid)
+			this.getPath();
+		int next = this.bestSuccessor(this.start);
+		if (next < 0)
+			return null;
+		int[] to = this.cubeOf(next);
+		return new int[] {to[0] - cube[0], to[1] - cube[1], to[2] - cube[2]};
+	}
+
+	/**
+	 * Register that the cube at the given coordinates changed its terrain type.
+	 *
+	 * @param	x
+	 * 			The x coordinate of the changed cube.
+	 * @param	y
+	 * 			The y coordinate of the changed cube.
+	 * @param	z
+	 * 			The z coordinate of the changed cube.
+	 * @return	True if and only if the cached path of this planner crosses the changed cube.
+	 */
+	public synchronized boolean cubeChanged(int x, int y, int z) {
+		int index = this.indexOf(x, y, z);
+		this.km += this.heuristic(this.last, this.start);
+		this.last = this.start;
+		this.updateVertex(index);
+		for (int dx = -1; dx <= 1; dx++)
+			for (int dy = -1; dy <= 1; dy++)
+				for (int dz = -1; dz <= 1; dz++)
+					if (this.map.isValidIndex(x + dx, y + dy, z + dz))
+						this.updateVertex(this.indexOf(x + dx, y + dy, z + dz));
+		this.changed = true;
+		int node = this.findNode(index);
+		if ((node != EMPTY) && (this.paths[node] == this.path))
+			this.pathInvalid = true;
+		return this.pathInvalid;
+	}
+
+	/**
+	 * Bring the search up to date with the reported changes and the current start cube.
+	 */
+	private void repair() {
+		int current = this.getNode(this.start);
+		if ((!this.changed) && (this.isConsistent(current)) && (this.g[current] < Double.POSITIVE_INFINITY))
+			return;
+		while (!this.open.isEmpty()) {
+			Entry top = this.open.peek();
+			int startNode = this.getNode(this.start);
+			if ((top.compareTo(this.calculateKey(this.start, startNode)) >= 0) && (this.isConsistent(startNode)))
+				break;
+			this.open.poll();
+			int node = this.findNode(top.index);
+			if ((node == EMPTY) || (!this.queued[node]) || (this.key1[node] != top.key1)
+					|| (this.key2[node] != top.key2))
+				continue;
+			Entry fresh = this.calculateKey(top.index, node);
+			if (top.compareTo(fresh) < 0) {
+				this.insert(top.index, node);
+			} else if (this.g[node] > this.rhs[node]) {
+				this.g[node] = this.rhs[node];
+				this.queued[node] = false;
+				this.updateNeighbours(top.index);
+			} else {
+				this.g[node] = Double.POSITIVE_INFINITY;
+				this.queued[node] = false;
+				this.updateVertex(top.index);
+				this.updateNeighbours(top.index);
+			}
+		}
+		this.changed = false;
+	}
+
+	/**
+	 * Update the right hand side value of the cube with the given index and
+	 * requeue it if it became inconsistent.
+	 */
+	private void updateVertex(int index) {
+		int node = this.getNode(index);
+		if (index != this.goal) {
+			double best = Double.POSITIVE_INFINITY;
+			int[] cube = this.cubeOf(index);
+			if (this.isPassable(cube[0], cube[1], cube[2]))
+				for (int dx = -1; dx <= 1; dx++)
+					for (int dy = -1; dy <= 1; dy++)
+						for (int dz = -1; dz <= 1; dz++) {
+							int nx = cube[0] + dx, ny = cube[1] + dy, nz = cube[2] + dz;
+							if (((dx == 0) && (dy == 0) && (dz == 0)) || (!this.isPassable(nx, ny, nz)))
+								continue;
+							double cost = stepCost(dx, dy, dz) + this.getG(this.indexOf(nx, ny, nz));
+							if (cost < best)
+								best = cost;
+						}
+			this.rhs[node] = best;
+		}
+		this.queued[node] = false;
+		if (!this.isConsistent(node))
+			this.insert(index, node);
+	}
+
+	/**
+	 * Update all neighbours of the cube with the given index.
+	 */
+	private void updateNeighbours(int index) {
+		int[] cube = this.cubeOf(index);
+		for (int dx = -1; dx <= 1; dx++)
+			for (int dy = -1; dy <= 1; dy++)
+				for (int dz = -1; dz <= 1; dz++) {
+					int nx = cube[0] + dx, ny = cube[1] + dy, nz = cube[2] + dz;
+					if (((dx == 0) && (dy == 0) && (dz == 0)) || (!this.map.isValidIndex(nx, ny, nz)))
+						continue;
+					this.updateVertex(this.indexOf(nx, ny, nz));
+				}
+	}
+
+	/**
+	 * Return the passable neighbour of the cube with the given index that lies
+	 * on a shortest path to the goal, or -1 if there is none.
+	 */
+	private int bestSuccessor(int index) {
+		int[] cube = this.cubeOf(index);
+		double best = Double.POSITIVE_INFINITY;
+		int result = -1;
+		for (int dx = -1; dx <= 1; dx++)
+			for (int dy = -1; dy <= 1; dy++)
+				for (int dz = -1; dz <= 1; dz++) {
+					int nx = cube[0] + dx, ny = cube[1] + dy, nz = cube[2] + dz;
+					if (((dx == 0) && (dy == 0) && (dz == 0)) || (!this.isPassable(nx, ny, nz)))
+						continue;
+					int neighbour = this.indexOf(nx, ny, nz);
+					double cost = stepCost(dx, dy, dz) + this.getG(neighbour);
+					if (cost < best) {
+						best = cost;
+						result = neighbour;
+					}
+				}
+		return result;
+	}
+
+	/**
+	 * Queue the given node of the cube with the given index under its current key.
+	 */
+	private void insert(int index, int node) {
+		Entry entry = this.calculateKey(index, node);
+		this.key1[node] = entry.key1;
+		this.key2[node] = entry.key2;
+		this.queued[node] = true;
+		this.open.add(entry);
+	}
+
+	/**
+	 * Return the priority of the cube with the given index.
+	 */
+	private Entry calculateKey(int index, int node) {
+		double min = Math.min(this.g[node], this.rhs[node]);
+		return new Entry(index, min + this.heuristic(this.start, index) + this.km, min);
+	}
+
+	/**
+	 * Return the straight line distance between the cubes with the given indices.
+	 */
+	private double heuristic(int from, int to) {
+		int[] a = this.cubeOf(from);
+		int[] b = this.cubeOf(to);
+		return Math.sqrt((a[0] - b[0]) * (a[0] - b[0]) + (a[1] - b[1]) * (a[1] - b[1]) + (a[2] - b[2]) * (a[2] - b[2]));
+	}
+
+	/**
+	 * Return the cost of a step with the given offsets.
+	 */
+	private static double stepCost(int dx, int dy, int dz) {
+		return Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	/**
+	 * Check whether the cube at the given coordinates lies within the map and is passable.
+	 */
+	private boolean isPassable(int x, int y, int z) {
+		return this.map.isValidIndex(x, y, z) && Terrain.isPassable(this.map.getValue(x, y, z));
+	}
+
+	/**
+	 * Return the cost to the goal known for the cube with the given index.
+	 */
+	private double getG(int index) {
+		int node = this.findNode(index);
+		return (node == EMPTY) ? Double.POSITIVE_INFINITY : this.g[node];
+	}
+
+	/**
+	 * Check whether the given node is consistent.
+	 */
+	private boolean isConsistent(int node) {
+		return this.g[node] == this.rhs[node];
+	}
+
+	/**
+	 * Mark the cube with the given index as part of the cached path.
+	 *
+	 * @return	False if and only if the cube already was part of the cached path.
+	 */
+	private boolean addToPath(int index) {
+		int node = this.getNode(index);
+		if (this.paths[node] == this.path)
+			return false;
+		this.paths[node] = this.path;
+		return true;
+	}
+
+	/**
+	 * Return the node of the cube with the given index, or EMPTY if the cube has not been visited.
+	 */
+	private int findNode(int index) {
+		for (int slot = hash(index) & (this.slots.length - 1); this.slots[slot] != EMPTY;
+				slot = (slot + 1) & (this.slots.length - 1))
+			if (this.indices[this.slots[slot]] == index)
+				return this.slots[slot];
+		return EMPTY;
+	}
+
+	/**
+	 * Return the node of the cube with the given index, creating it if needed.
+	 */
+	private int getNode(int index) {
+		int node = this.findNode(index);
+		if (node != EMPTY)
+			return node;
+		node = this.nbNodes++;
+		if (node == this.indices.length) {
+			int length = 2 * node;
+			this.indices = Arrays.copyOf(this.indices, length);
+			this.g = Arrays.copyOf(this.g, length);
+			this.rhs = Arrays.copyOf(this.rhs, length);
+			this.key1 = Arrays.copyOf(this.key1, length);
+			this.key2 = Arrays.copyOf(this.key2, length);
+			this.queued = Arrays.copyOf(this.queued, length);
+			this.paths = Arrays.copyOf(this.paths, length);
+		}
+		this.indices[node] = index;
+		this.g[node] = Double.POSITIVE_INFINITY;
+		this.rhs[node] = Double.POSITIVE_INFINITY;
+		this.paths[node] = this.path - 1;
+		if (2 * this.nbNodes > this.slots.length)
+			this.rehash(2 * this.slots.length);
+		else
+			this.place(node);
+		return node;
+	}
+
+	/**
+	 * Enter the given node in the first free slot for the hash of its cube.
+	 */
+	private void place(int node) {
+		int slot = hash(this.indices[node]) & (this.slots.length - 1);
+		while (this.slots[slot] != EMPTY)
+			slot = (slot + 1) & (this.slots.length - 1);
+		this.slots[slot] = node;
+	}
+
+	/**
+	 * Rebuild the hash table of this planner with the given number of slots.
+	 */
+	private void rehash(int nbSlots) {
+		this.slots = newSlots(nbSlots);
+		for (int node = 0; node < this.nbNodes; node++)
+			this.place(node);
+	}
+
+	private static int[] newSlots(int nbSlots) {
+		int[] result = new int[nbSlots];
+		Arrays.fill(result, EMPTY);
+		return result;
+	}
+
+	/**
+	 * Return the hash of the given cube index, spread over the low bits.
+	 */
+	private static int hash(int index) {
+		int hash = index * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private int indexOf(int x, int y, int z) {
+		return (x * this.nbY + y) * this.nbZ + z;
+	}
+
+	private int[] cubeOf(int index) {
+		return new int[] {index / (this.nbY * this.nbZ), (index / this.nbZ) % this.nbY, index % this.nbZ};
+	}
+
+	/**
+	 * A class of entries in the priority queue of inconsistent cubes.
+	 */
+	private static class Entry implements Comparable<Entry> {
+
+		private Entry(int index, double key1, double key2) {
+			this.index = index;
+			this.key1 = key1;
+			this.key2 = key2;
+		}
+
+		private final int index;
+
+		private final double key1, key2;
+
+		@Override
+		public int compareTo(Entry other) {
+			if (this.key1 != other.key1)
+				return Double.compare(this.key1, other.key1);
+			return Double.compare(this.key2, other.key2);
+		}
+	}
+}
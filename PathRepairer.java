@@ -0,0 +1,119 @@
+package hillbillies.model;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+import hillbillies.common.internal.map.IByteMap3D;
+
+/**
+ * A class of path repairers, forwarding the changes of a map of the game world
+ * to the path planners of the units moving through it.
+ *
+ * Only changes that alter the passability of a cube are forwarded. Planners
+ * created by a repairer are registered weakly, so planners of units that no
+ * longer move are forgotten without an explicit release.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class PathRepairer implements IByteMap3D.Listener {
+
+	/**
+	 * Initialize this new path repairer for the given map.
+	 *
+	 * @param	map
+	 * 			The map whose changes are forwarded.
+	 * @post	The map of this new repairer is the given map.
+	 * 			| new.getMap() == map
+	 * @effect	This new repairer listens to the changes of the given map.
+	 * 			| map.addListener(this)
+	 */
+	public PathRepairer(IByteMap3D map) {
+		this.map = map;
+		map.addListener(this);
+	}
+
+	/**
+	 * Variable registering the map whose changes are forwarded.
+	 */
+	private final IByteMap3D map;
+
+	/**
+	 * Variable registering the planners to notify.
+	 */
+	private final Set<PathPlanner> planners =
+			Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<PathPlanner, Boolean>()));
+
+	/**
+	 * Variable registering the number of planners whose cached path was invalidated.
+	 */
+	private long nbRepairs;
+
+	/**
+	 * Return the map whose changes are forwarded.
+	 */
+	@Basic @Immutable
+	public IByteMap3D getMap() {
+		return this.map;
+	}
+
+	/**
+	 * Return the number of times a change invalidated the cached path of a planner.
+	 */
+	@Basic
+	public synchronized long getNbRepairs() {
+		return this.nbRepairs;
+	}
+
+	/**
+	 * Return a new path planner from the given start cube to the given goal cube,
+	 * registered with this repairer.
+	 *
+	 * @param	start
+	 * 			The cube the unit starts from.
+	 * @param	goal
+	 * 			The cube the unit has to reach.
+	 * @throws	OutOfBoundsException
+	 * 			The given start or goal does not lie within the map of this repairer.
+	 */
+	public PathPlanner plan(int[] start, int[] goal) throws OutOfBoundsException {
+		PathPlanner planner = new PathPlanner(this.map, start, goal);
+		this.planners.add(planner);
+		return planner;
+	}
+
+	/**
+	 * Stop forwarding changes to the given planner.
+	 *
+	 * @param	planner
+	 * 			The planner to release.
+	 */
+	public void release(PathPlanner planner) {
+		this.planners.remove(planner);
+	}
+
+	/**
+	 * Forward the change of the cube at the given coordinates to all registered
+	 * planners, if it changed the passability of that cube.
+	 */
+	@Override
+	public void onChange(int x, int y, int z, byte oldValue, byte newValue) {
+		if (Terrain.isPassable(oldValue) == Terrain.isPassable(newValue))
+			return;
+		List<PathPlanner> targets;
+		synchronized (this.planners) {
+			targets = new ArrayList<PathPlanner>(this.planners);
+		}
+		int invalidated = 0;
+		for (PathPlanner planner : targets)
+			if (planner.cubeChanged(x, y, z))
+				invalidated++;
+		synchronized (this) {
+			this.nbRepairs += invalidated;
+		}
+	}
+}
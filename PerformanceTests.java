@@ -0,0 +1,182 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Performance tests running fixed, seeded scenarios and failing when a frame
+ * exceeds its budget of processor time or allocated bytes on the simulation thread.
+ *
+ * Each scenario first advances its world for a number of warm-up frames, so
+ * the budgets apply to compiled code, and then measures the mean processor time
+ * and the mean number of bytes allocated per frame. Behaviour threads are not
+ * measured; their work is paid for by the units, not by the frame.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class PerformanceTests {
+
+	/**
+	 * Constant reflecting the seed of all scenarios.
+	 */
+	private static final long SEED = 42;
+
+	/**
+	 * Constant reflecting the duration of a frame, in seconds.
+	 */
+	private static final double FRAME_TIME = 1.0 / 30;
+
+	/**
+	 * Constants reflecting the number of frames before and during a measurement.
+	 */
+	private static final int WARMUP_FRAMES = 200, FRAMES = 200;
+
+	/**
+	 * Constant reflecting the size of the scenario worlds along each axis.
+	 */
+	private static final int SIZE = 50;
+
+	private World world;
+
+	private BehaviorScheduler scheduler;
+
+	private Random random;
+
+	@Before
+	public void setUp() {
+		this.world = new World();
+		this.scheduler = new BehaviorScheduler();
+		this.random = new Random(SEED);
+	}
+
+	@After
+	public void tearDown() {
+		this.scheduler.shutdown();
+	}
+
+	@Test
+	public void idleUnits() throws Exception {
+		this.spawn(1000);
+		Budget budget = this.measure(() -> this.world.advanceTime(FRAME_TIME));
+		budget.check("1000 idle units", 250_000, 8_192);
+	}
+
+	@Test
+	public void sprintingMovers() throws Exception {
+		for (Unit unit : this.spawn(1000)) {
+			unit.moveTo(new Heading(this.randomCube()));
+			unit.startSprinting();
+		}
+		Budget budget = this.measure(() -> this.world.advanceTime(FRAME_TIME));
+		budget.check("1000 sprinting movers", 4_000_000, 131_072);
+	}
+
+	@Test
+	public void brawl() throws Exception {
+		Unit[] units = this.spawn(500);
+		Random outcomes = new Random(SEED);
+		Budget budget = this.measure(() -> {
+			for (Unit attacker : units) {
+				Unit defender = units[outcomes.nextInt(units.length)];
+				if (defender != attacker)
+					attacker.resolveAttack(defender, outcomes);
+			}
+			this.world.advanceTime(FRAME_TIME);
+		});
+		budget.check("500-unit brawl", 2_000_000, 262_144);
+	}
+
+	@Test
+	public void massMoveTo() throws Exception {
+		this.world.setTerrain(new ChunkedMap(SIZE, SIZE, SIZE));
+		Unit[] units = this.spawn(1000);
+		int[] next = {0};
+		Budget budget = this.measure(() -> {
+			for (int i = 0; i < 10; i++) {
+				Unit unit = units[next[0]++ % units.length];
+				unit.moveTo(this.world.createPlanner(unit, this.randomCube()));
+			}
+			this.world.advanceTime(FRAME_TIME);
+		});
+		budget.check("mass moveTo", 20_000_000, 262_144);
+	}
+
+	/**
+	 * Create the given number of units at random positions in the world of this
+	 * test, attached to its behaviour scheduler.
+	 */
+	private Unit[] spawn(int nbUnits) throws OutOfBoundsException {
+		Unit[] result = new Unit[nbUnits];
+		for (int i = 0; i < nbUnits; i++) {
+			int agility = 25 + this.random.nextInt(76);
+			int strength = 25 + this.random.nextInt(76);
+			int toughness = 25 + this.random.nextInt(76);
+			result[i] = this.world.createUnit("Hillbilly", this.randomCube(), 100, agility, strength,
+					toughness, false);
+			this.scheduler.attach(result[i]);
+		}
+		return result;
+	}
+
+	private int[] randomCube() {
+		return new int[] {this.random.nextInt(SIZE), this.random.nextInt(SIZE), this.random.nextInt(SIZE)};
+	}
+
+	/**
+	 * Run the given frame for the warm-up frames, and return the mean cost of
+	 * running it for the measured frames.
+	 */
+	private Budget measure(Frame frame) throws Exception {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isCurrentThreadCpuTimeSupported());
+		assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		long thread = Thread.currentThread().getId();
+		for (int i = 0; i < WARMUP_FRAMES; i++)
+			frame.run();
+		long startTime = threads.getCurrentThreadCpuTime();
+		long startBytes = allocations.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < FRAMES; i++)
+			frame.run();
+		long nanos = threads.getCurrentThreadCpuTime() - startTime;
+		long bytes = allocations.getThreadAllocatedBytes(thread) - startBytes;
+		return new Budget(nanos / FRAMES, bytes / FRAMES);
+	}
+
+	/**
+	 * A frame of a scenario.
+	 */
+	private interface Frame {
+		void run() throws Exception;
+	}
+
+	/**
+	 * A class of measured costs per frame.
+	 */
+	private static class Budget {
+
+		private Budget(long nanos, long bytes) {
+			this.nanos = nanos;
+			this.bytes = bytes;
+		}
+
+		private final long nanos, bytes;
+
+		/**
+		 * Fail if these costs exceed the given processor time and allocated bytes per frame.
+		 */
+		private void check(String scenario, long maxNanos, long maxBytes) {
+			assertTrue(scenario + ": " + this.nanos + " ns per frame exceeds " + maxNanos,
+					this.nanos <= maxNanos);
+			assertTrue(scenario + ": " + this.bytes + " bytes per frame exceed " + maxBytes,
+					this.bytes <= maxBytes);
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the planners guiding units through the terrain of the game world.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class PlanningTests {
+
+	private ChunkedMap map;
+
+	private PathRepairer repairer;
+
+	@Before
+	public void setUp() {
+		this.map = new ChunkedMap(20, 20, 1);
+		this.repairer = new PathRepairer(this.map);
+	}
+
+	@Test
+	public void pathPlanner_StraightPath() throws Exception {
+		PathPlanner planner = this.repairer.plan(new int[] {0, 0, 0}, new int[] {9, 0, 0});
+		List<int[]> path = planner.getPath();
+		assertEquals(10, path.size());
+		assertArrayEquals(new int[] {9, 0, 0}, path.get(9));
+		assertFalse(planner.isPathInvalid());
+	}
+
+	@Test
+	public void pathPlanner_RepairsClosedCubeOnPath() throws Exception {
+		PathPlanner planner = this.repairer.plan(new int[] {0, 0, 0}, new int[] {9, 0, 0});
+		planner.getPath();
+		this.map.setValue(5, 0, 0, Terrain.ROCK);
+		assertTrue(planner.isPathInvalid());
+		assertEquals(1, this.repairer.getNbRepairs());
+		List<int[]> path = planner.getPath();
+		assertArrayEquals(new int[] {9, 0, 0}, path.get(path.size() - 1));
+		for (int[] cube : path)
+			assertTrue(Terrain.isPassable(this.map.getValue(cube[0], cube[1], cube[2])));
+	}
+
+	@Test
+	public void pathPlanner_IgnoresChangeOffPath() throws Exception {
+		PathPlanner planner = this.repairer.plan(new int[] {0, 0, 0}, new int[] {9, 0, 0});
+		planner.getPath();
+		this.map.setValue(5, 10, 0, Terrain.ROCK);
+		assertFalse(planner.isPathInvalid());
+		this.map.setValue(5, 10, 0, Terrain.TREE);
+		assertEquals(0, this.repairer.getNbRepairs());
+	}
+
+	@Test
+	public void pathPlanner_WallAndOpening() throws Exception {
+		PathPlanner planner = this.repairer.plan(new int[] {0, 0, 0}, new int[] {9, 0, 0});
+		planner.getPath();
+		for (int y = 0; y < 20; y++)
+			this.map.setValue(5, y, 0, Terrain.ROCK);
+		assertTrue(planner.getPath().isEmpty());
+		assertNull(planner.getNextStep(new int[] {0, 0, 0}));
+		this.map.setValue(5, 19, 0, Terrain.AIR);
+		List<int[]> path = planner.getPath();
+		assertFalse(path.isEmpty());
+		boolean throughOpening = false;
+		for (int[] cube : path)
+			throughOpening |= (cube[0] == 5) && (cube[1] == 19);
+		assertTrue(throughOpening);
+	}
+
+	@Test
+	public void pathPlanner_FollowsMovingStart() throws Exception {
+		PathPlanner planner = this.repairer.plan(new int[] {0, 0, 0}, new int[] {9, 9, 0});
+		int[] cube = {0, 0, 0};
+		for (int i = 0; (i < 40) && ((cube[0] != 9) || (cube[1] != 9)); i++) {
+			int[] step = planner.getNextStep(cube);
+			cube = new int[] {cube[0] + step[0], cube[1] + step[1], cube[2] + step[2]};
+			if (i == 3)
+				this.map.setValue(6, 6, 0, Terrain.ROCK);
+		}
+		assertArrayEquals(new int[] {9, 9, 0}, cube);
+	}
+
+	@Test
+	public void cooperativePlanner_LeavesDeadEnd() throws Exception {
+		for (int y = 0; y < 15; y++)
+			this.map.setValue(10, y, 0, Terrain.ROCK);
+		CooperativePlanner planner = new CooperativePlanner(new PassableMap(this.map), new ReservationTable(),
+				this.repairer, 0, new int[] {15, 5, 0}, 4);
+		int[] cube = {5, 5, 0};
+		boolean guided = false;
+		for (int i = 0; (i < 100) && ((cube[0] != 15) || (cube[1] != 5)); i++) {
+			int[] step = planner.getNextStep(cube);
+			assertNotNull(step);
+			cube = new int[] {cube[0] + step[0], cube[1] + step[1], cube[2] + step[2]};
+			guided |= planner.isGuided();
+		}
+		assertArrayEquals(new int[] {15, 5, 0}, cube);
+		assertTrue(guided);
+		assertArrayEquals(new int[3], planner.getNextStep(cube));
+		assertFalse(planner.isGuided());
+	}
+
+	@Test
+	public void reservationTable_ExpiresPastSlots() {
+		ReservationTable table = new ReservationTable();
+		assertTrue(table.reserve(1, new int[] {2, 3, 0}, 0));
+		assertTrue(table.reserve(1, new int[] {2, 4, 0}, 1));
+		assertFalse(table.reserve(2, new int[] {2, 4, 0}, 1));
+		table.advanceTo(1);
+		assertEquals(1, table.getNbReservations());
+		assertEquals(-1, table.getReserver(new int[] {2, 3, 0}, 0));
+		assertEquals(1, table.getReserver(new int[] {2, 4, 0}, 1));
+		assertFalse(table.reserve(2, new int[] {2, 3, 0}, 0));
+	}
+
+	@Test
+	public void reservationTable_DistinctDistantSlots() {
+		ReservationTable table = new ReservationTable();
+		assertTrue(table.reserve(1, new int[] {2, 3, 0}, 3));
+		assertTrue(table.reserve(2, new int[] {2, 3, 0}, 3 + (1 << 16)));
+		assertEquals(1, table.getReserver(new int[] {2, 3, 0}, 3));
+		assertEquals(2, table.getReserver(new int[] {2, 3, 0}, 3 + (1 << 16)));
+	}
+
+	@Test
+	public void cooperativePlanner_FollowsWorldClock() throws Exception {
+		ReservationTable table = new ReservationTable();
+		table.advanceTo(100);
+		CooperativePlanner planner = new CooperativePlanner(new PassableMap(this.map), table, 0,
+				new int[] {15, 5, 0}, 4);
+		int[] cube = step(new int[] {5, 5, 0}, planner.getNextStep(new int[] {5, 5, 0}));
+		assertEquals(0, planner.getNbWaits());
+		assertEquals(0, table.getReserver(cube, 101));
+		// The unit runs ahead of the clock: it waits for the slot of its next step.
+		cube = step(cube, planner.getNextStep(cube));
+		assertEquals(1, planner.getNbWaits());
+		// The unit fell behind: the next window starts at the current slot.
+		table.advanceTo(110);
+		cube = step(cube, planner.getNextStep(cube));
+		assertEquals(0, planner.getNbWaits());
+		assertEquals(0, table.getReserver(cube, 111));
+		planner.release();
+		assertEquals(0, table.getNbReservations());
+	}
+
+	@Test
+	public void cooperativePlanner_UnguidedInOpenTerrain() throws Exception {
+		CooperativePlanner planner = new CooperativePlanner(new PassableMap(this.map), new ReservationTable(),
+				this.repairer, 0, new int[] {15, 5, 0}, 4);
+		int[] cube = {5, 5, 0};
+		for (int i = 0; (i < 20) && ((cube[0] != 15) || (cube[1] != 5)); i++) {
+			int[] step = planner.getNextStep(cube);
+			cube = new int[] {cube[0] + step[0], cube[1] + step[1], cube[2] + step[2]};
+			assertFalse(planner.isGuided());
+		}
+		assertArrayEquals(new int[] {15, 5, 0}, cube);
+	}
+
+	/**
+	 * Return the cube reached by taking the given step from the given cube.
+	 */
+	private static int[] step(int[] cube, int[] step) {
+		return new int[] {cube[0] + step[0], cube[1] + step[1], cube[2] + step[2]};
+	}
+}
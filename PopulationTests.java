@@ -0,0 +1,219 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import hillbillies.part1.facade.Facade;
+import ogp.framework.util.ModelException;
+
+/**
+ * Tests on creating the units of a world in bulk and on reading their state in
+ * bulk, and on the lifecycles reaping and recycling the units of a world.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class PopulationTests {
+
+	private World world;
+
+	@Before
+	public void setUp() {
+		this.world = new World();
+	}
+
+	@Test
+	public void createUnits_AddsUnitsInOrder() throws Exception {
+		Unit[] units = this.createUnits("Bulk Alpha", "Bulk Beta", "Bulk Gamma");
+		assertEquals(3, this.world.getNbUnits());
+		for (int i = 0; i < units.length; i++) {
+			assertEquals(i, units[i].getId());
+			assertArrayEquals(new int[] {i, 2 * i, 5}, units[i].getCube());
+		}
+		assertEquals("Bulk Beta", units[1].getName());
+		assertEquals(60, units[1].getAgility());
+		assertTrue(units[2].isDefaultBehaviorEnabled());
+		assertFalse(units[1].isDefaultBehaviorEnabled());
+	}
+
+	@Test
+	public void createUnits_DifferentLengths() throws Exception {
+		try {
+			this.world.createUnits(new String[] {"Bulk Alpha", "Bulk Beta"}, new int[2], new int[2], new int[1],
+					new int[] {50, 50}, new int[] {50, 50}, new int[] {50, 50}, new int[] {50, 50}, new boolean[2]);
+			fail();
+		} catch (IllegalArgumentException exc) {
+		}
+		assertEquals(0, this.world.getNbUnits());
+	}
+
+	@Test
+	public void createUnits_InvalidNameAddsNoUnit() throws Exception {
+		try {
+			this.createUnits("Bulk Alpha", "bulk beta", "Bulk Gamma");
+			fail();
+		} catch (IllegalArgumentException exc) {
+		}
+		assertEquals(0, this.world.getNbUnits());
+	}
+
+	@Test
+	public void createUnits_OutOfBoundsAddsNoUnit() throws Exception {
+		try {
+			this.world.createUnits(new String[] {"Bulk Alpha", "Bulk Beta"}, new int[] {1, 1}, new int[] {1, -1},
+					new int[] {1, 1}, new int[] {50, 50}, new int[] {50, 50}, new int[] {50, 50}, new int[] {50, 50},
+					new boolean[2]);
+			fail();
+		} catch (OutOfBoundsException exc) {
+		}
+		assertEquals(0, this.world.getNbUnits());
+	}
+
+	@Test
+	public void getters_MatchUnits() throws Exception {
+		Unit[] units = this.createUnits("Bulk Alpha", "Bulk Beta", "Bulk Gamma");
+		double[] positions = new double[3 * units.length];
+		double[] orientations = new double[units.length];
+		int[] hitpoints = new int[units.length];
+		int[] stamina = new int[units.length];
+		byte[] activities = new byte[units.length];
+		this.world.getPositions(positions);
+		this.world.getOrientations(orientations);
+		this.world.getHitpoints(hitpoints);
+		this.world.getStamina(stamina);
+		this.world.getActivities(activities);
+		for (Unit unit : units) {
+			int id = unit.getId();
+			for (int i = 0; i < 3; i++)
+				assertEquals(unit.getPosition()[i], positions[3 * id + i], 0);
+			assertEquals(unit.getOrientation(), orientations[id], 0);
+			assertEquals(unit.getHitpoints(), hitpoints[id]);
+			assertEquals(unit.getStamina(), stamina[id]);
+			assertEquals(unit.getActivity().getCode(), activities[id]);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getPositions_ArrayTooSmall() throws Exception {
+		this.createUnits("Bulk Alpha", "Bulk Beta");
+		this.world.getPositions(new double[5]);
+	}
+
+	@Test
+	public void storeUnits_AddsRecordsOnly() throws Exception {
+		this.createUnits("Bulk Alpha");
+		int first = this.world.storeUnits(new String[] {"Stored Alpha", "Stored Beta"}, new int[] {1, 2},
+				new int[] {3, 4}, new int[] {5, 6}, new int[] {50, 50}, new int[] {50, 50}, new int[] {50, 50},
+				new int[] {50, 50}, new boolean[2]);
+		assertEquals(1, this.world.getNbUnits());
+		UnitView view = this.world.getUnitStore().view(first + 1);
+		assertEquals("Stored Beta", view.getName());
+		assertEquals(4, view.getPosition(1), 0);
+	}
+
+	@Test
+	public void facade_CreateUnitsAndReadPositions() throws Exception {
+		Facade facade = new Facade();
+		Unit[] units = facade.createUnits(new String[] {"Facade Alpha", "Facade Beta"}, new int[] {1, 2},
+				new int[] {3, 4}, new int[] {5, 6}, new int[] {50, 50}, new int[] {50, 50}, new int[] {50, 50},
+				new int[] {50, 50}, new boolean[2]);
+		double[] positions = new double[3 * facade.getNbUnits()];
+		facade.getPositions(positions);
+		assertEquals(units[1].getPosition()[2], positions[3 * units[1].getId() + 2], 0);
+		try {
+			facade.getPositions(new double[1]);
+			fail();
+		} catch (ModelException exc) {
+		}
+	}
+
+	@Test
+	public void unitDied_ReapedAtEndOfFrame() throws Exception {
+		Unit[] units = this.createUnits("Mortal Alpha", "Mortal Beta");
+		UnitLifecycle lifecycle = this.world.getLifecycle();
+		this.world.unitDied(units[0]);
+		this.world.unitDied(units[0]);
+		assertFalse(this.world.isAlive(0));
+		assertEquals(1, lifecycle.getNbDeaths());
+		assertEquals(0, lifecycle.getNbFree());
+		assertTrue(this.world.getUnitTree().contains(0));
+		this.world.advanceTime(0.1);
+		assertEquals(1, lifecycle.getNbFree());
+		assertEquals(1, lifecycle.getNbAlive());
+		assertFalse(this.world.getUnitTree().contains(0));
+		assertTrue(this.world.isAlive(1));
+		assertFalse(this.world.isAlive(2));
+	}
+
+	@Test
+	public void createUnit_RecyclesReapedUnit() throws Exception {
+		Unit[] units = this.createUnits("Mortal Alpha", "Mortal Beta");
+		int generation = units[1].getGeneration();
+		double[] position = units[1].getPosition();
+		this.world.unitDied(units[1]);
+		this.world.advanceTime(0.1);
+		Unit unit = this.world.createUnit("Reborn Unit", new int[] {7, 8, 9}, 50, 50, 50, 50, false);
+		assertSame(units[1], unit);
+		assertEquals(1, unit.getId());
+		assertEquals(generation + 1, unit.getGeneration());
+		assertEquals("Reborn Unit", unit.getName());
+		assertArrayEquals(new int[] {7, 8, 9}, unit.getCube());
+		assertArrayEquals(new double[] {1, 2, 5}, position, 0);
+		assertEquals(2, this.world.getNbUnits());
+		assertTrue(this.world.isAlive(1));
+		assertTrue(this.world.getUnitTree().contains(1));
+		assertEquals(1, this.world.getLifecycle().getNbRecycled());
+		assertEquals(0, this.world.getLifecycle().getNbFree());
+	}
+
+	@Test
+	public void createUnits_RecyclesBeforeAddingUnits() throws Exception {
+		Unit[] units = this.createUnits("Mortal Alpha", "Mortal Beta", "Mortal Gamma");
+		this.world.unitDied(units[0]);
+		this.world.unitDied(units[2]);
+		this.world.advanceTime(0.1);
+		this.world.createUnits(new String[] {"Reborn Alpha", "Reborn Beta", "Newborn Unit"}, new int[] {1, 2, 3},
+				new int[] {1, 2, 3}, new int[] {1, 2, 3}, new int[] {50, 50, 50}, new int[] {50, 50, 50},
+				new int[] {50, 50, 50}, new int[] {50, 50, 50}, new boolean[3]);
+		assertEquals(4, this.world.getNbUnits());
+		assertEquals(2, this.world.getLifecycle().getNbRecycled());
+		assertEquals(4, this.world.getLifecycle().getNbAlive());
+		assertEquals("Newborn Unit", this.world.getUnit(3).getName());
+	}
+
+	@Test
+	public void createUnit_InvalidNameKeepsFreeSlot() throws Exception {
+		Unit[] units = this.createUnits("Mortal Alpha");
+		this.world.unitDied(units[0]);
+		this.world.advanceTime(0.1);
+		try {
+			this.world.createUnit("reborn", new int[] {1, 1, 1}, 50, 50, 50, 50, false);
+			fail();
+		} catch (IllegalArgumentException exc) {
+		}
+		assertEquals(1, this.world.getLifecycle().getNbFree());
+		assertFalse(this.world.isAlive(0));
+	}
+
+	/**
+	 * Create units with the given names in one call, in cubes along a diagonal line.
+	 */
+	private Unit[] createUnits(String... names) throws Exception {
+		int n = names.length;
+		int[] x = new int[n], y = new int[n], z = new int[n];
+		int[] weight = new int[n], agility = new int[n], strength = new int[n], toughness = new int[n];
+		boolean[] enableDefaultBehavior = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = i;
+			y[i] = 2 * i;
+			z[i] = 5;
+			weight[i] = 70;
+			agility[i] = 50 + 10 * i;
+			strength[i] = 50;
+			toughness[i] = 40;
+			enableDefaultBehavior[i] = (i == 2);
+		}
+		return this.world.createUnits(names, x, y, z, weight, agility, strength, toughness, enableDefaultBehavior);
+	}
+}
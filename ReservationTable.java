@@ -0,0 +1,147 @@
+package hillbillies.model;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A class of reservation tables, registering which unit will occupy which cube
+ * of the game world during which time slot.
+ *
+ * A time slot lasts SLOT_DURATION seconds of simulation time, about the time a
+ * unit with average attributes needs for one step to an adjacent cube. The world
+ * owning a table advances its current slot as simulation time passes, which
+ * expires the reservations of earlier slots, including those of units that
+ * stopped moving without cancelling them. Units planning their movement reserve
+ * the cubes they will occupy in the coming slots, and other units plan around
+ * those reservations, so conflicts are resolved when planning instead of by
+ * collision tests every tick.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class ReservationTable {
+
+	/**
+	 * Initialize this new reservation table without any reservations.
+	 */
+	public ReservationTable() {
+	}
+
+	/**
+	 * Constant reflecting the duration of a time slot, in seconds.
+	 */
+	public static final double SLOT_DURATION = 1.0;
+
+	/**
+	 * Variable registering, for each slot, the unit reserving each cube during that slot.
+	 */
+	private final TreeMap<Long, Map<Long, Integer>> slots = new TreeMap<Long, Map<Long, Integer>>();
+
+	/**
+	 * Variable registering the number of reservations in this table.
+	 */
+	private int nbReservations;
+
+	/**
+	 * Variable registering the first slot that has not expired.
+	 */
+	private long currentSlot;
+
+	/**
+	 * Return the first slot that has not expired.
+	 */
+	public synchronized long getCurrentSlot() {
+		return this.currentSlot;
+	}
+
+	/**
+	 * Return the number of reservations in this table.
+	 */
+	public synchronized int getNbReservations() {
+		return this.nbReservations;
+	}
+
+	/**
+	 * Return the identifier of the unit that reserved the given cube during the
+	 * given slot, or -1 if it is free.
+	 */
+	public synchronized int getReserver(int[] cube, long slot) {
+		Map<Long, Integer> reservations = this.slots.get(slot);
+		Integer unit = (reservations == null) ? null : reservations.get(key(cube));
+		return (unit == null) ? -1 : unit;
+	}
+
+	/**
+	 * Check whether the unit with the given identifier can move from the given
+	 * cube to the given cube during the given slot.
+	 *
+	 * @return	True if and only if the target cube is not reserved by another unit
+	 * 			in the next slot, and no other unit moves the opposite way during the slot.
+	 */
+	public synchronized boolean canMove(int unitId, int[] from, int[] to, long slot) {
+		int occupant = this.getReserver(to, slot + 1);
+		if ((occupant >= 0) && (occupant != unitId))
+			return false;
+		int swapper = this.getReserver(to, slot);
+		return (swapper < 0) || (swapper == unitId) || (this.getReserver(from, slot + 1) != swapper);
+	}
+
+	/**
+	 * Reserve the given cube during the given slot for the unit with the given identifier.
+	 *
+	 * @return	True if and only if the reservation was made, because the cube was
+	 * 			free or already reserved by that unit during that slot.
+	 */
+	public synchronized boolean reserve(int unitId, int[] cube, long slot) {
+		if (slot < this.currentSlot)
+			return false;
+		Map<Long, Integer> reservations = this.slots.get(slot);
+		if (reservations == null) {
+			reservations = new HashMap<Long, Integer>();
+			this.slots.put(slot, reservations);
+		}
+		Integer occupant = reservations.putIfAbsent(key(cube), unitId);
+		if (occupant != null)
+			return occupant == unitId;
+		this.nbReservations++;
+		return true;
+	}
+
+	/**
+	 * Cancel all reservations of the unit with the given identifier from the given slot on.
+	 */
+	public synchronized void release(int unitId, long fromSlot) {
+		Iterator<Map<Long, Integer>> slots = this.slots.tailMap(fromSlot, true).values().iterator();
+		while (slots.hasNext()) {
+			Map<Long, Integer> reservations = slots.next();
+			for (Iterator<Integer> it = reservations.values().iterator(); it.hasNext();)
+				if (it.next() == unitId) {
+					it.remove();
+					this.nbReservations--;
+				}
+			if (reservations.isEmpty())
+				slots.remove();
+		}
+	}
+
+	/**
+	 * Expire all reservations of slots before the given slot.
+	 *
+	 * @param	slot
+	 * 			The new current slot.
+	 */
+	public synchronized void advanceTo(long slot) {
+		while ((!this.slots.isEmpty()) && (this.slots.firstKey() < slot))
+			this.nbReservations -= this.slots.pollFirstEntry().getValue().size();
+		if (slot > this.currentSlot)
+			this.currentSlot = slot;
+	}
+
+	/**
+	 * Return the key of the given cube within a slot.
+	 */
+	private static long key(int[] cube) {
+		return ((long) (cube[0] & 0x1FFFFF) << 42) | ((long) (cube[1] & 0x1FFFFF) << 21) | (cube[2] & 0x1FFFFF);
+	}
+}
@@ -0,0 +1,194 @@
+package hillbillies.model;
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of simulation clocks, turning the variable frame durations of the
+ * game loop into a bounded number of fixed simulation steps.
+ *
+ * Frame time is collected in an accumulator. Each call to advance consumes as
+ * many whole timesteps from the accumulator as possible, but never more than the
+ * maximal number of catch-up steps; time that cannot be caught up is dropped, so
+ * the simulation cost of a single frame stays bounded after a hitch. The part of
+ * a timestep that remains in the accumulator is exposed as an interpolation
+ * factor for rendering.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ * @invar	The timestep of each simulation clock is a valid duration.
+ * 			| Unit.isValidDuration(getTimestep())
+ * @invar	The accumulated time of each simulation clock is smaller than its timestep.
+ * 			| getAccumulatedTime() < getTimestep()
+ */
+public class SimulationClock {
+
+	/**
+	 * Initialize this new simulation clock with the default timestep and
+	 * the default maximal number of catch-up steps.
+	 *
+	 * @effect	| this(DEFAULT_TIMESTEP, DEFAULT_MAX_CATCH_UP_STEPS)
+	 */
+	public SimulationClock() {
+		this(DEFAULT_TIMESTEP, DEFAULT_MAX_CATCH_UP_STEPS);
+	}
+
+	/**
+	 * Initialize this new simulation clock with given timestep and maximal
+	 * number of catch-up steps.
+	 *
+	 * @param	timestep
+	 * 			The fixed timestep for this new clock, in seconds.
+	 * @param	maxCatchUpSteps
+	 * 			The maximal number of steps this new clock yields per frame.
+	 * @post	The timestep of this new clock is the given timestep.
+	 * 			| new.getTimestep() == timestep
+	 * @post	The maximal number of catch-up steps of this new clock is the given number.
+	 * 			| new.getMaxCatchUpSteps() == maxCatchUpSteps
+	 * @throws	IllegalArgumentException
+	 * 			The given timestep is zero or not a valid duration, or the given
+	 * 			number of catch-up steps is not positive.
+	 * 			| (timestep == 0) || (! Unit.isValidDuration(timestep)) || (maxCatchUpSteps < 1)
+	 */
+	public SimulationClock(double timestep, int maxCatchUpSteps) throws IllegalArgumentException {
+		if ((timestep == 0) || (!Unit.isValidDuration(timestep)))
+			throw new IllegalArgumentException("Invalid timestep: " + timestep);
+		if (maxCatchUpSteps < 1)
+			throw new IllegalArgumentException("Invalid number of catch-up steps: " + maxCatchUpSteps);
+		this.timestep = timestep;
+		this.maxCatchUpSteps = maxCatchUpSteps;
+	}
+
+	/**
+	 * Constant reflecting the default timestep of a simulation clock.
+	 *
+	 * @return	The default timestep is 0.1 seconds.
+	 * 			| result == 0.1
+	 */
+	public static final double DEFAULT_TIMESTEP = 0.1;
+
+	/**
+	 * Constant reflecting the default maximal number of catch-up steps per frame.
+	 *
+	 * @return	The default maximal number of catch-up steps is 5.
+	 * 			| result == 5
+	 */
+	public static final int DEFAULT_MAX_CATCH_UP_STEPS = 5;
+
+	/**
+	 * Variable registering the fixed timestep of this clock.
+	 */
+	private final double timestep;
+
+	/**
+	 * Variable registering the maximal number of steps this clock yields per frame.
+	 */
+	private final int maxCatchUpSteps;
+
+	/**
+	 * Variable registering the frame time that has not been simulated yet.
+	 */
+	private double accumulator;
+
+	/**
+	 * Variable registering the total simulated time of this clock.
+	 */
+	private double simulationTime;
+
+	/**
+	 * Variable registering the total frame time this clock had to drop.
+	 */
+	private double droppedTime;
+
+	/**
+	 * Return the fixed timestep of this clock, in seconds.
+	 */
+	@Basic @Immutable
+	public double getTimestep() {
+		return this.timestep;
+	}
+
+	/**
+	 * Return the maximal number of steps this clock yields per frame.
+	 */
+	@Basic @Immutable
+	public int getMaxCatchUpSteps() {
+		return this.maxCatchUpSteps;
+	}
+
+	/**
+	 * Return the frame time that has been accumulated but not simulated yet.
+	 */
+	@Basic
+	public double getAccumulatedTime() {
+		return this.accumulator;
+	}
+
+	/**
+	 * Return the total time simulated by this clock.
+	 */
+	@Basic
+	public double getSimulationTime() {
+		return this.simulationTime;
+	}
+
+	/**
+	 * Return the total frame time this clock dropped because the maximal
+	 * number of catch-up steps was exceeded.
+	 */
+	@Basic
+	public double getDroppedTime() {
+		return this.droppedTime;
+	}
+
+	/**
+	 * Return the interpolation factor between the previous and the current
+	 * simulation step, to be used for rendering.
+	 *
+	 * @return	The accumulated time as a fraction of the timestep.
+	 * 			| result == getAccumulatedTime() / getTimestep()
+	 */
+	public double getAlpha() {
+		return this.accumulator / this.timestep;
+	}
+
+	/**
+	 * Add the given frame duration to this clock and return the number of
+	 * fixed timesteps that have to be simulated for it.
+	 *
+	 * @param	frameTime
+	 * 			The duration of the frame, in seconds.
+	 * @return	The number of whole timesteps in the accumulated time,
+	 * 			limited to the maximal number of catch-up steps.
+	 * @post	If more steps were due than the maximal number of catch-up steps,
+	 * 			the surplus time is dropped, keeping only the fraction of a timestep.
+	 * @throws	IllegalArgumentException
+	 * 			The given frame time is negative.
+	 * 			| frameTime < 0
+	 */
+	public int advance(double frameTime) throws IllegalArgumentException {
+		if (frameTime < 0)
+			throw new IllegalArgumentException("Negative frame time: " + frameTime);
+		this.accumulator += frameTime;
+		int steps = (int) (this.accumulator / this.timestep);
+		if (steps > this.maxCatchUpSteps) {
+			double excess = (steps - this.maxCatchUpSteps) * this.timestep;
+			this.droppedTime += excess;
+			this.accumulator -= excess;
+			steps = this.maxCatchUpSteps;
+		}
+		this.accumulator -= steps * this.timestep;
+		if (this.accumulator < 0)
+			this.accumulator = 0;
+		this.simulationTime += steps * this.timestep;
+		return steps;
+	}
+
+	/**
+	 * Reset this clock, discarding all accumulated time.
+	 *
+	 * @post	| new.getAccumulatedTime() == 0
+	 */
+	public void reset() {
+		this.accumulator = 0;
+	}
+}
@@ -0,0 +1,235 @@
+package hillbillies.model;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * A class collecting the Java Flight Recorder events of the simulation.
+ *
+ * Each event measures its own duration between begin and end. Unit steps only
+ * time the computation of a step, not the time a unit waits for it to pass,
+ * and also keep that time in a field of elapsed nanoseconds. The fields of an event are
+ * only filled in when it will be committed, and events below their threshold
+ * or disabled in the recording settings are dropped before that, so they cost
+ * next to nothing when no recording is running. The thresholds below are the
+ * defaults; recordings can override them by the names of the events.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+final class SimulationEvents {
+
+	/**
+	 * This class only collects the events and cannot be instantiated.
+	 */
+	private SimulationEvents() {
+	}
+
+	/**
+	 * Constant reflecting the category of all events of the simulation.
+	 */
+	static final String CATEGORY = "Hillbillies";
+
+	/**
+	 * A class of events recording one time step of a unit.
+	 */
+	@Name("hillbillies.UnitStep")
+	@Label("Unit Step")
+	@Description("The time of a unit advanced in its current activity")
+	@Category(CATEGORY)
+	@Threshold("1 ms")
+	@StackTrace(false)
+	static class UnitStep extends Event {
+
+		@Label("Unit")
+		String unit;
+
+		@Label("Activity")
+		String activity;
+
+		@Label("Time Step")
+		@Description("The simulated duration of the step, in seconds")
+		double timeStep;
+
+		@Label("Elapsed")
+		@Description("The time spent computing the step, without waiting for it to pass")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsed;
+
+		/**
+		 * Variable registering the value of System.nanoTime() when this event started,
+		 * if it is enabled.
+		 */
+		private transient long start;
+
+		/**
+		 * Start timing this event.
+		 */
+		void start() {
+			if (this.isEnabled())
+				this.start = System.nanoTime();
+			this.begin();
+		}
+
+		/**
+		 * Commit this event for the given unit and time step, if it should be recorded.
+		 */
+		void commit(Unit unit, Activity activity, double duration) {
+			this.end();
+			if (!this.shouldCommit())
+				return;
+			this.elapsed = System.nanoTime() - this.start;
+			this.unit = unit.getName();
+			this.activity = activity.name();
+			this.timeStep = duration;
+			this.commit();
+		}
+	}
+
+	/**
+	 * A class of events recording the planning of the next step of a moving unit.
+	 */
+	@Name("hillbillies.Planning")
+	@Label("Planning")
+	@Description("A navigator chose the next step of a unit")
+	@Category(CATEGORY)
+	@Threshold("1 ms")
+	@StackTrace(false)
+	static class Planning extends Event {
+
+		@Label("Unit")
+		String unit;
+
+		@Label("Navigator")
+		String navigator;
+
+		@Label("Reached")
+		boolean reached;
+
+		/**
+		 * Commit this event for the given unit and navigator, if it should be recorded.
+		 */
+		void commit(Unit unit, Navigator navigator, int[] step) {
+			this.end();
+			if (!this.shouldCommit())
+				return;
+			this.unit = unit.getName();
+			this.navigator = navigator.getClass().getSimpleName();
+			this.reached = (step == null) || ((step[0] == 0) && (step[1] == 0) && (step[2] == 0));
+			this.commit();
+		}
+	}
+
+	/**
+	 * A class of events recording the resolution of an attack.
+	 */
+	@Name("hillbillies.Attack")
+	@Label("Attack")
+	@Description("The outcome of an attack was resolved")
+	@Category(CATEGORY)
+	@Enabled(false)
+	@StackTrace(false)
+	static class Attack extends Event {
+
+		@Label("Attacker")
+		String attacker;
+
+		@Label("Defender")
+		String defender;
+
+		@Label("Outcome")
+		String outcome;
+
+		/**
+		 * Commit this event for the given units and outcome, if it should be recorded.
+		 */
+		void commit(Unit attacker, Unit defender, AttackOutcome outcome) {
+			this.end();
+			if (!this.shouldCommit())
+				return;
+			this.attacker = attacker.getName();
+			this.defender = defender.getName();
+			this.outcome = outcome.name();
+			this.commit();
+		}
+	}
+
+	/**
+	 * A class of events recording one restoring cycle of a resting unit.
+	 */
+	@Name("hillbillies.Restore")
+	@Label("Restore")
+	@Description("A resting unit restored hitpoints or stamina")
+	@Category(CATEGORY)
+	@Enabled(false)
+	@StackTrace(false)
+	static class Restore extends Event {
+
+		@Label("Unit")
+		String unit;
+
+		@Label("Hitpoints")
+		int hitpoints;
+
+		@Label("Stamina")
+		int stamina;
+
+		/**
+		 * Commit this event for the given unit, if it should be recorded.
+		 */
+		void commit(Unit unit) {
+			this.end();
+			if (!this.shouldCommit())
+				return;
+			this.unit = unit.getName();
+			this.hitpoints = unit.getHitpoints();
+			this.stamina = unit.getStamina();
+			this.commit();
+		}
+	}
+
+	/**
+	 * A class of events recording the frame of a world.
+	 */
+	@Name("hillbillies.WorldTick")
+	@Label("World Tick")
+	@Description("The time of a world advanced with a frame")
+	@Category(CATEGORY)
+	@Threshold("5 ms")
+	@StackTrace(false)
+	static class WorldTick extends Event {
+
+		@Label("Frame Time")
+		@Description("The simulated duration of the frame, in seconds")
+		double frameTime;
+
+		@Label("Ticks")
+		int ticks;
+
+		@Label("Units")
+		int units;
+
+		@Label("Unit Steps")
+		int steps;
+
+		/**
+		 * Commit this event for the given world and frame, if it should be recorded.
+		 */
+		void commit(World world, double frameTime, int ticks, int steps) {
+			this.end();
+			if (!this.shouldCommit())
+				return;
+			this.frameTime = frameTime;
+			this.ticks = ticks;
+			this.units = world.getNbUnits();
+			this.steps = steps;
+			this.commit();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the consistent snapshots of the state of units, read while the units change.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class SnapshotTests {
+
+	/**
+	 * Constant reflecting the duration of a frame, in seconds.
+	 */
+	private static final double FRAME_TIME = 0.1;
+
+	private World world;
+
+	private BehaviorScheduler scheduler;
+
+	private Unit unit;
+
+	@Before
+	public void setUp() throws Exception {
+		this.world = new World();
+		this.scheduler = new BehaviorScheduler();
+		this.unit = this.world.createUnit("Snapshot Unit", new int[] {5, 5, 5}, 50, 50, 50, 50, false);
+		this.scheduler.attach(this.unit);
+	}
+
+	@After
+	public void tearDown() {
+		this.scheduler.interrupt(this.unit);
+	}
+
+	@Test
+	public void getPose_MatchesGetters() {
+		double[] pose = new double[4];
+		this.unit.getPose(pose);
+		assertArrayEquals(this.unit.getPosition(), new double[] {pose[0], pose[1], pose[2]}, 0);
+		assertEquals(this.unit.getOrientation(), pose[3], 0);
+	}
+
+	@Test
+	public void getVitals_MatchesGetters() {
+		int[] vitals = new int[3];
+		this.unit.getVitals(vitals);
+		assertEquals(this.unit.getHitpoints(), vitals[0]);
+		assertEquals(this.unit.getStamina(), vitals[1]);
+		assertEquals(this.unit.getActivity().getCode(), vitals[2]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getPose_ArrayTooSmall() {
+		this.unit.getPose(new double[3]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getVitals_NoArray() {
+		this.unit.getVitals(null);
+	}
+
+	@Test
+	public void getPoses_MatchesUnits() throws Exception {
+		Unit other = this.world.createUnit("Other Unit", new int[] {8, 9, 10}, 50, 50, 50, 50, false);
+		double[] poses = new double[4 * this.world.getNbUnits()];
+		this.world.getPoses(poses);
+		for (Unit unit : new Unit[] {this.unit, other}) {
+			int id = unit.getId();
+			for (int i = 0; i < 3; i++)
+				assertEquals(unit.getPosition()[i], poses[4 * id + i], 0);
+			assertEquals(unit.getOrientation(), poses[4 * id + 3], 0);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getPoses_ArrayTooSmall() {
+		this.world.getPoses(new double[3]);
+	}
+
+	@Test
+	public void getPose_ConsistentWhileMoving() throws Exception {
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicInteger nbTorn = new AtomicInteger();
+		final AtomicInteger nbReads = new AtomicInteger();
+		Thread reader = new Thread(() -> {
+			double[] pose = new double[4];
+			while (running.get()) {
+				this.unit.getPose(pose);
+				// Moving diagonally, the unit covers the same distance along x and y.
+				if (Math.abs((pose[0] - 5) - (pose[1] - 5)) > 1e-9)
+					nbTorn.incrementAndGet();
+				nbReads.incrementAndGet();
+			}
+		});
+		reader.start();
+		this.unit.moveTo(new int[] {15, 15, 5});
+		for (int i = 0; (i < 600) && ((this.unit.isMoving()) || (this.unit.getCube()[0] != 15)); i++)
+			this.world.advanceTime(FRAME_TIME);
+		running.set(false);
+		reader.join();
+		assertArrayEquals(new int[] {15, 15, 5}, this.unit.getCube());
+		assertTrue(nbReads.get() > 0);
+		assertEquals(0, nbTorn.get());
+	}
+}
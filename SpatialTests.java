@@ -0,0 +1,107 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the trees indexing the positions of units.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class SpatialTests {
+
+	private UnitTree tree;
+
+	private double[][] positions;
+
+	@Before
+	public void setUp() {
+		this.tree = new UnitTree();
+		this.positions = new double[200][];
+		Random random = new Random(7);
+		for (int id = 0; id < this.positions.length; id++) {
+			this.positions[id] = new double[] {random.nextInt(50), random.nextInt(50), random.nextInt(50)};
+			this.tree.update(id, this.positions[id]);
+		}
+	}
+
+	@Test
+	public void update_MovesUnit() {
+		assertEquals(this.positions.length, this.tree.getNbUnits());
+		this.move(5, new double[] {49, 49, 49});
+		this.tree.remove(9);
+		assertFalse(this.tree.contains(9));
+		assertEquals(this.positions.length - 1, this.tree.getNbUnits());
+		List<Integer> found = new ArrayList<Integer>();
+		this.tree.queryBox(new double[] {48.5, 48.5, 48.5}, new double[] {49.5, 49.5, 49.5}, found::add);
+		assertTrue(found.contains(5));
+	}
+
+	@Test
+	public void pick_FirstUnitOnRay() {
+		this.move(3, new double[] {60, 10, 10});
+		this.move(4, new double[] {65, 10, 10});
+		assertEquals(3, this.tree.pick(new double[] {55, 10, 10}, new double[] {1, 0, 0}, this::positionOf));
+		assertEquals(4, this.tree.pick(new double[] {70, 10, 10}, new double[] {-1, 0, 0}, this::positionOf));
+	}
+
+	@Test
+	public void pick_Miss() {
+		assertEquals(-1, this.tree.pick(new double[] {55, 10, 10}, new double[] {1, 0, 0}, this::positionOf));
+		assertEquals(-1, new UnitTree().pick(new double[3], new double[] {1, 1, 1}, this::positionOf));
+	}
+
+	@Test
+	public void nearest_MatchesLinearScan() {
+		Random random = new Random(11);
+		for (int i = 0; i < 50; i++) {
+			double[] position = {random.nextDouble() * 50, random.nextDouble() * 50, random.nextDouble() * 50};
+			double best = Double.POSITIVE_INFINITY;
+			for (int id = 0; id < this.positions.length; id++)
+				if (id % 3 == 0)
+					best = Math.min(best, distanceSquared(this.positions[id], position));
+			int result = this.tree.nearest(position, this::positionOf, id -> id % 3 == 0);
+			assertEquals(best, distanceSquared(this.positions[result], position), 1e-9);
+			assertEquals(0, result % 3);
+		}
+	}
+
+	@Test
+	public void nearest_NoneAccepted() {
+		assertEquals(-1, this.tree.nearest(new double[] {25, 25, 25}, this::positionOf, id -> false));
+	}
+
+	@Test
+	public void nearest_WithinDistance() {
+		this.move(7, new double[] {80, 80, 80});
+		double[] position = {90, 80, 80};
+		assertEquals(7, this.tree.nearest(position, this::positionOf, id -> true, 10.5));
+		assertEquals(-1, this.tree.nearest(position, this::positionOf, id -> true, 9.5));
+		assertEquals(-1, this.tree.nearest(position, this::positionOf, id -> id != 7, 20));
+	}
+
+	/**
+	 * Move the unit with the given identifier to the given position.
+	 */
+	private void move(int id, double[] position) {
+		this.positions[id] = position;
+		this.tree.update(id, position);
+	}
+
+	private double[] positionOf(int id) {
+		return this.positions[id];
+	}
+
+	private static double distanceSquared(double[] a, double[] b) {
+		double result = 0;
+		for (int i = 0; i < 3; i++)
+			result += (a[i] - b[i]) * (a[i] - b[i]);
+		return result;
+	}
+}
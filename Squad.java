@@ -0,0 +1,233 @@
+package hillbillies.model;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+import hillbillies.common.internal.map.IByteMap3D;
+
+/**
+ * A class of squads, groups of units of a world receiving orders together.
+ *
+ * An order given to a squad is planned once for the whole squad. A squad moving
+ * over terrain shares a single flow field towards the target among all its
+ * members, so the cost of the order does not grow with the size of the squad.
+ * That flow field only covers a box around the members and the target, and is
+ * not built at all when that box holds more than MAX_FIELD_VOLUME cubes or the
+ * terrain is streamed from disk; members the flow field does not lead to the
+ * target are then guided by a navigator of the world each. Without terrain, the
+ * squad keeps its formation: every member heads to the target shifted by its
+ * offset from the first member of the squad.
+ *
+ * A squad keeps the generation of each member it was given. A member that died
+ * and whose unit object was recycled for a new unit of the world leaves the
+ * squad, rather than passing its orders on to that new unit.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ * @invar	Each member of a squad belongs to the world of that squad.
+ * 			| for each unit in getMembers():
+ * 			|	unit.getWorld() == getWorld()
+ */
+public class Squad {
+
+	/**
+	 * Initialize this new squad of the given world with the given members.
+	 *
+	 * @param	world
+	 * 			The world of the members.
+	 * @param	members
+	 * 			The members of this new squad.
+	 * @post	| new.getWorld() == world
+	 * @post	The members of this new squad are the given members.
+	 * 			| new.getMembers().equals(members)
+	 * @throws	IllegalArgumentException
+	 * 			The given members are empty, or some member does not belong to the given world.
+	 * 			| members.isEmpty() ||
+	 * 			| (for some unit in members: unit.getWorld() != world)
+	 */
+	public Squad(World world, Collection<Unit> members) throws IllegalArgumentException {
+		if (members.isEmpty())
+			throw new IllegalArgumentException("Empty squad");
+		for (Unit unit : members)
+			if (unit.getWorld() != world)
+				throw new IllegalArgumentException("Unit of another world: " + unit.getName());
+		this.world = world;
+		this.members = new ArrayList<Unit>(members);
+		this.generations = new int[this.members.size()];
+		for (int i = 0; i < this.generations.length; i++)
+			this.generations[i] = this.members.get(i).getGeneration();
+	}
+
+	/**
+	 * Constant reflecting the number of cubes by which the box of the flow field
+	 * of a squad extends beyond its members and its target.
+	 */
+	public static final int FIELD_MARGIN = 16;
+
+	/**
+	 * Constant reflecting the largest number of cubes of the box of the flow field of a squad.
+	 */
+	public static final int MAX_FIELD_VOLUME = 1 << 21;
+
+	/**
+	 * Variable registering the world of this squad.
+	 */
+	private final World world;
+
+	/**
+	 * Variable registering the members of this squad.
+	 */
+	private final List<Unit> members;
+
+	/**
+	 * Variable registering the generation of each member when it joined this squad.
+	 */
+	private final int[] generations;
+
+	/**
+	 * Return the world of this squad.
+	 */
+	@Basic @Immutable
+	public World getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Return the members of this squad whose unit objects were not recycled for
+	 * another unit since they joined.
+	 */
+	@Basic
+	public List<Unit> getMembers() {
+		List<Unit> result = new ArrayList<Unit>(this.members.size());
+		for (int i = 0; i < this.generations.length; i++)
+			if (this.members.get(i).getGeneration() == this.generations[i])
+				result.add(this.members.get(i));
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Order all members of this squad to move to the given cube.
+	 *
+	 * @param	target
+	 * 			The cube to move to.
+	 * @effect	If the world of this squad has terrain, the members the flow field of
+	 * 			this squad leads to the given cube follow that flow field, and
+	 * 			all other members follow a navigator of the world, if any.
+	 * 			| if (getWorld().getTerrain() != null) then
+	 * 			|	for each unit in getMembers():
+	 * 			|		if ((field != null) && (field.isReachable(unit.getCube()))) then
+	 * 			|			unit.moveTo(field)
+	 * 			|		else if (getWorld().createNavigator(unit, target) != null) then
+	 * 			|			unit.moveTo(getWorld().createNavigator(unit, target))
+	 * 			| where field == createFlowField(getMembers(), target)
+	 * @effect	Otherwise, every member moves to the given cube shifted by its offset
+	 * 			from the first member, or to the given cube itself if that shifted
+	 * 			cube lies outside the world.
+	 * @throws	OutOfBoundsException
+	 * 			The given cube does not lie within the terrain of the world of this squad.
+	 */
+	public void moveTo(int[] target) throws OutOfBoundsException {
+		List<Unit> members = this.getMembers();
+		IByteMap3D terrain = this.world.getTerrain();
+		if ((terrain != null) && (!terrain.isValidIndex(target[0], target[1], target[2])))
+			throw new OutOfBoundsException(new double[] {target[0], target[1], target[2]});
+		if (members.isEmpty())
+			return;
+		if (terrain != null) {
+			FlowField field = this.createFlowField(members, target);
+			for (Unit unit : members)
+				if ((field != null) && (field.isReachable(unit.getCube())))
+					unit.moveTo(field);
+				else {
+					Navigator navigator = this.world.createNavigator(unit, target);
+					if (navigator != null)
+						unit.moveTo(navigator);
+				}
+			return;
+		}
+		int[] leader = members.get(0).getCube();
+		for (Unit unit : members) {
+			int[] cube = unit.getCube();
+			double[] position = new double[3];
+			int[] destination = new int[3];
+			for (int i = 0; i < 3; i++) {
+				destination[i] = target[i] + cube[i] - leader[i];
+				position[i] = destination[i] + 0.5;
+			}
+			unit.moveTo(new Heading(unit.isValidPosition(position) ? destination : target));
+		}
+	}
+
+	/**
+	 * Return a flow field towards the given cube over the terrain of the world of
+	 * this squad, covering the box around the given members and that cube.
+	 *
+	 * @return	Null if the terrain is streamed from disk, or if the box holds
+	 * 			more than MAX_FIELD_VOLUME cubes.
+	 * @throws	OutOfBoundsException
+	 * 			The given cube does not lie within the terrain of the world of this squad.
+	 */
+	FlowField createFlowField(List<Unit> members, int[] target) throws OutOfBoundsException {
+		IByteMap3D terrain = this.world.getTerrain();
+		if (terrain instanceof StreamingMap)
+			return null;
+		int[] dimensions = {terrain.getNbX(), terrain.getNbY(), terrain.getNbZ()};
+		int[] lower = target.clone();
+		int[] upper = target.clone();
+		for (Unit unit : members) {
+			int[] cube = unit.getCube();
+			for (int i = 0; i < 3; i++) {
+				lower[i] = Math.min(lower[i], cube[i]);
+				upper[i] = Math.max(upper[i], cube[i]);
+			}
+		}
+		long volume = 1;
+		for (int i = 0; i < 3; i++) {
+			lower[i] = Math.max(0, lower[i] - FIELD_MARGIN);
+			upper[i] = Math.min(dimensions[i], upper[i] + FIELD_MARGIN + 1);
+			volume *= upper[i] - lower[i];
+		}
+		if (volume > MAX_FIELD_VOLUME)
+			return null;
+		return new FlowField(terrain, target, lower, upper);
+	}
+
+	/**
+	 * Order all members of this squad to work.
+	 *
+	 * @effect	| for each unit in getMembers():
+	 * 			|	unit.work()
+	 */
+	public void work() {
+		for (Unit unit : this.getMembers())
+			unit.work();
+	}
+
+	/**
+	 * Order all members of this squad to rest.
+	 *
+	 * @effect	| for each unit in getMembers():
+	 * 			|	unit.rest()
+	 */
+	public void rest() {
+		for (Unit unit : this.getMembers())
+			unit.rest();
+	}
+
+	/**
+	 * Order all members of this squad to attack the given unit.
+	 *
+	 * @param	defender
+	 * 			The unit to attack.
+	 * @effect	| for each unit in getMembers():
+	 * 			|	if (unit != defender) then unit.attack(defender)
+	 */
+	public void attack(Unit defender) {
+		for (Unit unit : this.getMembers())
+			if (unit != defender)
+				unit.attack(defender);
+	}
+}
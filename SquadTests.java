@@ -0,0 +1,116 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the squads of units receiving orders together.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class SquadTests {
+
+	/**
+	 * Constant reflecting the duration of a frame, in seconds.
+	 */
+	private static final double FRAME_TIME = 0.1;
+
+	private World world;
+
+	private BehaviorScheduler scheduler;
+
+	private Unit first, second;
+
+	@Before
+	public void setUp() throws Exception {
+		this.world = new World();
+		this.scheduler = new BehaviorScheduler();
+	}
+
+	@After
+	public void tearDown() {
+		for (Unit unit : new Unit[] {this.first, this.second})
+			if (unit != null)
+				this.scheduler.interrupt(unit);
+	}
+
+	@Test
+	public void moveTo_KeepsFormationWithoutTerrain() throws Exception {
+		this.createMembers(new int[] {5, 5, 5}, new int[] {6, 5, 5});
+		new Squad(this.world, Arrays.asList(this.first, this.second)).moveTo(new int[] {10, 10, 5});
+		this.advanceUntil(new int[] {10, 10, 5}, new int[] {11, 10, 5});
+		assertArrayEquals(new int[] {10, 10, 5}, this.first.getCube());
+		assertArrayEquals(new int[] {11, 10, 5}, this.second.getCube());
+	}
+
+	@Test
+	public void moveTo_SharesBoundedFlowField() throws Exception {
+		this.world.setTerrain(new ChunkedMap(60, 20, 2));
+		this.createMembers(new int[] {2, 8, 0}, new int[] {3, 8, 0});
+		Squad squad = new Squad(this.world, Arrays.asList(this.first, this.second));
+		FlowField field = squad.createFlowField(squad.getMembers(), new int[] {10, 8, 0});
+		assertArrayEquals(new int[] {0, 0, 0}, field.getLower());
+		assertArrayEquals(new int[] {10 + Squad.FIELD_MARGIN + 1, 20, 2}, field.getUpper());
+		assertFalse(field.isReachable(new int[] {40, 8, 0}));
+		squad.moveTo(new int[] {10, 8, 0});
+		this.advanceUntil(new int[] {10, 8, 0}, new int[] {10, 8, 0});
+		assertArrayEquals(new int[] {10, 8, 0}, this.first.getCube());
+		assertArrayEquals(new int[] {10, 8, 0}, this.second.getCube());
+	}
+
+	@Test
+	public void moveTo_NavigatorsForLargeBox() throws Exception {
+		this.world.setTerrain(new ChunkedMap(160, 160, 100));
+		this.createMembers(new int[] {0, 0, 0}, new int[] {159, 159, 99});
+		Squad squad = new Squad(this.world, Arrays.asList(this.first, this.second));
+		assertNull(squad.createFlowField(squad.getMembers(), new int[] {80, 80, 50}));
+		squad.moveTo(new int[] {1, 1, 0});
+		for (int i = 0; (i < 100) && (!Arrays.equals(this.first.getCube(), new int[] {1, 1, 0})); i++)
+			this.world.advanceTime(FRAME_TIME);
+		assertArrayEquals(new int[] {1, 1, 0}, this.first.getCube());
+		assertFalse(Arrays.equals(new int[] {159, 159, 99}, this.second.getCube()));
+	}
+
+	@Test(expected = OutOfBoundsException.class)
+	public void moveTo_TargetOutsideTerrain() throws Exception {
+		this.world.setTerrain(new ChunkedMap(20, 20, 2));
+		this.createMembers(new int[] {2, 2, 0}, new int[] {3, 2, 0});
+		new Squad(this.world, Arrays.asList(this.first, this.second)).moveTo(new int[] {25, 3, 0});
+	}
+
+	@Test
+	public void getMembers_DropsRecycledUnits() throws Exception {
+		this.createMembers(new int[] {5, 5, 5}, new int[] {6, 5, 5});
+		Squad squad = new Squad(this.world, Arrays.asList(this.first, this.second));
+		this.world.unitDied(this.second);
+		this.world.advanceTime(FRAME_TIME);
+		Unit recycled = this.world.createUnit("Newcomer", new int[] {9, 9, 9}, 50, 50, 50, 50, false);
+		assertSame(this.second, recycled);
+		assertEquals(Arrays.asList(this.first), squad.getMembers());
+	}
+
+	/**
+	 * Create the members of the squad in the given cubes, attached to the scheduler.
+	 */
+	private void createMembers(int[] first, int[] second) throws Exception {
+		this.first = this.world.createUnit("First Member", first, 50, 50, 50, 50, false);
+		this.second = this.world.createUnit("Second Member", second, 50, 50, 50, 50, false);
+		this.scheduler.attach(this.first);
+		this.scheduler.attach(this.second);
+	}
+
+	/**
+	 * Advance the world until the members occupy the given cubes, for at most a minute.
+	 */
+	private void advanceUntil(int[] first, int[] second) throws Exception {
+		for (int i = 0; (i < 600) && ((!Arrays.equals(this.first.getCube(), first))
+				|| (!Arrays.equals(this.second.getCube(), second)) || (this.first.isMoving())
+				|| (this.second.isMoving())); i++)
+			this.world.advanceTime(FRAME_TIME);
+	}
+}
@@ -0,0 +1,143 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the off-heap stores of units and on the views on their records.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class StoreTests {
+
+	private UnitStore store;
+
+	@Before
+	public void setUp() {
+		this.store = new UnitStore();
+	}
+
+	@Test
+	public void add_InitializesRecordFromAttributes() {
+		int index = this.store.add("Store Eta", new double[] {1.5, 2.5, 3.5}, 60, 50, 40, 30, true);
+		UnitView view = this.store.view(index);
+		assertEquals(index, view.getIndex());
+		assertEquals("Store Eta", view.getName());
+		assertEquals(60, view.getWeight());
+		assertEquals(50, view.getAgility());
+		assertEquals(40, view.getStrength());
+		assertEquals(30, view.getToughness());
+		assertEquals(36, view.getMaxHitpoints());
+		assertEquals(36, view.getHitpoints());
+		assertEquals(36, view.getStamina());
+		assertEquals(2.5, view.getPosition(1), 0);
+		assertEquals(0, view.getSpeed(0), 0);
+		assertEquals((float) Math.PI / 2, view.getOrientation(), 0);
+		assertEquals(Activity.IDLE, view.getActivity());
+		assertTrue(view.isDefaultBehaviorEnabled());
+		assertFalse(view.isSprinting());
+	}
+
+	@Test
+	public void add_InvalidAttributes() {
+		UnitView view = this.store.view(this.store.add("Store Theta", new double[3], 30, 100, 10, 50, false));
+		assertEquals(0, view.getStrength());
+		assertEquals(0, view.getWeight());
+		assertEquals(0, view.getMaxHitpoints());
+		assertFalse(view.isDefaultBehaviorEnabled());
+	}
+
+	@Test
+	public void view_WritesThroughToStore() {
+		int index = this.store.add("Store Iota", new double[3], 50, 50, 50, 50, false);
+		UnitView view = this.store.view(index);
+		view.setPosition(4, 5, 6);
+		view.setHitpoints(1000);
+		view.setStamina(-5);
+		view.setOrientation(-1);
+		view.setActivity(Activity.WORKING);
+		view.setCounter(2.5);
+		UnitView other = this.store.view(index);
+		double[] position = new double[3];
+		other.getPosition(position);
+		assertArrayEquals(new double[] {4, 5, 6}, position, 0);
+		assertEquals(other.getMaxHitpoints(), other.getHitpoints());
+		assertEquals(0, other.getStamina());
+		assertEquals((float) Math.PI / 2, other.getOrientation(), 0);
+		assertEquals(Activity.WORKING, other.getActivity());
+		assertEquals(2.5, other.getCounter(), 0);
+	}
+
+	@Test
+	public void at_MovesOverBlocks() {
+		for (int i = 0; i < UnitStore.BLOCK_SIZE + 2; i++)
+			this.store.add("Store Kappa", new double[] {i, 0, 0}, 50, 50, 50, 50, false);
+		assertEquals(UnitStore.BLOCK_SIZE + 2, this.store.getNbRecords());
+		assertEquals(2L * UnitStore.BLOCK_SIZE * UnitStore.RECORD_SIZE, this.store.getOffHeapBytes());
+		UnitView view = new UnitView(this.store);
+		assertEquals(-1, view.getIndex());
+		for (int i = UnitStore.BLOCK_SIZE - 1; i < UnitStore.BLOCK_SIZE + 2; i++)
+			assertEquals(i, view.at(i).getPosition(0), 0);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void at_IllegalIndex() {
+		this.store.add("Store Lambda", new double[3], 50, 50, 50, 50, false);
+		new UnitView(this.store).at(1);
+	}
+
+	@Test
+	public void store_CopiesStateOfUnit() throws Exception {
+		Unit unit = new Unit("Store Mu", new int[] {1, 2, 3}, 50, 60, 70, 80, false);
+		int index = this.store.add(unit);
+		UnitView view = this.store.view(index);
+		assertEquals(unit.getPosition()[2], view.getPosition(2), 0);
+		assertEquals(unit.getStrength(), view.getStrength());
+		assertEquals(unit.getHitpoints(), view.getHitpoints());
+		assertEquals(unit.getActivity(), view.getActivity());
+	}
+
+	@Test
+	public void add_RetainsNamesOfUnits() throws Exception {
+		Unit alpha = new Unit("Store Alpha", new int[] {1, 1, 1}, 50, 50, 50, 50, false);
+		Unit beta = new Unit("Store Beta", new int[] {2, 2, 2}, 50, 50, 50, 50, false);
+		Unit gamma = new Unit("Store Gamma", new int[] {3, 3, 3}, 50, 50, 50, 50, false);
+		int first = this.store.add(alpha);
+		this.store.add(beta);
+		this.store.add(gamma);
+		this.store.add(alpha);
+		assertEquals(3, Unit.NAMES.getNbReferences(alpha.getNameHandle()));
+		assertEquals(2, Unit.NAMES.getNbReferences(beta.getNameHandle()));
+		assertEquals(2, Unit.NAMES.getNbReferences(gamma.getNameHandle()));
+		UnitView view = new UnitView(this.store);
+		assertEquals("Store Alpha", view.at(first).getName());
+		assertEquals("Store Beta", view.at(first + 1).getName());
+		assertEquals("Store Gamma", view.at(first + 2).getName());
+		assertEquals("Store Alpha", view.at(first + 3).getName());
+	}
+
+	@Test
+	public void store_ReplacesNameOfRecord() throws Exception {
+		Unit alpha = new Unit("Store Delta", new int[] {1, 1, 1}, 50, 50, 50, 50, false);
+		Unit beta = new Unit("Store Epsilon", new int[] {2, 2, 2}, 50, 50, 50, 50, false);
+		int index = this.store.add(alpha);
+		this.store.store(index, beta);
+		assertEquals(1, Unit.NAMES.getNbReferences(alpha.getNameHandle()));
+		assertEquals(2, Unit.NAMES.getNbReferences(beta.getNameHandle()));
+		assertEquals("Store Epsilon", this.store.view(index).getName());
+	}
+
+	@Test
+	public void add_ReapedUnitLeavesNoRecord() throws Exception {
+		Unit unit = new Unit("Store Zeta", new int[] {1, 1, 1}, 50, 50, 50, 50, false);
+		unit.releaseName();
+		try {
+			this.store.add(unit);
+			fail();
+		} catch (IndexOutOfBoundsException exc) {
+		}
+		assertEquals(0, this.store.getNbRecords());
+	}
+}
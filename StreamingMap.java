@@ -0,0 +1,437 @@
+package hillbillies.model;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+import hillbillies.common.internal.map.IByteMap3D;
+
+/**
+ * A class of streaming maps, keeping only the recently used chunks of the terrain
+ * of a game world in memory and the rest on disk.
+ *
+ * The map is divided in chunks of 16 by 16 by 16 cubes, grouped in regions of 8
+ * by 8 by 8 chunks. Each region is stored in its own file, which is mapped into
+ * memory when one of its chunks is first needed, so the operating system pages
+ * in only the parts that are read. Chunks that are read or changed are copied
+ * into a cache of at most a given number of bytes; the least recently used chunk
+ * is evicted when the cache is full. Changed chunks are written back to their
+ * region file by a background thread, when they are evicted or flushed. Chunks
+ * ahead of moving units can be prefetched on that thread as well.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ * @invar	The number of bytes cached by each streaming map does not exceed its
+ * 			budget by more than one chunk.
+ * 			| getCachedBytes() <= getBudget() + ChunkedMap.CHUNK_VOLUME
+ */
+public class StreamingMap implements IByteMap3D {
+
+	/**
+	 * Initialize this new streaming map with the given dimensions, storing its
+	 * regions in the given directory and caching at most the given number of bytes.
+	 *
+	 * Region files already in the given directory are reused; missing region
+	 * files are created filled with air.
+	 *
+	 * @param	directory
+	 * 			The directory holding the region files.
+	 * @param	nbX
+	 * 			The number of cubes along the x axis.
+	 * @param	nbY
+	 * 			The number of cubes along the y axis.
+	 * @param	nbZ
+	 * 			The number of cubes along the z axis.
+	 * @param	budget
+	 * 			The maximal number of bytes of chunks kept in memory.
+	 * @post	| new.getBudget() == budget
+	 * @throws	IllegalArgumentException
+	 * 			Some of the given dimensions is not positive, or the given budget
+	 * 			does not hold a single chunk.
+	 * 			| (nbX <= 0) || (nbY <= 0) || (nbZ <= 0) || (budget < ChunkedMap.CHUNK_VOLUME)
+	 * @throws	IOException
+	 * 			The given directory could not be created.
+	 */
+	public StreamingMap(Path directory, int nbX, int nbY, int nbZ, long budget)
+			throws IllegalArgumentException, IOException {
+		if ((nbX <= 0) || (nbY <= 0) || (nbZ <= 0))
+			throw new IllegalArgumentException("Invalid dimensions: " + nbX + "x" + nbY + "x" + nbZ);
+		if (budget < ChunkedMap.CHUNK_VOLUME)
+			throw new IllegalArgumentException("Invalid budget: " + budget);
+		Files.createDirectories(directory);
+		this.directory = directory;
+		this.nbX = nbX;
+		this.nbY = nbY;
+		this.nbZ = nbZ;
+		this.budget = budget;
+		this.writer = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "chunk-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Constant reflecting the base two logarithm of the number of chunks along each axis of a region.
+	 */
+	public static final int REGION_SHIFT = 3;
+
+	/**
+	 * Constant reflecting the number of chunks of a region.
+	 */
+	private static final int REGION_CHUNKS = 1 << (3 * REGION_SHIFT);
+
+	/**
+	 * Variable registering the directory holding the region files.
+	 */
+	private final Path directory;
+
+	/**
+	 * Variables registering the dimensions of this map.
+	 */
+	private final int nbX, nbY, nbZ;
+
+	/**
+	 * Variable registering the maximal number of bytes of cached chunks.
+	 */
+	private final long budget;
+
+	/**
+	 * Variable registering the cached chunks by chunk key, least recently used first.
+	 */
+	private final LinkedHashMap<Long, byte[]> cache = new LinkedHashMap<Long, byte[]>(64, 0.75f, true);
+
+	/**
+	 * Variable registering the keys of the cached chunks changed since they were loaded or written.
+	 */
+	private final Map<Long, Boolean> dirty = new HashMap<Long, Boolean>();
+
+	/**
+	 * Variable registering the copies of chunks waiting to be written back, by chunk key.
+	 */
+	private final Map<Long, byte[]> pendingWrites = new HashMap<Long, byte[]>();
+
+	/**
+	 * Variable registering the mapped region files, by region key.
+	 */
+	private final Map<Long, MappedByteBuffer> regions = new HashMap<Long, MappedByteBuffer>();
+
+	/**
+	 * Variable registering the thread writing back chunks and prefetching chunks.
+	 */
+	private final ExecutorService writer;
+
+	/**
+	 * Variable registering the listeners notified of changes of this map.
+	 */
+	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+	/**
+	 * Variables registering the number of chunks loaded from and written to disk.
+	 */
+	private long nbLoads, nbWrites;
+
+	@Override @Basic @Immutable
+	public int getNbX() {
+		return this.nbX;
+	}
+
+	@Override @Basic @Immutable
+	public int getNbY() {
+		return this.nbY;
+	}
+
+	@Override @Basic @Immutable
+	public int getNbZ() {
+		return this.nbZ;
+	}
+
+	@Override
+	public boolean isValidIndex(int x, int y, int z) {
+		return (0 <= x) && (x < this.nbX) && (0 <= y) && (y < this.nbY) && (0 <= z) && (z < this.nbZ);
+	}
+
+	/**
+	 * Return the maximal number of bytes of chunks this map keeps in memory.
+	 */
+	@Basic @Immutable
+	public long getBudget() {
+		return this.budget;
+	}
+
+	/**
+	 * Return the number of bytes of chunks this map currently keeps in memory.
+	 */
+	public synchronized long getCachedBytes() {
+		return (long) this.cache.size() * ChunkedMap.CHUNK_VOLUME;
+	}
+
+	/**
+	 * Return the number of chunks this map loaded from disk.
+	 */
+	public synchronized long getNbLoads() {
+		return this.nbLoads;
+	}
+
+	/**
+	 * Return the number of chunks this map wrote back to disk.
+	 */
+	public synchronized long getNbWrites() {
+		return this.nbWrites;
+	}
+
+	/**
+	 * Check whether the chunk holding the given cube is kept in memory.
+	 */
+	public synchronized boolean isCached(int x, int y, int z) {
+		return this.cache.containsKey(this.chunkKey(x, y, z));
+	}
+
+	/**
+	 * Return the value of the cube at the given coordinates, loading its chunk if needed.
+	 *
+	 * @throws	IndexOutOfBoundsException
+	 * 			The given coordinates do not lie within this map.
+	 * 			| ! isValidIndex(x, y, z)
+	 * @throws	UncheckedIOException
+	 * 			The region file of the cube could not be read.
+	 */
+	@Override
+	public byte getValue(int x, int y, int z) throws IndexOutOfBoundsException, UncheckedIOException {
+		if (!this.isValidIndex(x, y, z))
+			throw new IndexOutOfBoundsException("Invalid cube: " + x + ", " + y + ", " + z);
+		return this.chunk(this.chunkKey(x, y, z))[cubeOf(x, y, z)];
+	}
+
+	/**
+	 * Set the value of the cube at the given coordinates to the given value.
+	 *
+	 * @post	| new.getValue(x, y, z) == value
+	 * @effect	If the value changed, all listeners of this map are notified.
+	 * 			| if (getValue(x, y, z) != value) then
+	 * 			|	for each listener: listener.onChange(x, y, z, getValue(x, y, z), value)
+	 * @throws	IndexOutOfBoundsException
+	 * 			The given coordinates do not lie within this map.
+	 * 			| ! isValidIndex(x, y, z)
+	 * @throws	UncheckedIOException
+	 * 			The region file of the cube could not be read.
+	 */
+	public void setValue(int x, int y, int z, byte value) throws IndexOutOfBoundsException, UncheckedIOException {
+		if (!this.isValidIndex(x, y, z))
+			throw new IndexOutOfBoundsException("Invalid cube: " + x + ", " + y + ", " + z);
+		long key = this.chunkKey(x, y, z);
+		byte old;
+		synchronized (this) {
+			byte[] chunk = this.chunk(key);
+			old = chunk[cubeOf(x, y, z)];
+			if (old == value)
+				return;
+			chunk[cubeOf(x, y, z)] = value;
+			this.dirty.put(key, Boolean.TRUE);
+		}
+		for (Listener listener : this.listeners)
+			listener.onChange(x, y, z, old, value);
+	}
+
+	/**
+	 * Set the value of every cube of this map to the value given by the given provider.
+	 *
+	 * @effect	| for each valid index (x, y, z):
+	 * 			|	setValue(x, y, z, provider.getValue(x, y, z))
+	 */
+	@Override
+	public void fill(ValueProvider provider) {
+		for (int x = 0; x < this.nbX; x++)
+			for (int y = 0; y < this.nbY; y++)
+				for (int z = 0; z < this.nbZ; z++)
+					this.setValue(x, y, z, provider.getValue(x, y, z));
+	}
+
+	@Override
+	public void addListener(Listener listener) {
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * Load the chunk holding the cube at the given coordinates in the background,
+	 * if it is not kept in memory yet.
+	 *
+	 * @param	cube
+	 * 			The cube whose chunk is needed soon. Cubes outside this map are ignored.
+	 */
+	public void prefetch(int[] cube) {
+		if ((!this.isValidIndex(cube[0], cube[1], cube[2])) || (this.isCached(cube[0], cube[1], cube[2])))
+			return;
+		final long key = this.chunkKey(cube[0], cube[1], cube[2]);
+		this.writer.execute(() -> this.chunk(key));
+	}
+
+	/**
+	 * Write all changed chunks back to their region files and wait until they are on disk.
+	 *
+	 * @throws	IOException
+	 * 			Some chunk could not be written.
+	 */
+	public void flush() throws IOException {
+		synchronized (this) {
+			for (Iterator<Long> keys = this.dirty.keySet().iterator(); keys.hasNext();) {
+				long key = keys.next();
+				this.scheduleWrite(key, this.cache.get(key).clone());
+				keys.remove();
+			}
+		}
+		try {
+			this.writer.submit(() -> {
+				synchronized (this.regions) {
+					for (MappedByteBuffer region : this.regions.values())
+						region.force();
+				}
+			}).get();
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Flush this map and stop its background thread.
+	 *
+	 * @throws	IOException
+	 * 			Some chunk could not be written.
+	 */
+	public void close() throws IOException {
+		this.flush();
+		this.writer.shutdown();
+		try {
+			this.writer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Return the cached chunk with the given key, loading it and evicting the
+	 * least recently used chunks if needed.
+	 */
+	private synchronized byte[] chunk(long key) {
+		byte[] chunk = this.cache.get(key);
+		if (chunk != null)
+			return chunk;
+		chunk = this.pendingWrites.get(key);
+		if (chunk != null)
+			chunk = chunk.clone();
+		else
+			chunk = this.load(key);
+		this.cache.put(key, chunk);
+		this.evict();
+		return chunk;
+	}
+
+	/**
+	 * Evict least recently used chunks until the cached chunks fit within the budget.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Long, byte[]>> entries = this.cache.entrySet().iterator();
+		while ((this.getCachedBytes() > this.budget) && (entries.hasNext())) {
+			Map.Entry<Long, byte[]> eldest = entries.next();
+			if (this.dirty.remove(eldest.getKey()) != null)
+				this.scheduleWrite(eldest.getKey(), eldest.getValue());
+			entries.remove();
+		}
+	}
+
+	/**
+	 * Let the background thread write the given contents of the chunk with the given key.
+	 */
+	private void scheduleWrite(final long key, final byte[] contents) {
+		this.pendingWrites.put(key, contents);
+		this.writer.execute(() -> {
+			this.write(key, contents);
+			synchronized (this) {
+				this.nbWrites++;
+				if (this.pendingWrites.get(key) == contents)
+					this.pendingWrites.remove(key);
+			}
+		});
+	}
+
+	/**
+	 * Read the chunk with the given key from its region file.
+	 */
+	private byte[] load(long key) {
+		byte[] result = new byte[ChunkedMap.CHUNK_VOLUME];
+		ByteBuffer region = this.region(key).duplicate();
+		region.position(slotOf(key) * ChunkedMap.CHUNK_VOLUME);
+		region.get(result);
+		this.nbLoads++;
+		return result;
+	}
+
+	/**
+	 * Write the given contents of the chunk with the given key to its region file.
+	 */
+	private void write(long key, byte[] contents) {
+		ByteBuffer region = this.region(key).duplicate();
+		region.position(slotOf(key) * ChunkedMap.CHUNK_VOLUME);
+		region.put(contents);
+	}
+
+	/**
+	 * Return the mapped region file holding the chunk with the given key, mapping it if needed.
+	 */
+	private MappedByteBuffer region(long key) throws UncheckedIOException {
+		long regionKey = regionKey(key);
+		synchronized (this.regions) {
+			MappedByteBuffer region = this.regions.get(regionKey);
+			if (region != null)
+				return region;
+			int cx = (int) (key >> 42), cy = (int) (key >> 21) & 0x1FFFFF, cz = (int) key & 0x1FFFFF;
+			Path file = this.directory.resolve("r." + (cx >> REGION_SHIFT) + "." + (cy >> REGION_SHIFT) + "."
+					+ (cz >> REGION_SHIFT) + ".bin");
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				region = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) REGION_CHUNKS * ChunkedMap.CHUNK_VOLUME);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			this.regions.put(regionKey, region);
+			return region;
+		}
+	}
+
+	private long chunkKey(int x, int y, int z) {
+		int shift = ChunkedMap.CHUNK_SHIFT;
+		return ((long) (x >> shift) << 42) | ((long) (y >> shift) << 21) | (z >> shift);
+	}
+
+	private static long regionKey(long chunkKey) {
+		long mask = 0x1FFFFF;
+		return (((chunkKey >> 42) >> REGION_SHIFT) << 42) | ((((chunkKey >> 21) & mask) >> REGION_SHIFT) << 21)
+				| ((chunkKey & mask) >> REGION_SHIFT);
+	}
+
+	private static int slotOf(long chunkKey) {
+		int mask = (1 << REGION_SHIFT) - 1;
+		int cx = (int) (chunkKey >> 42) & mask, cy = (int) (chunkKey >> 21) & mask, cz = (int) chunkKey & mask;
+		return (((cx << REGION_SHIFT) | cy) << REGION_SHIFT) | cz;
+	}
+
+	private static int cubeOf(int x, int y, int z) {
+		int mask = ChunkedMap.CHUNK_SIZE - 1, shift = ChunkedMap.CHUNK_SHIFT;
+		return ((x & mask) << (2 * shift)) | ((y & mask) << shift) | (z & mask);
+	}
+}
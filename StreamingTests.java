@@ -0,0 +1,148 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the streaming maps keeping the terrain of the game world on disk, and
+ * on the navigators guiding units over that terrain.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class StreamingTests {
+
+	/**
+	 * Constant reflecting the number of chunks kept in memory by the maps of these tests.
+	 */
+	private static final int NB_CACHED = 2;
+
+	private Path directory;
+
+	private StreamingMap map;
+
+	@Before
+	public void setUp() throws Exception {
+		this.directory = Files.createTempDirectory("streaming");
+		this.map = new StreamingMap(this.directory, 4 * ChunkedMap.CHUNK_SIZE, ChunkedMap.CHUNK_SIZE,
+				ChunkedMap.CHUNK_SIZE, NB_CACHED * ChunkedMap.CHUNK_VOLUME);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		this.map.close();
+		try (Stream<Path> files = Files.list(this.directory)) {
+			for (Path file : (Iterable<Path>) files::iterator)
+				Files.delete(file);
+		}
+		Files.delete(this.directory);
+	}
+
+	@Test
+	public void getValue_EvictsLeastRecentlyUsedChunk() {
+		for (int chunk = 0; chunk < 3; chunk++)
+			assertEquals(Terrain.AIR, this.map.getValue(this.xOf(chunk), 0, 0));
+		assertEquals(3, this.map.getNbLoads());
+		assertEquals(NB_CACHED * ChunkedMap.CHUNK_VOLUME, this.map.getCachedBytes());
+		assertFalse(this.map.isCached(this.xOf(0), 0, 0));
+		assertTrue(this.map.isCached(this.xOf(1), 0, 0));
+		assertTrue(this.map.isCached(this.xOf(2), 0, 0));
+		assertEquals(0, this.map.getNbWrites());
+	}
+
+	@Test
+	public void setValue_EvictedChunkWrittenBack() throws Exception {
+		this.map.setValue(this.xOf(0) + 3, 4, 5, Terrain.ROCK);
+		this.map.getValue(this.xOf(1), 0, 0);
+		this.map.getValue(this.xOf(2), 0, 0);
+		this.map.flush();
+		assertEquals(1, this.map.getNbWrites());
+		assertFalse(this.map.isCached(this.xOf(0), 0, 0));
+		assertEquals(Terrain.ROCK, this.map.getValue(this.xOf(0) + 3, 4, 5));
+		assertEquals(4, this.map.getNbLoads());
+		this.map.close();
+		this.map = new StreamingMap(this.directory, 4 * ChunkedMap.CHUNK_SIZE, ChunkedMap.CHUNK_SIZE,
+				ChunkedMap.CHUNK_SIZE, NB_CACHED * ChunkedMap.CHUNK_VOLUME);
+		assertEquals(Terrain.ROCK, this.map.getValue(this.xOf(0) + 3, 4, 5));
+		assertEquals(Terrain.AIR, this.map.getValue(this.xOf(0) + 3, 4, 6));
+	}
+
+	@Test
+	public void getValue_ReadsPendingWrite() throws Exception {
+		synchronized (this.map) {
+			// The background thread blocks on the prefetch until this thread releases the map.
+			this.map.prefetch(new int[] {this.xOf(3), 0, 0});
+			this.map.setValue(this.xOf(0) + 1, 2, 3, Terrain.TREE);
+			this.map.getValue(this.xOf(1), 0, 0);
+			this.map.getValue(this.xOf(2), 0, 0);
+			assertFalse(this.map.isCached(this.xOf(0), 0, 0));
+			long loads = this.map.getNbLoads();
+			assertEquals(Terrain.TREE, this.map.getValue(this.xOf(0) + 1, 2, 3));
+			assertEquals(loads, this.map.getNbLoads());
+			assertEquals(0, this.map.getNbWrites());
+		}
+		this.map.flush();
+		assertEquals(Terrain.TREE, this.map.getValue(this.xOf(0) + 1, 2, 3));
+	}
+
+	@Test
+	public void prefetch_LoadsChunkInBackground() throws Exception {
+		this.map.prefetch(new int[] {this.xOf(2), 5, 5});
+		this.map.prefetch(new int[] {-1, 5, 5});
+		this.map.flush();
+		assertTrue(this.map.isCached(this.xOf(2), 0, 0));
+		assertEquals(1, this.map.getNbLoads());
+		this.map.prefetch(new int[] {this.xOf(2), 9, 9});
+		this.map.flush();
+		assertEquals(1, this.map.getNbLoads());
+	}
+
+	@Test
+	public void createNavigator_AvoidsSolidCubes() throws Exception {
+		World world = new World();
+		world.setTerrain(this.map);
+		for (int y = 0; y < 6; y++)
+			for (int z = 0; z < ChunkedMap.CHUNK_SIZE; z++)
+				this.map.setValue(10, y, z, Terrain.ROCK);
+		Unit unit = world.createUnit("Streamed Walker", new int[] {5, 2, 0}, 50, 50, 50, 50, false);
+		Navigator navigator = world.createNavigator(unit, new int[] {40, 2, 0});
+		assertTrue(navigator instanceof LocalPlanner);
+		int[] cube = {5, 2, 0};
+		for (int i = 0; (i < 100) && (!Arrays.equals(cube, new int[] {40, 2, 0})); i++) {
+			int[] step = navigator.getNextStep(cube);
+			assertNotNull(step);
+			for (int j = 0; j < 3; j++)
+				cube[j] += step[j];
+			assertTrue(Terrain.isPassable(this.map.getValue(cube[0], cube[1], cube[2])));
+		}
+		assertArrayEquals(new int[] {40, 2, 0}, cube);
+		assertArrayEquals(new int[] {0, 0, 0}, navigator.getNextStep(cube));
+		assertNull(world.createNavigator(unit, new int[] {10, 2, 0}));
+	}
+
+	@Test
+	public void createNavigator_StopsAtClosedWall() throws Exception {
+		World world = new World();
+		world.setTerrain(this.map);
+		for (int y = 0; y < ChunkedMap.CHUNK_SIZE; y++)
+			for (int z = 0; z < ChunkedMap.CHUNK_SIZE; z++)
+				this.map.setValue(10, y, z, Terrain.ROCK);
+		Unit unit = world.createUnit("Walled Walker", new int[] {9, 2, 0}, 50, 50, 50, 50, false);
+		assertNull(world.createNavigator(unit, new int[] {40, 2, 0}).getNextStep(new int[] {9, 2, 0}));
+	}
+
+	/**
+	 * Return the smallest x coordinate of the chunk with the given number.
+	 */
+	private int xOf(int chunk) {
+		return chunk * ChunkedMap.CHUNK_SIZE;
+	}
+}
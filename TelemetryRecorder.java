@@ -0,0 +1,525 @@
+package hillbillies.model;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of telemetry recorders, sampling aggregates of the units of a world
+ * after each frame and writing them as a time series to files, for offline analysis.
+ *
+ * A sample holds the simulation time, the number of ticks and the wall-clock
+ * duration of the last frame, the number of living units, the number of units
+ * per activity, the mean and the 10th, 50th and 90th percentile of the
+ * hitpoints and of the stamina of the living units, the distance they moved
+ * since the previous sample and the number of attacks per outcome since the
+ * previous sample.
+ *
+ * A world set to use a recorder lets it take a sample at the end of each frame.
+ * Samples are taken on the simulation thread into a ring buffer of fixed
+ * capacity, without allocating. A background thread takes them from the ring
+ * and appends them to two files in the given directory: a CSV file with a row
+ * per sample, and a binary columnar file. The columnar file starts with a
+ * header holding the magic number, the format version, the number of columns
+ * and the type code and the name of each column, and continues with blocks of
+ * a row count followed by the values of each column for those rows, in
+ * big-endian byte order. Type codes are 'I' for 32-bit integers, 'J' for 64-bit
+ * integers and 'D' for 64-bit floating-point numbers.
+ *
+ * The simulation thread never waits for the background thread: when the ring is
+ * full, a sample is skipped, and the next sample covers the movements and the
+ * attacks of the skipped one.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class TelemetryRecorder implements Closeable {
+
+	/**
+	 * Initialize this new recorder for the given world, writing to the given
+	 * directory with a ring of the given capacity.
+	 *
+	 * @param	world
+	 * 			The world whose units are sampled.
+	 * @param	directory
+	 * 			The directory to write the files to.
+	 * @param	capacity
+	 * 			The maximal number of samples waiting to be written.
+	 * @post	| new.getWorld() == world
+	 * @post	| new.getCapacity() == capacity
+	 * @throws	IllegalArgumentException
+	 * 			The given capacity is not positive.
+	 * 			| capacity <= 0
+	 * @throws	IOException
+	 * 			The files could not be created in the given directory.
+	 */
+	public TelemetryRecorder(World world, Path directory, int capacity) throws IllegalArgumentException, IOException {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		Files.createDirectories(directory);
+		this.world = world;
+		this.capacity = capacity;
+		this.ring = new long[NB_COLUMNS][capacity];
+		this.csv = FileChannel.open(directory.resolve(CSV_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.columns = FileChannel.open(directory.resolve(COLUMN_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		for (AttackOutcome outcome : OUTCOMES)
+			this.attacks[outcome.ordinal()] = world.getNbAttacks(outcome);
+		this.writeHeaders();
+		this.flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flushSamples();
+			}
+		}, "Telemetry recorder");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/**
+	 * Constant reflecting the name of the CSV file of a recorder.
+	 */
+	public static final String CSV_FILE = "telemetry.csv";
+
+	/**
+	 * Constant reflecting the name of the columnar file of a recorder.
+	 */
+	public static final String COLUMN_FILE = "telemetry.bin";
+
+	/**
+	 * Constant reflecting the magic number at the start of a columnar file.
+	 */
+	public static final int MAGIC = 0x4842544C;
+
+	/**
+	 * Constant reflecting the version of the format of a columnar file.
+	 */
+	public static final short VERSION = 1;
+
+	/**
+	 * Constant reflecting the size of the buffers through which the files are written, in bytes.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Constant reflecting the time the background thread waits for new samples, in nanoseconds.
+	 */
+	private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private static final Activity[] ACTIVITIES = Activity.values();
+
+	private static final AttackOutcome[] OUTCOMES = AttackOutcome.values();
+
+	/**
+	 * Constant reflecting the fractions of the values at or below the percentiles of a sample.
+	 */
+	private static final double[] PERCENTILES = {0.1, 0.5, 0.9};
+
+	/*
+	 * Indices of the columns of a sample.
+	 */
+	private static final int TIME = 0;
+	private static final int TICKS = 1;
+	private static final int LATENCY = 2;
+	private static final int UNITS = 3;
+	private static final int ACTIVITY = 4;
+	private static final int HITPOINTS = ACTIVITY + ACTIVITIES.length;
+	private static final int STAMINA = HITPOINTS + 4;
+	private static final int DISTANCE = STAMINA + 4;
+	private static final int ATTACKS = DISTANCE + 1;
+	private static final int NB_COLUMNS = ATTACKS + OUTCOMES.length;
+
+	/**
+	 * Constant reflecting the names of the columns of a sample.
+	 */
+	private static final String[] NAMES = new String[NB_COLUMNS];
+
+	/**
+	 * Constant reflecting the type codes of the columns of a sample.
+	 */
+	private static final byte[] TYPES = new byte[NB_COLUMNS];
+
+	static {
+		column(TIME, "time", 'D');
+		column(TICKS, "ticks", 'I');
+		column(LATENCY, "latency_ns", 'J');
+		column(UNITS, "units", 'I');
+		for (Activity activity : ACTIVITIES)
+			column(ACTIVITY + activity.ordinal(), activity.name().toLowerCase(), 'I');
+		statistics(HITPOINTS, "hitpoints");
+		statistics(STAMINA, "stamina");
+		column(DISTANCE, "distance", 'D');
+		for (AttackOutcome outcome : OUTCOMES)
+			column(ATTACKS + outcome.ordinal(), outcome.name().toLowerCase(), 'I');
+	}
+
+	private static void column(int index, String name, char type) {
+		NAMES[index] = name;
+		TYPES[index] = (byte) type;
+	}
+
+	private static void statistics(int index, String name) {
+		column(index, name + "_mean", 'D');
+		column(index + 1, name + "_p10", 'I');
+		column(index + 2, name + "_p50", 'I');
+		column(index + 3, name + "_p90", 'I');
+	}
+
+	/**
+	 * Variable registering the world whose units are sampled.
+	 */
+	private final World world;
+
+	/**
+	 * Variable registering the maximal number of samples waiting to be written.
+	 */
+	private final int capacity;
+
+	/**
+	 * Variable registering the samples waiting to be written, by column and by
+	 * slot, with floating-point values stored as their bits.
+	 */
+	private final long[][] ring;
+
+	/**
+	 * Variable registering the number of samples taken, the next sample going to
+	 * the slot at this number modulo the capacity.
+	 */
+	private volatile long head;
+
+	/**
+	 * Variable registering the number of samples written.
+	 */
+	private volatile long tail;
+
+	/**
+	 * Variable registering the number of samples skipped because the ring was full.
+	 */
+	private volatile long nbDropped;
+
+	/**
+	 * Variable registering whether this recorder is closed.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Variable registering the error that stopped the background thread, if any.
+	 */
+	private volatile IOException failure;
+
+	/**
+	 * Variable registering the background thread writing the samples.
+	 */
+	private final Thread flusher;
+
+	/**
+	 * Variables registering the files the samples are written to.
+	 */
+	private final FileChannel csv, columns;
+
+	/*
+	 * State of the simulation thread, reused from sample to sample.
+	 */
+	private final int[] vitals = new int[3];
+	private final double[] pose = new double[4];
+	private final int[] activities = new int[ACTIVITIES.length];
+	private final long[] attacks = new long[OUTCOMES.length];
+	private int[] hitpoints = new int[16], stamina = new int[16], histogram = new int[256];
+	private double[] positions = new double[48];
+	private final BitSet tracked = new BitSet();
+
+	/*
+	 * State of the background thread.
+	 */
+	private final ByteBuffer csvBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final ByteBuffer columnBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final StringBuilder line = new StringBuilder();
+
+	/**
+	 * Return the world whose units this recorder samples.
+	 */
+	@Basic @Immutable
+	public World getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Return the maximal number of samples waiting to be written.
+	 */
+	@Basic @Immutable
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Return the number of samples taken by this recorder.
+	 */
+	public long getNbSamples() {
+		return this.head;
+	}
+
+	/**
+	 * Return the number of samples written by this recorder.
+	 */
+	public long getNbWritten() {
+		return this.tail;
+	}
+
+	/**
+	 * Return the number of samples skipped because the ring was full.
+	 */
+	@Basic
+	public long getNbDropped() {
+		return this.nbDropped;
+	}
+
+	/**
+	 * Sample the units of the world of this recorder, to be called on the
+	 * simulation thread after each frame, as the world does when this recorder
+	 * is its telemetry recorder.
+	 *
+	 * @return	True if and only if the sample was taken, false if it was skipped
+	 * 			because the ring is full or this recorder is closed.
+	 */
+	public boolean sample() {
+		long head = this.head;
+		if ((this.closed) || (head - this.tail >= this.capacity)) {
+			this.nbDropped++;
+			return false;
+		}
+		int slot = (int) (head % this.capacity);
+		long[][] ring = this.ring;
+		ring[TIME][slot] = Double.doubleToRawLongBits(this.world.getClock().getSimulationTime());
+		ring[TICKS][slot] = this.world.getLastFrameTicks();
+		ring[LATENCY][slot] = this.world.getLastFrameNanos();
+		int nbUnits = this.world.getNbUnits();
+		if (this.hitpoints.length < nbUnits) {
+			int length = Math.max(nbUnits, 2 * this.hitpoints.length);
+			this.hitpoints = Arrays.copyOf(this.hitpoints, length);
+			this.stamina = Arrays.copyOf(this.stamina, length);
+			this.positions = Arrays.copyOf(this.positions, 3 * length);
+		}
+		Arrays.fill(this.activities, 0);
+		int nbAlive = 0;
+		double distance = 0;
+		for (int id = 0; id < nbUnits; id++) {
+			if (!this.world.isAlive(id)) {
+				this.tracked.clear(id);
+				continue;
+			}
+			Unit unit = this.world.getUnit(id);
+			unit.getVitals(this.vitals);
+			unit.getPose(this.pose);
+			this.hitpoints[nbAlive] = this.vitals[0];
+			this.stamina[nbAlive] = this.vitals[1];
+			this.activities[this.vitals[2]]++;
+			nbAlive++;
+			int offset = 3 * id;
+			if (this.tracked.get(id)) {
+				double dx = this.pose[0] - this.positions[offset];
+				double dy = this.pose[1] - this.positions[offset + 1];
+				double dz = this.pose[2] - this.positions[offset + 2];
+				distance += Math.sqrt(dx * dx + dy * dy + dz * dz);
+			}
+			System.arraycopy(this.pose, 0, this.positions, offset, 3);
+			this.tracked.set(id);
+		}
+		ring[UNITS][slot] = nbAlive;
+		for (int i = 0; i < ACTIVITIES.length; i++)
+			ring[ACTIVITY + i][slot] = this.activities[i];
+		this.summarize(this.hitpoints, nbAlive, HITPOINTS, slot);
+		this.summarize(this.stamina, nbAlive, STAMINA, slot);
+		ring[DISTANCE][slot] = Double.doubleToRawLongBits(distance);
+		for (AttackOutcome outcome : OUTCOMES) {
+			long total = this.world.getNbAttacks(outcome);
+			ring[ATTACKS + outcome.ordinal()][slot] = total - this.attacks[outcome.ordinal()];
+			this.attacks[outcome.ordinal()] = total;
+		}
+		this.head = head + 1;
+		if (2 * (head + 1 - this.tail) >= this.capacity)
+			LockSupport.unpark(this.flusher);
+		return true;
+	}
+
+	/**
+	 * Store the mean and the 10th, 50th and 90th percentile of the first given
+	 * number of the given values in the given slot of the four columns starting
+	 * at the given column. The percentiles are read from a histogram, since the
+	 * values are small and not negative.
+	 */
+	private void summarize(int[] values, int nbValues, int column, int slot) {
+		if (nbValues == 0) {
+			this.ring[column][slot] = Double.doubleToRawLongBits(0);
+			for (int i = 1; i <= 3; i++)
+				this.ring[column + i][slot] = 0;
+			return;
+		}
+		int max = 0;
+		long sum = 0;
+		for (int i = 0; i < nbValues; i++) {
+			max = Math.max(max, values[i]);
+			sum += values[i];
+		}
+		if (this.histogram.length <= max)
+			this.histogram = new int[Math.max(max + 1, 2 * this.histogram.length)];
+		Arrays.fill(this.histogram, 0, max + 1, 0);
+		for (int i = 0; i < nbValues; i++)
+			this.histogram[Math.max(values[i], 0)]++;
+		this.ring[column][slot] = Double.doubleToRawLongBits((double) sum / nbValues);
+		int value = 0;
+		int count = this.histogram[0];
+		for (int i = 1; i <= 3; i++) {
+			// Nearest rank: the smallest value with at least the given fraction of the values at or below it.
+			int rank = Math.max(1, (int) Math.ceil(PERCENTILES[i - 1] * nbValues));
+			while (count < rank)
+				count += this.histogram[++value];
+			this.ring[column + i][slot] = value;
+		}
+	}
+
+	/**
+	 * Write the samples taken so far and close the files of this recorder.
+	 * Samples taken after closing are skipped.
+	 *
+	 * @throws	IOException
+	 * 			Some samples could not be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.closed = true;
+		LockSupport.unpark(this.flusher);
+		try {
+			this.flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			this.csv.close();
+		} finally {
+			this.columns.close();
+		}
+		if (this.failure != null)
+			throw this.failure;
+	}
+
+	/**
+	 * Write the header line of the CSV file and the header of the columnar file.
+	 */
+	private void writeHeaders() throws IOException {
+		for (int column = 0; column < NB_COLUMNS; column++) {
+			if (column > 0)
+				this.line.append(',');
+			this.line.append(NAMES[column]);
+		}
+		this.line.append('\n');
+		this.putLine();
+		drain(this.csv, this.csvBuffer);
+		this.columnBuffer.putInt(MAGIC).putShort(VERSION).putShort((short) NB_COLUMNS);
+		for (int column = 0; column < NB_COLUMNS; column++) {
+			this.columnBuffer.put(TYPES[column]).put((byte) NAMES[column].length());
+			for (int i = 0; i < NAMES[column].length(); i++)
+				this.columnBuffer.put((byte) NAMES[column].charAt(i));
+		}
+		drain(this.columns, this.columnBuffer);
+	}
+
+	/**
+	 * Write the samples taken until this recorder is closed, on the background thread.
+	 */
+	private void flushSamples() {
+		try {
+			while (true) {
+				boolean closing = this.closed;
+				long head = this.head;
+				if (this.tail < head) {
+					this.writeCsv(this.tail, head);
+					this.writeColumns(this.tail, head);
+					this.tail = head;
+				}
+				else if (closing)
+					return;
+				else
+					LockSupport.parkNanos(this, FLUSH_INTERVAL);
+			}
+		} catch (IOException e) {
+			this.failure = e;
+		}
+	}
+
+	/**
+	 * Append the samples with the given numbers to the CSV file.
+	 */
+	private void writeCsv(long from, long to) throws IOException {
+		for (long sample = from; sample < to; sample++) {
+			int slot = (int) (sample % this.capacity);
+			for (int column = 0; column < NB_COLUMNS; column++) {
+				if (column > 0)
+					this.line.append(',');
+				if (TYPES[column] == 'D')
+					this.line.append(Double.longBitsToDouble(this.ring[column][slot]));
+				else
+					this.line.append(this.ring[column][slot]);
+			}
+			this.line.append('\n');
+			if (this.csvBuffer.remaining() < this.line.length())
+				drain(this.csv, this.csvBuffer);
+			this.putLine();
+		}
+		drain(this.csv, this.csvBuffer);
+	}
+
+	/**
+	 * Move the current line into the CSV buffer.
+	 */
+	private void putLine() {
+		for (int i = 0; i < this.line.length(); i++)
+			this.csvBuffer.put((byte) this.line.charAt(i));
+		this.line.setLength(0);
+	}
+
+	/**
+	 * Append the samples with the given numbers to the columnar file, in blocks
+	 * that fit in the buffer.
+	 */
+	private void writeColumns(long from, long to) throws IOException {
+		int rowSize = 0;
+		for (byte type : TYPES)
+			rowSize += (type == 'I') ? 4 : 8;
+		int maxRows = (BUFFER_SIZE - 4) / rowSize;
+		while (from < to) {
+			int nbRows = (int) Math.min(to - from, maxRows);
+			this.columnBuffer.putInt(nbRows);
+			for (int column = 0; column < NB_COLUMNS; column++)
+				for (long sample = from; sample < from + nbRows; sample++) {
+					long value = this.ring[column][(int) (sample % this.capacity)];
+					if (TYPES[column] == 'I')
+						this.columnBuffer.putInt((int) value);
+					else
+						this.columnBuffer.putLong(value);
+				}
+			drain(this.columns, this.columnBuffer);
+			from += nbRows;
+		}
+	}
+
+	/**
+	 * Write the contents of the given buffer to the given channel, and clear the buffer.
+	 */
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
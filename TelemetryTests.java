@@ -0,0 +1,162 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the recorders sampling the units of a world after each frame and
+ * writing the samples to files.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class TelemetryTests {
+
+	/**
+	 * Constant reflecting the duration of a frame, in seconds.
+	 */
+	private static final double FRAME_TIME = 0.1;
+
+	/**
+	 * Constant reflecting the number of frames sampled by these tests.
+	 */
+	private static final int NB_FRAMES = 20;
+
+	private Path directory;
+
+	private World world;
+
+	private BehaviorScheduler scheduler;
+
+	private Unit[] units;
+
+	private TelemetryRecorder recorder;
+
+	@Before
+	public void setUp() throws Exception {
+		this.directory = Files.createTempDirectory("telemetry");
+		this.world = new World();
+		this.scheduler = new BehaviorScheduler();
+		this.units = new Unit[3];
+		for (int i = 0; i < this.units.length; i++) {
+			this.units[i] = this.world.createUnit("Sampled Unit", new int[] {5 + i, 5, 5}, 50, 50, 50, 50, false);
+			this.scheduler.attach(this.units[i]);
+		}
+		this.recorder = new TelemetryRecorder(this.world, this.directory, 64);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (Unit unit : this.units)
+			this.scheduler.interrupt(unit);
+		this.recorder.close();
+		try (Stream<Path> files = Files.list(this.directory)) {
+			for (Path file : (Iterable<Path>) files::iterator)
+				Files.delete(file);
+		}
+		Files.delete(this.directory);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_InvalidCapacity() throws Exception {
+		new TelemetryRecorder(this.world, this.directory, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void setTelemetryRecorder_RecorderOfOtherWorld() {
+		new World().setTelemetryRecorder(this.recorder);
+	}
+
+	@Test
+	public void advanceTime_SamplesEachFrame() throws Exception {
+		this.world.setTelemetryRecorder(this.recorder);
+		for (int i = 0; i < NB_FRAMES; i++)
+			this.world.advanceTime(FRAME_TIME);
+		double time = this.world.getClock().getSimulationTime();
+		this.world.setTelemetryRecorder(null);
+		this.world.advanceTime(FRAME_TIME);
+		this.recorder.close();
+		assertEquals(NB_FRAMES, this.recorder.getNbSamples());
+		assertEquals(NB_FRAMES, this.recorder.getNbWritten());
+		assertEquals(0, this.recorder.getNbDropped());
+		List<String> lines = Files.readAllLines(this.directory.resolve(TelemetryRecorder.CSV_FILE));
+		assertEquals(NB_FRAMES + 1, lines.size());
+		List<String> names = Arrays.asList(lines.get(0).split(","));
+		String[] last = lines.get(NB_FRAMES).split(",");
+		assertEquals(names.size(), last.length);
+		assertEquals(time, Double.parseDouble(last[names.indexOf("time")]), 1e-9);
+		assertEquals(this.units.length, Integer.parseInt(last[names.indexOf("units")]));
+		assertEquals(this.units.length, Integer.parseInt(last[names.indexOf("idle")]));
+		int hitpoints = this.units[0].getHitpoints();
+		assertEquals(hitpoints, Double.parseDouble(last[names.indexOf("hitpoints_mean")]), 0);
+		assertEquals(hitpoints, Integer.parseInt(last[names.indexOf("hitpoints_p50")]));
+		assertEquals(0, Double.parseDouble(last[names.indexOf("distance")]), 0);
+	}
+
+	@Test
+	public void sample_CountsAttacksSincePreviousSample() throws Exception {
+		Random random = new Random(42);
+		this.recorder.sample();
+		for (int i = 0; i < 5; i++)
+			this.units[0].resolveAttack(this.units[1], random);
+		this.recorder.sample();
+		this.units[1].resolveAttack(this.units[2], random);
+		this.recorder.sample();
+		this.recorder.close();
+		List<String> lines = Files.readAllLines(this.directory.resolve(TelemetryRecorder.CSV_FILE));
+		List<String> names = Arrays.asList(lines.get(0).split(","));
+		int[] nbAttacks = new int[lines.size()];
+		for (int row = 1; row < lines.size(); row++) {
+			String[] values = lines.get(row).split(",");
+			for (AttackOutcome outcome : AttackOutcome.values())
+				nbAttacks[row] += Integer.parseInt(values[names.indexOf(outcome.name().toLowerCase())]);
+		}
+		assertArrayEquals(new int[] {0, 0, 5, 1}, nbAttacks);
+	}
+
+	@Test
+	public void close_WritesColumnarFile() throws Exception {
+		for (int i = 0; i < NB_FRAMES; i++)
+			this.recorder.sample();
+		this.recorder.close();
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(this.directory.resolve(TelemetryRecorder.COLUMN_FILE)));
+		assertEquals(TelemetryRecorder.MAGIC, buffer.getInt());
+		assertEquals(TelemetryRecorder.VERSION, buffer.getShort());
+		int nbColumns = buffer.getShort();
+		byte[] types = new byte[nbColumns];
+		for (int column = 0; column < nbColumns; column++) {
+			types[column] = buffer.get();
+			byte[] name = new byte[buffer.get()];
+			buffer.get(name);
+			if (column == 0)
+				assertEquals("time", new String(name));
+		}
+		int nbRows = 0;
+		while (buffer.hasRemaining()) {
+			int count = buffer.getInt();
+			nbRows += count;
+			for (int column = 0; column < nbColumns; column++)
+				buffer.position(buffer.position() + count * (types[column] == 'I' ? 4 : 8));
+		}
+		assertEquals(NB_FRAMES, nbRows);
+	}
+
+	@Test
+	public void sample_SkippedAfterClose() throws Exception {
+		this.recorder.close();
+		assertFalse(this.recorder.sample());
+		assertEquals(0, this.recorder.getNbSamples());
+		assertEquals(1, this.recorder.getNbDropped());
+	}
+}
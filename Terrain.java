@@ -0,0 +1,49 @@
+package hillbillies.model;
+
+/**
+ * A class collecting the terrain types of the cubes of the game world,
+ * as stored in the byte maps of the world.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public final class Terrain {
+
+	/**
+	 * This class only offers static members.
+	 */
+	private Terrain() {
+	}
+
+	/**
+	 * Constant reflecting the terrain type of open air.
+	 */
+	public static final byte AIR = 0;
+
+	/**
+	 * Constant reflecting the terrain type of rock.
+	 */
+	public static final byte ROCK = 1;
+
+	/**
+	 * Constant reflecting the terrain type of a tree.
+	 */
+	public static final byte TREE = 2;
+
+	/**
+	 * Constant reflecting the terrain type of a workshop.
+	 */
+	public static final byte WORKSHOP = 3;
+
+	/**
+	 * Check whether units can pass through a cube of the given terrain type.
+	 *
+	 * @param 	type
+	 * 			The terrain type to check.
+	 * @return	True if and only if the given type is open air or a workshop.
+	 * 			| result == ((type == AIR) || (type == WORKSHOP))
+	 */
+	public static boolean isPassable(byte type) {
+		return (type == AIR) || (type == WORKSHOP);
+	}
+}
@@ -0,0 +1,125 @@
+package hillbillies.model;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests on the chunked maps storing the terrain of the game world, and on the
+ * passable maps labelling its connected components.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class TerrainTests {
+
+	private ChunkedMap map;
+
+	private PassableMap passable;
+
+	@Before
+	public void setUp() {
+		this.map = new ChunkedMap(40, 20, 20);
+		this.passable = new PassableMap(this.map);
+	}
+
+	@Test
+	public void chunkedMap_UniformWhenCreated() {
+		assertEquals(this.map.getNbChunks(), this.map.getNbUniformChunks());
+		assertEquals(Terrain.AIR, this.map.getValue(39, 19, 19));
+	}
+
+	@Test
+	public void chunkedMap_PaletteCollapsesToUniform() {
+		long uniformUsage = this.map.getMemoryUsage();
+		this.map.setValue(3, 4, 5, Terrain.ROCK);
+		this.map.setValue(3, 4, 6, Terrain.TREE);
+		assertEquals(this.map.getNbChunks() - 1, this.map.getNbUniformChunks());
+		assertTrue(this.map.getMemoryUsage() > uniformUsage);
+		assertEquals(Terrain.ROCK, this.map.getValue(3, 4, 5));
+		assertEquals(Terrain.TREE, this.map.getValue(3, 4, 6));
+		assertEquals(Terrain.AIR, this.map.getValue(3, 4, 7));
+		this.map.setValue(3, 4, 5, Terrain.AIR);
+		this.map.setValue(3, 4, 6, Terrain.AIR);
+		assertEquals(this.map.getNbChunks(), this.map.getNbUniformChunks());
+		assertEquals(uniformUsage, this.map.getMemoryUsage());
+	}
+
+	@Test
+	public void chunkedMap_FillUniformChunk() {
+		ChunkedMap map = new ChunkedMap(40, 20, 20);
+		map.fill((x, y, z) -> (z < 16) ? Terrain.ROCK : Terrain.AIR);
+		assertEquals(map.getNbChunks(), map.getNbUniformChunks());
+		assertEquals(Terrain.ROCK, map.getValue(20, 10, 15));
+		assertEquals(Terrain.AIR, map.getValue(20, 10, 16));
+	}
+
+	@Test
+	public void passableMap_SplitByClosedWall() {
+		assertEquals(1, this.passable.getNbComponents());
+		this.closeWall(20);
+		assertEquals(2, this.passable.getNbComponents());
+		assertFalse(this.passable.isPassable(20, 5, 5));
+		assertEquals(PassableMap.NO_COMPONENT, this.passable.getComponent(20, 5, 5));
+		assertFalse(this.passable.canReach(new int[] {0, 0, 0}, new int[] {39, 19, 19}));
+		assertTrue(this.passable.canReach(new int[] {0, 0, 0}, new int[] {19, 19, 19}));
+	}
+
+	@Test
+	public void passableMap_MergedByOpenedCube() {
+		this.closeWall(20);
+		this.map.setValue(20, 7, 9, Terrain.AIR);
+		assertEquals(1, this.passable.getNbComponents());
+		assertTrue(this.passable.isPassable(20, 7, 9));
+		assertEquals(this.passable.getComponent(0, 0, 0), this.passable.getComponent(39, 19, 19));
+		assertEquals(this.passable.getComponent(0, 0, 0), this.passable.getComponent(20, 7, 9));
+		this.map.setValue(20, 7, 9, Terrain.TREE);
+		assertEquals(2, this.passable.getNbComponents());
+	}
+
+	@Test
+	public void passableMap_IsolatedCube() {
+		this.closeWall(20);
+		this.closeWall(22);
+		this.map.setValue(21, 0, 0, Terrain.ROCK);
+		assertEquals(3, this.passable.getNbComponents());
+		for (int y = 0; y < 20; y++)
+			for (int z = 0; z < 20; z++)
+				this.map.setValue(21, y, z, Terrain.ROCK);
+		assertEquals(2, this.passable.getNbComponents());
+		this.map.setValue(21, 10, 10, Terrain.AIR);
+		assertEquals(3, this.passable.getNbComponents());
+		assertFalse(this.passable.canReach(new int[] {21, 10, 10}, new int[] {0, 0, 0}));
+		assertTrue(this.passable.canReach(new int[] {21, 10, 10}, new int[] {21, 10, 10}));
+	}
+
+	@Test
+	public void passableMap_ClosedCubeInOpenAir() {
+		this.map.setValue(10, 10, 10, Terrain.ROCK);
+		assertEquals(1, this.passable.getNbComponents());
+		assertTrue(this.passable.canReach(new int[] {9, 10, 10}, new int[] {11, 10, 10}));
+		this.map.setValue(10, 10, 10, Terrain.AIR);
+		assertEquals(this.passable.getComponent(0, 0, 0), this.passable.getComponent(10, 10, 10));
+	}
+
+	@Test
+	public void passableMap_LabelsOfUniformChunksCollapse() {
+		ChunkedMap map = new ChunkedMap(128, 128, 64);
+		map.fill((x, y, z) -> (z < 30 + (x / 8 + y / 8) % 4) ? Terrain.ROCK : Terrain.AIR);
+		PassableMap passable = new PassableMap(map);
+		assertEquals(1, passable.getNbComponents());
+		assertTrue(passable.getNbUniformChunks() > map.getNbChunks() / 2);
+		assertTrue(passable.getMemoryUsage() < 128 * 128 * 64 / 4);
+		assertEquals(PassableMap.NO_COMPONENT, passable.getComponent(5, 5, 5));
+		assertTrue(passable.canReach(new int[] {0, 0, 63}, new int[] {127, 127, 40}));
+	}
+
+	/**
+	 * Close all cubes with the given x coordinate.
+	 */
+	private void closeWall(int x) {
+		for (int y = 0; y < 20; y++)
+			for (int z = 0; z < 20; z++)
+				this.map.setValue(x, y, z, Terrain.ROCK);
+	}
+}
@@ -0,0 +1,277 @@
+package hillbillies.model;
+import java.util.Arrays;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of tick schedulers, stepping each unit of a world at a frequency
+ * that depends on its current activity.
+ *
+ * Moving units are stepped every tick. Fighting units are stepped at the combat
+ * cadence, resting units once per recovery interval and working or idle units at
+ * a coarse interval. A unit that is stepped after several ticks receives all the
+ * time that passed since its previous step at once, split into the fewest steps
+ * of valid durations, so no simulated time is lost; only the moments at which it
+ * notices it is due for a rest can shift by up to one interval. Stepping itself
+ * never waits; once all due units have been handed their time, the tick waits
+ * until the behaviour threads of those units have consumed it, outside of the
+ * lock of this scheduler since those threads reschedule their units when they
+ * change activity. Units are kept in the slots of a timing wheel by the tick
+ * they are due, so a tick only visits the units that are due. A unit that changes activity is due at the next tick
+ * again, and the time it spent in its previous activity since its last step is
+ * not counted towards the new one.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class TickScheduler {
+
+	/**
+	 * Initialize this new scheduler for the given world and tick duration.
+	 *
+	 * @param	world
+	 * 			The world whose units are stepped.
+	 * @param	tickDuration
+	 * 			The duration of one tick, in seconds.
+	 * @throws	IllegalArgumentException
+	 * 			The given tick duration is zero or not a valid duration.
+	 * 			| (tickDuration == 0) || (! Unit.isValidDuration(tickDuration))
+	 */
+	public TickScheduler(World world, double tickDuration) throws IllegalArgumentException {
+		if ((tickDuration == 0) || (!Unit.isValidDuration(tickDuration)))
+			throw new IllegalArgumentException("Invalid tick duration: " + tickDuration);
+		this.world = world;
+		this.tickDuration = tickDuration;
+		for (int i = 0; i < WHEEL_SIZE; i++)
+			this.slots[i] = new int[8];
+	}
+
+	/**
+	 * Constant reflecting the interval at which fighting units are stepped, in seconds.
+	 */
+	public static final double COMBAT_INTERVAL = 0.2;
+
+	/**
+	 * Constant reflecting the interval at which working and idle units are stepped, in seconds.
+	 */
+	public static final double COARSE_INTERVAL = 1.0;
+
+	/**
+	 * Constant reflecting the number of slots of the timing wheel.
+	 */
+	private static final int WHEEL_SIZE = 256;
+
+	/**
+	 * Variable registering the world whose units are stepped.
+	 */
+	private final World world;
+
+	/**
+	 * Variable registering the duration of one tick.
+	 */
+	private final double tickDuration;
+
+	/**
+	 * Variable registering the identifiers of the units due in each slot of the wheel.
+	 */
+	private final int[][] slots = new int[WHEEL_SIZE][];
+
+	/**
+	 * Variable registering the number of identifiers in each slot of the wheel.
+	 */
+	private final int[] slotSizes = new int[WHEEL_SIZE];
+
+	/**
+	 * Variable registering an empty slot array, swapped in for the slot being processed.
+	 */
+	private int[] spare = new int[8];
+
+	/**
+	 * Variable registering the tick each unit is due, indexed by identifier, or -1.
+	 */
+	private long[] dueTicks = new long[0];
+
+	/**
+	 * Variable registering the tick at which each unit was last stepped, indexed by identifier.
+	 */
+	private long[] lastTicks = new long[0];
+
+	/**
+	 * Variable registering the number of the current tick.
+	 */
+	private long tick;
+
+	/**
+	 * Variable registering the number of units stepped during the last tick.
+	 */
+	private int nbStepped;
+
+	/**
+	 * Variable registering the identifiers of the units stepped during the last tick.
+	 */
+	private int[] stepped = new int[8];
+
+	/**
+	 * Return the world whose units are stepped.
+	 */
+	@Basic @Immutable
+	public World getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Return the duration of one tick of this scheduler.
+	 */
+	@Basic @Immutable
+	public double getTickDuration() {
+		return this.tickDuration;
+	}
+
+	/**
+	 * Return the number of ticks this scheduler has performed.
+	 */
+	@Basic
+	public synchronized long getTick() {
+		return this.tick;
+	}
+
+	/**
+	 * Return the number of units stepped during the last tick.
+	 */
+	@Basic
+	public synchronized int getNbStepped() {
+		return this.nbStepped;
+	}
+
+	/**
+	 * Return the interval at which the given unit has to be stepped, in seconds.
+	 *
+	 * @param	unit
+	 * 			The unit to inspect.
+	 * @return	Zero for moving units, the combat interval for fighting units, the
+	 * 			recovery interval for resting units and the coarse interval otherwise.
+	 */
+	public static double getStepInterval(Unit unit) {
+		switch (unit.getActivity()) {
+			case MOVING:
+				return 0;
+			case FIGHTING:
+				return COMBAT_INTERVAL;
+			case RESTING:
+				return 200 / unit.getToughness() * 0.2;
+			default:
+				return COARSE_INTERVAL;
+		}
+	}
+
+	/**
+	 * Let the given unit be due at the next tick, for example because it changed
+	 * activity, and let its next step only cover the time from now on.
+	 *
+	 * @param	unit
+	 * 			The unit to reschedule, which has to belong to the world of this scheduler.
+	 */
+	public synchronized void reschedule(Unit unit) {
+		int id = unit.getId();
+		this.ensureCapacity(id);
+		this.lastTicks[id] = this.tick;
+		if (this.dueTicks[id] != this.tick + 1)
+			this.schedule(id, this.tick + 1);
+	}
+
+	/**
+	 * Remove the unit with the given identifier from this scheduler.
+	 *
+	 * @param	id
+	 * 			The identifier of the unit.
+	 */
+	public synchronized void remove(int id) {
+		if (id < this.dueTicks.length)
+			this.dueTicks[id] = -1;
+	}
+
+	/**
+	 * Perform one tick, stepping all units that are due with the time that
+	 * passed since their previous step, and wait until their behaviours have
+	 * consumed that time.
+	 *
+	 * @return	The number of units that were stepped.
+	 * @throws	InterruptedException
+	 * 			The activity of a unit was interrupted while it was stepped, or the
+	 * 			calling thread was interrupted while waiting for a behaviour.
+	 */
+	public int tick() throws InterruptedException {
+		int nbStepped = this.stepDue();
+		for (int i = 0; i < nbStepped; i++) {
+			Unit unit = this.world.getUnit(this.stepped[i]);
+			if (unit.getBehaviorScheduler() != null)
+				unit.getBehaviorScheduler().await(unit);
+		}
+		return nbStepped;
+	}
+
+	/**
+	 * Step all units that are due at the next tick, and register their identifiers.
+	 */
+	private synchronized int stepDue() throws InterruptedException {
+		this.tick++;
+		int slot = (int) (this.tick % WHEEL_SIZE);
+		int[] due = this.slots[slot];
+		int size = this.slotSizes[slot];
+		this.slots[slot] = this.spare;
+		this.slotSizes[slot] = 0;
+		this.nbStepped = 0;
+		for (int i = 0; i < size; i++) {
+			int id = due[i];
+			if (this.dueTicks[id] != this.tick) {
+				// Stale entry of a rescheduled unit, or a unit due in a later round of the wheel.
+				if ((this.dueTicks[id] > this.tick) && (this.dueTicks[id] % WHEEL_SIZE == slot))
+					this.append(id, slot);
+				continue;
+			}
+			Unit unit = this.world.getUnit(id);
+			long elapsedTicks = this.tick - this.lastTicks[id];
+			this.lastTicks[id] = this.tick;
+			unit.step(elapsedTicks * this.tickDuration);
+			if (this.nbStepped == this.stepped.length)
+				this.stepped = Arrays.copyOf(this.stepped, 2 * this.stepped.length);
+			this.stepped[this.nbStepped++] = id;
+			long interval = Math.max(1, Math.round(getStepInterval(unit) / this.tickDuration));
+			if (this.dueTicks[id] == this.tick)
+				this.schedule(id, this.tick + interval);
+		}
+		this.spare = due;
+		return this.nbStepped;
+	}
+
+	/**
+	 * Let the unit with the given identifier be due at the given tick.
+	 */
+	private void schedule(int id, long dueTick) {
+		this.dueTicks[id] = dueTick;
+		this.append(id, (int) (dueTick % WHEEL_SIZE));
+	}
+
+	/**
+	 * Append the given identifier to the given slot of the wheel.
+	 */
+	private void append(int id, int slot) {
+		if (this.slotSizes[slot] == this.slots[slot].length)
+			this.slots[slot] = Arrays.copyOf(this.slots[slot], 2 * this.slots[slot].length);
+		this.slots[slot][this.slotSizes[slot]++] = id;
+	}
+
+	/**
+	 * Make room for the unit with the given identifier.
+	 */
+	private void ensureCapacity(int id) {
+		if (id < this.dueTicks.length)
+			return;
+		int oldLength = this.dueTicks.length;
+		int newLength = Math.max(id + 1, 2 * oldLength);
+		this.dueTicks = Arrays.copyOf(this.dueTicks, newLength);
+		this.lastTicks = Arrays.copyOf(this.lastTicks, newLength);
+		Arrays.fill(this.dueTicks, oldLength, newLength, -1);
+	}
+}
@@ -1,6 +1,7 @@
 package hillbillies.model;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
 
 import be.kuleuven.cs.som.annotate.Basic;
 import be.kuleuven.cs.som.annotate.Immutable;
@@ -10,6 +11,13 @@ import hillbillies.model.OutOfBoundsException;
 /**
  * A class of Hillbilly units.
  * 
+ * The state of a unit is only changed by the thread advancing its world or by
+ * its own behaviour thread, which runs in lock step with the world. Other
+ * threads, such as user interface threads, may read it at any time: each field
+ * is read atomically, and getters returning several fields at once read them
+ * optimistically under a stamped lock, so they see a consistent snapshot
+ * without blocking the simulation.
+ * 
  * @author 	Joris Schrauwen, Wim Schmitz
  * 			
  * 
@@ -53,15 +61,30 @@ public class Unit {
 	public Unit(String name, int[] position, int weight, int agility, 
 				int strength, int toughness, boolean enableDefaultBehavior) 
 					throws OutOfBoundsException, IllegalArgumentException {
+		this(null, name, position, weight, agility, strength, toughness, enableDefaultBehavior);
+	}
+	
+	/**
+	 * Initialize this new unit with given position, name, weight, strength,
+	 * agility and toughness, checking its position against the bounds of the given world.
+	 * 
+	 * @param	bounds
+	 * 			The world whose bounds the position has to lie within, or null
+	 * 			for the default bounds.
+	 * @effect	| this(name, position, weight, agility, strength, toughness, enableDefaultBehavior)
+	 * @throws	OutOfBoundsException
+	 * 			The given world is effective and the given position does not lie within its bounds.
+	 * 			| (bounds != null) && (! bounds.isValidPosition(position))
+	 */
+	Unit(World bounds, String name, int[] position, int weight, int agility, 
+				int strength, int toughness, boolean enableDefaultBehavior) 
+					throws OutOfBoundsException, IllegalArgumentException {
 		double[] pos = {(double) position[0], (double) position[1], (double) position[2]};	
-		if (!isValidPosition(pos))
+		if ((bounds == null) ? (!isValidPosition(pos)) : (!bounds.isValidPosition(pos)))
 			throw new OutOfBoundsException(pos);
 		
-		if (!canHaveAsName(name))
-			throw new IllegalArgumentException(name);
-		
+		this.nameHandle = NAMES.intern(name);
 		this.position = pos;	
-		this.name = name;
 		
 		if (isWithinRange(strength))		
 			this.setStrength(strength);
@@ -86,15 +109,139 @@ public class Unit {
 		
 	}
 	
+	/**
+	 * Initialize this new unit as a copy of the given unit, that does not belong
+	 * to any world and has no behaviour scheduler.
+	 * 
+	 * @param	other
+	 * 			The unit to copy.
+	 * @post	The state of this new unit is equal to the state of the given unit.
+	 * @post	This new unit keeps the identifier of the given unit, to find it back in a fork.
+	 * 			| new.getId() == other.getId()
+	 * 			| new.getWorld() == null
+	 */
+	Unit(Unit other) {
+		this.position = other.position.clone();
+		this.nameHandle = (other.nameHandle < 0) ? NO_NAME : NAMES.retain(other.nameHandle);
+		this.weight = other.weight;
+		this.strength = other.strength;
+		this.agility = other.agility;
+		this.toughness = other.toughness;
+		this.orientation = other.orientation;
+		this.stamina = other.stamina;
+		this.hitpoints = other.hitpoints;
+		this.status = other.status;
+		this.movement = other.movement;
+		this.interrupted = other.interrupted;
+		this.counter = other.counter;
+		this.enableDefaultBehavior = other.enableDefaultBehavior;
+		this.speed = other.speed.clone();
+		if (other.fixedPosition != null) {
+			this.fixedPosition = other.fixedPosition.clone();
+			this.fixedSpeed = (other.fixedSpeed == null) ? null : other.fixedSpeed.clone();
+		}
+		this.id = other.id;
+		this.generation = other.generation;
+	}
+	
+	/**
+	 * Reinitialize this dead unit of a world with the given name, position, weight,
+	 * strength, agility and toughness, as if it were created anew. The position and
+	 * speed arrays the dead unit handed out are left untouched.
+	 * 
+	 * @effect	The attributes of this unit are initialized as by
+	 * 			| Unit(getWorld(), name, position, weight, agility, strength, toughness, enableDefaultBehavior)
+	 * @post	This unit keeps its world, identifier and behaviour scheduler.
+	 * @post	| new.getGeneration() == this.getGeneration() + 1
+	 * @throws	OutOfBoundsException
+	 * 			The given position does not lie within the bounds of the world of this unit.
+	 * 			This unit is not changed in that case.
+	 * @throws	IllegalArgumentException
+	 * 			This unit cannot have the given name. This unit is not changed in that case.
+	 */
+	void reset(String name, int[] position, int weight, int agility, int strength, int toughness,
+			boolean enableDefaultBehavior) throws OutOfBoundsException, IllegalArgumentException {
+		long stamp = this.lock.writeLock();
+		try {
+			this.resetState(name, position, weight, agility, strength, toughness, enableDefaultBehavior);
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * Reinitialize the state of this unit as by reset, while holding the lock of this unit.
+	 */
+	private void resetState(String name, int[] position, int weight, int agility, int strength, int toughness,
+			boolean enableDefaultBehavior) throws OutOfBoundsException, IllegalArgumentException {
+		double[] pos = {(double) position[0], (double) position[1], (double) position[2]};
+		if (!isValidPosition(pos))
+			throw new OutOfBoundsException(pos);
+		int handle = NAMES.intern(name);
+		this.releaseName();
+		this.nameHandle = handle;
+		this.position = pos;
+		this.generation++;
+		
+		this.strength = 0;
+		this.agility = 0;
+		this.toughness = 0;
+		this.weight = 0;
+		if (isWithinRange(strength))		
+			this.setStrength(strength);
+		if (isWithinRange(agility))
+			this.setAgility(agility);
+		if (isWithinRange(toughness))
+			this.setToughness(toughness);
+		if (isWithinRange(weight))
+			this.setWeight(weight);
+		
+		this.orientation = (float) Math.PI/2;
+		this.stamina = getMaxHitpoints();
+		this.hitpoints = getMaxHitpoints();
+		this.interrupted = false;
+		this.movement = "Still";
+		this.enableDefaultBehavior = enableDefaultBehavior;
+		this.status = null;
+		this.counter = 0;
+		this.speed = new double[] {0, 0, 0};
+		if (this.isFixedPoint())
+			this.setFixedPoint(true);
+		this.clock.reset();
+	}
+	
+	/**
+	 * Variable registering the lock guarding changes to the state of this unit,
+	 * so fields can be read together consistently.
+	 */
+	private final StampedLock lock = new StampedLock();
+	
 	/**
 	 * Variable registering the position of this unit.
 	 */
-	private double[] position;
+	private volatile double[] position;
+	
+	/**
+	 * Variable registering the handle of the name of this unit in the table of
+	 * names of all units, or NO_NAME once this unit was reaped.
+	 */
+	private volatile int nameHandle;
+	
+	/**
+	 * Constant reflecting the table interning the names of all units.
+	 */
+	static final NameTable NAMES = new NameTable();
+	
+	/**
+	 * Constant reflecting the handle of units that no longer hold a name.
+	 */
+	static final int NO_NAME = -1;
 	
 	/**
-	 * Variable registering the name of this unit.
+	 * Variable registering the number of times this unit object was reinitialized
+	 * for a new unit of its world.
 	 */
-	private String name;
+	private volatile int generation;
 	
 	/**
 	 * Variable registering the weight of this unit.
@@ -119,27 +266,27 @@ public class Unit {
 	/**
 	 * Variable registering the orientation of this unit.
 	 */
-	private float orientation;
+	private volatile float orientation;
 	
 	/**
 	 * Variable registering the stamina of this unit.
 	 */
-	private int stamina;
+	private volatile int stamina;
 	
 	/**
 	 * Variable registering the hitpoints of this unit.
 	 */
-	private int hitpoints;
+	private volatile int hitpoints;
 	
 	/**
 	 * Variable registering the status of this unit.
 	 */
-	private String status;
+	private volatile String status;
 	
 	/*
 	 * Variable registering the unit's movement status.
 	 */
-	private String movement;
+	private volatile String movement;
 	
 	/*
 	 * Variable registering whether the unit's behavior is being interrupted.
@@ -156,18 +303,47 @@ public class Unit {
 	 */
 	private boolean enableDefaultBehavior;
 	
-	private double[] speed;
+	private volatile double[] speed;
+	
+	/**
+	 * Variables registering the position and speed of this unit in fixed-point
+	 * arithmetic, if this unit uses fixed-point arithmetic.
+	 */
+	private long[] fixedPosition;
+	
+	private long[] fixedSpeed;
+	
+	/**
+	 * Variable registering the scheduler running the behaviour of this unit, if any.
+	 */
+	private BehaviorScheduler behaviorScheduler;
+	
+	/**
+	 * Variable registering the world this unit belongs to, if any.
+	 */
+	private World world;
+	
+	/**
+	 * Variable registering the identifier of this unit in its world.
+	 */
+	private int id = -1;
+	
+	/**
+	 * Variable registering the clock splitting frame durations into fixed simulation steps for this unit.
+	 */
+	private final SimulationClock clock = new SimulationClock();
+	
 	/**
 	 * Variable registering the lower bound for the x, y and z
 	 * dimensions of the generated world.
 	 */
-	private static final int LOWER_BOUND = 0;
+	static final int LOWER_BOUND = 0;
 	
 	/**
 	 * Variable registering the upper bound for the x, y and z
 	 * dimensions of the generated world.
 	 */
-	private static final int UPPER_BOUND = 50;
+	static final int UPPER_BOUND = 50;
 	
 	/**
 	 * Return the position of this unit.
@@ -181,7 +357,10 @@ public class Unit {
 	 * Check whether the given position is a valid position for a unit.
 	 * @param 	position
 	 * 			The position to check.
-	 * @return	True if and only if all doubles of the given position
+	 * @return	If this unit belongs to a world, whether the given position lies
+	 * 			within the bounds of that world.
+	 * 			| if (getWorld() != null) then result == getWorld().isValidPosition(position)
+	 * @return	Otherwise, true if and only if all doubles of the given position
 	 * 			are larger than or equal to the lower bound and smaller 
 	 * 			than or equal to the upper bound.
 	 * 			| result == (for (int i = 0; i < position.length;)
@@ -189,28 +368,130 @@ public class Unit {
 	 *			|					(position[i] < UPPER_BOUND)))
 	 */
 	public boolean isValidPosition(double[] position){
-		for (int i = 0; i < position.length;)
+		if (this.getWorld() != null)
+			return this.getWorld().isValidPosition(position);
+		return isWithinDefaultBounds(position);
+	}
+	
+	/**
+	 * Check whether the given position lies within the bounds of units that do
+	 * not belong to a world with terrain.
+	 */
+	static boolean isWithinDefaultBounds(double[] position) {
+		for (int i = 0; i < position.length; i++)
 			if ((position[i] < LOWER_BOUND) || (position[i] > UPPER_BOUND))
 				return false;
 		return true;
 	}
 	
 	private void setPosition(double[] newPos) {
-		if (isValidPosition(newPos))
-			this.position = newPos;
+		if (isValidPosition(newPos)) {
+			long stamp = this.lock.writeLock();
+			try {
+				this.position = newPos;
+				if (this.isFixedPoint())
+					this.fixedPosition = FixedPoint.toFixed(newPos);
+			} finally {
+				this.lock.unlockWrite(stamp);
+			}
+			if (this.getWorld() != null)
+				this.getWorld().unitMoved(this);
+		}
+	}
+	
+	/**
+	 * Check whether this unit computes its movement in fixed-point arithmetic.
+	 */
+	public boolean isFixedPoint() {
+		return this.fixedPosition != null;
+	}
+	
+	/**
+	 * Let this unit compute its movement in fixed-point or in floating-point arithmetic.
+	 * 
+	 * @param	fixedPoint
+	 * 			True to integrate positions, velocities and arrivals of this unit in
+	 * 			fixed-point arithmetic, so its movement is bit-identical on every
+	 * 			machine and in every order of evaluation.
+	 * @post	| new.isFixedPoint() == fixedPoint
+	 */
+	public void setFixedPoint(boolean fixedPoint) {
+		if (fixedPoint) {
+			this.fixedPosition = FixedPoint.toFixed(this.getPosition());
+			this.fixedSpeed = FixedPoint.toFixed(this.getSpeed());
+		}
+		else {
+			this.fixedPosition = null;
+			this.fixedSpeed = null;
+		}
+	}
+	
+	/**
+	 * Return the fixed-point position of this unit, or null if this unit does
+	 * not use fixed-point arithmetic.
+	 */
+	public long[] getFixedPosition() {
+		return (this.fixedPosition == null) ? null : this.fixedPosition.clone();
+	}
+	
+	/**
+	 * Return the angle of the given vector with the x axis. Units using fixed-point
+	 * arithmetic use the strict implementation, which gives identical results on every machine.
+	 */
+	private double angle(double y, double x) {
+		if (this.isFixedPoint())
+			return StrictMath.atan2(y, x);
+		return Math.atan2(y, x);
 	}
 		
 	/**
-	 * Return the name of this unit.
+	 * Return the name of this unit, or null if this unit was reaped.
 	 */
-	@Basic @Raw @Immutable
+	@Basic @Raw
 	public String getName() {
-		return this.name;
+		int handle = this.nameHandle;
+		return (handle == NO_NAME) ? null : NAMES.getName(handle);
+	}
+	
+	/**
+	 * Return the number of times this unit object was reinitialized for a new
+	 * unit of its world. A holder of a unit that keeps the generation it saw can
+	 * tell whether the unit it refers to died and was replaced since.
+	 */
+	@Basic
+	public int getGeneration() {
+		return this.generation;
+	}
+	
+	/**
+	 * Return the handle of the name of this unit in the table of names of all units.
+	 */
+	int getNameHandle() {
+		return this.nameHandle;
+	}
+	
+	public synchronized void setName(String newName) {
+		int handle;
+		try {
+			handle = NAMES.intern(newName);
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		this.releaseName();
+		this.nameHandle = handle;
 	}
 	
-	public void setName(String newName) {
-		if (this.canHaveAsName(newName))
-			this.name = newName;
+	/**
+	 * Release the name of this unit in the table of names of all units, once
+	 * this unit was reaped.
+	 * 
+	 * @post	| new.getName() == null
+	 */
+	synchronized void releaseName() {
+		int handle = this.nameHandle;
+		this.nameHandle = NO_NAME;
+		if (handle != NO_NAME)
+			NAMES.release(handle);
 	}
 	
 	/**
@@ -225,21 +506,7 @@ public class Unit {
 	*/
 	@Raw
 	public boolean canHaveAsName(String name) {
-		
-		if (name == null)
-			return false;
-		
-		char[] chars = name.toCharArray();
-		
-		if ((chars.length < 2) || (!Character.isUpperCase(chars[0])))
-			return false;
-		
-		for (char i : chars) 
-		        if ((!Character.isLetter(i)) && (i !=' ') && 
-		        		(i != '\'') && (i != '"'))
-		            return false;
-
-		return true;
+		return NameTable.isValidName(name);
 	}
 	
 	public boolean isWithinRange(int value) {
@@ -251,7 +518,13 @@ public class Unit {
 	 */
 	public int[] getCube(){
 		int[] cubeposition = new int[3];
-		for (int i = 0; i < cubeposition.length;)
+		long[] fixed = this.fixedPosition;
+		if (fixed != null) {
+			for (int i = 0; i < cubeposition.length; i++)
+				cubeposition[i] = FixedPoint.toCube(fixed[i]);
+			return cubeposition;
+		}
+		for (int i = 0; i < cubeposition.length; i++)
 		    cubeposition[i] = (int) this.position[i];
 		return cubeposition;
 	}
@@ -261,7 +534,7 @@ public class Unit {
 	 */
 	public int[] getCube(double[] position) {
 		int[] cubeposition = new int[3];
-		for (int i =0; i < cubeposition.length;)
+		for (int i =0; i < cubeposition.length; i++)
 			cubeposition[i] = (int) position[i];
 		return cubeposition;
 	}
@@ -294,6 +567,13 @@ public class Unit {
 	 */
 	public static final double REST_INTERVAL = 180;
 	
+	/**
+	 * Constant reflecting the upper bound on valid durations to advance the time of a unit.
+	 * 
+	 * @return	| result == 0.2
+	 */
+	public static final double MAX_DURATION = 0.2;
+	
 	/**
 	 * Return the weight of this unit.
 	 */
@@ -406,9 +686,15 @@ public class Unit {
 	 * 			the orientation of this unit will be changed to the specified angle.
 	 */
 	private void setOrientation(float angle){
-		if( (angle >= 0) && (angle <= (float) 2*Math.PI))
-			this.orientation = angle;
-		
+		if( (angle >= 0) && (angle <= (float) 2*Math.PI)) {
+			long stamp = this.lock.writeLock();
+			try {
+				this.orientation = angle;
+			} finally {
+				this.lock.unlockWrite(stamp);
+			}
+			this.reportChange();
+		}
 	}
 
 	/**
@@ -418,6 +704,74 @@ public class Unit {
 		return this.hitpoints;
 	}
 	
+	/**
+	 * Copy the position and the orientation of this unit into the given array,
+	 * as they were at a single moment.
+	 * 
+	 * @param	result
+	 * 			The array receiving the x, y and z coordinates of the position of
+	 * 			this unit, followed by its orientation.
+	 * @post	| (result[0], result[1], result[2]) == getPosition() && result[3] == getOrientation()
+	 * @throws	IllegalArgumentException
+	 * 			The given array is not effective or holds less than 4 elements.
+	 * 			| (result == null) || (result.length < 4)
+	 */
+	public void getPose(double[] result) throws IllegalArgumentException {
+		if ((result == null) || (result.length < 4))
+			throw new IllegalArgumentException();
+		long stamp = this.lock.tryOptimisticRead();
+		this.copyPose(result);
+		if (!this.lock.validate(stamp)) {
+			stamp = this.lock.readLock();
+			try {
+				this.copyPose(result);
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+	}
+	
+	private void copyPose(double[] result) {
+		double[] position = this.position;
+		result[0] = position[0];
+		result[1] = position[1];
+		result[2] = position[2];
+		result[3] = this.orientation;
+	}
+	
+	/**
+	 * Copy the hitpoints, the stamina and the activity code of this unit into the
+	 * given array, as they were at a single moment.
+	 * 
+	 * @param	result
+	 * 			The array receiving the hitpoints, the stamina and the activity code of this unit.
+	 * @post	| result[0] == getHitpoints() && result[1] == getStamina()
+	 * 			| && result[2] == getActivity().getCode()
+	 * @throws	IllegalArgumentException
+	 * 			The given array is not effective or holds less than 3 elements.
+	 * 			| (result == null) || (result.length < 3)
+	 */
+	public void getVitals(int[] result) throws IllegalArgumentException {
+		if ((result == null) || (result.length < 3))
+			throw new IllegalArgumentException();
+		long stamp = this.lock.tryOptimisticRead();
+		this.copyVitals(result);
+		if (!this.lock.validate(stamp)) {
+			stamp = this.lock.readLock();
+			try {
+				this.copyVitals(result);
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+	}
+	
+	private void copyVitals(int[] result) {
+		result[0] = this.hitpoints;
+		result[1] = this.stamina;
+		result[2] = this.getActivity().getCode();
+	}
+	
 	/**
 	 * Inspect the maximal amount of hitpoints of this unit.
 	 */
@@ -435,7 +789,14 @@ public class Unit {
 	}
 	
 	public void setSpeed(double[] speed) {		
-		this.speed = speed;
+		long stamp = this.lock.writeLock();
+		try {
+			this.speed = speed;
+			if (this.isFixedPoint())
+				this.fixedSpeed = FixedPoint.toFixed(speed);
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
 	}
 	
 	public double getCurrentSpeed() {
@@ -444,14 +805,24 @@ public class Unit {
 	}
 
 	private void setHitpoints(int hitpoints){
-		if ((hitpoints >= getMinHitpoints()) && (hitpoints <= this.getMaxHitpoints()))
-			this.hitpoints = hitpoints;
-		
-		else if (hitpoints > this.getMaxHitpoints())
-			this.hitpoints = this.getMaxHitpoints();
+		int oldHitpoints = this.hitpoints;
+		long stamp = this.lock.writeLock();
+		try {
+			if ((hitpoints >= getMinHitpoints()) && (hitpoints <= this.getMaxHitpoints()))
+				this.hitpoints = hitpoints;
+			
+			else if (hitpoints > this.getMaxHitpoints())
+				this.hitpoints = this.getMaxHitpoints();
+			
+			else if (hitpoints < getMinHitpoints())
+				this.hitpoints = getMinHitpoints();
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+		this.reportChange();
 		
-		else if (hitpoints < getMinHitpoints())
-			this.hitpoints = getMinHitpoints();
+		if ((oldHitpoints > getMinHitpoints()) && (this.hitpoints == getMinHitpoints()) && (this.getWorld() != null))
+			this.getWorld().unitDied(this);
 	}
 	
 	/**
@@ -462,14 +833,20 @@ public class Unit {
 	}
 	
 	private void setStamina(int stamina){
-		if ((stamina >= 0) && (stamina <= this.getMaxHitpoints()))
-			this.stamina = stamina;
-		
-		else if (stamina > this.getMaxHitpoints())
-			this.stamina = this.getMaxHitpoints();
-		
-		else if (stamina < getMinHitpoints())
-			this.stamina = getMinHitpoints();
+		long stamp = this.lock.writeLock();
+		try {
+			if ((stamina >= 0) && (stamina <= this.getMaxHitpoints()))
+				this.stamina = stamina;
+			
+			else if (stamina > this.getMaxHitpoints())
+				this.stamina = this.getMaxHitpoints();
+			
+			else if (stamina < getMinHitpoints())
+				this.stamina = getMinHitpoints();
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+		this.reportChange();
 	}
 
 	/**
@@ -485,7 +862,44 @@ public class Unit {
 	 * @post The units activity is changed to the given activity.
 	 */
 	private void setStatus(String activity){
-		this.status= activity;
+		long stamp = this.lock.writeLock();
+		try {
+			this.status= activity;
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+		this.reportTransition();
+	}
+	
+	/**
+	 * Set the movement status of this unit to the given movement.
+	 * 
+	 * @post The movement status of this unit is changed to the given movement.
+	 */
+	private void setMovement(String movement) {
+		long stamp = this.lock.writeLock();
+		try {
+			this.movement = movement;
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+		this.reportTransition();
+	}
+	
+	/**
+	 * Report a change of the orientation, hitpoints or stamina of this unit to its world, if any.
+	 */
+	private void reportChange() {
+		if (this.getWorld() != null)
+			this.getWorld().unitChanged(this);
+	}
+	
+	/**
+	 * Report a change of the activity or the flags of this unit to its world, if any.
+	 */
+	private void reportTransition() {
+		if (this.getWorld() != null)
+			this.getWorld().unitTransitioned(this);
 	}
 	
 	public static String getRandomActivity(String[] activities) {
@@ -494,8 +908,8 @@ public class Unit {
 	}
 	
 	public void attack(Unit defender){
-		float attackerOr = (float)Math.atan2(defender.getPosition()[1]-this.getPosition()[1],defender.getPosition()[0]-this.getPosition()[0]);
-		float defenderOr = (float)Math.atan2(this.getPosition()[1]-defender.getPosition()[1],this.getPosition()[0]-defender.getPosition()[0]);
+		float attackerOr = (float)this.angle(defender.getPosition()[1]-this.getPosition()[1],defender.getPosition()[0]-this.getPosition()[0]);
+		float defenderOr = (float)this.angle(this.getPosition()[1]-defender.getPosition()[1],this.getPosition()[0]-defender.getPosition()[0]);
 		
 		this.setOrientation(attackerOr);
 		defender.setOrientation(defenderOr);
@@ -504,39 +918,69 @@ public class Unit {
 			try {
 				this.advanceTime(0.2);
 			} catch (InterruptedException e) {
-				e.printStackTrace();
+				return;
 			}
 
-		
+		this.resolveAttack(defender, new Random());
+	}
+	
+	/**
+	 * Resolve an attack of this unit on the given unit, drawing the dodge, the
+	 * block and the evasion from the given random generator.
+	 * 
+	 * @param	defender
+	 * 			The unit being attacked.
+	 * @param	random
+	 * 			The random generator deciding the outcome, seeded for reproducible rollouts.
+	 * @return	The outcome of the attack.
+	 */
+	AttackOutcome resolveAttack(Unit defender, Random random) {
+		SimulationEvents.Attack event = new SimulationEvents.Attack();
+		event.begin();
+		AttackOutcome outcome = this.resolveOutcome(defender, random);
+		if (this.getWorld() != null)
+			this.getWorld().attackResolved(outcome);
+		event.commit(this, defender, outcome);
+		return outcome;
+	}
+	
+	/**
+	 * Resolve an attack of this unit on the given unit, without reporting it to
+	 * the world of this unit or recording it.
+	 */
+	AttackOutcome resolveOutcome(Unit defender, Random random) {
 		double dodgeProb = 0.2*defender.getAgility()/this.getAgility();
-		boolean dodged = (new Random().nextDouble() <= dodgeProb);
+		boolean dodged = (random.nextDouble() <= dodgeProb);
 		
 		if (dodged == true){
 			double[] pos = defender.getPosition();
 			double[] evasion = {0,0,0};
 			for(int i=0; i<2; i++){
 				
-				double plus = new Random().nextDouble();
+				double plus = random.nextDouble();
 				double randomValue = -1 + 2 * plus;
 				evasion[i]= randomValue;
 			}
 			double [] newPos = new double[3];
 			
-			for (int i =0; i < pos.length;)
+			for (int i =0; i < pos.length; i++)
 				
 				newPos[i] = pos[i] + evasion[i];
 			
 			defender.setPosition(newPos);
+			return AttackOutcome.DODGED;
 		}
 		
 		else{
 			double blockProb = 0.25*(defender.getStrength()-defender.getAgility())/(this.getStrength()-this.getAgility());
-			boolean blocked = (new Random().nextDouble() <= blockProb);
+			boolean blocked = (random.nextDouble() <= blockProb);
 			if (blocked != true){
 				double curHealth = defender.getHitpoints();
 				double damage = this.getStrength()/10;
 				defender.setHitpoints((int) (curHealth-damage));
+				return AttackOutcome.HIT;
 			}
+			return AttackOutcome.BLOCKED;
 		}
 	}
 	/**
@@ -545,14 +989,16 @@ public class Unit {
 	 * @post The units current status will be resting
 	 */
 	public void rest(){
+		if (this.runOnScheduler(this::rest))
+			return;
 		if (this.canBeInterrupted("Resting"))
-			Thread.currentThread().interrupt();
+			this.interruptActivity();
 			
 			double initTime = 200 / this.getToughness() * 0.2;
 			int nb_times = (int) (200 / this.getToughness());
 			
 			this.setStatus("InitResting");
-			for (int i = 0; i < nb_times;)
+			for (int i = 0; i < nb_times; i++)
 				try {
 					this.advanceTime(0.2);
 				} catch (InterruptedException e) {
@@ -567,8 +1013,8 @@ public class Unit {
 			
 			this.restore();
 			this.setStatus("Resting");
-			while (this.isResting())
-				for (int i = 0; i < nb_times;)
+			while (this.isResting()) {
+				for (int i = 0; i < nb_times; i++)
 					try {
 						this.advanceTime(0.2);
 					} catch (InterruptedException e) {
@@ -582,11 +1028,18 @@ public class Unit {
 				}
 				
 				this.restore();
+			}
 			
 			this.startDefaultBehavior();
 	}
 	
 	public void advanceTime(double duration) throws InterruptedException {
+		BehaviorScheduler scheduler = this.getBehaviorScheduler();
+		if ((scheduler != null) && (!scheduler.isBehaviorThread(this))) {
+			this.timedStep(duration, 1);
+			scheduler.await(this);
+			return;
+		}
 		
 		if ((this.getCounter() >= REST_INTERVAL) && (this.getStatus() != "Resting")) {
 			this.setCounter(0);
@@ -594,60 +1047,230 @@ public class Unit {
 			return;
 		}
 		
-		this.setCounter(this.getCounter() + duration);
-		
-		long durationM = (long) (1000 * duration);
+		this.letPass(duration);
+		this.timedStep(duration, 1);
+	}
+	
+	/**
+	 * Advance the time of this unit with the given duration on behalf of its world,
+	 * in as few steps of valid durations as possible, without waiting for them to pass.
+	 * 
+	 * @param	duration
+	 * 			The time that passed since this unit was last stepped by its world.
+	 * @post	The activity of this unit advanced nbSteps times with a duration of
+	 * 			duration / nbSteps, each of which is a valid duration.
+	 * 			| nbSteps == (int) (duration / MAX_DURATION) + 1
+	 */
+	void step(double duration) throws InterruptedException {
+		this.timedStep(duration, (int) (duration / MAX_DURATION) + 1);
+	}
+	
+	/**
+	 * Advance the activity of this unit with the given duration in the given number
+	 * of equal steps, recording the time spent computing them, but not the time
+	 * spent waiting for them to pass.
+	 */
+	private void timedStep(double duration, int nbSteps) throws InterruptedException {
+		SimulationEvents.UnitStep event = new SimulationEvents.UnitStep();
+		Activity activity = this.getActivity();
+		event.start();
+		try {
+			for (int i = 0; i < nbSteps; i++)
+				this.advanceActivity(duration / nbSteps);
+		} finally {
+			event.commit(this, activity, duration);
+		}
+	}
+	
+	/**
+	 * Let the given duration pass for the activity of this unit before its time
+	 * is advanced from its own activity.
+	 */
+	private void letPass(double duration) throws InterruptedException {
 		if (this.getStatus() == "Fighting"){
 			try {
-				wait(durationM);
+				this.pause(duration);
 			} catch (InterruptedException e) {
 				e.printStackTrace();
 			}	
 		}
 		
-		if (this.getStatus() == "Moving"){
-			
-			double[] speed = this.getSpeed();
-			try {
-				wait (durationM);
-				double[] oldPos = this.getPosition();				
-				double[] newPos = { oldPos[0] + (duration * speed[0]),
-						    		oldPos[1] + (duration * speed[1]),
-						    		oldPos[2] + (duration * speed[2]) };
-				if (this.isSprinting())
-					this.setStamina(this.getStamina() - 1);
-					if (this.getStamina() == 0)
-						this.stopSprinting();
-				if (isValidPosition(newPos))
-					this.setPosition(newPos);
-				
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				throw new InterruptedException();
-			}
-			
-			}
-		
+		if ((this.getStatus() == "Moving") || (this.getStatus() == "Working") || (this.getStatus() == "Resting"))
+			this.pause(duration);
+	}
+	
+	/**
+	 * Advance the time of this unit with the given duration in its current activity,
+	 * without waiting for it to pass. When the time of a unit with a behaviour thread
+	 * is advanced from outside, the duration is handed to that behaviour.
+	 */
+	private void advanceActivity(double duration) throws InterruptedException {
 		
-		if (this.getStatus() == "Working"){
-			try {
-				wait(durationM);
-			} catch (InterruptedException e) {
+		if ((this.getBehaviorScheduler() != null) && 
+				(!this.getBehaviorScheduler().isBehaviorThread(this))) {
+			if (this.isSuperseded())
 				throw new InterruptedException();
-			}
-
+			this.getBehaviorScheduler().advanceTime(this, duration);
+			return;
 		}
 		
-		if(this.getStatus()== "Resting"){
-			try {
-				wait(durationM);
-			} catch (InterruptedException e) {
-				throw new InterruptedException();
-			}
+		this.setCounter(this.getCounter() + duration);
+		
+		if (this.getStatus() == "Moving"){
 			
+			double[] speed = this.getSpeed();
+			double[] oldPos = this.getPosition();				
+			double[] newPos = { oldPos[0] + (duration * speed[0]),
+					    		oldPos[1] + (duration * speed[1]),
+					    		oldPos[2] + (duration * speed[2]) };
+			if (this.isFixedPoint()) {
+				long[] newFixed = this.fixedPosition.clone();
+				FixedPoint.integrate(newFixed, this.fixedSpeed, FixedPoint.toFixed(duration));
+				for (int i = 0; i < newPos.length; i++)
+					newPos[i] = FixedPoint.toDouble(newFixed[i]);
+			}
+			if (this.isSprinting())
+				this.setStamina(this.getStamina() - 1);
+				if (this.getStamina() == 0)
+					this.stopSprinting();
+			if (isValidPosition(newPos))
+				this.setPosition(newPos);
 		}
 	}
 	
+	/**
+	 * Advance the time of this unit with the given frame duration, in fixed
+	 * timesteps of its simulation clock.
+	 * 
+	 * @param	frameTime
+	 * 			The duration of the frame, in seconds.
+	 * @effect	The time of this unit is advanced with the timestep of its clock,
+	 * 			as many times as the clock yields steps for the given frame time.
+	 * 			| for each step in 1..getClock().advance(frameTime):
+	 * 			|	advanceTime(getClock().getTimestep())
+	 * @throws	NotValidDurationException
+	 * 			The given frame time is negative.
+	 * 			| frameTime < 0
+	 */
+	public void advanceFrame(double frameTime) throws NotValidDurationException, InterruptedException {
+		if (frameTime < 0)
+			throw new NotValidDurationException(frameTime);
+		int steps = this.getClock().advance(frameTime);
+		for (int i = 0; i < steps; i++)
+			this.advanceTime(this.getClock().getTimestep());
+	}
+	
+	/**
+	 * Return the simulation clock of this unit.
+	 */
+	@Basic @Immutable
+	public SimulationClock getClock() {
+		return this.clock;
+	}
+	
+	/**
+	 * Return the world this unit belongs to, if any.
+	 */
+	@Basic
+	public World getWorld() {
+		return this.world;
+	}
+	
+	/**
+	 * Return the identifier of this unit in its world, or -1 if it does not belong to a world.
+	 */
+	@Basic
+	public int getId() {
+		return this.id;
+	}
+	
+	/**
+	 * Register that this unit belongs to the given world with the given identifier.
+	 * 
+	 * @post	| (new.getWorld() == world) && (new.getId() == id)
+	 */
+	void setWorld(World world, int id) {
+		this.world = world;
+		this.id = id;
+	}
+	
+	/**
+	 * Return the scheduler running the behaviour of this unit, if any.
+	 */
+	@Basic
+	public BehaviorScheduler getBehaviorScheduler() {
+		return this.behaviorScheduler;
+	}
+	
+	/**
+	 * Set the scheduler running the behaviour of this unit to the given scheduler.
+	 * 
+	 * @param	scheduler
+	 * 			The new scheduler for this unit, or null to run the behaviour
+	 * 			of this unit on the calling thread in wall time.
+	 * @post	The behaviour scheduler of this unit is the given scheduler.
+	 * 			| new.getBehaviorScheduler() == scheduler
+	 */
+	void setBehaviorScheduler(BehaviorScheduler scheduler) {
+		this.behaviorScheduler = scheduler;
+	}
+	
+	/**
+	 * Let the current activity of this unit take the given duration. Units with a
+	 * behaviour scheduler park on the simulation clock of that scheduler, other
+	 * units wait in wall time.
+	 * 
+	 * @param	duration
+	 * 			The duration of the pause, in seconds.
+	 * @throws	InterruptedException
+	 * 			The activity of this unit was interrupted during the pause.
+	 */
+	private void pause(double duration) throws InterruptedException {
+		if (this.getBehaviorScheduler() != null)
+			this.getBehaviorScheduler().sleep(this, duration);
+		else if ((long) (1000 * duration) > 0)
+			synchronized (this) {
+				wait((long) (1000 * duration));
+			}
+	}
+	
+	/**
+	 * Start the given behaviour on the behaviour scheduler of this unit, unless
+	 * this unit has no scheduler or the calling thread already is its behaviour thread.
+	 * A behaviour requested by a thread whose behaviour was superseded is dropped.
+	 * 
+	 * @param	behavior
+	 * 			The behaviour to start.
+	 * @return	True if and only if the behaviour was handed to the scheduler or dropped.
+	 */
+	private boolean runOnScheduler(Runnable behavior) {
+		BehaviorScheduler scheduler = this.getBehaviorScheduler();
+		if ((scheduler == null) || (scheduler.isBehaviorThread(this)))
+			return false;
+		if (!scheduler.isSuperseded(this))
+			scheduler.start(this, behavior);
+		return true;
+	}
+	
+	/**
+	 * Check whether the calling thread ran a behaviour of this unit that has
+	 * since been interrupted or replaced.
+	 */
+	private boolean isSuperseded() {
+		BehaviorScheduler scheduler = this.getBehaviorScheduler();
+		return (scheduler != null) && (scheduler.isSuperseded(this));
+	}
+	
+	/**
+	 * Interrupt the activity this unit is currently performing.
+	 */
+	private void interruptActivity() {
+		if (this.getBehaviorScheduler() != null)
+			this.getBehaviorScheduler().interrupt(this);
+		else
+			Thread.currentThread().interrupt();
+	}
+	
 	private void setCounter(double time){
 		this.counter = time;
 	}
@@ -661,7 +1284,8 @@ public class Unit {
 	 * 		 If the maximum hitpoints is reached, the units stamina will be replenished with ...
 	 */
 	public void restore() {
-
+		SimulationEvents.Restore event = new SimulationEvents.Restore();
+		event.begin();
 
 		if (this.getHitpoints() == this.getMaxHitpoints())
 			if (this.getStamina() == this.getMaxHitpoints())
@@ -672,6 +1296,8 @@ public class Unit {
 		
 		else		
 			this.setHitpoints((int) (this.getHitpoints() + 1));
+		
+		event.commit(this);
 	}
 	
 	/**
@@ -699,27 +1325,42 @@ public class Unit {
 		
 		double sprintvel = 2 * walkvel;
 		
+		if (this.isFixedPoint()) {
+			long[] start = FixedPoint.toFixed(startPos);
+			long[] target = FixedPoint.toFixed(targetPos);
+			long fixedDis = FixedPoint.distance(start, target);
+			long fixedVel = FixedPoint.toFixed(this.isSprinting() ? sprintvel : walkvel);
+			double[] velocity = new double[3];
+			if (fixedDis > 0)
+				for (int i = 0; i < velocity.length; i++)
+					velocity[i] = FixedPoint.toDouble((target[i] - start[i]) * fixedVel / fixedDis);
+			return velocity;
+		}
+		
 		double dis = calcDistance(startPos,targetPos);
 		double [] velocity = {(targetPos[0]-startPos[0])/dis,
-								(targetPos[0]-startPos[0])/dis,
-								(targetPos[0]-startPos[0])/dis};
+								(targetPos[1]-startPos[1])/dis,
+								(targetPos[2]-startPos[2])/dis};
 		
 		if (this.isSprinting())
-			for (int i=0; i < velocity.length;)
+			for (int i=0; i < velocity.length; i++)
 				velocity[i] = velocity[i] * sprintvel;
 		else
-			for (int i=0; i < velocity.length;)
+			for (int i=0; i < velocity.length; i++)
 				velocity[i]= velocity[i] * walkvel;
 		return velocity;
 	}
 	
 	/**
-	 * Calculate the distance between two points in the game world.
+	 * Calculate the distance between two points in the game world, in fixed-point
+	 * arithmetic if this unit computes its movement in fixed-point arithmetic.
 	 * @throws	OutOfBoundsException
 	 * 			The given position is out of bounds.
 	 * 			| ! isValidPosition(position)
 	 */
 	public double calcDistance(double[] start, double[] end) {		
+		if (this.isFixedPoint())
+			return FixedPoint.toDouble(FixedPoint.distance(FixedPoint.toFixed(start), FixedPoint.toFixed(end)));
 		return Math.sqrt(Math.pow(end[0]-start[0],2)+Math.pow(end[1]-start[1],2)+Math.pow(end[2]-start[2],2));
 	}
 	
@@ -733,7 +1374,7 @@ public class Unit {
 	 * 			| result == ((duration < 0) || (duration >=0.2))
 	 */
 	public static boolean isValidDuration(double duration){
-			if ((duration < 0) || (duration >=0.2))
+			if ((duration < 0) || (duration >= MAX_DURATION))
 				return false;
 		return true;
 	}
@@ -743,13 +1384,20 @@ public class Unit {
 	 * 
 	 * @param 	targetPos
 	 * 			The adjacent cube to which this unit has to move.
+	 * @post	If the adjacent cube is not a valid position, this unit does not move.
+	 * 			| if (! isValidPosition(getPosition() + targetPos))
+	 * 			|	then new.getPosition() == this.getPosition()
 	 */
 	public void moveToAdjacent(double[] targetPos, double[] speed) throws InterruptedException{
+		double[] start = this.getPosition();
+		if (!this.isValidPosition(new double[] {start[0] + targetPos[0], start[1] + targetPos[1],
+				start[2] + targetPos[2]}))
+			return;
 		if (this.canBeInterrupted("Moving")) {
-			Thread.currentThread().interrupt();
+			this.interruptActivity();
 			float vy = (float) speed[1];
 			float vx = (float) speed[0];
-			this.setOrientation((float) Math.atan2(vy, vx));
+			this.setOrientation((float) this.angle(vy, vx));
 			this.setSpeed(speed);
 			
 			double[] pos = this.getPosition();
@@ -757,12 +1405,15 @@ public class Unit {
 									pos[1] + targetPos[1], 
 									pos[2] + targetPos[2]};
 			
-			while (this.getPosition() != destination)
+			boolean arrived = false;
+			while (!arrived)
 				try {
 					this.advanceTime(0.1);
 
-					if (this.destinationReached(this.getPosition(), destination))
+					if (this.destinationReached(pos, this.getPosition(), destination)) {
 						this.setPosition(destination);
+						arrived = true;
+					}
 					
 				} catch (InterruptedException e) {
 					if (this.isFighting())
@@ -771,8 +1422,10 @@ public class Unit {
 						try {
 							this.setInterruption(true);
 							this.advanceTime(0.1);
-							if (this.destinationReached(this.getPosition(), targetPos))
-								this.setPosition(targetPos);
+							if (this.destinationReached(pos, this.getPosition(), destination)) {
+								this.setPosition(destination);
+								arrived = true;
+							}
 
 						} catch (InterruptedException e1) {
 							if (this.isFighting())
@@ -802,84 +1455,116 @@ public class Unit {
 		return false;
 	}
 	
+	/**
+	 * Check whether this unit, having set out from the given start position and
+	 * now being at the given position, reached or passed the given target along every axis.
+	 * 
+	 * @param	start
+	 * 			The position this unit set out from.
+	 * @param	current
+	 * 			The position this unit is at now.
+	 * @param	target
+	 * 			The position this unit is heading to.
+	 */
+	public boolean destinationReached(double[] start, double[] current, double[] target) {
+		if (this.isFixedPoint())
+			return FixedPoint.destinationReached(FixedPoint.toFixed(start), FixedPoint.toFixed(current),
+					FixedPoint.toFixed(target));
+		for (int i = 0; i < target.length; i++)
+			if ((current[i] - target[i]) * (start[i] - target[i]) > 0)
+				return false;
+		return true;
+	}
+	
+	/**
+	 * Check whether this unit, moving from its current position to the given
+	 * position, reaches or passes the given target along every axis.
+	 * 
+	 * @param	newPos
+	 * 			The position this unit moves to.
+	 * @param	target
+	 * 			The position this unit is heading to.
+	 * @return	| result == destinationReached(getPosition(), newPos, target)
+	 */
 	public boolean destinationReached(double[] newPos, double[] target) {
-		double[] oldPos = this.getPosition();
-		if ((intervalContains(0.5, oldPos[0], newPos[0])) &&
-				(intervalContains(0.5, oldPos[1], newPos[1])) &&
-				(intervalContains(0.5, oldPos[2], newPos[2])) &&
-				(this.getCube(target) == this.getCube(newPos)))
-			
-			return true;
-		return false;
+		return this.destinationReached(this.getPosition(), newPos, target);
 	}
 	
 	/**
 	 * Initiate a more complex movement from the unit's current position to another
 	 * arbitrary cube of the game world.
-	 * @param 	destination
-	 * 			The new location to which the unit has to move.
+	 * @param 	location
+	 * 			The cube to which the unit has to move.
+	 * @effect	The unit moves guided by the navigator its world creates towards the
+	 * 			given cube, or straight towards it if the unit belongs to no world.
+	 * 			| if (getWorld() == null)
+	 * 			|	then moveTo(new Heading(location))
+	 * 			| else if (getWorld().createNavigator(this, location) != null)
+	 * 			|	then moveTo(getWorld().createNavigator(this, location))
+	 * @post	If the given cube is not a valid position, or it cannot be reached
+	 * 			from the cube of this unit, this unit does not move.
 	 */
-	public void moveTo(int[] location){
+	public void moveTo(final int[] location){
+		double[] destination = { location[0], location[1], location[2] };
+		if (!this.isValidPosition(destination))
+			return;
+		Navigator navigator = (this.getWorld() == null) ? new Heading(location)
+				: this.getWorld().createNavigator(this, location);
+		if (navigator != null)
+			this.moveTo(navigator);
+	}
+	
+	/**
+	 * Initiate movement guided by the given navigator, one adjacent cube at a time,
+	 * until the destination of the navigator is reached.
+	 * 
+	 * @param	navigator
+	 * 			The navigator to follow, for example a flow field shared with other
+	 * 			units heading to the same target, or a path planner of this unit.
+	 * @post	If the destination of the navigator cannot be reached from the cube
+	 * 			of this unit, this unit does not move.
+	 * 			| if (navigator.getNextStep(this.getCube()) == null)
+	 * 			|	then new.getPosition() == this.getPosition()
+	 */
+	public void moveTo(final Navigator navigator) {
+		if (this.runOnScheduler(() -> this.moveTo(navigator)))
+			return;
+		int[] step = this.plan(navigator);
+		if (step == null)
+			return;
 		if (this.canBeInterrupted("Moving"))
-			Thread.currentThread().interrupt();
-			
-			double[] destination = new double [3];
-			if (!isValidPosition(destination))
+			this.interruptActivity();
+		
+		this.setStatus("Moving");
+		while ((step != null) && ((step[0] != 0) || (step[1] != 0) || (step[2] != 0))) {
+			double[] pos = this.getPosition();
+			double[] next = {pos[0] + step[0], pos[1] + step[1], pos[2] + step[2]};
+			if (this.getWorld() != null)
+				this.getWorld().unitStepping(this.getCube(), step);
+			try {
+				int waits = navigator.getNbWaits();
+				if (waits > 0)
+					this.pause(waits * ReservationTable.SLOT_DURATION);
+				this.moveToAdjacent(new double[] {step[0], step[1], step[2]}, this.getVelocity(pos, next));
+			} catch (InterruptedException e) {
 				return;
-
-			for (int i = 0; i <3;)
-				destination[i] = (destination[i] + 0.5);
-			
-			while (this.getCurrentSpeed() > 0)
-				try {
-					wait((long) 50);
-				} catch (InterruptedException e2) {
-					// TODO Auto-generated catch block
-					e2.printStackTrace();
-				}
-			
-			this.setInterruption(false);
-			
-			double[] speed = new double[3];
-			double[] nextPos = new double[3];
-			
-			while (destination != this.getPosition())
-				speed = this.getVelocity(this.getPosition(), destination);
-
-				for (int i = 0; i < nextPos.length;) {
-						
-					if (this.getPosition()[i] == destination[i])
-						nextPos[i] = 0;
-					else if (this.position[i] < destination[i])
-						nextPos[i] = 1;
-					else
-						nextPos[i] = -1;
-					}
-					
-				try {
-					this.moveToAdjacent(nextPos, speed);
-				} catch (InterruptedException e) {
-					this.setStatus("Fighting");
-					while(this.isFighting())
-						try {
-							wait(200);
-						} catch (InterruptedException e1) {
-							e1.printStackTrace();
-						}
-					
-					try {
-						this.moveToAdjacent(nextPos, speed);
-					} catch (InterruptedException e1) {
-						this.setStatus("Fighting");							
-					}
-					
-					if (this.isInterrupted() == true)
-						this.movement = "Still";
-						return;
-				}
-			
-			if (destination == this.getPosition())
-				this.setStatus("Default");
+			}
+			if (this.isSuperseded())
+				return;
+			step = this.plan(navigator);
+		}
+		this.setStatus("Default");
+	}
+	
+	/**
+	 * Return the next step the given navigator chooses from the cube of this unit.
+	 */
+	private int[] plan(Navigator navigator) {
+		SimulationEvents.Planning event = new SimulationEvents.Planning();
+		event.begin();
+		int[] step = navigator.getNextStep(this.getCube());
+		event.commit(this, navigator, step);
+		return step;
 	}
 	
 	public boolean isInterrupted() {
@@ -896,11 +1581,11 @@ public class Unit {
 	
 	public void startSprinting() {
 		if (this.getStamina() > 0)
-			this.movement = "Sprinting";
+			this.setMovement("Sprinting");
 	}
 	
 	public void stopSprinting() {
-		this.movement = "Walking";
+		this.setMovement("Walking");
 	}
 	
 	public boolean isMoving() {
@@ -916,26 +1601,51 @@ public class Unit {
 	}
 	
 	public boolean isInitResting() {
-		return this.getStatus() == "Initial Resting";
+		return this.getStatus() == "InitResting";
 	}
 	
 	public boolean isFighting() {
 		return this.getStatus() == "Fighting";
 	}
 	
+	/**
+	 * Return the activity this unit is currently performing.
+	 */
+	public Activity getActivity() {
+		if (this.isFighting())
+			return Activity.FIGHTING;
+		if (this.isMoving())
+			return Activity.MOVING;
+		if (this.isWorking())
+			return Activity.WORKING;
+		if ((this.isResting()) || (this.isInitResting()))
+			return Activity.RESTING;
+		return Activity.IDLE;
+	}
+	
 	public boolean isDefaultBehaviorEnabled() {
 		return this.enableDefaultBehavior;
 	}
 	
 	public void setDefaultBehaviorEnabled(boolean value) {
 		this.enableDefaultBehavior = value;
+		this.reportTransition();
 	}
 	
 	/**
 	 * Start default behavior for a unit. This unit will randomly choose one of three activities namely: 
 	 * working, resting or moving to a random location in the game world. This unit will keep choosing and finishing activities
+	 * 
+	 * A unit of a world with a behaviour scheduler only becomes idle: the decision
+	 * system of its world chooses its activities in batch with the other idle units.
 	 */
 	public void startDefaultBehavior () {
+		if ((this.getWorld() != null) && (this.getBehaviorScheduler() != null)) {
+			this.setStatus("Default");
+			return;
+		}
+		if (this.runOnScheduler(this::startDefaultBehavior))
+			return;
 		while (this.getStatus() == "Default") {
 			int rnd = ThreadLocalRandom.current().nextInt(0, 2 + 1);
 			int[] randomLoc = new int[3];
@@ -943,11 +1653,11 @@ public class Unit {
 				this.work();
 			else if (rnd == 1)
 				this.rest();
-			else if (rnd == 2)
-	
-				for (int i = 0; i < 3;)
+			else if (rnd == 2) {
+				for (int i = 0; i < 3; i++)
 					randomLoc[i] = ThreadLocalRandom.current().nextInt(0, 49 + 1);
 				this.moveTo(randomLoc);
+			}
 		}
 		return;
 	}
@@ -957,13 +1667,16 @@ public class Unit {
 	}
 	
 	public void work() {
+		if (this.runOnScheduler(this::work))
+			return;
 		if (this.canBeInterrupted("Working"))
-			Thread.currentThread().interrupt();
+			this.interruptActivity();
 		
+			this.setStatus("Working");
 			float time = (float) (500 / this.getStrength());
 			float nbtimes = time * 5;
 						
-			for (int i = 0; i < (int) nbtimes;)
+			for (int i = 0; i < (int) nbtimes; i++)
 				try {
 					this.advanceTime((float) 0.2);
 				} catch (InterruptedException e) {
@@ -975,6 +1688,7 @@ public class Unit {
 			} catch (InterruptedException e) {
 				return;
 			}
+			this.setStatus("Default");
 	}
 	
 	/**
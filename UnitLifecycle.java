@@ -0,0 +1,198 @@
+package hillbillies.model;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of unit lifecycles, detecting the death of the units of a world,
+ * removing dead units from the indexes of that world and recycling their
+ * identifiers and objects for new units.
+ *
+ * A unit dies when its hitpoints drop to its minimal hitpoints. Dying units are
+ * queued and reaped at the end of a frame of their world, so the tick that
+ * killed them is not disturbed: reaping removes them from the activity index,
+ * the tick scheduler and the unit tree, interrupts their behaviour and releases
+ * their names in the table of names of all units. The identifier of a reaped
+ * unit goes on a free list, and the unit object itself stays in its slot of the
+ * world as a pooled object. Spawning a unit takes the most recently freed
+ * identifier and reinitializes the pooled object in place, so steady spawning
+ * and dying allocates no new units.
+ *
+ * A reference to a unit that died may later refer to another unit that
+ * recycled its slot. Recycling hands out fresh position and speed arrays and
+ * increments the generation of the unit, so holders of references compare the
+ * generation they saw against getGeneration() before acting on them.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class UnitLifecycle {
+
+	/**
+	 * Initialize this new lifecycle for the given world.
+	 *
+	 * @param	world
+	 * 			The world whose units are handled.
+	 * @post	| new.getWorld() == world
+	 */
+	public UnitLifecycle(World world) {
+		this.world = world;
+	}
+
+	/**
+	 * Variable registering the world whose units are handled.
+	 */
+	private final World world;
+
+	/**
+	 * Variable registering the identifiers of the units that died, including
+	 * those that have not been reaped yet.
+	 */
+	private final BitSet dead = new BitSet();
+
+	/**
+	 * Variable registering the identifiers of the units that died since the last reaping.
+	 */
+	private int[] dying = new int[16];
+
+	/**
+	 * Variable registering the number of units that died since the last reaping.
+	 */
+	private int nbDying;
+
+	/**
+	 * Variable registering the identifiers of the reaped units, free for new units.
+	 */
+	private int[] free = new int[16];
+
+	/**
+	 * Variable registering the number of free identifiers.
+	 */
+	private int nbFree;
+
+	/**
+	 * Variables registering the number of deaths and the number of recycled units.
+	 */
+	private long nbDeaths, nbRecycled;
+
+	/**
+	 * Return the world whose units this lifecycle handles.
+	 */
+	@Basic @Immutable
+	public World getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Check whether the unit with the given identifier in the world of this lifecycle is alive.
+	 *
+	 * @param	id
+	 * 			The identifier of the unit.
+	 * @return	| result == (0 <= id < getWorld().getNbUnits()) && (the unit did not die
+	 * 			|	or has been recycled since)
+	 */
+	public synchronized boolean isAlive(int id) {
+		return (id >= 0) && (id < this.world.getNbUnits()) && (!this.dead.get(id));
+	}
+
+	/**
+	 * Return the number of living units of the world of this lifecycle.
+	 */
+	public synchronized int getNbAlive() {
+		return this.world.getNbUnits() - this.dead.cardinality();
+	}
+
+	/**
+	 * Return the number of identifiers free for new units.
+	 */
+	@Basic
+	public synchronized int getNbFree() {
+		return this.nbFree;
+	}
+
+	/**
+	 * Return the number of units that died in the world of this lifecycle.
+	 */
+	@Basic
+	public synchronized long getNbDeaths() {
+		return this.nbDeaths;
+	}
+
+	/**
+	 * Return the number of units that were spawned in the slot of a dead unit.
+	 */
+	@Basic
+	public synchronized long getNbRecycled() {
+		return this.nbRecycled;
+	}
+
+	/**
+	 * Register that the given unit of the world of this lifecycle died.
+	 *
+	 * @param	unit
+	 * 			The unit that died.
+	 */
+	synchronized void unitDied(Unit unit) {
+		int id = unit.getId();
+		if (this.dead.get(id))
+			return;
+		this.dead.set(id);
+		this.nbDeaths++;
+		if (this.nbDying == this.dying.length)
+			this.dying = Arrays.copyOf(this.dying, 2 * this.nbDying);
+		this.dying[this.nbDying++] = id;
+	}
+
+	/**
+	 * Remove the units that died since the last reaping from the indexes of the
+	 * world of this lifecycle, and free their identifiers.
+	 *
+	 * @return	The number of units reaped.
+	 */
+	public int reap() {
+		int[] reaped;
+		synchronized (this) {
+			if (this.nbDying == 0)
+				return 0;
+			reaped = Arrays.copyOf(this.dying, this.nbDying);
+			this.nbDying = 0;
+		}
+		// Detach outside of this lifecycle, whose lock units take while the indexes are locked.
+		for (int id : reaped) {
+			Unit unit = this.world.getUnit(id);
+			this.world.detach(unit);
+			unit.releaseName();
+		}
+		synchronized (this) {
+			if (this.nbFree + reaped.length > this.free.length)
+				this.free = Arrays.copyOf(this.free, Math.max(2 * this.free.length, this.nbFree + reaped.length));
+			for (int id : reaped)
+				this.free[this.nbFree++] = id;
+		}
+		return reaped.length;
+	}
+
+	/**
+	 * Reinitialize the pooled unit of a free identifier with the given attributes,
+	 * and return it, or return null if no identifier is free.
+	 *
+	 * @throws	IllegalArgumentException
+	 * 			The given name is not a valid name. The identifier stays free in that case.
+	 * @throws	OutOfBoundsException
+	 * 			The given position is out of bounds. The identifier stays free in that case.
+	 */
+	synchronized Unit recycle(String name, int[] position, int weight, int agility, int strength,
+			int toughness, boolean enableDefaultBehavior) throws IllegalArgumentException, OutOfBoundsException {
+		if (this.nbFree == 0)
+			return null;
+		int id = this.free[this.nbFree - 1];
+		Unit unit = this.world.getUnit(id);
+		unit.reset(name, position, weight, agility, strength, toughness, enableDefaultBehavior);
+		this.nbFree--;
+		this.dead.clear(id);
+		this.nbRecycled++;
+		return unit;
+	}
+}
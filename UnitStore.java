@@ -0,0 +1,275 @@
+package hillbillies.model;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import be.kuleuven.cs.som.annotate.Basic;
+
+/**
+ * A class of off-heap stores, keeping the state of very large numbers of units
+ * in fixed-size records outside of the garbage collected heap.
+ *
+ * Records are addressed by index and laid out in direct byte buffers of
+ * BLOCK_SIZE records each, so the heap only holds the block references and the
+ * name table, regardless of the number of stored units. Names are stored once
+ * in the name table shared by all units and referred to by a handle in each
+ * record, which counts as a reference to that name. A unit view is a flyweight reading and writing the record it
+ * currently points to. Records are either created from the attributes of a new
+ * unit, in the same initial state as a new unit on the heap, or copied from an
+ * existing unit.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ * @invar	The number of records of each store is not negative.
+ * 			| getNbRecords() >= 0
+ */
+public class UnitStore {
+
+	/**
+	 * Initialize this new store without any records.
+	 */
+	public UnitStore() {
+	}
+
+	/**
+	 * Constant reflecting the number of records in one block of a store.
+	 */
+	public static final int BLOCK_SIZE = 1 << 16;
+
+	/**
+	 * Constant reflecting the size of one record, in bytes.
+	 */
+	public static final int RECORD_SIZE = 96;
+
+	/*
+	 * Offsets of the fields within a record.
+	 */
+	static final int WEIGHT = 0;
+	static final int STRENGTH = 4;
+	static final int AGILITY = 8;
+	static final int TOUGHNESS = 12;
+	static final int POSITION = 16;
+	static final int SPEED = 40;
+	static final int ORIENTATION = 64;
+	static final int HITPOINTS = 68;
+	static final int STAMINA = 72;
+	static final int ACTIVITY = 76;
+	static final int FLAGS = 77;
+	static final int COUNTER = 80;
+	static final int NAME = 88;
+
+	/*
+	 * Bits of the flags field of a record.
+	 */
+	static final int FLAG_SPRINTING = 1;
+	static final int FLAG_DEFAULT_BEHAVIOR = 2;
+
+	/**
+	 * Variable registering the blocks of records of this store.
+	 */
+	private final List<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+
+	/**
+	 * Variable registering the number of records of this store.
+	 */
+	private int nbRecords;
+
+	/**
+	 * Return the number of records of this store.
+	 */
+	@Basic
+	public int getNbRecords() {
+		return this.nbRecords;
+	}
+
+	/**
+	 * Return the number of bytes this store holds off the heap.
+	 */
+	public long getOffHeapBytes() {
+		return (long) this.blocks.size() * BLOCK_SIZE * RECORD_SIZE;
+	}
+
+	/**
+	 * Add a new record holding the current state of the given unit.
+	 *
+	 * @param	unit
+	 * 			The unit to store.
+	 * @return	The index of the new record.
+	 * @post	| new.getNbRecords() == this.getNbRecords() + 1
+	 * @throws	IndexOutOfBoundsException
+	 * 			The given unit was reaped and no longer holds a name.
+	 * 			No record is added in that case.
+	 */
+	public int add(Unit unit) throws IndexOutOfBoundsException {
+		int handle = Unit.NAMES.retain(unit.getNameHandle());
+		int index = this.newRecord();
+		ByteBuffer block = this.getBlock(index);
+		int offset = offsetOf(index);
+		write(block, offset, unit);
+		block.putInt(offset + NAME, handle);
+		return index;
+	}
+
+	/**
+	 * Add a new record holding a new idle unit with the given name, position and
+	 * attributes, in the state a new unit with those attributes starts in.
+	 *
+	 * @param	name
+	 * 			The name of the new unit.
+	 * @param	position
+	 * 			The position of the new unit.
+	 * @param	weight
+	 * 			The weight of the new unit.
+	 * @param	agility
+	 * 			The agility of the new unit.
+	 * @param	strength
+	 * 			The strength of the new unit.
+	 * @param	toughness
+	 * 			The toughness of the new unit.
+	 * @param	enableDefaultBehavior
+	 * 			Whether default behaviour is enabled for the new unit.
+	 * @return	The index of the new record.
+	 * @post	| new.getNbRecords() == this.getNbRecords() + 1
+	 * @throws	IllegalArgumentException
+	 * 			The given name is not a valid name.
+	 * 			| ! NameTable.isValidName(name)
+	 */
+	public int add(String name, double[] position, int weight, int agility, int strength, int toughness,
+			boolean enableDefaultBehavior) throws IllegalArgumentException {
+		int handle = Unit.NAMES.intern(name);
+		strength = initialAttribute(strength);
+		agility = initialAttribute(agility);
+		toughness = initialAttribute(toughness);
+		weight = initialAttribute(weight);
+		if (weight < (agility + strength) / 2)
+			weight = 0;
+		int index = this.newRecord();
+		ByteBuffer block = this.getBlock(index);
+		int offset = offsetOf(index);
+		block.putInt(offset + WEIGHT, weight);
+		block.putInt(offset + STRENGTH, strength);
+		block.putInt(offset + AGILITY, agility);
+		block.putInt(offset + TOUGHNESS, toughness);
+		for (int i = 0; i < 3; i++) {
+			block.putDouble(offset + POSITION + 8 * i, position[i]);
+			block.putDouble(offset + SPEED + 8 * i, 0);
+		}
+		block.putFloat(offset + ORIENTATION, (float) Math.PI/2);
+		int maxHitpoints = (int) Math.ceil(weight * toughness * 0.02);
+		block.putInt(offset + HITPOINTS, maxHitpoints);
+		block.putInt(offset + STAMINA, maxHitpoints);
+		block.put(offset + ACTIVITY, Activity.IDLE.getCode());
+		block.put(offset + FLAGS, (byte) (enableDefaultBehavior ? FLAG_DEFAULT_BEHAVIOR : 0));
+		block.putDouble(offset + COUNTER, 0);
+		block.putInt(offset + NAME, handle);
+		return index;
+	}
+
+	/**
+	 * Return the value a new unit takes for an attribute initialized with the given value.
+	 */
+	private static int initialAttribute(int value) {
+		return ((value >= 25) && (value <= 100)) ? value : 0;
+	}
+
+	/**
+	 * Append a new record to this store, allocating a new block if needed.
+	 */
+	private int newRecord() {
+		int index = this.nbRecords;
+		if (index / BLOCK_SIZE == this.blocks.size())
+			this.blocks.add(ByteBuffer.allocateDirect(BLOCK_SIZE * RECORD_SIZE).order(ByteOrder.nativeOrder()));
+		this.nbRecords++;
+		return index;
+	}
+
+	/**
+	 * Overwrite the record with the given index with the current state of the given unit.
+	 *
+	 * @param	index
+	 * 			The index of the record to overwrite.
+	 * @param	unit
+	 * 			The unit to store.
+	 * @throws	IndexOutOfBoundsException
+	 * 			This store has no record with the given index, or the given unit
+	 * 			was reaped and no longer holds a name. The record is not changed in that case.
+	 */
+	public void store(int index, Unit unit) throws IndexOutOfBoundsException {
+		ByteBuffer block = this.getBlock(index);
+		int offset = offsetOf(index);
+		int handle = Unit.NAMES.retain(unit.getNameHandle());
+		Unit.NAMES.release(block.getInt(offset + NAME));
+		write(block, offset, unit);
+		block.putInt(offset + NAME, handle);
+	}
+
+	/**
+	 * Write the current state of the given unit, except for its name, into the
+	 * record at the given offset of the given block.
+	 */
+	private static void write(ByteBuffer block, int offset, Unit unit) {
+		block.putInt(offset + WEIGHT, unit.getWeight());
+		block.putInt(offset + STRENGTH, unit.getStrength());
+		block.putInt(offset + AGILITY, unit.getAgility());
+		block.putInt(offset + TOUGHNESS, unit.getToughness());
+		double[] position = unit.getPosition();
+		double[] speed = unit.getSpeed();
+		for (int i = 0; i < 3; i++) {
+			block.putDouble(offset + POSITION + 8 * i, position[i]);
+			block.putDouble(offset + SPEED + 8 * i, speed[i]);
+		}
+		block.putFloat(offset + ORIENTATION, unit.getOrientation());
+		block.putInt(offset + HITPOINTS, unit.getHitpoints());
+		block.putInt(offset + STAMINA, unit.getStamina());
+		block.put(offset + ACTIVITY, unit.getActivity().getCode());
+		int flags = 0;
+		if (unit.isSprinting())
+			flags |= FLAG_SPRINTING;
+		if (unit.isDefaultBehaviorEnabled())
+			flags |= FLAG_DEFAULT_BEHAVIOR;
+		block.put(offset + FLAGS, (byte) flags);
+		block.putDouble(offset + COUNTER, unit.getCounter());
+	}
+
+	/**
+	 * Return a new view on the record with the given index.
+	 *
+	 * @param	index
+	 * 			The index of the record to view.
+	 * @throws	IndexOutOfBoundsException
+	 * 			This store has no record with the given index.
+	 */
+	public UnitView view(int index) throws IndexOutOfBoundsException {
+		return new UnitView(this).at(index);
+	}
+
+	/**
+	 * Return the name with the given handle.
+	 *
+	 * @param	handle
+	 * 			The handle of the name.
+	 */
+	String getName(int handle) {
+		return Unit.NAMES.getName(handle);
+	}
+
+	/**
+	 * Return the block holding the record with the given index.
+	 *
+	 * @throws	IndexOutOfBoundsException
+	 * 			This store has no record with the given index.
+	 */
+	ByteBuffer getBlock(int index) throws IndexOutOfBoundsException {
+		if ((index < 0) || (index >= this.nbRecords))
+			throw new IndexOutOfBoundsException("No record with index " + index);
+		return this.blocks.get(index / BLOCK_SIZE);
+	}
+
+	/**
+	 * Return the offset of the record with the given index within its block.
+	 */
+	static int offsetOf(int index) {
+		return (index % BLOCK_SIZE) * RECORD_SIZE;
+	}
+}
@@ -0,0 +1,612 @@
+package hillbillies.model;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+import be.kuleuven.cs.som.annotate.Basic;
+
+/**
+ * A class of unit trees, indexing the positions of the units of a world in a
+ * dynamic bounding volume hierarchy for picking and selection.
+ *
+ * Every unit is a leaf holding a box around its position, enlarged by a margin
+ * so that small movements do not change the tree. Inner nodes hold the smallest
+ * box enclosing their two children. Leaves are inserted next to the sibling that
+ * enlarges the tree least, and the tree is rebalanced by rotations on the way
+ * up, so its height stays logarithmic in the number of units. Ray picks and box
+ * or frustum queries only descend into the nodes whose box they touch.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class UnitTree {
+
+	/**
+	 * Initialize this new tree without any units.
+	 */
+	public UnitTree() {
+		this.grow(16);
+	}
+
+	/**
+	 * Constant reflecting half the size of the box around the position of a unit.
+	 */
+	public static final double UNIT_EXTENT = 0.5;
+
+	/**
+	 * Constant reflecting the margin by which the box of a leaf exceeds the box of its unit.
+	 */
+	public static final double MARGIN = 0.5;
+
+	/**
+	 * Constant reflecting the absence of a node.
+	 */
+	private static final int NONE = -1;
+
+	/**
+	 * Variable registering the corners of the box of each node: minimum x, y and z
+	 * followed by maximum x, y and z, six values per node.
+	 */
+	private double[] boxes;
+
+	/**
+	 * Variables registering the parent, the children and the height of each node.
+	 */
+	private int[] parents, firstChildren, secondChildren, heights;
+
+	/**
+	 * Variable registering the unit identifier of each leaf, or NONE for inner nodes.
+	 */
+	private int[] units;
+
+	/**
+	 * Variable registering the leaf of each unit, indexed by identifier, or NONE.
+	 */
+	private int[] leaves = new int[0];
+
+	/**
+	 * Variable registering the root of this tree.
+	 */
+	private int root = NONE;
+
+	/**
+	 * Variable registering the first node of the free list, chained through the parents.
+	 */
+	private int free = NONE;
+
+	/**
+	 * Variable registering the number of units in this tree.
+	 */
+	private int nbUnits;
+
+	/**
+	 * Return the number of units in this tree.
+	 */
+	@Basic
+	public synchronized int getNbUnits() {
+		return this.nbUnits;
+	}
+
+	/**
+	 * Return the height of this tree, zero if it holds at most one unit.
+	 */
+	public synchronized int getHeight() {
+		return (this.root == NONE) ? 0 : this.heights[this.root];
+	}
+
+	/**
+	 * Check whether the unit with the given identifier is in this tree.
+	 */
+	public synchronized boolean contains(int id) {
+		return (id >= 0) && (id < this.leaves.length) && (this.leaves[id] != NONE);
+	}
+
+	/**
+	 * Insert the unit with the given identifier at the given position, or move it
+	 * there if it already is in this tree.
+	 *
+	 * @param	id
+	 * 			The identifier of the unit.
+	 * @param	position
+	 * 			The position of the unit.
+	 * @post	| new.contains(id)
+	 */
+	public synchronized void update(int id, double[] position) {
+		if (id >= this.leaves.length) {
+			int oldLength = this.leaves.length;
+			this.leaves = Arrays.copyOf(this.leaves, Math.max(id + 1, 2 * oldLength));
+			Arrays.fill(this.leaves, oldLength, this.leaves.length, NONE);
+		}
+		int leaf = this.leaves[id];
+		if (leaf != NONE) {
+			if (this.enclosesUnit(leaf, position))
+				return;
+			this.removeLeaf(leaf);
+		}
+		else {
+			leaf = this.allocate();
+			this.units[leaf] = id;
+			this.leaves[id] = leaf;
+			this.nbUnits++;
+		}
+		for (int i = 0; i < 3; i++) {
+			this.boxes[6 * leaf + i] = position[i] - UNIT_EXTENT - MARGIN;
+			this.boxes[6 * leaf + 3 + i] = position[i] + UNIT_EXTENT + MARGIN;
+		}
+		this.insertLeaf(leaf);
+	}
+
+	/**
+	 * Remove the unit with the given identifier from this tree.
+	 *
+	 * @param	id
+	 * 			The identifier of the unit.
+	 * @post	| ! new.contains(id)
+	 */
+	public synchronized void remove(int id) {
+		if (!this.contains(id))
+			return;
+		int leaf = this.leaves[id];
+		this.removeLeaf(leaf);
+		this.release(leaf);
+		this.leaves[id] = NONE;
+		this.nbUnits--;
+	}
+
+	/**
+	 * Visit the identifiers of all units whose leaf box intersects the box with the given corners.
+	 *
+	 * Units are reported by their enlarged leaf box, so units up to the margin
+	 * outside the given box may be reported as well.
+	 *
+	 * @param	min
+	 * 			The minimal corner of the box.
+	 * @param	max
+	 * 			The maximal corner of the box.
+	 * @param	visitor
+	 * 			The visitor receiving the identifiers.
+	 */
+	public synchronized void queryBox(double[] min, double[] max, IntConsumer visitor) {
+		if (this.root == NONE)
+			return;
+		int[] stack = new int[2 * this.heights[this.root] + 2];
+		int size = 0;
+		stack[size++] = this.root;
+		while (size > 0) {
+			int node = stack[--size];
+			if (!this.overlaps(node, min, max))
+				continue;
+			if (this.units[node] != NONE)
+				visitor.accept(this.units[node]);
+			else {
+				stack[size++] = this.firstChildren[node];
+				stack[size++] = this.secondChildren[node];
+			}
+		}
+	}
+
+	/**
+	 * Visit the identifiers of all units whose leaf box is not entirely outside the given frustum.
+	 *
+	 * @param	planes
+	 * 			The planes bounding the frustum, each given by coefficients a, b, c
+	 * 			and d such that points with a*x + b*y + c*z + d >= 0 lie inside.
+	 * @param	visitor
+	 * 			The visitor receiving the identifiers.
+	 */
+	public synchronized void queryFrustum(double[][] planes, IntConsumer visitor) {
+		if (this.root == NONE)
+			return;
+		int[] stack = new int[2 * this.heights[this.root] + 2];
+		int size = 0;
+		stack[size++] = this.root;
+		while (size > 0) {
+			int node = stack[--size];
+			if (this.outside(node, planes))
+				continue;
+			if (this.units[node] != NONE)
+				visitor.accept(this.units[node]);
+			else {
+				stack[size++] = this.firstChildren[node];
+				stack[size++] = this.secondChildren[node];
+			}
+		}
+	}
+
+	/**
+	 * Return the identifier of the unit whose box the given ray hits first.
+	 *
+	 * @param	origin
+	 * 			The origin of the ray.
+	 * @param	direction
+	 * 			The direction of the ray.
+	 * @param	positions
+	 * 			The function giving the position of the unit with a given identifier,
+	 * 			to test the ray against the exact box of each unit rather than its
+	 * 			enlarged leaf box.
+	 * @return	The identifier of the first unit hit, or -1 if the ray hits none.
+	 */
+	public synchronized int pick(double[] origin, double[] direction, IntFunction<double[]> positions) {
+		if (this.root == NONE)
+			return -1;
+		int[] stack = new int[2 * this.heights[this.root] + 2];
+		int size = 0;
+		stack[size++] = this.root;
+		int result = -1;
+		double nearest = Double.POSITIVE_INFINITY;
+		double[] min = new double[3], max = new double[3];
+		while (size > 0) {
+			int node = stack[--size];
+			for (int i = 0; i < 3; i++) {
+				min[i] = this.boxes[6 * node + i];
+				max[i] = this.boxes[6 * node + 3 + i];
+			}
+			if (hit(origin, direction, min, max) >= nearest)
+				continue;
+			int id = this.units[node];
+			if (id == NONE) {
+				stack[size++] = this.firstChildren[node];
+				stack[size++] = this.secondChildren[node];
+				continue;
+			}
+			double[] position = positions.apply(id);
+			for (int i = 0; i < 3; i++) {
+				min[i] = position[i] - UNIT_EXTENT;
+				max[i] = position[i] + UNIT_EXTENT;
+			}
+			double distance = hit(origin, direction, min, max);
+			if (distance < nearest) {
+				nearest = distance;
+				result = id;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return the identifier of the unit nearest to the given position among the
+	 * units accepted by the given filter.
+	 *
+	 * Subtrees whose box lies farther away than the nearest unit found so far are
+	 * skipped, and the nearer child of each node is searched first, so only a
+	 * few branches of the tree are visited when suitable units are near.
+	 *
+	 * @param	position
+	 * 			The position to search from.
+	 * @param	positions
+	 * 			The function giving the position of the unit with a given identifier.
+	 * @param	filter
+	 * 			The filter accepting the identifiers of suitable units.
+	 * @return	The identifier of the nearest suitable unit, or -1 if no unit is suitable.
+	 * @effect	| result == nearest(position, positions, filter, Double.POSITIVE_INFINITY)
+	 */
+	public int nearest(double[] position, IntFunction<double[]> positions, IntPredicate filter) {
+		return this.nearest(position, positions, filter, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Return the identifier of the unit nearest to the given position among the
+	 * units accepted by the given filter that lie closer than the given distance.
+	 *
+	 * The search starts out with the given distance as the bound of the nearest
+	 * unit, so subtrees whose box lies beyond that distance are never visited.
+	 *
+	 * @param	position
+	 * 			The position to search from.
+	 * @param	positions
+	 * 			The function giving the position of the unit with a given identifier.
+	 * @param	filter
+	 * 			The filter accepting the identifiers of suitable units.
+	 * @param	maxDistance
+	 * 			The distance within which suitable units are searched.
+	 * @return	The identifier of the nearest suitable unit closer than the given
+	 * 			distance, or -1 if no such unit is suitable.
+	 */
+	public synchronized int nearest(double[] position, IntFunction<double[]> positions, IntPredicate filter,
+			double maxDistance) {
+		if (this.root == NONE)
+			return -1;
+		int[] stack = new int[2 * this.heights[this.root] + 2];
+		int size = 0;
+		stack[size++] = this.root;
+		int result = -1;
+		double nearest = maxDistance * maxDistance;
+		while (size > 0) {
+			int node = stack[--size];
+			if (this.distanceSquared(node, position) >= nearest)
+				continue;
+			int id = this.units[node];
+			if (id == NONE) {
+				int first = this.firstChildren[node], second = this.secondChildren[node];
+				boolean firstNearer = (this.distanceSquared(first, position) <= this.distanceSquared(second, position));
+				stack[size++] = firstNearer ? second : first;
+				stack[size++] = firstNearer ? first : second;
+				continue;
+			}
+			if (!filter.test(id))
+				continue;
+			double[] other = positions.apply(id);
+			double distance = 0;
+			for (int i = 0; i < 3; i++)
+				distance += (other[i] - position[i]) * (other[i] - position[i]);
+			if (distance < nearest) {
+				nearest = distance;
+				result = id;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return the squared distance from the given position to the box of the given node.
+	 */
+	private double distanceSquared(int node, double[] position) {
+		double result = 0;
+		for (int i = 0; i < 3; i++) {
+			double below = this.boxes[6 * node + i] - position[i];
+			double above = position[i] - this.boxes[6 * node + 3 + i];
+			double gap = Math.max(0, Math.max(below, above));
+			result += gap * gap;
+		}
+		return result;
+	}
+
+	/**
+	 * Return the distance along the given ray to the given box, or infinity if it misses the box.
+	 */
+	private static double hit(double[] origin, double[] direction, double[] min, double[] max) {
+		double near = 0, far = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < 3; i++) {
+			if (direction[i] == 0) {
+				if ((origin[i] < min[i]) || (origin[i] > max[i]))
+					return Double.POSITIVE_INFINITY;
+				continue;
+			}
+			double t1 = (min[i] - origin[i]) / direction[i];
+			double t2 = (max[i] - origin[i]) / direction[i];
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+			if (near > far)
+				return Double.POSITIVE_INFINITY;
+		}
+		return near;
+	}
+
+	/**
+	 * Insert the given leaf next to the sibling that enlarges the tree least.
+	 */
+	private void insertLeaf(int leaf) {
+		if (this.root == NONE) {
+			this.root = leaf;
+			this.parents[leaf] = NONE;
+			return;
+		}
+		int sibling = this.root;
+		while (this.units[sibling] == NONE) {
+			int first = this.firstChildren[sibling], second = this.secondChildren[sibling];
+			double area = this.area(sibling);
+			double combined = this.unionArea(sibling, leaf);
+			double cost = 2 * combined;
+			double inheritance = 2 * (combined - area);
+			double firstCost = this.descendCost(first, leaf) + inheritance;
+			double secondCost = this.descendCost(second, leaf) + inheritance;
+			if ((cost < firstCost) && (cost < secondCost))
+				break;
+			sibling = (firstCost < secondCost) ? first : second;
+		}
+		int oldParent = this.parents[sibling];
+		int newParent = this.allocate();
+		this.parents[newParent] = oldParent;
+		this.units[newParent] = NONE;
+		this.firstChildren[newParent] = sibling;
+		this.secondChildren[newParent] = leaf;
+		this.parents[sibling] = newParent;
+		this.parents[leaf] = newParent;
+		if (oldParent == NONE)
+			this.root = newParent;
+		else if (this.firstChildren[oldParent] == sibling)
+			this.firstChildren[oldParent] = newParent;
+		else
+			this.secondChildren[oldParent] = newParent;
+		this.refit(newParent);
+	}
+
+	/**
+	 * Return the cost of inserting the given leaf below the given node.
+	 */
+	private double descendCost(int node, int leaf) {
+		if (this.units[node] != NONE)
+			return this.unionArea(node, leaf);
+		return this.unionArea(node, leaf) - this.area(node);
+	}
+
+	/**
+	 * Detach the given leaf from this tree, without releasing it.
+	 */
+	private void removeLeaf(int leaf) {
+		if (leaf == this.root) {
+			this.root = NONE;
+			return;
+		}
+		int parent = this.parents[leaf];
+		int grandParent = this.parents[parent];
+		int sibling = (this.firstChildren[parent] == leaf) ? this.secondChildren[parent] : this.firstChildren[parent];
+		if (grandParent == NONE) {
+			this.root = sibling;
+			this.parents[sibling] = NONE;
+		}
+		else {
+			if (this.firstChildren[grandParent] == parent)
+				this.firstChildren[grandParent] = sibling;
+			else
+				this.secondChildren[grandParent] = sibling;
+			this.parents[sibling] = grandParent;
+			this.refit(grandParent);
+		}
+		this.release(parent);
+	}
+
+	/**
+	 * Recompute the boxes and heights from the given node up to the root, rebalancing on the way.
+	 */
+	private void refit(int node) {
+		while (node != NONE) {
+			node = this.balance(node);
+			int first = this.firstChildren[node], second = this.secondChildren[node];
+			this.heights[node] = 1 + Math.max(this.heights[first], this.heights[second]);
+			this.union(node, first, second);
+			node = this.parents[node];
+		}
+	}
+
+	/**
+	 * Rotate the given inner node if one of its subtrees is more than one level
+	 * higher than the other.
+	 *
+	 * @return	The node that took the place of the given node.
+	 */
+	private int balance(int a) {
+		if ((this.units[a] != NONE) || (this.heights[a] < 2))
+			return a;
+		int b = this.firstChildren[a], c = this.secondChildren[a];
+		int difference = this.heights[c] - this.heights[b];
+		if (difference > 1)
+			return this.rotate(a, c, b, false);
+		if (difference < -1)
+			return this.rotate(a, b, c, true);
+		return a;
+	}
+
+	/**
+	 * Lift the given higher child of the given node above it.
+	 *
+	 * @param	a
+	 * 			The node to rotate.
+	 * @param	up
+	 * 			The higher child of the node, an inner node.
+	 * @param	other
+	 * 			The other child of the node.
+	 * @param	upIsFirst
+	 * 			Whether the higher child is the first child of the node.
+	 * @return	The higher child, which took the place of the given node.
+	 */
+	private int rotate(int a, int up, int other, boolean upIsFirst) {
+		int f = this.firstChildren[up], g = this.secondChildren[up];
+		this.firstChildren[up] = a;
+		this.parents[up] = this.parents[a];
+		this.parents[a] = up;
+		if (this.parents[up] == NONE)
+			this.root = up;
+		else if (this.firstChildren[this.parents[up]] == a)
+			this.firstChildren[this.parents[up]] = up;
+		else
+			this.secondChildren[this.parents[up]] = up;
+		// Keep the higher grandchild below the lifted node, move the lower one under the given node.
+		int keep = (this.heights[f] > this.heights[g]) ? f : g;
+		int move = (keep == f) ? g : f;
+		this.secondChildren[up] = keep;
+		if (upIsFirst)
+			this.firstChildren[a] = move;
+		else
+			this.secondChildren[a] = move;
+		this.parents[move] = a;
+		this.union(a, this.firstChildren[a], this.secondChildren[a]);
+		this.heights[a] = 1 + Math.max(this.heights[this.firstChildren[a]], this.heights[this.secondChildren[a]]);
+		this.union(up, a, keep);
+		this.heights[up] = 1 + Math.max(this.heights[a], this.heights[keep]);
+		return up;
+	}
+
+	private boolean enclosesUnit(int leaf, double[] position) {
+		for (int i = 0; i < 3; i++)
+			if ((position[i] - UNIT_EXTENT < this.boxes[6 * leaf + i])
+					|| (position[i] + UNIT_EXTENT > this.boxes[6 * leaf + 3 + i]))
+				return false;
+		return true;
+	}
+
+	private boolean overlaps(int node, double[] min, double[] max) {
+		for (int i = 0; i < 3; i++)
+			if ((this.boxes[6 * node + 3 + i] < min[i]) || (this.boxes[6 * node + i] > max[i]))
+				return false;
+		return true;
+	}
+
+	private boolean outside(int node, double[][] planes) {
+		for (double[] plane : planes) {
+			// The corner of the box furthest along the normal of the plane.
+			double distance = plane[3];
+			for (int i = 0; i < 3; i++)
+				distance += plane[i] * ((plane[i] >= 0) ? this.boxes[6 * node + 3 + i] : this.boxes[6 * node + i]);
+			if (distance < 0)
+				return true;
+		}
+		return false;
+	}
+
+	private void union(int node, int first, int second) {
+		for (int i = 0; i < 3; i++) {
+			this.boxes[6 * node + i] = Math.min(this.boxes[6 * first + i], this.boxes[6 * second + i]);
+			this.boxes[6 * node + 3 + i] = Math.max(this.boxes[6 * first + 3 + i], this.boxes[6 * second + 3 + i]);
+		}
+	}
+
+	private double area(int node) {
+		double dx = this.boxes[6 * node + 3] - this.boxes[6 * node];
+		double dy = this.boxes[6 * node + 4] - this.boxes[6 * node + 1];
+		double dz = this.boxes[6 * node + 5] - this.boxes[6 * node + 2];
+		return 2 * (dx * dy + dy * dz + dz * dx);
+	}
+
+	private double unionArea(int first, int second) {
+		double[] d = new double[3];
+		for (int i = 0; i < 3; i++)
+			d[i] = Math.max(this.boxes[6 * first + 3 + i], this.boxes[6 * second + 3 + i])
+					- Math.min(this.boxes[6 * first + i], this.boxes[6 * second + i]);
+		return 2 * (d[0] * d[1] + d[1] * d[2] + d[2] * d[0]);
+	}
+
+	/**
+	 * Return an unused node, growing the node arrays if needed.
+	 */
+	private int allocate() {
+		if (this.free == NONE)
+			this.grow(2 * this.units.length);
+		int node = this.free;
+		this.free = this.parents[node];
+		this.parents[node] = NONE;
+		this.firstChildren[node] = NONE;
+		this.secondChildren[node] = NONE;
+		this.heights[node] = 0;
+		this.units[node] = NONE;
+		return node;
+	}
+
+	private void release(int node) {
+		this.parents[node] = this.free;
+		this.free = node;
+	}
+
+	private void grow(int capacity) {
+		int oldCapacity = (this.units == null) ? 0 : this.units.length;
+		if (oldCapacity == 0) {
+			this.boxes = new double[6 * capacity];
+			this.parents = new int[capacity];
+			this.firstChildren = new int[capacity];
+			this.secondChildren = new int[capacity];
+			this.heights = new int[capacity];
+			this.units = new int[capacity];
+		}
+		else {
+			this.boxes = Arrays.copyOf(this.boxes, 6 * capacity);
+			this.parents = Arrays.copyOf(this.parents, capacity);
+			this.firstChildren = Arrays.copyOf(this.firstChildren, capacity);
+			this.secondChildren = Arrays.copyOf(this.secondChildren, capacity);
+			this.heights = Arrays.copyOf(this.heights, capacity);
+			this.units = Arrays.copyOf(this.units, capacity);
+		}
+		for (int node = capacity - 1; node >= oldCapacity; node--)
+			this.release(node);
+	}
+}
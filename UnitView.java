@@ -0,0 +1,266 @@
+package hillbillies.model;
+import java.nio.ByteBuffer;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of flyweight views on the records of an off-heap unit store.
+ *
+ * A view points to one record at a time and reads and writes the state of the
+ * unit stored in that record directly in the store. A single view can be moved
+ * over all records of a store, so iterating millions of stored units does not
+ * allocate any objects.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public class UnitView {
+
+	/**
+	 * Initialize this new view on the given store, not yet pointing to any record.
+	 *
+	 * @param	store
+	 * 			The store of this new view.
+	 * @post	| new.getStore() == store
+	 * @post	| new.getIndex() == -1
+	 */
+	public UnitView(UnitStore store) {
+		this.store = store;
+		this.index = -1;
+	}
+
+	/**
+	 * Variable registering the store of this view.
+	 */
+	private final UnitStore store;
+
+	/**
+	 * Variable registering the index of the record this view points to.
+	 */
+	private int index;
+
+	/**
+	 * Variable registering the block holding the record this view points to.
+	 */
+	private ByteBuffer block;
+
+	/**
+	 * Variable registering the offset of the record this view points to within its block.
+	 */
+	private int offset;
+
+	/**
+	 * Return the store of this view.
+	 */
+	@Basic @Immutable
+	public UnitStore getStore() {
+		return this.store;
+	}
+
+	/**
+	 * Return the index of the record this view points to.
+	 */
+	@Basic
+	public int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Let this view point to the record with the given index.
+	 *
+	 * @param	index
+	 * 			The index of the record.
+	 * @return	This view.
+	 * @post	| new.getIndex() == index
+	 * @throws	IndexOutOfBoundsException
+	 * 			The store of this view has no record with the given index.
+	 */
+	public UnitView at(int index) throws IndexOutOfBoundsException {
+		this.block = this.store.getBlock(index);
+		this.offset = UnitStore.offsetOf(index);
+		this.index = index;
+		return this;
+	}
+
+	/**
+	 * Return the name of the unit in the record of this view.
+	 */
+	public String getName() {
+		return this.store.getName(this.block.getInt(this.offset + UnitStore.NAME));
+	}
+
+	/**
+	 * Return the weight of the unit in the record of this view.
+	 */
+	public int getWeight() {
+		return this.block.getInt(this.offset + UnitStore.WEIGHT);
+	}
+
+	/**
+	 * Return the strength of the unit in the record of this view.
+	 */
+	public int getStrength() {
+		return this.block.getInt(this.offset + UnitStore.STRENGTH);
+	}
+
+	/**
+	 * Return the agility of the unit in the record of this view.
+	 */
+	public int getAgility() {
+		return this.block.getInt(this.offset + UnitStore.AGILITY);
+	}
+
+	/**
+	 * Return the toughness of the unit in the record of this view.
+	 */
+	public int getToughness() {
+		return this.block.getInt(this.offset + UnitStore.TOUGHNESS);
+	}
+
+	/**
+	 * Return the given coordinate of the position of the unit in the record of this view.
+	 *
+	 * @param	axis
+	 * 			The axis of the coordinate: 0, 1 or 2 for x, y or z.
+	 */
+	public double getPosition(int axis) {
+		return this.block.getDouble(this.offset + UnitStore.POSITION + 8 * axis);
+	}
+
+	/**
+	 * Copy the position of the unit in the record of this view into the given array.
+	 *
+	 * @param	result
+	 * 			The array to copy the position into, at indices 0 to 2.
+	 */
+	public void getPosition(double[] result) {
+		for (int i = 0; i < 3; i++)
+			result[i] = this.getPosition(i);
+	}
+
+	/**
+	 * Set the position of the unit in the record of this view to the given coordinates.
+	 */
+	public void setPosition(double x, double y, double z) {
+		this.block.putDouble(this.offset + UnitStore.POSITION, x);
+		this.block.putDouble(this.offset + UnitStore.POSITION + 8, y);
+		this.block.putDouble(this.offset + UnitStore.POSITION + 16, z);
+	}
+
+	/**
+	 * Return the given component of the speed of the unit in the record of this view.
+	 *
+	 * @param	axis
+	 * 			The axis of the component: 0, 1 or 2 for x, y or z.
+	 */
+	public double getSpeed(int axis) {
+		return this.block.getDouble(this.offset + UnitStore.SPEED + 8 * axis);
+	}
+
+	/**
+	 * Set the speed of the unit in the record of this view to the given components.
+	 */
+	public void setSpeed(double x, double y, double z) {
+		this.block.putDouble(this.offset + UnitStore.SPEED, x);
+		this.block.putDouble(this.offset + UnitStore.SPEED + 8, y);
+		this.block.putDouble(this.offset + UnitStore.SPEED + 16, z);
+	}
+
+	/**
+	 * Return the orientation of the unit in the record of this view.
+	 */
+	public float getOrientation() {
+		return this.block.getFloat(this.offset + UnitStore.ORIENTATION);
+	}
+
+	/**
+	 * Set the orientation of the unit in the record of this view to the given angle.
+	 *
+	 * @post	If the given angle lies between 0 and 2*PI, inclusively,
+	 * 			the orientation is changed to the given angle.
+	 */
+	public void setOrientation(float angle) {
+		if ((angle >= 0) && (angle <= (float) 2*Math.PI))
+			this.block.putFloat(this.offset + UnitStore.ORIENTATION, angle);
+	}
+
+	/**
+	 * Return the maximal amount of hitpoints of the unit in the record of this view.
+	 */
+	public int getMaxHitpoints() {
+		return (int) Math.ceil(this.getWeight() * this.getToughness() * 0.02);
+	}
+
+	/**
+	 * Return the hitpoints of the unit in the record of this view.
+	 */
+	public int getHitpoints() {
+		return this.block.getInt(this.offset + UnitStore.HITPOINTS);
+	}
+
+	/**
+	 * Set the hitpoints of the unit in the record of this view to the given amount,
+	 * limited to the range of valid hitpoints.
+	 */
+	public void setHitpoints(int hitpoints) {
+		this.block.putInt(this.offset + UnitStore.HITPOINTS, Math.max(0, Math.min(hitpoints, this.getMaxHitpoints())));
+	}
+
+	/**
+	 * Return the stamina of the unit in the record of this view.
+	 */
+	public int getStamina() {
+		return this.block.getInt(this.offset + UnitStore.STAMINA);
+	}
+
+	/**
+	 * Set the stamina of the unit in the record of this view to the given amount,
+	 * limited to the range of valid stamina.
+	 */
+	public void setStamina(int stamina) {
+		this.block.putInt(this.offset + UnitStore.STAMINA, Math.max(0, Math.min(stamina, this.getMaxHitpoints())));
+	}
+
+	/**
+	 * Return the activity of the unit in the record of this view.
+	 */
+	public Activity getActivity() {
+		return Activity.fromCode(this.block.get(this.offset + UnitStore.ACTIVITY));
+	}
+
+	/**
+	 * Set the activity of the unit in the record of this view to the given activity.
+	 */
+	public void setActivity(Activity activity) {
+		this.block.put(this.offset + UnitStore.ACTIVITY, activity.getCode());
+	}
+
+	/**
+	 * Check whether the unit in the record of this view is sprinting.
+	 */
+	public boolean isSprinting() {
+		return (this.block.get(this.offset + UnitStore.FLAGS) & UnitStore.FLAG_SPRINTING) != 0;
+	}
+
+	/**
+	 * Check whether default behaviour is enabled for the unit in the record of this view.
+	 */
+	public boolean isDefaultBehaviorEnabled() {
+		return (this.block.get(this.offset + UnitStore.FLAGS) & UnitStore.FLAG_DEFAULT_BEHAVIOR) != 0;
+	}
+
+	/**
+	 * Return the time passed since the unit in the record of this view started its activity.
+	 */
+	public double getCounter() {
+		return this.block.getDouble(this.offset + UnitStore.COUNTER);
+	}
+
+	/**
+	 * Set the time passed since the unit in the record of this view started its activity.
+	 */
+	public void setCounter(double counter) {
+		this.block.putDouble(this.offset + UnitStore.COUNTER, counter);
+	}
+}
@@ -0,0 +1,81 @@
+package hillbillies.model;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A class collecting the variable-length integer encoding used by the
+ * delta frames of the change stream.
+ *
+ * Unsigned values are written seven bits at a time, least significant group
+ * first, with the high bit of each byte flagging that more bytes follow. Signed
+ * values are zigzag encoded first, so small negative deltas stay small.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ */
+public final class VarInts {
+
+	/**
+	 * This class only offers static members.
+	 */
+	private VarInts() {
+	}
+
+	/**
+	 * Write the given non-negative value to the given stream.
+	 *
+	 * @param	out
+	 * 			The stream to write to.
+	 * @param	value
+	 * 			The value to write, interpreted as unsigned.
+	 */
+	public static void writeUnsigned(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * Write the given signed value to the given stream.
+	 *
+	 * @param	out
+	 * 			The stream to write to.
+	 * @param	value
+	 * 			The value to write.
+	 */
+	public static void writeSigned(ByteArrayOutputStream out, long value) {
+		writeUnsigned(out, (value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Read an unsigned value from the given buffer.
+	 *
+	 * @param	in
+	 * 			The buffer to read from.
+	 * @throws	IllegalArgumentException
+	 * 			The buffer holds a value of more than 64 bits.
+	 */
+	public static long readUnsigned(ByteBuffer in) throws IllegalArgumentException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.get();
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return result;
+		}
+		throw new IllegalArgumentException("Malformed variable-length integer");
+	}
+
+	/**
+	 * Read a signed value from the given buffer.
+	 *
+	 * @param	in
+	 * 			The buffer to read from.
+	 */
+	public static long readSigned(ByteBuffer in) throws IllegalArgumentException {
+		long raw = readUnsigned(in);
+		return (raw >>> 1) ^ -(raw & 1);
+	}
+}
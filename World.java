@@ -0,0 +1,964 @@
+package hillbillies.model;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+import hillbillies.common.internal.map.IByteMap3D;
+
+/**
+ * A class of game worlds, holding the units of a game by identifier.
+ *
+ * Every unit added to a world receives the next free identifier. Besides the
+ * usual per-unit access, a world offers batch operations creating many units
+ * from columnar attribute arrays and copying the state of all its units into
+ * caller-supplied primitive arrays, so large populations can be spawned and
+ * rendered without one call per unit per attribute. Units that need not be
+ * objects on the heap can be created directly as records of the off-heap unit
+ * store of a world.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ * @invar	Each unit of a world has that world as its world.
+ * 			| for each id in 0..getNbUnits()-1:
+ * 			|	getUnit(id).getWorld() == this
+ */
+public class World {
+
+	/**
+	 * Initialize this new world without any units.
+	 */
+	public World() {
+	}
+
+	/**
+	 * Variable registering the units of this world, indexed by identifier.
+	 */
+	private Unit[] units = new Unit[16];
+
+	/**
+	 * Variable registering the number of units of this world.
+	 */
+	private int nbUnits;
+
+	/**
+	 * Variable registering whether the units of this world use fixed-point arithmetic.
+	 */
+	private boolean fixedPoint;
+
+	/**
+	 * Variable registering the terrain of this world, if any.
+	 */
+	private IByteMap3D terrain;
+
+	/**
+	 * Variable registering the passable cubes of the terrain of this world, if any.
+	 */
+	private PassableMap passableMap;
+
+	/**
+	 * Variable registering the units of this world kept off the heap.
+	 */
+	private final UnitStore unitStore = new UnitStore();
+
+	/**
+	 * Variable registering the repairer of the whole paths planned on the terrain of this world, if any.
+	 */
+	private PathRepairer pathRepairer;
+
+	/**
+	 * Variable registering the movement reservations of the units of this world.
+	 */
+	private final ReservationTable reservationTable = new ReservationTable();
+
+	/**
+	 * Variable registering the bounding volume hierarchy over the positions of the units of this world.
+	 */
+	private final UnitTree unitTree = new UnitTree();
+
+	/**
+	 * Variable registering the index of the activities and flags of the units of this world.
+	 */
+	private final ActivityIndex activityIndex = new ActivityIndex();
+
+	/**
+	 * Variable registering the clock splitting frame durations into ticks for this world.
+	 */
+	private final SimulationClock clock = new SimulationClock();
+
+	/**
+	 * Variable registering the scheduler stepping the units of this world.
+	 */
+	private final TickScheduler tickScheduler = new TickScheduler(this, this.clock.getTimestep());
+
+	/**
+	 * Variable registering the system choosing the activities of the idle units of this world.
+	 */
+	private final DecisionSystem decisionSystem = new DecisionSystem(this);
+
+	/**
+	 * Variable registering the lifecycle detecting and recycling the dead units of this world.
+	 */
+	private final UnitLifecycle lifecycle = new UnitLifecycle(this);
+
+	/**
+	 * Variable registering the queue assigning the jobs of this world to its idle units.
+	 */
+	private final JobQueue jobQueue = new JobQueue(this);
+
+	/**
+	 * Variable registering the trackers encoding the changes of the units of this world.
+	 */
+	private volatile ChangeTracker[] changeTrackers = new ChangeTracker[0];
+
+	/**
+	 * Variable registering the number of attacks in this world, by outcome.
+	 */
+	private final AtomicLongArray attacks = new AtomicLongArray(AttackOutcome.values().length);
+
+	/**
+	 * Variable registering the wall-clock duration of the last frame of this world, in nanoseconds.
+	 */
+	private volatile long lastFrameNanos;
+
+	/**
+	 * Variable registering the number of ticks of the last frame of this world.
+	 */
+	private volatile int lastFrameTicks;
+
+	/**
+	 * Variable registering the recorder sampling the units of this world after each frame, if any.
+	 */
+	private volatile TelemetryRecorder telemetryRecorder;
+
+	/**
+	 * Return the number of units of this world.
+	 */
+	@Basic
+	public int getNbUnits() {
+		return this.nbUnits;
+	}
+
+	/**
+	 * Return the index of the activities and flags of the units of this world.
+	 */
+	@Basic @Immutable
+	public ActivityIndex getActivityIndex() {
+		return this.activityIndex;
+	}
+
+	/**
+	 * Return the bounding volume hierarchy over the positions of the units of this world.
+	 */
+	@Basic @Immutable
+	public UnitTree getUnitTree() {
+		return this.unitTree;
+	}
+
+	/**
+	 * Register that the position of the given unit of this world changed.
+	 *
+	 * @param	unit
+	 * 			The unit that moved.
+	 */
+	void unitMoved(Unit unit) {
+		this.unitChanged(unit);
+		if (this.lifecycle.isAlive(unit.getId()))
+			this.unitTree.update(unit.getId(), unit.getPosition());
+	}
+
+	/**
+	 * Register that the position, orientation, hitpoints, stamina or activity of
+	 * the given unit of this world changed.
+	 *
+	 * @param	unit
+	 * 			The unit that changed.
+	 */
+	void unitChanged(Unit unit) {
+		for (ChangeTracker tracker : this.changeTrackers)
+			tracker.unitChanged(unit.getId());
+	}
+
+	/**
+	 * Let this world tell the given tracker about the changes of its units.
+	 *
+	 * @param	tracker
+	 * 			The tracker to tell.
+	 */
+	synchronized void addChangeTracker(ChangeTracker tracker) {
+		ChangeTracker[] trackers = Arrays.copyOf(this.changeTrackers, this.changeTrackers.length + 1);
+		trackers[trackers.length - 1] = tracker;
+		this.changeTrackers = trackers;
+	}
+
+	/**
+	 * Return the unit of this world whose cube the given ray hits first.
+	 *
+	 * @param	origin
+	 * 			The origin of the ray.
+	 * @param	direction
+	 * 			The direction of the ray.
+	 * @return	The first unit hit, or null if the ray hits none.
+	 */
+	public Unit pick(double[] origin, double[] direction) {
+		int id = this.unitTree.pick(origin, direction, other -> this.getUnit(other).getPosition());
+		return (id < 0) ? null : this.getUnit(id);
+	}
+
+	/**
+	 * Return the units of this world whose position lies within the box with the given corners.
+	 *
+	 * @param	min
+	 * 			The minimal corner of the box.
+	 * @param	max
+	 * 			The maximal corner of the box.
+	 */
+	public List<Unit> selectUnits(double[] min, double[] max) {
+		List<Unit> result = new ArrayList<Unit>();
+		this.unitTree.queryBox(min, max, id -> {
+			double[] position = this.getUnit(id).getPosition();
+			for (int i = 0; i < 3; i++)
+				if ((position[i] < min[i]) || (position[i] > max[i]))
+					return;
+			result.add(this.getUnit(id));
+		});
+		return result;
+	}
+
+	/**
+	 * Register that the activity or the flags of the given unit of this world changed.
+	 *
+	 * @param	unit
+	 * 			The unit that changed.
+	 */
+	void unitTransitioned(Unit unit) {
+		this.unitChanged(unit);
+		if (!this.lifecycle.isAlive(unit.getId()))
+			return;
+		this.activityIndex.update(unit);
+		this.tickScheduler.reschedule(unit);
+	}
+
+	/**
+	 * Register that the given unit of this world died.
+	 *
+	 * @param	unit
+	 * 			The unit that died.
+	 */
+	void unitDied(Unit unit) {
+		this.lifecycle.unitDied(unit);
+	}
+
+	/**
+	 * Register that the behaviour of the given unit of this world was interrupted,
+	 * cancelling the reservations its movement still held.
+	 *
+	 * @param	unit
+	 * 			The unit whose behaviour was interrupted.
+	 */
+	void behaviorInterrupted(Unit unit) {
+		this.reservationTable.release(unit.getId(), Long.MIN_VALUE);
+	}
+
+	/**
+	 * Return the queue assigning the jobs of this world to its idle units.
+	 */
+	@Basic @Immutable
+	public JobQueue getJobQueue() {
+		return this.jobQueue;
+	}
+
+	/**
+	 * Register that an attack between units of this world had the given outcome.
+	 *
+	 * @param	outcome
+	 * 			The outcome of the attack.
+	 */
+	void attackResolved(AttackOutcome outcome) {
+		this.attacks.incrementAndGet(outcome.ordinal());
+	}
+
+	/**
+	 * Return the number of attacks between units of this world with the given outcome.
+	 *
+	 * @param	outcome
+	 * 			The outcome to count.
+	 */
+	public long getNbAttacks(AttackOutcome outcome) {
+		return this.attacks.get(outcome.ordinal());
+	}
+
+	/**
+	 * Return the wall-clock duration of the last frame of this world, in nanoseconds.
+	 */
+	@Basic
+	public long getLastFrameNanos() {
+		return this.lastFrameNanos;
+	}
+
+	/**
+	 * Return the number of ticks of the last frame of this world.
+	 */
+	@Basic
+	public int getLastFrameTicks() {
+		return this.lastFrameTicks;
+	}
+
+	/**
+	 * Return the recorder sampling the units of this world after each frame, if any.
+	 */
+	@Basic
+	public TelemetryRecorder getTelemetryRecorder() {
+		return this.telemetryRecorder;
+	}
+
+	/**
+	 * Let the given recorder sample the units of this world after each frame,
+	 * or stop sampling if the given recorder is not effective.
+	 *
+	 * @param	recorder
+	 * 			The recorder to sample with.
+	 * @post	| new.getTelemetryRecorder() == recorder
+	 * @throws	IllegalArgumentException
+	 * 			The given recorder samples another world.
+	 * 			| (recorder != null) && (recorder.getWorld() != this)
+	 */
+	public void setTelemetryRecorder(TelemetryRecorder recorder) throws IllegalArgumentException {
+		if ((recorder != null) && (recorder.getWorld() != this))
+			throw new IllegalArgumentException("Recorder of another world");
+		this.telemetryRecorder = recorder;
+	}
+
+	/**
+	 * Return the lifecycle detecting and recycling the dead units of this world.
+	 */
+	@Basic @Immutable
+	public UnitLifecycle getLifecycle() {
+		return this.lifecycle;
+	}
+
+	/**
+	 * Check whether the unit of this world with the given identifier is alive.
+	 *
+	 * @param	id
+	 * 			The identifier of the unit.
+	 * @return	| result == getLifecycle().isAlive(id)
+	 */
+	public boolean isAlive(int id) {
+		return this.lifecycle.isAlive(id);
+	}
+
+	/**
+	 * Remove the given dead unit of this world from all indexes of this world,
+	 * and interrupt its behaviour.
+	 *
+	 * @param	unit
+	 * 			The unit to detach.
+	 */
+	void detach(Unit unit) {
+		int id = unit.getId();
+		this.activityIndex.remove(id);
+		this.tickScheduler.remove(id);
+		this.unitTree.remove(id);
+		if (unit.getBehaviorScheduler() != null)
+			unit.getBehaviorScheduler().interrupt(unit);
+	}
+
+	/**
+	 * Return the clock splitting frame durations into ticks for this world.
+	 */
+	@Basic @Immutable
+	public SimulationClock getClock() {
+		return this.clock;
+	}
+
+	/**
+	 * Return the scheduler stepping the units of this world.
+	 */
+	@Basic @Immutable
+	public TickScheduler getTickScheduler() {
+		return this.tickScheduler;
+	}
+
+	/**
+	 * Return the system choosing the activities of the idle units of this world.
+	 */
+	@Basic @Immutable
+	public DecisionSystem getDecisionSystem() {
+		return this.decisionSystem;
+	}
+
+	/**
+	 * Advance the time of this world with the given frame duration, stepping
+	 * only the units that are due at each tick, let the decision system
+	 * choose the activities of idle units with default behaviour, assign open
+	 * jobs to the other idle units, reap the units that died, and let the
+	 * telemetry recorder of this world, if any, take a sample.
+	 *
+	 * @param	frameTime
+	 * 			The duration of the frame, in seconds.
+	 * @return	The number of unit steps performed.
+	 * @throws	NotValidDurationException
+	 * 			The given frame time is negative.
+	 * 			| frameTime < 0
+	 * @throws	InterruptedException
+	 * 			The activity of a unit was interrupted while it was stepped.
+	 */
+	public int advanceTime(double frameTime) throws NotValidDurationException, InterruptedException {
+		if (frameTime < 0)
+			throw new NotValidDurationException(frameTime);
+		SimulationEvents.WorldTick event = new SimulationEvents.WorldTick();
+		event.begin();
+		long start = System.nanoTime();
+		int steps = this.clock.advance(frameTime);
+		int result = 0;
+		try {
+			for (int i = 0; i < steps; i++)
+				result += this.tickScheduler.tick();
+			this.reservationTable.advanceTo((long) (this.clock.getSimulationTime() / ReservationTable.SLOT_DURATION));
+			this.decisionSystem.advanceTime(steps * this.clock.getTimestep());
+			if (steps > 0)
+				this.jobQueue.dispatch();
+			this.lifecycle.reap();
+		} finally {
+			this.lastFrameNanos = System.nanoTime() - start;
+			this.lastFrameTicks = steps;
+			event.commit(this, frameTime, steps, result);
+		}
+		TelemetryRecorder recorder = this.telemetryRecorder;
+		if (recorder != null)
+			recorder.sample();
+		return result;
+	}
+
+	/**
+	 * Return the terrain of this world, if any.
+	 */
+	@Basic
+	public IByteMap3D getTerrain() {
+		return this.terrain;
+	}
+
+	/**
+	 * Return the passable cubes of the terrain of this world, if any.
+	 * Terrain streamed from disk has no passable map.
+	 */
+	@Basic
+	public PassableMap getPassableMap() {
+		return this.passableMap;
+	}
+
+	/**
+	 * Return the store keeping the units of this world that are stored off the heap.
+	 */
+	@Basic @Immutable
+	public UnitStore getUnitStore() {
+		return this.unitStore;
+	}
+
+	/**
+	 * Return the repairer of the whole paths planned on the terrain of this world, if any.
+	 * Terrain streamed from disk has no path repairer.
+	 */
+	@Basic
+	public PathRepairer getPathRepairer() {
+		return this.pathRepairer;
+	}
+
+	/**
+	 * Set the terrain of this world to the given map.
+	 *
+	 * @param	terrain
+	 * 			The new terrain of this world.
+	 * @post	| new.getTerrain() == terrain
+	 * @post	If the given terrain is not streamed from disk, the passable map of
+	 * 			this world covers it, and no passable map is kept otherwise, since
+	 * 			labelling every cube would load the whole terrain into memory.
+	 * 			| if (! (terrain instanceof StreamingMap))
+	 * 			|	then new.getPassableMap().getMap() == terrain
+	 * 			|	else new.getPassableMap() == null
+	 * @post	If the given terrain is not streamed from disk, the path repairer of
+	 * 			this world listens to it, and no path repairer is kept otherwise.
+	 * 			| if (! (terrain instanceof StreamingMap))
+	 * 			|	then new.getPathRepairer().getMap() == terrain
+	 * 			|	else new.getPathRepairer() == null
+	 */
+	public void setTerrain(IByteMap3D terrain) {
+		this.terrain = terrain;
+		if (terrain instanceof StreamingMap) {
+			this.passableMap = null;
+			this.pathRepairer = null;
+		} else {
+			this.passableMap = new PassableMap(terrain);
+			this.pathRepairer = new PathRepairer(terrain);
+		}
+	}
+
+	/**
+	 * Return the movement reservations of the units of this world.
+	 */
+	@Basic @Immutable
+	public ReservationTable getReservationTable() {
+		return this.reservationTable;
+	}
+
+	/**
+	 * Return a planner guiding the given unit of this world to the given cube,
+	 * coordinated with the other units of this world that move through a planner.
+	 *
+	 * @param	unit
+	 * 			The unit to guide.
+	 * @param	target
+	 * 			The cube to guide the unit to.
+	 * @throws	IllegalStateException
+	 * 			This world has no passable map.
+	 * 			| getPassableMap() == null
+	 * @throws	OutOfBoundsException
+	 * 			The given target is not a passable cube of the terrain of this world.
+	 */
+	public CooperativePlanner createPlanner(Unit unit, int[] target) throws IllegalStateException, OutOfBoundsException {
+		if (this.passableMap == null)
+			throw new IllegalStateException("World without passable map");
+		return new CooperativePlanner(this.passableMap, this.reservationTable, this.pathRepairer, unit.getId(),
+				target, CooperativePlanner.DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Return a navigator guiding the given unit of this world to the given cube,
+	 * or null if the unit cannot reach that cube.
+	 *
+	 * @param	unit
+	 * 			The unit to guide.
+	 * @param	target
+	 * 			The cube to guide the unit to.
+	 * @return	A straight heading to the given cube if this world has no terrain,
+	 * 			a local planner that only takes passable steps if its terrain is
+	 * 			streamed from disk, and a planner of this world otherwise. Null if
+	 * 			the given cube is not a passable cube of the terrain of this world.
+	 */
+	Navigator createNavigator(Unit unit, int[] target) {
+		if (this.terrain == null)
+			return new Heading(target);
+		try {
+			if (this.passableMap == null)
+				return new LocalPlanner(this.terrain, target);
+			if (!this.canReach(unit.getCube(), target))
+				return null;
+			return this.createPlanner(unit, target);
+		} catch (OutOfBoundsException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Prepare the terrain ahead of a unit of this world in the given cube, about
+	 * to take the given step.
+	 *
+	 * @param	cube
+	 * 			The cube the unit occupies.
+	 * @param	step
+	 * 			The adjacent step the unit takes next.
+	 * @effect	If the terrain of this world is streamed from disk, the chunk one
+	 * 			chunk length ahead along the given step is prefetched.
+	 * 			| if (getTerrain() instanceof StreamingMap) then
+	 * 			|	getTerrain().prefetch(cube + ChunkedMap.CHUNK_SIZE * step)
+	 */
+	void unitStepping(int[] cube, int[] step) {
+		if (!(this.terrain instanceof StreamingMap))
+			return;
+		int[] ahead = new int[3];
+		for (int i = 0; i < 3; i++)
+			ahead[i] = cube[i] + ChunkedMap.CHUNK_SIZE * step[i];
+		((StreamingMap) this.terrain).prefetch(ahead);
+	}
+
+	/**
+	 * Return the number of cubes of this world along each axis.
+	 *
+	 * @return	The dimensions of the terrain of this world, if any, and the number
+	 * 			of cubes within the default bounds of units otherwise.
+	 * 			| if (getTerrain() != null) then
+	 * 			|	result == {getTerrain().getNbX(), getTerrain().getNbY(), getTerrain().getNbZ()}
+	 */
+	public int[] getDimensions() {
+		if (this.terrain == null) {
+			int size = Unit.UPPER_BOUND - Unit.LOWER_BOUND;
+			return new int[] {size, size, size};
+		}
+		return new int[] {this.terrain.getNbX(), this.terrain.getNbY(), this.terrain.getNbZ()};
+	}
+
+	/**
+	 * Check whether the given position lies within the bounds of this world.
+	 *
+	 * @param	position
+	 * 			The position to check.
+	 * @return	If this world has terrain, true if and only if the given position
+	 * 			lies within a cube of that terrain, and whether it lies within the
+	 * 			default bounds of units otherwise.
+	 * 			| if (getTerrain() != null) then
+	 * 			|	result == getTerrain().isValidIndex(floor(position[0]), floor(position[1]), floor(position[2]))
+	 */
+	public boolean isValidPosition(double[] position) {
+		if (this.terrain == null)
+			return Unit.isWithinDefaultBounds(position);
+		for (double coordinate : position)
+			if (coordinate < 0)
+				return false;
+		return this.terrain.isValidIndex((int) position[0], (int) position[1], (int) position[2]);
+	}
+
+	/**
+	 * Create a unit with the given attributes and add it to this world, reusing
+	 * the slot and the object of a dead unit if one is free.
+	 *
+	 * @return	The new unit, checked against the bounds of this world.
+	 * 			| result.getWorld() == this
+	 * @effect	If no identifier is free, the new unit is added to this world.
+	 * 			| if (getLifecycle().getNbFree() == 0) then addUnit(result)
+	 * @throws	OutOfBoundsException
+	 * 			The given position does not lie within the bounds of this world.
+	 * @throws	IllegalArgumentException
+	 * 			The new unit cannot have the given name.
+	 */
+	public Unit createUnit(String name, int[] position, int weight, int agility, int strength, int toughness,
+			boolean enableDefaultBehavior) throws OutOfBoundsException, IllegalArgumentException {
+		Unit unit = this.lifecycle.recycle(name, position, weight, agility, strength, toughness,
+				enableDefaultBehavior);
+		if (unit != null) {
+			this.register(unit);
+			return unit;
+		}
+		unit = new Unit(this, name, position, weight, agility, strength, toughness, enableDefaultBehavior);
+		this.addUnit(unit);
+		return unit;
+	}
+
+	/**
+	 * Check whether a unit in the given cube can ever reach the given target cube
+	 * of this world.
+	 *
+	 * @return	True if this world has no passable map, and whether that map
+	 * 			connects both cubes otherwise.
+	 * 			| if (getPassableMap() == null) then result == true
+	 * 			| else result == getPassableMap().canReach(from, to)
+	 */
+	public boolean canReach(int[] from, int[] to) {
+		return (this.passableMap == null) || (this.passableMap.canReach(from, to));
+	}
+
+	/**
+	 * Check whether the units of this world compute their movement in fixed-point arithmetic.
+	 */
+	@Basic
+	public boolean isFixedPoint() {
+		return this.fixedPoint;
+	}
+
+	/**
+	 * Let all units of this world, present and future, compute their movement in
+	 * fixed-point or in floating-point arithmetic.
+	 *
+	 * @param	fixedPoint
+	 * 			True for fixed-point arithmetic.
+	 * @post	| new.isFixedPoint() == fixedPoint
+	 * @effect	| for each id in 0..getNbUnits()-1:
+	 * 			|	getUnit(id).setFixedPoint(fixedPoint)
+	 */
+	public void setFixedPoint(boolean fixedPoint) {
+		this.fixedPoint = fixedPoint;
+		for (int id = 0; id < this.nbUnits; id++)
+			this.units[id].setFixedPoint(fixedPoint);
+	}
+
+	/**
+	 * Return a hash of the positions of all units of this world in fixed-point
+	 * arithmetic, identical for identical simulations on every machine.
+	 */
+	public long getPositionHash() {
+		long hash = 0xCBF29CE484222325L;
+		for (int id = 0; id < this.nbUnits; id++)
+			hash = FixedPoint.hash(hash, FixedPoint.toFixed(this.units[id].getPosition()));
+		return hash;
+	}
+
+	/**
+	 * Return the unit of this world with the given identifier.
+	 *
+	 * @param	id
+	 * 			The identifier of the unit.
+	 * @throws	IndexOutOfBoundsException
+	 * 			This world has no unit with the given identifier.
+	 * 			| (id < 0) || (id >= getNbUnits())
+	 */
+	public Unit getUnit(int id) throws IndexOutOfBoundsException {
+		if ((id < 0) || (id >= this.nbUnits))
+			throw new IndexOutOfBoundsException("No unit with id " + id);
+		return this.units[id];
+	}
+
+	/**
+	 * Add the given unit to this world.
+	 *
+	 * @param	unit
+	 * 			The unit to add.
+	 * @return	The identifier of the given unit in this world.
+	 * @post	The given unit belongs to this world.
+	 * 			| (unit.getWorld() == this) && (getUnit(result) == unit)
+	 * @throws	IllegalArgumentException
+	 * 			The given unit is not effective or already belongs to a world.
+	 * 			| (unit == null) || (unit.getWorld() != null)
+	 */
+	public int addUnit(Unit unit) throws IllegalArgumentException {
+		if ((unit == null) || (unit.getWorld() != null))
+			throw new IllegalArgumentException();
+		if (this.nbUnits == this.units.length)
+			this.units = Arrays.copyOf(this.units, 2 * this.units.length);
+		int id = this.nbUnits++;
+		this.units[id] = unit;
+		unit.setWorld(this, id);
+		unit.setFixedPoint(this.fixedPoint);
+		this.register(unit);
+		return id;
+	}
+
+	/**
+	 * Register the given unit of this world in all indexes of this world.
+	 */
+	private void register(Unit unit) {
+		this.unitChanged(unit);
+		this.activityIndex.update(unit);
+		this.tickScheduler.reschedule(unit);
+		this.unitTree.update(unit.getId(), unit.getPosition());
+	}
+
+	/**
+	 * Create and add a unit for each position in the given columnar attribute
+	 * arrays, reusing the slots and objects of dead units as long as any are free.
+	 *
+	 * @param	names
+	 * 			The names of the new units.
+	 * @param	x
+	 * 			The x coordinates of the cubes of the new units.
+	 * @param	y
+	 * 			The y coordinates of the cubes of the new units.
+	 * @param	z
+	 * 			The z coordinates of the cubes of the new units.
+	 * @param	weight
+	 * 			The weights of the new units.
+	 * @param	agility
+	 * 			The agilities of the new units.
+	 * @param	strength
+	 * 			The strengths of the new units.
+	 * @param	toughness
+	 * 			The toughnesses of the new units.
+	 * @param	enableDefaultBehavior
+	 * 			Whether default behaviour is enabled for the new units.
+	 * @return	The new units, in the order of the given arrays.
+	 * @effect	| for each i in 0..names.length-1:
+	 * 			|	result[i] == createUnit(names[i], {x[i], y[i], z[i]}, weight[i], agility[i],
+	 * 			|		strength[i], toughness[i], enableDefaultBehavior[i])
+	 * @throws	IllegalArgumentException
+	 * 			The given arrays differ in length, or one of the given names is not a valid name.
+	 * 			No unit is added to this world in that case.
+	 * @throws	OutOfBoundsException
+	 * 			One of the given positions is out of bounds. No unit is added to this world in that case.
+	 */
+	public Unit[] createUnits(String[] names, int[] x, int[] y, int[] z, int[] weight, int[] agility,
+			int[] strength, int[] toughness, boolean[] enableDefaultBehavior)
+					throws IllegalArgumentException, OutOfBoundsException {
+		this.checkColumns(names, x, y, z, weight, agility, strength, toughness, enableDefaultBehavior);
+		int n = names.length;
+		int nbNew = n - this.lifecycle.getNbFree();
+		if ((nbNew > 0) && (this.nbUnits + nbNew > this.units.length))
+			this.units = Arrays.copyOf(this.units, Math.max(2 * this.units.length, this.nbUnits + nbNew));
+		Unit[] result = new Unit[n];
+		for (int i = 0; i < n; i++)
+			result[i] = this.createUnit(names[i], new int[] {x[i], y[i], z[i]}, weight[i], agility[i],
+					strength[i], toughness[i], enableDefaultBehavior[i]);
+		return result;
+	}
+
+	/**
+	 * Add a record to the off-heap store of this world for each position in the
+	 * given columnar attribute arrays, without creating any unit on the heap.
+	 *
+	 * @param	names
+	 * 			The names of the new units.
+	 * @param	x
+	 * 			The x coordinates of the cubes of the new units.
+	 * @param	y
+	 * 			The y coordinates of the cubes of the new units.
+	 * @param	z
+	 * 			The z coordinates of the cubes of the new units.
+	 * @param	weight
+	 * 			The weights of the new units.
+	 * @param	agility
+	 * 			The agilities of the new units.
+	 * @param	strength
+	 * 			The strengths of the new units.
+	 * @param	toughness
+	 * 			The toughnesses of the new units.
+	 * @param	enableDefaultBehavior
+	 * 			Whether default behaviour is enabled for the new units.
+	 * @return	The index of the record of the first new unit; the records of the
+	 * 			other units follow in the order of the given arrays.
+	 * @throws	IllegalArgumentException
+	 * 			The given arrays differ in length, or one of the given names is not a valid name.
+	 * 			No record is added in that case.
+	 * @throws	OutOfBoundsException
+	 * 			One of the given positions is out of bounds. No record is added in that case.
+	 */
+	public int storeUnits(String[] names, int[] x, int[] y, int[] z, int[] weight, int[] agility,
+			int[] strength, int[] toughness, boolean[] enableDefaultBehavior)
+					throws IllegalArgumentException, OutOfBoundsException {
+		int n = names.length;
+		this.checkColumns(names, x, y, z, weight, agility, strength, toughness, enableDefaultBehavior);
+		double[] position = new double[3];
+		int first = this.unitStore.getNbRecords();
+		for (int i = 0; i < n; i++) {
+			position[0] = x[i];
+			position[1] = y[i];
+			position[2] = z[i];
+			this.unitStore.add(names[i], position, weight[i], agility[i], strength[i], toughness[i],
+					enableDefaultBehavior[i]);
+		}
+		return first;
+	}
+
+	/**
+	 * Check that the given columnar attribute arrays describe valid new units of this world.
+	 *
+	 * @throws	IllegalArgumentException
+	 * 			The given arrays differ in length, or one of the given names is not a valid name.
+	 * @throws	OutOfBoundsException
+	 * 			One of the given positions is out of bounds.
+	 */
+	private void checkColumns(String[] names, int[] x, int[] y, int[] z, int[] weight, int[] agility,
+			int[] strength, int[] toughness, boolean[] enableDefaultBehavior)
+					throws IllegalArgumentException, OutOfBoundsException {
+		int n = names.length;
+		if ((x.length != n) || (y.length != n) || (z.length != n) || (weight.length != n) ||
+				(agility.length != n) || (strength.length != n) || (toughness.length != n) ||
+				(enableDefaultBehavior.length != n))
+			throw new IllegalArgumentException("Attribute arrays differ in length");
+		double[] position = new double[3];
+		for (int i = 0; i < n; i++) {
+			if (!NameTable.isValidName(names[i]))
+				throw new IllegalArgumentException(names[i]);
+			position[0] = x[i];
+			position[1] = y[i];
+			position[2] = z[i];
+			if (!this.isValidPosition(position))
+				throw new OutOfBoundsException(position.clone());
+		}
+	}
+
+	/**
+	 * Copy the positions of all units of this world into the given array.
+	 *
+	 * @param	result
+	 * 			The array to copy into; the position of the unit with identifier id
+	 * 			is stored at indices 3*id to 3*id+2.
+	 * @throws	IllegalArgumentException
+	 * 			The given array is too small.
+	 * 			| result.length < 3 * getNbUnits()
+	 */
+	public void getPositions(double[] result) throws IllegalArgumentException {
+		if (result.length < 3 * this.nbUnits)
+			throw new IllegalArgumentException("Array too small");
+		for (int id = 0; id < this.nbUnits; id++) {
+			double[] position = this.units[id].getPosition();
+			result[3 * id] = position[0];
+			result[3 * id + 1] = position[1];
+			result[3 * id + 2] = position[2];
+		}
+	}
+
+	/**
+	 * Copy the orientations of all units of this world into the given array.
+	 *
+	 * @param	result
+	 * 			The array to copy into, indexed by identifier.
+	 * @throws	IllegalArgumentException
+	 * 			The given array is too small.
+	 * 			| result.length < getNbUnits()
+	 */
+	public void getOrientations(double[] result) throws IllegalArgumentException {
+		if (result.length < this.nbUnits)
+			throw new IllegalArgumentException("Array too small");
+		for (int id = 0; id < this.nbUnits; id++)
+			result[id] = this.units[id].getOrientation();
+	}
+
+	/**
+	 * Copy the positions and orientations of all units of this world into the
+	 * given array, each unit as it was at a single moment.
+	 *
+	 * @param	result
+	 * 			The array to copy into; the position of the unit with identifier id
+	 * 			is stored at indices 4*id to 4*id+2, and its orientation at index 4*id+3.
+	 * @throws	IllegalArgumentException
+	 * 			The given array is too small.
+	 * 			| result.length < 4 * getNbUnits()
+	 */
+	public void getPoses(double[] result) throws IllegalArgumentException {
+		if (result.length < 4 * this.nbUnits)
+			throw new IllegalArgumentException("Array too small");
+		double[] pose = new double[4];
+		for (int id = 0; id < this.nbUnits; id++) {
+			this.units[id].getPose(pose);
+			System.arraycopy(pose, 0, result, 4 * id, 4);
+		}
+	}
+
+	/**
+	 * Copy the hitpoints of all units of this world into the given array.
+	 *
+	 * @param	result
+	 * 			The array to copy into, indexed by identifier.
+	 * @throws	IllegalArgumentException
+	 * 			The given array is too small.
+	 * 			| result.length < getNbUnits()
+	 */
+	public void getHitpoints(int[] result) throws IllegalArgumentException {
+		if (result.length < this.nbUnits)
+			throw new IllegalArgumentException("Array too small");
+		for (int id = 0; id < this.nbUnits; id++)
+			result[id] = this.units[id].getHitpoints();
+	}
+
+	/**
+	 * Copy the stamina of all units of this world into the given array.
+	 *
+	 * @param	result
+	 * 			The array to copy into, indexed by identifier.
+	 * @throws	IllegalArgumentException
+	 * 			The given array is too small.
+	 * 			| result.length < getNbUnits()
+	 */
+	public void getStamina(int[] result) throws IllegalArgumentException {
+		if (result.length < this.nbUnits)
+			throw new IllegalArgumentException("Array too small");
+		for (int id = 0; id < this.nbUnits; id++)
+			result[id] = this.units[id].getStamina();
+	}
+
+	/**
+	 * Copy the activity codes of all units of this world into the given array.
+	 *
+	 * @param	result
+	 * 			The array to copy into, indexed by identifier.
+	 * @throws	IllegalArgumentException
+	 * 			The given array is too small.
+	 * 			| result.length < getNbUnits()
+	 */
+	public void getActivities(byte[] result) throws IllegalArgumentException {
+		if (result.length < this.nbUnits)
+			throw new IllegalArgumentException("Array too small");
+		for (int id = 0; id < this.nbUnits; id++)
+			result[id] = this.units[id].getActivity().getCode();
+	}
+}
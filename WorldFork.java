@@ -0,0 +1,233 @@
+package hillbillies.model;
+import java.util.Random;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of world forks, hypothetical copies of the units of a world in which
+ * candidate futures can be simulated without affecting the world itself.
+ *
+ * A fork shares the units of its parent until it modifies one of them: only then
+ * the unit is copied into the fork. Forking is therefore cheap however many
+ * units the world has, and many short rollouts, for example of fights, can run
+ * side by side, each in its own fork. A fork that has been forked itself can no
+ * longer be modified, so its children keep seeing the state they were forked from.
+ *
+ * A fork of a world reads the live units of that world, so it should be taken
+ * and used while the world is not being advanced, or be forked once more first.
+ * Attacks in a fork are neither counted by the world nor recorded as events.
+ *
+ * The copies of a fork hold references to the names of their units, so a fork
+ * must be closed once it is no longer used, after the forks forked from it.
+ *
+ * @author 	Joris Schrauwen, Wim Schmitz
+ *
+ * @invar	A fork has as many units as the world it was forked from had.
+ * 			| getNbUnits() == getWorld().getNbUnits() at the time of forking
+ */
+public class WorldFork implements AutoCloseable {
+
+	/**
+	 * Initialize this new fork of the given world.
+	 *
+	 * @param	world
+	 * 			The world to fork.
+	 * @post	| new.getWorld() == world
+	 * @post	| new.getParent() == null
+	 * @post	| new.getNbUnits() == world.getNbUnits()
+	 */
+	public WorldFork(World world) {
+		this(world, null, world.getNbUnits());
+	}
+
+	/**
+	 * Initialize this new fork of the given world, sharing the units of the given parent.
+	 */
+	private WorldFork(World world, WorldFork parent, int nbUnits) {
+		this.world = world;
+		this.parent = parent;
+		this.copies = new Unit[nbUnits];
+	}
+
+	/**
+	 * Variable registering the world this fork descends from.
+	 */
+	private final World world;
+
+	/**
+	 * Variable registering the fork this fork was forked from, if any.
+	 */
+	private final WorldFork parent;
+
+	/**
+	 * Variable registering the units this fork modified, indexed by identifier.
+	 */
+	private final Unit[] copies;
+
+	/**
+	 * Variable registering the number of units this fork modified.
+	 */
+	private int nbCopies;
+
+	/**
+	 * Variable registering whether this fork has been forked.
+	 */
+	private volatile boolean frozen;
+
+	/**
+	 * Variable registering whether this fork has been closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Return the world this fork descends from.
+	 */
+	@Basic @Immutable
+	public World getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Return the fork this fork was forked from, or null if it was forked from its world.
+	 */
+	@Basic @Immutable
+	public WorldFork getParent() {
+		return this.parent;
+	}
+
+	/**
+	 * Return the number of units of this fork.
+	 */
+	@Basic @Immutable
+	public int getNbUnits() {
+		return this.copies.length;
+	}
+
+	/**
+	 * Return the number of units this fork copied because it modified them.
+	 */
+	@Basic
+	public synchronized int getNbCopies() {
+		return this.nbCopies;
+	}
+
+	/**
+	 * Check whether this fork has been forked, and can no longer be modified.
+	 */
+	@Basic
+	public boolean isFrozen() {
+		return this.frozen;
+	}
+
+	/**
+	 * Check whether this fork has been closed.
+	 */
+	@Basic
+	public synchronized boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Close this fork, releasing the names of the units it copied.
+	 *
+	 * @post	| new.isClosed()
+	 */
+	@Override
+	public synchronized void close() {
+		if (this.closed)
+			return;
+		this.closed = true;
+		for (Unit copy : this.copies)
+			if (copy != null)
+				copy.releaseName();
+	}
+
+	/**
+	 * Return a new fork sharing the units of this fork.
+	 *
+	 * @post	This fork can no longer be modified.
+	 * 			| new.isFrozen()
+	 * @return	| result.getParent() == this
+	 */
+	public WorldFork fork() {
+		this.frozen = true;
+		return new WorldFork(this.world, this, this.copies.length);
+	}
+
+	/**
+	 * Return the unit with the given identifier as seen by this fork.
+	 *
+	 * The resulting unit may be shared with the parent of this fork or with its
+	 * world, so it may only be inspected.
+	 *
+	 * @param	id
+	 * 			The identifier of the unit.
+	 * @throws	IndexOutOfBoundsException
+	 * 			No unit of this fork has the given identifier.
+	 * 			| (id < 0) || (id >= getNbUnits())
+	 */
+	public Unit getUnit(int id) throws IndexOutOfBoundsException {
+		WorldFork fork = this;
+		while (fork != null) {
+			Unit copy = fork.getCopy(id);
+			if (copy != null)
+				return copy;
+			fork = fork.parent;
+		}
+		return this.world.getUnit(id);
+	}
+
+	/**
+	 * Resolve an attack between the units with the given identifiers in this fork.
+	 * Only the copy of the defender in this fork is changed; the attack is not
+	 * reported to the world of this fork.
+	 *
+	 * @param	attackerId
+	 * 			The identifier of the attacking unit.
+	 * @param	defenderId
+	 * 			The identifier of the defending unit.
+	 * @param	random
+	 * 			The random generator deciding the outcome.
+	 * @return	The outcome of the attack.
+	 * @throws	IllegalStateException
+	 * 			This fork has been forked or closed.
+	 * 			| isFrozen() || isClosed()
+	 * @throws	IndexOutOfBoundsException
+	 * 			No unit of this fork has one of the given identifiers.
+	 */
+	public AttackOutcome attack(int attackerId, int defenderId, Random random)
+			throws IllegalStateException, IndexOutOfBoundsException {
+		Unit defender = this.modify(defenderId);
+		return this.getUnit(attackerId).resolveOutcome(defender, random);
+	}
+
+	/**
+	 * Return the copy of the unit with the given identifier in this fork, copying
+	 * it first if this fork did not modify it yet.
+	 *
+	 * @throws	IllegalStateException
+	 * 			This fork has been forked or closed.
+	 * 			| isFrozen() || isClosed()
+	 * @throws	IndexOutOfBoundsException
+	 * 			No unit of this fork has the given identifier.
+	 */
+	synchronized Unit modify(int id) throws IllegalStateException, IndexOutOfBoundsException {
+		if (this.frozen)
+			throw new IllegalStateException("Forked fork");
+		if (this.closed)
+			throw new IllegalStateException("Closed fork");
+		if (this.copies[id] == null) {
+			this.copies[id] = new Unit(this.getUnit(id));
+			this.nbCopies++;
+		}
+		return this.copies[id];
+	}
+
+	/**
+	 * Return the copy of the unit with the given identifier this fork made, if any.
+	 */
+	private synchronized Unit getCopy(int id) {
+		return this.copies[id];
+	}
+}